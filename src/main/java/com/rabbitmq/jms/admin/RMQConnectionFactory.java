@@ -21,6 +21,7 @@ import java.io.Serializable;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.TimeoutException;
@@ -165,6 +166,11 @@ public class RMQConnectionFactory implements ConnectionFactory, Referenceable, S
      *  0 means unlimited and is the default; negative values are interpreted as 0. */
     private int queueBrowserReadMax = Math.max(0, Integer.getInteger("rabbit.jms.queueBrowserReadMax", 0));
 
+    /** The maximum number of idle channels a connection keeps for reuse by queue browsers, which must be non-negative;
+     *  0 means browsing channels are closed after use; negative values are interpreted as 0. */
+    private int queueBrowserChannelPoolSize = Math.max(0, Integer.getInteger("rabbit.jms.queueBrowserChannelPoolSize",
+        RMQConnection.DEFAULT_QUEUE_BROWSER_CHANNEL_POOL_SIZE));
+
     /** The time to wait for threads/messages to terminate during {@link Connection#close()} */
     private volatile long terminationTimeout = Long.getLong("rabbit.jms.terminationTimeout", 15000);
 
@@ -196,6 +202,103 @@ public class RMQConnectionFactory implements ConnectionFactory, Referenceable, S
      */
     private boolean declareReplyToDestination = true;
 
+    /**
+     * Whether non-durable topic subscribers with a selector share one AMQP subscription per
+     * topic and connection.
+     *
+     * @since 2.3.0
+     */
+    private boolean topicSelectorDemultiplexing = false;
+
+    /**
+     * Codec to compress outbound message bodies with,
+     * {@link DeflateBodyCodec} if <code>null</code>.
+     *
+     * @since 2.3.0
+     */
+    private BodyCodec bodyCodec;
+
+    /**
+     * Minimum size in bytes of the outbound message bodies to compress,
+     * negative to not compress them, which is the default.
+     *
+     * @since 2.3.0
+     */
+    private int bodyCompressionThreshold = -1;
+
+    /**
+     * Serializer of the objects of outbound object messages,
+     * Java serialization if <code>null</code>.
+     *
+     * @since 2.3.0
+     */
+    private ObjectMessageSerializer objectMessageSerializer;
+
+    /**
+     * Maximum size in bytes of decompressed inbound message bodies.
+     *
+     * @since 2.3.0
+     */
+    private int maxDecompressedBodySize = BodyCodec.DEFAULT_MAX_DECODED_SIZE;
+
+    /**
+     * Whether map messages are sent in the compact encoding,
+     * rather than in the legacy encoding older clients can read.
+     *
+     * @since 2.3.0
+     */
+    private boolean mapMessageCompactFormat = false;
+
+    /**
+     * Whether stream messages are sent in the compact encoding,
+     * rather than in the legacy encoding older clients can read.
+     *
+     * @since 2.3.0
+     */
+    private boolean streamMessageCompactFormat = false;
+
+    /**
+     * Collector of JMS-level metrics, none if <code>null</code>.
+     *
+     * @since 2.3.0
+     */
+    private JmsMetricsCollector jmsMetricsCollector;
+
+    /**
+     * Number of AMQP connections each JMS connection spreads its sessions over.
+     *
+     * @since 2.3.0
+     */
+    private int connectionShards = 1;
+
+    /**
+     * How sessions are assigned to the AMQP connections of a JMS connection.
+     *
+     * @since 2.3.0
+     */
+    private ConnectionShardAssignment connectionShardAssignment = ConnectionShardAssignment.ROUND_ROBIN;
+
+    /**
+     * Expiry in milliseconds of the queues declared non-exclusive when there are several connection shards.
+     *
+     * @since 2.3.0
+     */
+    private long connectionShardQueueExpiry = RMQConnection.DEFAULT_CONNECTION_SHARD_QUEUE_EXPIRY_MS;
+
+    /**
+     * Whether stopping a connection keeps the subscriptions of message listeners.
+     *
+     * @since 2.3.0
+     */
+    private boolean keepSubscriptionsOnStop = false;
+
+    /**
+     * Whether message listeners are called on virtual threads, when the JVM supports them.
+     *
+     * @since 2.3.0
+     */
+    private boolean deliverOnVirtualThreads = false;
+
     /**
      * {@inheritDoc}
      */
@@ -248,7 +351,17 @@ public class RMQConnectionFactory implements ConnectionFactory, Referenceable, S
             this.amqpConnectionFactoryPostProcessor.accept(cf);
         }
 
-        com.rabbitmq.client.Connection rabbitConnection = instantiateNodeConnection(cf, connectionCreator);
+        List<com.rabbitmq.client.Connection> rabbitConnections = new ArrayList<>(this.connectionShards);
+        try {
+            for (int i = 0; i < this.connectionShards; i++) {
+                rabbitConnections.add(instantiateNodeConnection(cf, connectionCreator));
+            }
+        } catch (JMSException e) {
+            for (com.rabbitmq.client.Connection rabbitConnection : rabbitConnections) {
+                rabbitConnection.abort();
+            }
+            throw e;
+        }
 
         ReceivingContextConsumer rcc;
         if (this.declareReplyToDestination) {
@@ -261,9 +374,14 @@ public class RMQConnectionFactory implements ConnectionFactory, Referenceable, S
         }
 
         RMQConnection conn = new RMQConnection(new ConnectionParams()
-            .setRabbitConnection(rabbitConnection)
+            .setRabbitConnections(rabbitConnections)
+            .setConnectionShardAssignment(this.connectionShardAssignment)
+            .setConnectionShardQueueExpiry(this.connectionShardQueueExpiry)
+            .setKeepSubscriptionsOnStop(this.keepSubscriptionsOnStop)
+            .setDeliverOnVirtualThreads(this.deliverOnVirtualThreads)
             .setTerminationTimeout(getTerminationTimeout())
             .setQueueBrowserReadMax(getQueueBrowserReadMax())
+            .setQueueBrowserChannelPoolSize(getQueueBrowserChannelPoolSize())
             .setOnMessageTimeoutMs(getOnMessageTimeoutMs())
             .setChannelsQos(channelsQos)
             .setPreferProducerMessageProperty(preferProducerMessageProperty)
@@ -275,6 +393,14 @@ public class RMQConnectionFactory implements ConnectionFactory, Referenceable, S
             .setReceivingContextConsumer(rcc)
             .setConfirmListener(confirmListener)
             .setTrustedPackages(this.trustedPackages)
+            .setTopicSelectorDemultiplexing(this.topicSelectorDemultiplexing)
+            .setBodyCodec(this.bodyCodec)
+            .setBodyCompressionThreshold(this.bodyCompressionThreshold)
+            .setObjectMessageSerializer(this.objectMessageSerializer)
+            .setMaxDecompressedBodySize(this.maxDecompressedBodySize)
+            .setMapMessageCompactFormat(this.mapMessageCompactFormat)
+            .setStreamMessageCompactFormat(this.streamMessageCompactFormat)
+            .setJmsMetricsCollector(this.jmsMetricsCollector)
         );
         logger.debug("Connection {} created.", conn);
         return conn;
@@ -779,6 +905,15 @@ public class RMQConnectionFactory implements ConnectionFactory, Referenceable, S
 
     /**
      * Sets <i>terminationTimeout</i>: the time in milliseconds a {@link Connection#close()} should wait for threads/tasks/listeners to complete
+     * <p>
+     * The sessions of the connection are closed in parallel, within this timeout for all of them.
+     * <b>Note</b>: since 2.3.0, {@link Connection#close()} does not wait beyond the timeout for sessions still
+     * closing, e.g. with a message listener that has not returned. Such sessions are abandoned: once the
+     * timeout has passed they skip the channel operations left, including the rollback of transacted
+     * sessions, and the AMQP connection is closed, which requeues their unacknowledged messages.
+     * Set a timeout longer than the longest expected listener call to wait for them, or 0 or less for no limit.
+     * <p>
+     * Default is 15000 ms, or the value of the <code>rabbit.jms.terminationTimeout</code> system property.
      *
      * @param terminationTimeout - duration in milliseconds
      */
@@ -805,6 +940,34 @@ public class RMQConnectionFactory implements ConnectionFactory, Referenceable, S
         this.queueBrowserReadMax = Math.max(0, queueBrowserReadMax);
     }
 
+    /**
+     * Returns the maximum number of idle channels a connection keeps for reuse by queue browsers.
+     *
+     * @return the maximum number of idle browsing channels per connection
+     * @since 2.3.0
+     */
+    public int getQueueBrowserChannelPoolSize() {
+        return this.queueBrowserChannelPoolSize;
+    }
+
+    /**
+     * Sets <i>queueBrowserChannelPoolSize</i>: the maximum number of idle channels a connection keeps for reuse
+     * by queue browsers. A channel is reset with <code>basic.recover</code> when a browser enumeration is done with it,
+     * and closed instead if it cannot be reset or the pool is full.
+     * An enumeration that is not read to the end holds its channel until its browser or session is closed,
+     * or until it has not been read for 60 seconds (set with the <code>rabbit.jms.queueBrowserIdleTimeout</code>
+     * system property, in milliseconds): close browsers when done with them.
+     * Non-positive values are set to zero, which means browsing channels are closed after use.
+     * Default is 4.
+     *
+     * @param queueBrowserChannelPoolSize - keep no more than this number of idle browsing channels per connection.
+     * @see RMQConnection#getBrowsingChannelPoolStatistics()
+     * @since 2.3.0
+     */
+    public void setQueueBrowserChannelPoolSize(int queueBrowserChannelPoolSize) {
+        this.queueBrowserChannelPoolSize = Math.max(0, queueBrowserChannelPoolSize);
+    }
+
     /**
      * Returns the time in milliseconds {@link MessageListener#onMessage(Message)} can take to process a message
      * @return the time in milliseconds {@link MessageListener#onMessage(Message)} can take to process a message
@@ -1002,6 +1165,335 @@ public class RMQConnectionFactory implements ConnectionFactory, Referenceable, S
         this.confirmListener = confirmListener;
     }
 
+    /**
+     * Whether non-durable topic subscribers with a selector share one AMQP subscription per
+     * topic and connection.
+     * <p>
+     * By default, each such subscriber gets its own queue, bound to a selector exchange, so the broker
+     * sends a copy of each matching message to every subscriber, over the same connection.
+     * When this option is enabled, the subscribers of a topic on a connection share a single queue
+     * bound to the topic, and messages are matched against their selectors and dispatched in the client.
+     * This reduces network traffic and broker resources when there are many selector subscribers,
+     * and does not need the topic selector exchange plugin.
+     * <p>
+     * Messages on the shared subscription are acknowledged once dispatched to the subscribers, so this option
+     * applies only to subscribers on non-transacted sessions in {@link javax.jms.Session#AUTO_ACKNOWLEDGE}
+     * or {@link javax.jms.Session#DUPS_OK_ACKNOWLEDGE} mode, and not when
+     * {@link #setRequeueOnMessageListenerException(boolean)} is enabled, as a message could not be requeued
+     * for a single subscriber: such subscribers get their own queue. Message listeners of a topic are called
+     * one after the other, on the same thread. Messages for subscribers without a listener, or while the
+     * connection is stopped, are buffered in the client, up to 1000 per subscriber: when a buffer is full,
+     * the messages for that subscriber are dropped, and logged, until it reads some, without holding up
+     * the other subscribers of the topic.
+     * <p>
+     * Default is false.
+     *
+     * @param topicSelectorDemultiplexing true to share a subscription between topic selector subscribers
+     * @since 2.3.0
+     */
+    public void setTopicSelectorDemultiplexing(boolean topicSelectorDemultiplexing) {
+        this.topicSelectorDemultiplexing = topicSelectorDemultiplexing;
+    }
+
+    public boolean isTopicSelectorDemultiplexing() {
+        return this.topicSelectorDemultiplexing;
+    }
+
+    /**
+     * Codec to compress the bodies of outbound messages with, when they are at least
+     * {@link #setBodyCompressionThreshold(int)} bytes long.
+     * <p>
+     * Compressed messages have their AMQP <code>content-encoding</code> property set to the codec encoding,
+     * and are decompressed by the receiving JMS client when they are converted to JMS messages.
+     * A body is sent uncompressed if compressing it does not make it smaller.
+     * <p>
+     * Inbound messages from JMS destinations are decompressed with this codec, {@link DeflateBodyCodec},
+     * or the codecs registered as {@link java.util.ServiceLoader} providers of {@link BodyCodec}, if
+     * this codec or {@link #setBodyCompressionThreshold(int)} is set: consumers which do not send
+     * compressed messages enable decompression by setting a codec. Messages from AMQP destinations
+     * are never decompressed. The size of decompressed bodies is bounded by
+     * {@link #setMaxDecompressedBodySize(int)}.
+     * <p>
+     * Default is null, which means {@link DeflateBodyCodec}.
+     *
+     * @param bodyCodec the codec for outbound message bodies
+     * @see #setBodyCompressionThreshold(int)
+     * @since 2.3.0
+     */
+    public void setBodyCodec(BodyCodec bodyCodec) {
+        this.bodyCodec = bodyCodec;
+    }
+
+    public BodyCodec getBodyCodec() {
+        return this.bodyCodec;
+    }
+
+    /**
+     * Minimum size in bytes of the bodies of outbound messages to compress.
+     * <p>
+     * Only messages sent to JMS destinations are compressed, since the consumers of AMQP
+     * destinations may not support compressed bodies. Compressed messages can only be read
+     * by JMS clients supporting compression.
+     * <p>
+     * Default is -1 (negative values disable compression).
+     *
+     * @param bodyCompressionThreshold the size from which outbound message bodies are compressed
+     * @see #setBodyCodec(BodyCodec)
+     * @since 2.3.0
+     */
+    public void setBodyCompressionThreshold(int bodyCompressionThreshold) {
+        this.bodyCompressionThreshold = bodyCompressionThreshold;
+    }
+
+    public int getBodyCompressionThreshold() {
+        return this.bodyCompressionThreshold;
+    }
+
+    /**
+     * Serializer of the objects of outbound {@link javax.jms.ObjectMessage}s.
+     * <p>
+     * The name of the serializer is sent with each message, and inbound messages are deserialized with
+     * the serializer of this name: {@link CompactObjectMessageSerializer}, or the serializers registered as
+     * {@link java.util.ServiceLoader} providers of {@link ObjectMessageSerializer}, whatever the settings
+     * of the connection factory. Objects are checked against the trusted packages whatever their serializer.
+     * Messages with a serializer other than Java serialization can only be read by JMS clients supporting it.
+     * Objects the serializer does not support are sent with Java serialization.
+     * <p>
+     * Default is null, which means Java serialization.
+     *
+     * @param objectMessageSerializer the serializer for outbound object messages
+     * @see #setTrustedPackages(List)
+     * @since 2.3.0
+     */
+    public void setObjectMessageSerializer(ObjectMessageSerializer objectMessageSerializer) {
+        this.objectMessageSerializer = objectMessageSerializer;
+    }
+
+    public ObjectMessageSerializer getObjectMessageSerializer() {
+        return this.objectMessageSerializer;
+    }
+
+    /**
+     * Maximum size in bytes of the decompressed bodies of inbound messages.
+     * <p>
+     * Receiving a compressed message whose body decompresses to more than this size fails with a
+     * {@link javax.jms.JMSException}, rather than using up memory on a decompression bomb.
+     * <p>
+     * Default is 64 MiB.
+     *
+     * @param maxDecompressedBodySize the maximum size of decompressed message bodies
+     * @see #setBodyCodec(BodyCodec)
+     * @since 2.3.0
+     */
+    public void setMaxDecompressedBodySize(int maxDecompressedBodySize) {
+        this.maxDecompressedBodySize = maxDecompressedBodySize;
+    }
+
+    public int getMaxDecompressedBodySize() {
+        return this.maxDecompressedBodySize;
+    }
+
+    /**
+     * Whether {@link javax.jms.MapMessage}s are sent in the compact encoding, which is smaller and
+     * faster to write and read than the legacy encoding, an object stream.
+     * <p>
+     * All the clients receiving the messages must read the compact encoding, which clients before 2.3.0
+     * do not: only enable it once all the consumers have been upgraded. Messages in either encoding
+     * are always read.
+     * <p>
+     * Default is false.
+     *
+     * @param mapMessageCompactFormat whether map messages are sent in the compact encoding
+     * @since 2.3.0
+     */
+    public void setMapMessageCompactFormat(boolean mapMessageCompactFormat) {
+        this.mapMessageCompactFormat = mapMessageCompactFormat;
+    }
+
+    public boolean isMapMessageCompactFormat() {
+        return this.mapMessageCompactFormat;
+    }
+
+    /**
+     * Whether {@link javax.jms.StreamMessage}s are sent in the compact encoding, which is smaller and faster
+     * to write and read than the legacy encoding, an object stream.
+     * <p>
+     * All the clients receiving the messages must read the compact encoding, which clients before 2.3.0
+     * do not: only enable it once all the consumers have been upgraded. Messages in either encoding
+     * are always read.
+     * <p>
+     * Default is false.
+     *
+     * @param streamMessageCompactFormat whether stream messages are sent in the compact encoding
+     * @since 2.3.0
+     */
+    public void setStreamMessageCompactFormat(boolean streamMessageCompactFormat) {
+        this.streamMessageCompactFormat = streamMessageCompactFormat;
+    }
+
+    public boolean isStreamMessageCompactFormat() {
+        return this.streamMessageCompactFormat;
+    }
+
+    /**
+     * Collector of JMS-level metrics: send, confirm, receive, listener, acknowledgement,
+     * commit and selector latencies, and sizes of sent messages, by destination.
+     * <p>
+     * Unlike {@link #setMetricsCollector(MetricsCollector)}, which counts AMQP frames,
+     * this tells how long JMS operations take in the client, in the listener and in the broker.
+     * {@link StandardJmsMetricsCollector} keeps histograms of these metrics in memory.
+     * <p>
+     * Default is null, which means no metrics are collected.
+     *
+     * @param jmsMetricsCollector the collector of JMS-level metrics
+     * @see StandardJmsMetricsCollector
+     * @since 2.3.0
+     */
+    public void setJmsMetricsCollector(JmsMetricsCollector jmsMetricsCollector) {
+        this.jmsMetricsCollector = jmsMetricsCollector;
+    }
+
+    public JmsMetricsCollector getJmsMetricsCollector() {
+        return this.jmsMetricsCollector;
+    }
+
+    /**
+     * Number of AMQP connections backing each JMS connection.
+     * <p>
+     * All the channels of a single AMQP connection share its socket and its I/O thread, which
+     * caps the throughput of a JMS connection with many busy sessions. With several AMQP connections,
+     * the sessions of a JMS connection are spread over them, as set by
+     * {@link #setConnectionShardAssignment(ConnectionShardAssignment)}. With {@link #setUris(List)},
+     * each AMQP connection picks its node among the URIs, so they spread over the nodes.
+     * <p>
+     * The JMS connection still behaves as one: it starts, stops and closes all its sessions, and its
+     * {@link javax.jms.ExceptionListener} is notified when any of its AMQP connections is lost. Queue
+     * browsers and shared topic selector subscriptions use the first AMQP connection.
+     * <p>
+     * An exclusive queue can only be used on the AMQP connection which declared it. With several AMQP
+     * connections, the queues of temporary queues and non-durable topic subscribers are therefore declared
+     * non-exclusive, so that all the sessions can use them: the JMS connection deletes them when it closes,
+     * and the broker deletes them once they expire if the connection is lost (see
+     * {@link #setConnectionShardQueueExpiry(long)}).
+     * <p>
+     * Default is 1.
+     *
+     * @param connectionShards the number of AMQP connections per JMS connection, at least 1
+     * @see #setConnectionShardAssignment(ConnectionShardAssignment)
+     * @since 2.3.0
+     */
+    public void setConnectionShards(int connectionShards) {
+        if (connectionShards < 1) {
+            throw new IllegalArgumentException("connectionShards must be at least 1");
+        }
+        this.connectionShards = connectionShards;
+    }
+
+    public int getConnectionShards() {
+        return this.connectionShards;
+    }
+
+    /**
+     * How the sessions of a JMS connection are assigned to its AMQP connections, when there
+     * are several of them. AMQP connections that are closed, or recovering, are skipped when
+     * others are open.
+     * <p>
+     * Default is {@link ConnectionShardAssignment#ROUND_ROBIN}.
+     *
+     * @param connectionShardAssignment how sessions are assigned to AMQP connections
+     * @see #setConnectionShards(int)
+     * @since 2.3.0
+     */
+    public void setConnectionShardAssignment(ConnectionShardAssignment connectionShardAssignment) {
+        this.connectionShardAssignment = connectionShardAssignment == null ?
+            ConnectionShardAssignment.ROUND_ROBIN : connectionShardAssignment;
+    }
+
+    public ConnectionShardAssignment getConnectionShardAssignment() {
+        return this.connectionShardAssignment;
+    }
+
+    /**
+     * The expiry of the queues of temporary queues and non-durable topic subscribers when there are
+     * several AMQP connections per JMS connection, and these queues are declared non-exclusive.
+     * <p>
+     * The broker deletes such a queue when it has not been used for that long: it has had no consumer,
+     * and it has not been declared again or polled. This cleans up the queues of JMS connections which are
+     * lost, instead of closed. A temporary queue which only receives messages, with no consumer, for longer
+     * than that is deleted as well, with its messages, so the expiry should be longer than the time a
+     * consumer of a temporary queue may take to subscribe. The queue arguments of a destination which
+     * set <code>x-expires</code> take precedence.
+     * <p>
+     * Default is {@link RMQConnection#DEFAULT_CONNECTION_SHARD_QUEUE_EXPIRY_MS} (1 minute).
+     *
+     * @param connectionShardQueueExpiry the expiry in milliseconds, greater than 0
+     * @see #setConnectionShards(int)
+     * @since 2.3.0
+     */
+    public void setConnectionShardQueueExpiry(long connectionShardQueueExpiry) {
+        if (connectionShardQueueExpiry <= 0) {
+            throw new IllegalArgumentException("connectionShardQueueExpiry must be greater than 0");
+        }
+        this.connectionShardQueueExpiry = connectionShardQueueExpiry;
+    }
+
+    public long getConnectionShardQueueExpiry() {
+        return this.connectionShardQueueExpiry;
+    }
+
+    /**
+     * Whether {@link Connection#stop()} keeps the AMQP subscriptions of message listeners.
+     * <p>
+     * By default, stopping a connection cancels the subscription of each message listener, nacking
+     * the messages delivered in the meantime, and starting it subscribes again, which costs a round
+     * trip per listener each time and requeues messages. When this option is enabled, subscriptions are
+     * kept while the connection is stopped: the messages the broker keeps delivering are held in memory,
+     * and passed to the listeners, in order, when the connection starts again. The number of messages
+     * held for each listener is bounded by {@link #setChannelsQos(int)}: if no channels QoS is set, a QoS of
+     * {@link RMQConnection#KEEP_SUBSCRIPTIONS_ON_STOP_DEFAULT_QOS} is used.
+     * <p>
+     * Messages held when a session is recovered or rolled back are requeued by the broker, and those
+     * held when a consumer is closed are nacked. The subscriptions of listeners on direct reply-to,
+     * whose messages are acknowledged on delivery and could not be requeued, are still cancelled on stop.
+     * <p>
+     * Default is false.
+     *
+     * @param keepSubscriptionsOnStop true to hold deliveries rather than cancel subscriptions on stop
+     * @since 2.3.0
+     */
+    public void setKeepSubscriptionsOnStop(boolean keepSubscriptionsOnStop) {
+        this.keepSubscriptionsOnStop = keepSubscriptionsOnStop;
+    }
+
+    public boolean isKeepSubscriptionsOnStop() {
+        return this.keepSubscriptionsOnStop;
+    }
+
+    /**
+     * Whether message listeners are called on virtual threads.
+     * <p>
+     * Each session calls its message listeners on a thread of its own, to be able to interrupt them
+     * after the onMessage timeout. With many sessions, these platform threads and their stacks are
+     * the memory footprint of the client. When this option is enabled on Java 21 or later, they are
+     * virtual threads instead. On older JVMs, a warning is logged and platform threads are used.
+     * <p>
+     * Waits in the client (in {@link javax.jms.MessageConsumer#receive()}, or when stopping and closing
+     * consumers) do not pin virtual threads to their carrier threads, so applications receiving
+     * on virtual threads of their own also benefit from them.
+     * <p>
+     * Default is false.
+     *
+     * @param deliverOnVirtualThreads true to call message listeners on virtual threads
+     * @since 2.3.0
+     */
+    public void setDeliverOnVirtualThreads(boolean deliverOnVirtualThreads) {
+        this.deliverOnVirtualThreads = deliverOnVirtualThreads;
+    }
+
+    public boolean isDeliverOnVirtualThreads() {
+        return this.deliverOnVirtualThreads;
+    }
+
     @FunctionalInterface
     private interface ConnectionCreator {
         com.rabbitmq.client.Connection create(com.rabbitmq.client.ConnectionFactory cf) throws Exception;
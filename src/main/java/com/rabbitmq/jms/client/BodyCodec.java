@@ -0,0 +1,63 @@
+// This Source Code Form is subject to the terms of the Mozilla Public
+// License, v. 2.0. If a copy of the MPL was not distributed with this
+// file, You can obtain one at https://mozilla.org/MPL/2.0/.
+//
+// Copyright (c) 2020 VMware, Inc. or its affiliates. All rights reserved.
+package com.rabbitmq.jms.client;
+
+import java.io.IOException;
+
+/**
+ * Codec to compress message bodies, identified by the AMQP <code>content-encoding</code> property
+ * of the messages it encodes.
+ * <p>
+ * {@link DeflateBodyCodec} is always available. Other codecs can be set on the connection factory to compress
+ * outbound messages, and are found with {@link java.util.ServiceLoader} (as providers of this interface)
+ * to decompress inbound messages.
+ * </p>
+ * Implementations must be thread-safe.
+ *
+ * @see com.rabbitmq.jms.admin.RMQConnectionFactory#setBodyCodec(BodyCodec)
+ * @since 2.3.0
+ */
+public interface BodyCodec {
+
+    /** Default maximum size in bytes of decoded message bodies */
+    int DEFAULT_MAX_DECODED_SIZE = 64 * 1024 * 1024;
+
+    /**
+     * @return the value of the <code>content-encoding</code> property of encoded messages
+     */
+    String getContentEncoding();
+
+    /**
+     * @param body the message body
+     * @return the encoded body
+     * @throws IOException if the body cannot be encoded
+     */
+    byte[] encode(byte[] body) throws IOException;
+
+    /**
+     * @param encoded a message body encoded by {@link #encode(byte[])}
+     * @return the original body
+     * @throws IOException if the body cannot be decoded
+     */
+    byte[] decode(byte[] encoded) throws IOException;
+
+    /**
+     * Decodes a message body, failing if the original body is larger than a maximum size. Implementations
+     * should stop decoding as soon as the maximum size is exceeded; by default, the body is decoded with
+     * {@link #decode(byte[])}, then checked.
+     * @param encoded a message body encoded by {@link #encode(byte[])}
+     * @param maxSize the maximum size in bytes of the original body
+     * @return the original body
+     * @throws IOException if the body cannot be decoded, or is larger than the maximum size
+     */
+    default byte[] decode(byte[] encoded, int maxSize) throws IOException {
+        byte[] decoded = this.decode(encoded);
+        if (decoded.length > maxSize) {
+            throw new IOException("Decoded message body is larger than " + maxSize + " bytes");
+        }
+        return decoded;
+    }
+}
@@ -0,0 +1,107 @@
+// This Source Code Form is subject to the terms of the Mozilla Public
+// License, v. 2.0. If a copy of the MPL was not distributed with this
+// file, You can obtain one at https://mozilla.org/MPL/2.0/.
+//
+// Copyright (c) 2020 VMware, Inc. or its affiliates. All rights reserved.
+package com.rabbitmq.jms.client;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.rabbitmq.client.AMQP;
+
+/**
+ * Compression of outbound message bodies above a size threshold, and decompression of inbound
+ * message bodies according to their <code>content-encoding</code>, if compression is configured
+ * (with a codec or a threshold).
+ */
+final class BodyCompression {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BodyCompression.class);
+
+    /** No compression of outbound messages, nor decompression of inbound messages */
+    static final BodyCompression NONE = new BodyCompression(null, -1, BodyCodec.DEFAULT_MAX_DECODED_SIZE);
+
+    /** Codec for outbound messages when none is set */
+    private static final BodyCodec DEFAULT_CODEC = new DeflateBodyCodec();
+
+    /** The codecs available to all connections, by content encoding */
+    private static final Map<String, BodyCodec> AVAILABLE_CODECS = availableCodecs();
+
+    /** Codec for outbound messages, <code>null</code> if they are not compressed */
+    private final BodyCodec codec;
+    /** Minimum size of the outbound message bodies to compress */
+    private final int threshold;
+    /** Codec tried first for inbound messages, <code>null</code> if they are not decompressed */
+    private final BodyCodec decodingCodec;
+    /** Maximum size of decompressed inbound message bodies */
+    private final int maxDecodedSize;
+
+    /**
+     * Inbound messages are only decompressed if a codec or a threshold is set.
+     * @param codec codec for outbound messages, <code>null</code> for {@link DeflateBodyCodec}
+     * @param threshold minimum size in bytes of the outbound message bodies to compress, negative to not compress them
+     * @param maxDecodedSize maximum size in bytes of decompressed inbound message bodies
+     */
+    BodyCompression(BodyCodec codec, int threshold, int maxDecodedSize) {
+        this.codec = threshold < 0 ? null : (codec == null ? DEFAULT_CODEC : codec);
+        this.threshold = threshold;
+        this.decodingCodec = (codec != null || threshold >= 0) ? (codec == null ? DEFAULT_CODEC : codec) : null;
+        this.maxDecodedSize = maxDecodedSize;
+    }
+
+    /**
+     * Compresses an outbound message body if it is large enough, and if compression makes it smaller,
+     * in which case the <code>content-encoding</code> property is set.
+     * @param body the message body
+     * @param properties the properties of the message
+     * @return the body to publish
+     * @throws IOException if the body cannot be compressed
+     */
+    byte[] encode(byte[] body, AMQP.BasicProperties.Builder properties) throws IOException {
+        if (this.codec == null || body.length < this.threshold) return body;
+        byte[] encoded = this.codec.encode(body);
+        if (encoded.length >= body.length) return body;
+        properties.contentEncoding(this.codec.getContentEncoding());
+        return encoded;
+    }
+
+    /**
+     * Decompresses an inbound message body, if compression is configured and its content encoding is that of a
+     * known codec.
+     * @param contentEncoding the <code>content-encoding</code> property of the message, may be <code>null</code>
+     * @param body the message body
+     * @return the decoded body, or the body itself if compression is not configured or there is no known codec
+     * for its encoding
+     * @throws IOException if the body cannot be decompressed, or is larger than the maximum decoded size
+     */
+    byte[] decode(String contentEncoding, byte[] body) throws IOException {
+        if (contentEncoding == null || this.decodingCodec == null) return body;
+        BodyCodec decoder = contentEncoding.equals(this.decodingCodec.getContentEncoding())
+            ? this.decodingCodec : AVAILABLE_CODECS.get(contentEncoding);
+        return decoder == null ? body : decoder.decode(body, this.maxDecodedSize);
+    }
+
+    private static Map<String, BodyCodec> availableCodecs() {
+        Map<String, BodyCodec> codecs = new HashMap<String, BodyCodec>();
+        codecs.put(DEFAULT_CODEC.getContentEncoding(), DEFAULT_CODEC);
+        try {
+            Iterator<BodyCodec> providers = ServiceLoader.load(BodyCodec.class, BodyCompression.class.getClassLoader()).iterator();
+            while (providers.hasNext()) {
+                BodyCodec provided = providers.next();
+                codecs.put(provided.getContentEncoding(), provided);
+            }
+        } catch (ServiceConfigurationError e) {
+            LOGGER.warn("Error while loading message body codecs", e);
+        }
+        return Collections.unmodifiableMap(codecs);
+    }
+}
@@ -0,0 +1,152 @@
+// This Source Code Form is subject to the terms of the Mozilla Public
+// License, v. 2.0. If a copy of the MPL was not distributed with this
+// file, You can obtain one at https://mozilla.org/MPL/2.0/.
+//
+// Copyright (c) 2020 VMware, Inc. or its affiliates. All rights reserved.
+package com.rabbitmq.jms.client;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.rabbitmq.client.Channel;
+
+/**
+ * Pool of the channels used by the {@link javax.jms.QueueBrowser}s of a connection.
+ * <p>
+ * A channel given back to the pool must have no consumer left on it. It is reset with
+ * {@link Channel#basicRecover(boolean) basicRecover(true)}, which requeues the messages browsed on it,
+ * and kept for reuse if there are fewer than the maximum number of idle channels in the pool.
+ * A channel which cannot be reset is closed (which requeues the messages too), and replaced by a new one when needed.
+ * </p>
+ */
+class BrowsingChannelPool {
+
+    private final Logger logger = LoggerFactory.getLogger(BrowsingChannelPool.class);
+
+    private final RMQConnection connection;
+    /** maximum number of idle channels kept; 0 means channels are closed after use */
+    private final int maxIdle;
+
+    private final Deque<Channel> idle = new ArrayDeque<Channel>(); // @GuardedBy(this)
+    private boolean closed = false; // @GuardedBy(this)
+
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong reused = new AtomicLong();
+    private final AtomicLong recycled = new AtomicLong();
+    private final AtomicLong discarded = new AtomicLong();
+    private final AtomicInteger inUse = new AtomicInteger();
+
+    BrowsingChannelPool(RMQConnection connection, int maxIdle) {
+        this.connection = connection;
+        this.maxIdle = Math.max(0, maxIdle);
+    }
+
+    /**
+     * @return an idle channel of the pool, or a new channel if there is none
+     * @throws IOException if a new channel cannot be created
+     */
+    Channel borrow() throws IOException {
+        synchronized (this) {
+            Channel chan;
+            while ((chan = this.idle.poll()) != null) {
+                if (chan.isOpen()) {
+                    this.reused.incrementAndGet();
+                    this.inUse.incrementAndGet();
+                    return chan;
+                }
+                this.recycled.incrementAndGet();
+            }
+        }
+        Channel chan = this.connection.createRabbitChannel(false); // not transactional
+        this.created.incrementAndGet();
+        this.inUse.incrementAndGet();
+        return chan;
+    }
+
+    /**
+     * Gives back a channel, with no consumer left on it, for reuse.
+     * @param chan the channel, which is reset or closed
+     */
+    void release(Channel chan) {
+        this.inUse.decrementAndGet();
+        if (this.maxIdle == 0) {
+            closeQuietly(chan);
+            return;
+        }
+        if (!reset(chan)) {
+            this.recycled.incrementAndGet();
+            closeQuietly(chan);
+            return;
+        }
+        synchronized (this) {
+            if (!this.closed && this.idle.size() < this.maxIdle) {
+                this.idle.push(chan);
+                return;
+            }
+        }
+        this.discarded.incrementAndGet();
+        closeQuietly(chan);
+    }
+
+    /**
+     * Closes a channel which must not be reused, e.g. because it may have consumers left on it.
+     * @param chan the channel to close
+     */
+    void discard(Channel chan) {
+        this.inUse.decrementAndGet();
+        this.discarded.incrementAndGet();
+        closeQuietly(chan);
+    }
+
+    /**
+     * Closes the idle channels; channels released later are closed.
+     */
+    void close() {
+        List<Channel> channels;
+        synchronized (this) {
+            this.closed = true;
+            channels = new ArrayList<Channel>(this.idle);
+            this.idle.clear();
+        }
+        for (Channel chan : channels) {
+            closeQuietly(chan);
+        }
+    }
+
+    private boolean reset(Channel chan) {
+        if (!chan.isOpen()) return false;
+        try {
+            chan.basicRecover(true); // requeue the messages browsed
+            return true;
+        } catch (Exception e) { // includes unchecked exceptions, e.g. ShutdownSignalException
+            logger.debug("Cannot reset browsing channel {}, closing it", chan, e);
+            return false;
+        }
+    }
+
+    private static void closeQuietly(Channel chan) {
+        try {
+            if (chan.isOpen())
+                chan.close();
+        } catch (Exception e) {
+            // ignore any failures, we are clearing up
+        }
+    }
+
+    BrowsingChannelPoolStatistics statistics() {
+        int idleCount;
+        synchronized (this) {
+            idleCount = this.idle.size();
+        }
+        return new BrowsingChannelPoolStatistics(this.created.get(), this.reused.get(), this.recycled.get(),
+            this.discarded.get(), idleCount, this.inUse.get());
+    }
+}
@@ -0,0 +1,85 @@
+// This Source Code Form is subject to the terms of the Mozilla Public
+// License, v. 2.0. If a copy of the MPL was not distributed with this
+// file, You can obtain one at https://mozilla.org/MPL/2.0/.
+//
+// Copyright (c) 2020 VMware, Inc. or its affiliates. All rights reserved.
+package com.rabbitmq.jms.client;
+
+/**
+ * Snapshot of the usage of the channels {@link javax.jms.QueueBrowser}s of a connection browse queues with.
+ *
+ * @see RMQConnection#getBrowsingChannelPoolStatistics()
+ * @since 2.3.0
+ */
+public final class BrowsingChannelPoolStatistics {
+
+    private final long created;
+    private final long reused;
+    private final long recycled;
+    private final long discarded;
+    private final int idle;
+    private final int inUse;
+
+    BrowsingChannelPoolStatistics(long created, long reused, long recycled, long discarded, int idle, int inUse) {
+        this.created = created;
+        this.reused = reused;
+        this.recycled = recycled;
+        this.discarded = discarded;
+        this.idle = idle;
+        this.inUse = inUse;
+    }
+
+    /**
+     * @return the number of channels opened for browsing
+     */
+    public long getCreated() {
+        return this.created;
+    }
+
+    /**
+     * @return the number of times an idle channel has been reused for browsing
+     */
+    public long getReused() {
+        return this.reused;
+    }
+
+    /**
+     * @return the number of channels closed because they could not be reset after use, or were found closed
+     */
+    public long getRecycled() {
+        return this.recycled;
+    }
+
+    /**
+     * @return the number of channels closed after use because the pool was full, or was closed
+     */
+    public long getDiscarded() {
+        return this.discarded;
+    }
+
+    /**
+     * @return the number of channels available for reuse
+     */
+    public int getIdle() {
+        return this.idle;
+    }
+
+    /**
+     * @return the number of channels currently browsing
+     */
+    public int getInUse() {
+        return this.inUse;
+    }
+
+    @Override
+    public String toString() {
+        return new StringBuilder("BrowsingChannelPoolStatistics{")
+            .append("created=").append(this.created)
+            .append(", reused=").append(this.reused)
+            .append(", recycled=").append(this.recycled)
+            .append(", discarded=").append(this.discarded)
+            .append(", idle=").append(this.idle)
+            .append(", inUse=").append(this.inUse)
+            .append('}').toString();
+    }
+}
@@ -7,7 +7,6 @@ package com.rabbitmq.jms.client;
 
 import java.io.IOException;
 import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.TimeUnit;
 
 import javax.jms.JMSException;
 
@@ -16,7 +15,9 @@ import com.rabbitmq.client.Channel;
 import com.rabbitmq.client.DefaultConsumer;
 import com.rabbitmq.client.Envelope;
 import com.rabbitmq.client.GetResponse;
+import com.rabbitmq.client.ShutdownSignalException;
 import com.rabbitmq.jms.admin.RMQDestination;
+import com.rabbitmq.jms.parse.Environment;
 import com.rabbitmq.jms.parse.sql.SqlEvaluator;
 
 class BrowsingConsumer extends DefaultConsumer {
@@ -31,6 +32,8 @@ class BrowsingConsumer extends DefaultConsumer {
 
     private final ReceivingContextConsumer receivingContextConsumer;
 
+    private final JmsMetricsCollector metricsCollector;
+
     public BrowsingConsumer(Channel channel, RMQSession session, RMQDestination dest, int messagesExpected, java.util.Queue<RMQMessage> msgQueue, SqlEvaluator evaluator,
             ReceivingContextConsumer receivingContextConsumer) {
         super(channel);
@@ -40,15 +43,19 @@ class BrowsingConsumer extends DefaultConsumer {
         this.session = session;
         this.dest = dest;
         this.receivingContextConsumer = receivingContextConsumer;
+        this.metricsCollector = session.getJmsMetricsCollector();
     }
 
-    public boolean finishesInTime(int browsingConsumerTimeout) {
-        try {
-            return this.latch.await(browsingConsumerTimeout, TimeUnit.MILLISECONDS);
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt(); // reset interrupted status
-            return false;
-        }
+    /**
+     * @return <code>true</code> once this consumer has been cancelled, so that no more messages will be added
+     */
+    public boolean isFinished() {
+        return this.latch.getCount() == 0;
+    }
+
+    @Override
+    public void handleShutdownSignal(String consumerTag, ShutdownSignalException sig) {
+        this.latch.countDown();
     }
 
     @Override
@@ -68,16 +75,40 @@ class BrowsingConsumer extends DefaultConsumer {
                                byte[] body)
     throws IOException {
         if (this.messagesExpected==0) return;
+        int messageCount = --this.messagesExpected;
         try {
-            RMQMessage msg = RMQMessage.convertMessage(this.session, this.dest,
-                new GetResponse(envelope, properties, body, --this.messagesExpected), this.receivingContextConsumer);
-            if (evaluator==null || evaluator.evaluate(msg.toHeaders()))
-                this.msgQueue.add(msg);
+            if (this.evaluator == null) {
+                this.msgQueue.add(convert(envelope, properties, body, messageCount));
+            } else if (!this.dest.isAmqp() && properties.getHeaders() != null) {
+                // the selectable properties of a JMS message are in its headers: only decode the selected messages
+                if (this.select(RMQMessage.headersEnvironment(properties.getHeaders())))
+                    this.msgQueue.add(convert(envelope, properties, body, messageCount));
+            } else {
+                RMQMessage msg = convert(envelope, properties, body, messageCount);
+                if (this.select(msg.toSelectorEnvironment()))
+                    this.msgQueue.add(msg);
+            }
         } catch (JMSException e) {
             throw new IOException("Failure to convert message to JMS Message type.", e);
         }
         if (this.messagesExpected == 0) {
-            this.getChannel().basicCancel(consumerTag);
+            try {
+                this.getChannel().basicCancel(consumerTag);
+            } catch (IOException e) {
+                // the enumeration has cancelled this consumer already
+            }
         }
     }
+
+    private boolean select(Environment env) {
+        long start = System.nanoTime();
+        boolean selected = this.evaluator.evaluate(env);
+        this.metricsCollector.selectorEvaluated(RMQSession.metricsName(this.dest), System.nanoTime() - start);
+        return selected;
+    }
+
+    private RMQMessage convert(Envelope envelope, AMQP.BasicProperties properties, byte[] body, int messageCount) throws JMSException {
+        return RMQMessage.convertMessage(this.session, this.dest,
+            new GetResponse(envelope, properties, body, messageCount), this.receivingContextConsumer);
+    }
 }
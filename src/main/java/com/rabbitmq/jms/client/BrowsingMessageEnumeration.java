@@ -7,42 +7,114 @@ package com.rabbitmq.jms.client;
 
 import java.util.Enumeration;
 import java.util.NoSuchElementException;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import javax.jms.JMSException;
 
 import com.rabbitmq.client.Channel;
 import com.rabbitmq.jms.admin.RMQDestination;
 import com.rabbitmq.jms.parse.sql.SqlEvaluator;
+import com.rabbitmq.jms.util.TimeTracker;
 
+/**
+ * Lazy enumeration of the messages of a queue.
+ * <p>
+ * Messages are consumed (and not acknowledged) in windows of at most {@link #BROWSING_WINDOW_SIZE} messages, each by
+ * its own consumer limited by {@link Channel#basicQos(int)}, and are handed out as they arrive. A window is only
+ * requested when the caller has enumerated the previous one, so at most one window of messages is held in the client.
+ * The messages of earlier windows stay unacknowledged, so they are not delivered again, until the enumeration ends and
+ * the browsing channel is reset or closed, which requeues them all.
+ * </p>
+ * <p>
+ * An enumeration which is not read to the end is closed with its browser or session, or after it has not been read
+ * for {@link #BROWSING_IDLE_TIMEOUT_MS}, so that an abandoned enumeration does not keep its channel.
+ * </p>
+ */
 class BrowsingMessageEnumeration implements Enumeration<RMQMessage> {
 
-    private static final int BROWSING_CONSUMER_TIMEOUT = 10000; // ms
-    private final java.util.Queue<RMQMessage> msgQueue;
+    /** The maximum number of messages consumed at a time, set with the system property <code>rabbit.jms.queueBrowserWindowSize</code> */
+    static final int BROWSING_WINDOW_SIZE = Math.max(1, Integer.getInteger("rabbit.jms.queueBrowserWindowSize", 100));
+    /**
+     * The time (in ms) after which an enumeration not read is closed, set with the system property
+     * <code>rabbit.jms.queueBrowserIdleTimeout</code>; 0 or less means never
+     */
+    static final long BROWSING_IDLE_TIMEOUT_MS = Long.getLong("rabbit.jms.queueBrowserIdleTimeout", 60000);
+    private static final int BROWSING_CONSUMER_TIMEOUT = 10000; // ms, without any message arriving
+    private static final long POLLING_INTERVAL_MS = 100;
+
+    private static final ScheduledThreadPoolExecutor IDLE_CHECKS = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+        private final AtomicInteger count = new AtomicInteger();
 
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "rabbitmq-jms-browser-idle-check-" + this.count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    static {
+        IDLE_CHECKS.setRemoveOnCancelPolicy(true);
+    }
+
+    private final RMQSession session;
+    private final RMQDestination dest;
+    private final String queueName;
+    private final Channel channel;
+    private final SqlEvaluator evaluator;
+    private final ReceivingContextConsumer receivingContextConsumer;
+    private final Consumer<BrowsingMessageEnumeration> onEnd;
+
+    /** Messages of the current window, as they arrive */
+    private final BlockingQueue<RMQMessage> msgQueue = new LinkedBlockingQueue<RMQMessage>();
+    /** The number of messages still to be read in later windows */
+    private int messagesToRead;
+    private BrowsingConsumer window;
+    private String windowConsumerTag;
+    private RMQMessage next;
+    private boolean ended;
+    private final long idleTimeoutNanos;
+    /** When the enumeration was last read */
+    private volatile long lastReadNanos = System.nanoTime();
+    private ScheduledFuture<?> idleCheck;
+
+    /**
+     * @param onEnd - called once when the enumeration has no more elements, or is {@link #close}d, with no consumer
+     *              left on the channel; typically gives back the browsing channel
+     */
     public BrowsingMessageEnumeration(RMQSession session, RMQDestination dest, Channel channel, SqlEvaluator evaluator, int readMax,
-            ReceivingContextConsumer receivingContextConsumer) {
-        java.util.Queue<RMQMessage> msgQ = new ConcurrentLinkedQueue<RMQMessage>();
-        populateQueue(msgQ, channel, session, dest, evaluator, readMax, receivingContextConsumer);
-        this.msgQueue = msgQ;
+            ReceivingContextConsumer receivingContextConsumer, Consumer<BrowsingMessageEnumeration> onEnd) throws JMSException {
+        this(session, dest, channel, evaluator, readMax, receivingContextConsumer, onEnd, BROWSING_IDLE_TIMEOUT_MS);
     }
 
-    private static void populateQueue(java.util.Queue<RMQMessage> msgQueue, Channel channel, RMQSession session, RMQDestination dest, SqlEvaluator evaluator,
-            int readMax, ReceivingContextConsumer receivingContextConsumer) {
-        try {
-            String destQueueName = dest.getQueueName();
-            int qCount = getNumberOfMessages(channel, destQueueName);
-            if (qCount > 0) { // we need to read them
-                int messagesExpected = (readMax<=0) ? qCount : Math.min(readMax, qCount);
-                channel.basicQos(messagesExpected); // limit subsequent consumers to the expected number of messages unacknowledged
-                BrowsingConsumer bc = new BrowsingConsumer(channel, session, dest, messagesExpected, msgQueue,
-                    evaluator, receivingContextConsumer);
-                String consumerTag = channel.basicConsume(destQueueName, bc);
-                if (bc.finishesInTime(BROWSING_CONSUMER_TIMEOUT))
-                    return;
-                else
-                    channel.basicCancel(consumerTag);
+    /**
+     * @param idleTimeoutMs - time after which the enumeration is closed if it is not read, 0 or less for never
+     */
+    BrowsingMessageEnumeration(RMQSession session, RMQDestination dest, Channel channel, SqlEvaluator evaluator, int readMax,
+            ReceivingContextConsumer receivingContextConsumer, Consumer<BrowsingMessageEnumeration> onEnd, long idleTimeoutMs) throws JMSException {
+        this.session = session;
+        this.dest = dest;
+        this.queueName = dest.getQueueName();
+        this.channel = channel;
+        this.evaluator = evaluator;
+        this.receivingContextConsumer = receivingContextConsumer;
+        this.onEnd = onEnd;
+        int qCount = getNumberOfMessages(channel, this.queueName);
+        this.messagesToRead = (readMax<=0) ? qCount : Math.min(readMax, qCount);
+        this.idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(idleTimeoutMs);
+        if (this.messagesToRead <= 0) {
+            this.end();
+        } else if (idleTimeoutMs > 0) {
+            synchronized (this) {
+                this.idleCheck = IDLE_CHECKS.scheduleWithFixedDelay(this::closeIfIdle, idleTimeoutMs, idleTimeoutMs, TimeUnit.MILLISECONDS);
             }
-        } catch(Exception e) {
-            // Ignore any errors;
         }
     }
 
@@ -57,30 +129,115 @@ class BrowsingMessageEnumeration implements Enumeration<RMQMessage> {
             // the decision has been taken to *not* try to circumvent this. There is, after all,
             // nothing in the JMS spec that makes any guarantees about what a QueueBrowser will see.
             // Our integration tests have to be less dogmatic, therefore.
-
-            // In the code below, there are commented out sections used in test to explore the behaviour.
-//            int mc1 = channel.queueDeclarePassive(destQueueName).getMessageCount();
-//            Thread.sleep(100);
-            int mc2 = channel.queueDeclarePassive(destQueueName).getMessageCount();
-//            if (mc1!=mc2) System.out.println(String.format("q='%s', msgcount=%s/%s", destQueueName, mc1, mc2));
-//            System.out.println(String.format("q='%s', msgcount=%s", destQueueName, mc2));
-            return mc2;
+            return channel.queueDeclarePassive(destQueueName).getMessageCount();
         } catch (Exception e) { // ignore errors---we assume no messages in the queue in this case.
         }
         return 0; // default drop-through value
     }
 
-    @Override public boolean hasMoreElements() {
-        return !this.msgQueue.isEmpty();
+    @Override public synchronized boolean hasMoreElements() {
+        while (this.next == null && !this.ended) {
+            this.next = readMessage();
         }
+        this.lastReadNanos = System.nanoTime();
+        return this.next != null;
+    }
 
-    @Override public RMQMessage nextElement() {
-        RMQMessage resp = this.msgQueue.poll();
-        if (null==resp) throw new NoSuchElementException();
+    @Override public synchronized RMQMessage nextElement() {
+        if (!hasMoreElements()) throw new NoSuchElementException();
+        RMQMessage resp = this.next;
+        this.next = null;
         return resp;
     }
 
-    void clearQueue() {
-        this.msgQueue.clear();
+    /**
+     * @return <code>true</code> if the enumeration has ended, or has been closed
+     */
+    synchronized boolean isEnded() {
+        return this.ended;
+    }
+
+    /**
+     * Stops browsing, if the enumeration has not ended already.
+     */
+    synchronized void close() {
+        this.next = null;
+        this.end();
+    }
+
+    /**
+     * Closes the enumeration if it has not been read for the idle timeout: the caller has most likely abandoned it.
+     */
+    private synchronized void closeIfIdle() {
+        if (!this.ended && System.nanoTime() - this.lastReadNanos >= this.idleTimeoutNanos) {
+            this.close();
+        }
+    }
+
+    /**
+     * @return the next message of the current window, opening a window if there is none; <code>null</code> if the
+     * current window is complete, or there are no more messages.
+     */
+    private RMQMessage readMessage() {
+        try {
+            if (this.window == null) {
+                this.openWindow();
+            }
+            TimeTracker tt = new TimeTracker(BROWSING_CONSUMER_TIMEOUT, TimeUnit.MILLISECONDS);
+            while (!tt.timedOut()) {
+                boolean finished = this.window.isFinished(); // before the poll: no message is added once finished
+                RMQMessage msg = this.msgQueue.poll(POLLING_INTERVAL_MS, TimeUnit.MILLISECONDS);
+                if (msg != null) return msg;
+                if (finished) { // window complete
+                    this.window = null;
+                    if (this.messagesToRead <= 0) this.end();
+                    return null;
+                }
+            }
+            // the queue holds fewer messages than we were told: stop here
+            this.channel.basicCancel(this.windowConsumerTag);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt(); // reset interrupted status
+        } catch (Exception e) {
+            // Ignore any errors; the enumeration ends
+        }
+        this.end();
+        return null;
+    }
+
+    private void openWindow() throws Exception {
+        int windowSize = Math.min(BROWSING_WINDOW_SIZE, this.messagesToRead);
+        this.messagesToRead -= windowSize;
+        this.channel.basicQos(windowSize); // limit the new consumer to this window of messages unacknowledged
+        this.window = new BrowsingConsumer(this.channel, this.session, this.dest, windowSize, this.msgQueue,
+            this.evaluator, this.receivingContextConsumer);
+        this.windowConsumerTag = this.channel.basicConsume(this.queueName, this.window);
+    }
+
+    private void end() {
+        if (!this.ended) {
+            this.ended = true;
+            if (this.window != null && !this.window.isFinished()) {
+                try {
+                    this.channel.basicCancel(this.windowConsumerTag);
+                } catch (Exception e) {
+                    abortChannel(); // the channel cannot be reused with a consumer left on it
+                }
+            }
+            this.window = null;
+            this.msgQueue.clear();
+            if (this.idleCheck != null) {
+                this.idleCheck.cancel(false);
+            }
+            this.onEnd.accept(this);
+        }
+    }
+
+    private void abortChannel() {
+        try {
+            this.channel.abort();
+        } catch (Exception e) {
+            // ignore any failures, the channel is not used any more
+        }
     }
 }
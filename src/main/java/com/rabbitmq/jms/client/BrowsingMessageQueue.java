@@ -5,7 +5,9 @@
 // Copyright (c) 2014-2020 VMware, Inc. or its affiliates. All rights reserved.
 package com.rabbitmq.jms.client;
 
+import java.util.ArrayList;
 import java.util.Enumeration;
+import java.util.List;
 
 import javax.jms.JMSException;
 import javax.jms.QueueBrowser;
@@ -28,6 +30,8 @@ class BrowsingMessageQueue implements QueueBrowser {
     private final RMQSession session;
     private final int queueBrowserReadMax;
     private final ReceivingContextConsumer receivingContextConsumer;
+    /** Enumerations which may still be browsing, to stop when this browser is closed */
+    private final List<BrowsingMessageEnumeration> enumerations = new ArrayList<BrowsingMessageEnumeration>(); // @GuardedBy(enumerations)
 
     public BrowsingMessageQueue(RMQSession session, RMQDestination dest, String selector,
             int queueBrowserReadMax, ReceivingContextConsumer receivingContextConsumer) throws JMSException {
@@ -60,15 +64,29 @@ class BrowsingMessageQueue implements QueueBrowser {
     @SuppressWarnings("rawtypes")
     public Enumeration getEnumeration() throws JMSException {
         Channel chan = this.session.getBrowsingChannel();
-        Enumeration e = new BrowsingMessageEnumeration(this.session, this.dest, chan, this.evaluator,
-            this.queueBrowserReadMax, this.receivingContextConsumer);
-        session.closeBrowsingChannel(chan); // this should requeue all the messages browsed
+        BrowsingMessageEnumeration e = new BrowsingMessageEnumeration(this.session, this.dest, chan, this.evaluator,
+            this.queueBrowserReadMax, this.receivingContextConsumer, ended -> this.enumerationEnded(ended, chan));
+        synchronized (this.enumerations) {
+            if (!e.isEnded()) this.enumerations.add(e);
+        }
         return e;
     }
 
+    private void enumerationEnded(BrowsingMessageEnumeration e, Channel chan) {
+        session.closeBrowsingChannel(chan); // this should requeue all the messages browsed
+        synchronized (this.enumerations) {
+            this.enumerations.remove(e);
+        }
+    }
+
     @Override
     public void close() throws JMSException {
-        //no-op
-        return;
+        List<BrowsingMessageEnumeration> browsing;
+        synchronized (this.enumerations) {
+            browsing = new ArrayList<BrowsingMessageEnumeration>(this.enumerations);
+        }
+        for (BrowsingMessageEnumeration e : browsing) {
+            e.close();
+        }
     }
 }
@@ -0,0 +1,237 @@
+// This Source Code Form is subject to the terms of the Mozilla Public
+// License, v. 2.0. If a copy of the MPL was not distributed with this
+// file, You can obtain one at https://mozilla.org/MPL/2.0/.
+//
+// Copyright (c) 2020 VMware, Inc. or its affiliates. All rights reserved.
+package com.rabbitmq.jms.client;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.io.Serializable;
+import java.io.StreamCorruptedException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import com.rabbitmq.jms.util.WhiteListObjectInputStream;
+
+/**
+ * {@link ObjectMessageSerializer} of common value types, in a compact, type-tagged encoding.
+ * <p>
+ * The supported types are <code>null</code>, {@link String}, the boxed primitive types, <code>byte[]</code>,
+ * {@link BigInteger}, {@link BigDecimal}, {@link Date}, {@link UUID}, and {@link List}s, {@link Set}s and
+ * {@link Map}s of supported types, which are deserialized as {@link ArrayList}s, {@link LinkedHashSet}s and
+ * {@link LinkedHashMap}s. Serializing an object of any other type fails with a {@link NotSerializableException}.
+ * </p>
+ * The classes of deserialized objects are checked against the trusted packages.
+ *
+ * @since 2.3.0
+ */
+public class CompactObjectMessageSerializer implements ObjectMessageSerializer {
+
+    public static final String NAME = "compact";
+
+    private static final byte NULL = 0;
+    private static final byte STRING = 1;
+    private static final byte BOOLEAN = 2;
+    private static final byte BYTE = 3;
+    private static final byte SHORT = 4;
+    private static final byte CHAR = 5;
+    private static final byte INT = 6;
+    private static final byte LONG = 7;
+    private static final byte FLOAT = 8;
+    private static final byte DOUBLE = 9;
+    private static final byte BYTES = 10;
+    private static final byte BIG_INTEGER = 11;
+    private static final byte BIG_DECIMAL = 12;
+    private static final byte DATE = 13;
+    private static final byte UUID_VALUE = 14;
+    private static final byte LIST = 15;
+    private static final byte SET = 16;
+    private static final byte MAP = 17;
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public byte[] serialize(Serializable object) throws IOException {
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bout);
+        write(object, out);
+        out.flush();
+        return bout.toByteArray();
+    }
+
+    @Override
+    public Serializable deserialize(byte[] serialized, List<String> trustedPackages) throws IOException, ClassNotFoundException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(serialized));
+        Object object = read(in, trustedPackages);
+        if (in.available() > 0) throw new StreamCorruptedException("Unexpected data after serialized object");
+        return (Serializable) object;
+    }
+
+    private static void write(Object value, DataOutputStream out) throws IOException {
+        if (value == null) {
+            out.writeByte(NULL);
+        } else if (value instanceof String) {
+            out.writeByte(STRING);
+            writeBytes(((String) value).getBytes(StandardCharsets.UTF_8), out);
+        } else if (value instanceof Boolean) {
+            out.writeByte(BOOLEAN);
+            out.writeBoolean((Boolean) value);
+        } else if (value instanceof Byte) {
+            out.writeByte(BYTE);
+            out.writeByte((Byte) value);
+        } else if (value instanceof Short) {
+            out.writeByte(SHORT);
+            out.writeShort((Short) value);
+        } else if (value instanceof Character) {
+            out.writeByte(CHAR);
+            out.writeChar((Character) value);
+        } else if (value instanceof Integer) {
+            out.writeByte(INT);
+            out.writeInt((Integer) value);
+        } else if (value instanceof Long) {
+            out.writeByte(LONG);
+            out.writeLong((Long) value);
+        } else if (value instanceof Float) {
+            out.writeByte(FLOAT);
+            out.writeFloat((Float) value);
+        } else if (value instanceof Double) {
+            out.writeByte(DOUBLE);
+            out.writeDouble((Double) value);
+        } else if (value instanceof byte[]) {
+            out.writeByte(BYTES);
+            writeBytes((byte[]) value, out);
+        } else if (value instanceof BigInteger) {
+            out.writeByte(BIG_INTEGER);
+            writeBytes(((BigInteger) value).toByteArray(), out);
+        } else if (value instanceof BigDecimal) {
+            out.writeByte(BIG_DECIMAL);
+            out.writeInt(((BigDecimal) value).scale());
+            writeBytes(((BigDecimal) value).unscaledValue().toByteArray(), out);
+        } else if (value.getClass() == Date.class) {
+            out.writeByte(DATE);
+            out.writeLong(((Date) value).getTime());
+        } else if (value instanceof UUID) {
+            out.writeByte(UUID_VALUE);
+            out.writeLong(((UUID) value).getMostSignificantBits());
+            out.writeLong(((UUID) value).getLeastSignificantBits());
+        } else if (value instanceof List) {
+            out.writeByte(LIST);
+            writeElements((List<?>) value, out);
+        } else if (value instanceof Set) {
+            out.writeByte(SET);
+            writeElements((Set<?>) value, out);
+        } else if (value instanceof Map) {
+            out.writeByte(MAP);
+            Map<?, ?> map = (Map<?, ?>) value;
+            out.writeInt(map.size());
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                write(entry.getKey(), out);
+                write(entry.getValue(), out);
+            }
+        } else {
+            throw new NotSerializableException(value.getClass().getName() + " is not supported by the " + NAME + " serializer");
+        }
+    }
+
+    private static void writeElements(Collection<?> elements, DataOutputStream out) throws IOException {
+        out.writeInt(elements.size());
+        for (Object element : elements) {
+            write(element, out);
+        }
+    }
+
+    private static void writeBytes(byte[] bytes, DataOutputStream out) throws IOException {
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static Object read(DataInputStream in, List<String> trustedPackages) throws IOException, ClassNotFoundException {
+        byte tag = in.readByte();
+        switch (tag) {
+        case NULL:    return null;
+        case STRING:  return new String(readBytes(in), StandardCharsets.UTF_8);
+        case BOOLEAN: return in.readBoolean();
+        case BYTE:    return in.readByte();
+        case SHORT:   return in.readShort();
+        case CHAR:    return in.readChar();
+        case INT:     return in.readInt();
+        case LONG:    return in.readLong();
+        case FLOAT:   return in.readFloat();
+        case DOUBLE:  return in.readDouble();
+        case BYTES:   return readBytes(in);
+        case BIG_INTEGER:
+            WhiteListObjectInputStream.checkTrusted(BigInteger.class, trustedPackages);
+            return new BigInteger(readBytes(in));
+        case BIG_DECIMAL:
+            WhiteListObjectInputStream.checkTrusted(BigDecimal.class, trustedPackages);
+            int scale = in.readInt();
+            return new BigDecimal(new BigInteger(readBytes(in)), scale);
+        case DATE:
+            WhiteListObjectInputStream.checkTrusted(Date.class, trustedPackages);
+            return new Date(in.readLong());
+        case UUID_VALUE:
+            WhiteListObjectInputStream.checkTrusted(UUID.class, trustedPackages);
+            return new UUID(in.readLong(), in.readLong());
+        case LIST: {
+            WhiteListObjectInputStream.checkTrusted(ArrayList.class, trustedPackages);
+            int size = readSize(in);
+            List<Object> list = new ArrayList<Object>(size);
+            for (int i = 0; i < size; i++) {
+                list.add(read(in, trustedPackages));
+            }
+            return list;
+        }
+        case SET: {
+            WhiteListObjectInputStream.checkTrusted(LinkedHashSet.class, trustedPackages);
+            int size = readSize(in);
+            Set<Object> set = new LinkedHashSet<Object>();
+            for (int i = 0; i < size; i++) {
+                set.add(read(in, trustedPackages));
+            }
+            return set;
+        }
+        case MAP: {
+            WhiteListObjectInputStream.checkTrusted(LinkedHashMap.class, trustedPackages);
+            int size = readSize(in);
+            Map<Object, Object> map = new LinkedHashMap<Object, Object>();
+            for (int i = 0; i < size; i++) {
+                Object key = read(in, trustedPackages);
+                map.put(key, read(in, trustedPackages));
+            }
+            return map;
+        }
+        default:
+            throw new StreamCorruptedException("Unknown type " + tag + " in serialized object");
+        }
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[readSize(in)];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    private static int readSize(DataInputStream in) throws IOException {
+        int size = in.readInt();
+        if (size < 0 || size > in.available()) throw new StreamCorruptedException("Invalid size " + size + " in serialized object");
+        return size;
+    }
+}
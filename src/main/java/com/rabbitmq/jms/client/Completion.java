@@ -5,6 +5,7 @@
 // Copyright (c) 2013-2020 VMware, Inc. or its affiliates. All rights reserved.
 package com.rabbitmq.jms.client;
 
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
@@ -66,9 +67,9 @@ public class Completion {
         this.fb.get(tt);
     }
 
+    /** Waits on a {@link CountDownLatch} rather than a monitor, for virtual threads not to pin their carrier thread */
     private class FutureBoolean {
-        private final Object lock = new Object();
-        private boolean completed = false; // guardedBy(lock)
+        private final CountDownLatch completed = new CountDownLatch(1);
 
         public boolean get() throws InterruptedException {
             try {
@@ -79,29 +80,19 @@ public class Completion {
         }
 
         public boolean get(TimeTracker tt) throws InterruptedException, TimeoutException {
-            synchronized (this.lock) {
-                while (!this.completed && !tt.timedOut()) {
-                    tt.timedWait(this.lock);
-                }
-                if (this.completed)
-                    return true;
-                else {
-                    throw new TimeoutException();
-                }
+            if (this.completed.await(tt.remainingNanos(), TimeUnit.NANOSECONDS))
+                return true;
+            else {
+                throw new TimeoutException();
             }
         }
 
         void setComplete() {
-            synchronized (this.lock) {
-                this.completed = true;
-                this.lock.notifyAll();
-            }
+            this.completed.countDown();
         }
 
         boolean isComplete() {
-            synchronized (this.lock) {
-                return this.completed;
-            }
+            return this.completed.getCount() == 0;
         }
     }
 }
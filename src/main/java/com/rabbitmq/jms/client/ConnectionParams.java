@@ -11,6 +11,7 @@ import com.rabbitmq.jms.util.WhiteListObjectInputStream;
 
 import javax.jms.Message;
 import javax.jms.MessageProducer;
+import java.util.Collections;
 import java.util.function.BiFunction;
 import java.util.List;
 
@@ -22,12 +23,57 @@ public class ConnectionParams {
     /** The TCP connection wrapper to the RabbitMQ broker */
     private com.rabbitmq.client.Connection rabbitConnection;
 
+    /**
+     * All the connections to the RabbitMQ broker, when sessions are spread
+     * over several of them, <code>null</code> for the {@link #rabbitConnection} only.
+     *
+     * @since 2.3.0
+     */
+    private List<com.rabbitmq.client.Connection> rabbitConnections;
+
+    /**
+     * How sessions are assigned to the {@link #rabbitConnections}.
+     * Default is {@link ConnectionShardAssignment#ROUND_ROBIN}.
+     *
+     * @since 2.3.0
+     */
+    private ConnectionShardAssignment connectionShardAssignment = ConnectionShardAssignment.ROUND_ROBIN;
+
+    /**
+     * Expiry in milliseconds of the queues of temporary queues and non-durable topic subscribers, which are
+     * declared non-exclusive when there are several {@link #rabbitConnections}.
+     * Default is {@link RMQConnection#DEFAULT_CONNECTION_SHARD_QUEUE_EXPIRY_MS}.
+     *
+     * @since 2.3.0
+     */
+    private long connectionShardQueueExpiry = RMQConnection.DEFAULT_CONNECTION_SHARD_QUEUE_EXPIRY_MS;
+
+    /**
+     * Whether stopping the connection keeps the subscriptions of message listeners,
+     * holding their deliveries until the connection starts again.
+     * Default is false.
+     *
+     * @since 2.3.0
+     */
+    private boolean keepSubscriptionsOnStop = false;
+
+    /**
+     * Whether message listeners are called on virtual threads, when the JVM supports them.
+     * Default is false.
+     *
+     * @since 2.3.0
+     */
+    private boolean deliverOnVirtualThreads = false;
+
     /** Maximum time (in ms) to wait for close() to complete */
     private long terminationTimeout;
 
     /** Max number of messages to read from a browsed queue */
     private int queueBrowserReadMax;
 
+    /** Max number of idle channels kept for reuse by queue browsers */
+    private int queueBrowserChannelPoolSize = RMQConnection.DEFAULT_QUEUE_BROWSER_CHANNEL_POOL_SIZE;
+
     /** How long to wait for onMessage to return, in milliseconds */
     private int onMessageTimeoutMs;
 
@@ -101,6 +147,69 @@ public class ConnectionParams {
 
     private List<String> trustedPackages = WhiteListObjectInputStream.DEFAULT_TRUSTED_PACKAGES;
 
+    /**
+     * Whether non-durable topic subscribers with a selector share
+     * one AMQP subscription per topic, with selectors evaluated in the client.
+     * Default is false.
+     *
+     * @since 2.3.0
+     */
+    private boolean topicSelectorDemultiplexing = false;
+
+    /**
+     * Codec to compress outbound message bodies with,
+     * {@link DeflateBodyCodec} if <code>null</code>.
+     *
+     * @since 2.3.0
+     */
+    private BodyCodec bodyCodec;
+
+    /**
+     * Minimum size in bytes of the outbound message bodies to compress,
+     * negative to not compress them, which is the default.
+     *
+     * @since 2.3.0
+     */
+    private int bodyCompressionThreshold = -1;
+
+    /**
+     * Serializer of the objects of outbound object messages,
+     * Java serialization if <code>null</code>.
+     *
+     * @since 2.3.0
+     */
+    private ObjectMessageSerializer objectMessageSerializer;
+
+    /**
+     * Maximum size in bytes of decompressed inbound message bodies.
+     *
+     * @since 2.3.0
+     */
+    private int maxDecompressedBodySize = BodyCodec.DEFAULT_MAX_DECODED_SIZE;
+
+    /**
+     * Whether map messages are sent in the compact encoding,
+     * rather than in the legacy encoding older clients can read.
+     *
+     * @since 2.3.0
+     */
+    private boolean mapMessageCompactFormat = false;
+
+    /**
+     * Whether stream messages are sent in the compact encoding,
+     * rather than in the legacy encoding older clients can read.
+     *
+     * @since 2.3.0
+     */
+    private boolean streamMessageCompactFormat = false;
+
+    /**
+     * Collector of JMS-level metrics, none if <code>null</code>.
+     *
+     * @since 2.3.0
+     */
+    private JmsMetricsCollector jmsMetricsCollector;
+
     public Connection getRabbitConnection() {
         return rabbitConnection;
     }
@@ -110,6 +219,44 @@ public class ConnectionParams {
         return this;
     }
 
+    /**
+     * @return all the connections to the RabbitMQ broker, the first one being {@link #getRabbitConnection()}
+     */
+    public List<Connection> getRabbitConnections() {
+        if (rabbitConnections == null) {
+            return rabbitConnection == null ? Collections.<Connection>emptyList() : Collections.singletonList(rabbitConnection);
+        }
+        return rabbitConnections;
+    }
+
+    /**
+     * Sets the connections to spread sessions over, the first one also becoming the
+     * {@link #setRabbitConnection(Connection) main connection}.
+     */
+    public ConnectionParams setRabbitConnections(List<Connection> rabbitConnections) {
+        this.rabbitConnections = rabbitConnections;
+        this.rabbitConnection = rabbitConnections == null || rabbitConnections.isEmpty() ? null : rabbitConnections.get(0);
+        return this;
+    }
+
+    public ConnectionShardAssignment getConnectionShardAssignment() {
+        return connectionShardAssignment;
+    }
+
+    public ConnectionParams setConnectionShardAssignment(ConnectionShardAssignment connectionShardAssignment) {
+        this.connectionShardAssignment = connectionShardAssignment;
+        return this;
+    }
+
+    public long getConnectionShardQueueExpiry() {
+        return connectionShardQueueExpiry;
+    }
+
+    public ConnectionParams setConnectionShardQueueExpiry(long connectionShardQueueExpiry) {
+        this.connectionShardQueueExpiry = connectionShardQueueExpiry;
+        return this;
+    }
+
     public long getTerminationTimeout() {
         return terminationTimeout;
     }
@@ -128,6 +275,15 @@ public class ConnectionParams {
         return this;
     }
 
+    public int getQueueBrowserChannelPoolSize() {
+        return queueBrowserChannelPoolSize;
+    }
+
+    public ConnectionParams setQueueBrowserChannelPoolSize(int queueBrowserChannelPoolSize) {
+        this.queueBrowserChannelPoolSize = queueBrowserChannelPoolSize;
+        return this;
+    }
+
     public int getOnMessageTimeoutMs() {
         return onMessageTimeoutMs;
     }
@@ -226,4 +382,94 @@ public class ConnectionParams {
     public List<String> getTrustedPackages() {
         return trustedPackages;
     }
+
+    public BodyCodec getBodyCodec() {
+        return bodyCodec;
+    }
+
+    public ConnectionParams setBodyCodec(BodyCodec bodyCodec) {
+        this.bodyCodec = bodyCodec;
+        return this;
+    }
+
+    public int getBodyCompressionThreshold() {
+        return bodyCompressionThreshold;
+    }
+
+    public ConnectionParams setBodyCompressionThreshold(int bodyCompressionThreshold) {
+        this.bodyCompressionThreshold = bodyCompressionThreshold;
+        return this;
+    }
+
+    public ObjectMessageSerializer getObjectMessageSerializer() {
+        return objectMessageSerializer;
+    }
+
+    public ConnectionParams setObjectMessageSerializer(ObjectMessageSerializer objectMessageSerializer) {
+        this.objectMessageSerializer = objectMessageSerializer;
+        return this;
+    }
+
+    public int getMaxDecompressedBodySize() {
+        return maxDecompressedBodySize;
+    }
+
+    public ConnectionParams setMaxDecompressedBodySize(int maxDecompressedBodySize) {
+        this.maxDecompressedBodySize = maxDecompressedBodySize;
+        return this;
+    }
+
+    public boolean isMapMessageCompactFormat() {
+        return mapMessageCompactFormat;
+    }
+
+    public ConnectionParams setMapMessageCompactFormat(boolean mapMessageCompactFormat) {
+        this.mapMessageCompactFormat = mapMessageCompactFormat;
+        return this;
+    }
+
+    public boolean isStreamMessageCompactFormat() {
+        return streamMessageCompactFormat;
+    }
+
+    public ConnectionParams setStreamMessageCompactFormat(boolean streamMessageCompactFormat) {
+        this.streamMessageCompactFormat = streamMessageCompactFormat;
+        return this;
+    }
+
+    public JmsMetricsCollector getJmsMetricsCollector() {
+        return jmsMetricsCollector;
+    }
+
+    public ConnectionParams setJmsMetricsCollector(JmsMetricsCollector jmsMetricsCollector) {
+        this.jmsMetricsCollector = jmsMetricsCollector;
+        return this;
+    }
+
+    public boolean isKeepSubscriptionsOnStop() {
+        return keepSubscriptionsOnStop;
+    }
+
+    public ConnectionParams setKeepSubscriptionsOnStop(boolean keepSubscriptionsOnStop) {
+        this.keepSubscriptionsOnStop = keepSubscriptionsOnStop;
+        return this;
+    }
+
+    public boolean isDeliverOnVirtualThreads() {
+        return deliverOnVirtualThreads;
+    }
+
+    public ConnectionParams setDeliverOnVirtualThreads(boolean deliverOnVirtualThreads) {
+        this.deliverOnVirtualThreads = deliverOnVirtualThreads;
+        return this;
+    }
+
+    public boolean isTopicSelectorDemultiplexing() {
+        return topicSelectorDemultiplexing;
+    }
+
+    public ConnectionParams setTopicSelectorDemultiplexing(boolean topicSelectorDemultiplexing) {
+        this.topicSelectorDemultiplexing = topicSelectorDemultiplexing;
+        return this;
+    }
 }
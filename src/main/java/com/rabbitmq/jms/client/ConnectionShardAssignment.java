@@ -0,0 +1,22 @@
+// This Source Code Form is subject to the terms of the Mozilla Public
+// License, v. 2.0. If a copy of the MPL was not distributed with this
+// file, You can obtain one at https://mozilla.org/MPL/2.0/.
+//
+// Copyright (c) 2020 VMware, Inc. or its affiliates. All rights reserved.
+package com.rabbitmq.jms.client;
+
+/**
+ * How the sessions of a JMS {@link javax.jms.Connection} backed by several AMQP connections are
+ * assigned to them.
+ *
+ * @see com.rabbitmq.jms.admin.RMQConnectionFactory#setConnectionShards(int)
+ * @since 2.3.0
+ */
+public enum ConnectionShardAssignment {
+
+    /** Each new session goes to the next AMQP connection, in turn */
+    ROUND_ROBIN,
+
+    /** Each new session goes to the AMQP connection with the fewest open sessions */
+    LEAST_LOADED
+}
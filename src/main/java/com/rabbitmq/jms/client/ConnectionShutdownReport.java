@@ -0,0 +1,85 @@
+// This Source Code Form is subject to the terms of the Mozilla Public
+// License, v. 2.0. If a copy of the MPL was not distributed with this
+// file, You can obtain one at https://mozilla.org/MPL/2.0/.
+//
+// Copyright (c) 2020 VMware, Inc. or its affiliates. All rights reserved.
+package com.rabbitmq.jms.client;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * How the closing of a {@link RMQConnection} went: how many of its sessions were closed,
+ * and how long the sessions and the AMQP connections took to close.
+ *
+ * @see RMQConnection#getShutdownReport()
+ * @since 2.3.0
+ */
+public final class ConnectionShutdownReport {
+
+    private final int sessions;
+    private final int closedSessions;
+    private final int failedSessions;
+    private final int unfinishedSessions;
+    private final long sessionsCloseNanos;
+    private final long connectionsCloseNanos;
+
+    ConnectionShutdownReport(int sessions, int closedSessions, int failedSessions, int unfinishedSessions,
+                             long sessionsCloseNanos, long connectionsCloseNanos) {
+        this.sessions = sessions;
+        this.closedSessions = closedSessions;
+        this.failedSessions = failedSessions;
+        this.unfinishedSessions = unfinishedSessions;
+        this.sessionsCloseNanos = sessionsCloseNanos;
+        this.connectionsCloseNanos = connectionsCloseNanos;
+    }
+
+    /**
+     * @return the number of sessions open when the connection was closed
+     */
+    public int getSessions() {
+        return this.sessions;
+    }
+
+    public int getClosedSessions() {
+        return this.closedSessions;
+    }
+
+    /**
+     * @return the number of sessions whose closing threw an exception
+     */
+    public int getFailedSessions() {
+        return this.failedSessions;
+    }
+
+    /**
+     * @return the number of sessions still closing at the termination timeout, which are then
+     * abandoned, their channels being closed with the AMQP connections
+     */
+    public int getUnfinishedSessions() {
+        return this.unfinishedSessions;
+    }
+
+    public long getSessionsCloseTime(TimeUnit unit) {
+        return unit.convert(this.sessionsCloseNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public long getConnectionsCloseTime(TimeUnit unit) {
+        return unit.convert(this.connectionsCloseNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public long getTotalTime(TimeUnit unit) {
+        return unit.convert(this.sessionsCloseNanos + this.connectionsCloseNanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public String toString() {
+        return new StringBuilder("ConnectionShutdownReport{")
+                .append("sessions=").append(this.sessions)
+                .append(", closedSessions=").append(this.closedSessions)
+                .append(", failedSessions=").append(this.failedSessions)
+                .append(", unfinishedSessions=").append(this.unfinishedSessions)
+                .append(", sessionsCloseTimeMs=").append(this.getSessionsCloseTime(TimeUnit.MILLISECONDS))
+                .append(", connectionsCloseTimeMs=").append(this.getConnectionsCloseTime(TimeUnit.MILLISECONDS))
+                .append('}').toString();
+    }
+}
@@ -0,0 +1,104 @@
+// This Source Code Form is subject to the terms of the Mozilla Public
+// License, v. 2.0. If a copy of the MPL was not distributed with this
+// file, You can obtain one at https://mozilla.org/MPL/2.0/.
+//
+// Copyright (c) 2020 VMware, Inc. or its affiliates. All rights reserved.
+package com.rabbitmq.jms.client;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * {@link BodyCodec} using the <code>deflate</code> (zlib) format of {@link java.util.zip}.
+ *
+ * @since 2.3.0
+ */
+public class DeflateBodyCodec implements BodyCodec {
+
+    public static final String CONTENT_ENCODING = "deflate";
+
+    private static final int BUFFER_SIZE = 8192;
+
+    /** Largest array size the JVM can allocate */
+    private static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+
+    private final int level;
+
+    /**
+     * Creates a codec with the default compression level.
+     */
+    public DeflateBodyCodec() {
+        this(Deflater.DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * @param level the compression level, from {@link Deflater#BEST_SPEED} to {@link Deflater#BEST_COMPRESSION},
+     *              or {@link Deflater#DEFAULT_COMPRESSION}
+     */
+    public DeflateBodyCodec(int level) {
+        this.level = level;
+    }
+
+    @Override
+    public String getContentEncoding() {
+        return CONTENT_ENCODING;
+    }
+
+    @Override
+    public byte[] encode(byte[] body) {
+        Deflater deflater = new Deflater(this.level);
+        try {
+            deflater.setInput(body);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, body.length / 4));
+            byte[] buffer = new byte[BUFFER_SIZE];
+            while (!deflater.finished()) {
+                int n = deflater.deflate(buffer);
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    @Override
+    public byte[] decode(byte[] encoded) throws IOException {
+        return this.decode(encoded, MAX_ARRAY_SIZE);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Inflation stops as soon as the maximum size is exceeded.
+     * </p>
+     */
+    @Override
+    public byte[] decode(byte[] encoded, int maxSize) throws IOException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(encoded);
+            int initialSize = (int) Math.min(Math.min((long) encoded.length * 4, maxSize), MAX_ARRAY_SIZE);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, initialSize));
+            byte[] buffer = new byte[BUFFER_SIZE];
+            while (!inflater.finished()) {
+                int n = inflater.inflate(buffer);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IOException("Truncated deflate message body");
+                }
+                if (n > maxSize - out.size()) {
+                    throw new IOException("Inflated message body is larger than " + maxSize + " bytes");
+                }
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        } catch (DataFormatException e) {
+            throw new IOException("Invalid deflate message body", e);
+        } finally {
+            inflater.end();
+        }
+    }
+}
@@ -6,6 +6,8 @@
 package com.rabbitmq.jms.client;
 
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -30,7 +32,9 @@ class DelayedReceiver {
     private final int batchingSize;
     private final RMQMessageConsumer rmqMessageConsumer;
 
-    private final Object responseLock = new Object();
+    /** a {@link ReentrantLock} rather than a monitor, for receiving virtual threads not to pin their carrier thread */
+    private final ReentrantLock responseLock = new ReentrantLock();
+    private final Condition abortedCondition = this.responseLock.newCondition();
     private boolean aborted = false; // @GuardedBy(responseLock)
 
     /**
@@ -48,30 +52,44 @@ class DelayedReceiver {
      * @return message gotten, or <code>null</code> if timeout or connection closed.
      */
     public GetResponse get(TimeTracker tt) {
+        Object event = FlightRecorderEvents.INSTANCE.beginReceivePoll();
+        int polls = 0;
+        GetResponse resp = null;
         try {
-            synchronized (this.responseLock) {
-                GetResponse resp = this.rmqMessageConsumer.getFromRabbitQueue();
+            this.responseLock.lockInterruptibly();
+            try {
+                polls++;
+                resp = this.rmqMessageConsumer.getFromRabbitQueue();
                 if (resp != null) return resp;
                 while (!this.aborted && !tt.timedOut()) {
+                    polls++;
                     resp = this.rmqMessageConsumer.getFromRabbitQueue();
                     if (resp != null)
                         break;
-                    new TimeTracker(POLLING_INTERVAL).timedWait(this.responseLock);
+                    new TimeTracker(POLLING_INTERVAL).timedAwait(this.abortedCondition);
                 }
                 return resp;
+            } finally {
+                this.responseLock.unlock();
             }
-
         } catch (InterruptedException e) {
             logger.warn("Get interrupted while buffer.poll-ing.", e);
             Thread.currentThread().interrupt();
             return null;
+        } finally {
+            if (event != null) {
+                FlightRecorderEvents.INSTANCE.endReceivePoll(event, this.rmqMessageConsumer.getDestination().getDestinationName(), polls, resp != null);
+            }
         }
     }
 
     private void abort() {
-        synchronized(this.responseLock) {
+        this.responseLock.lock();
+        try {
             this.aborted = true;
-            this.responseLock.notifyAll();
+            this.abortedCondition.signalAll();
+        } finally {
+            this.responseLock.unlock();
         }
     }
 
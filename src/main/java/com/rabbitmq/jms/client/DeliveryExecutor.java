@@ -9,6 +9,7 @@ import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
@@ -16,6 +17,7 @@ import javax.jms.JMSException;
 import javax.jms.MessageListener;
 
 import com.rabbitmq.jms.util.RMQJMSException;
+import com.rabbitmq.jms.util.TimeTracker;
 
 /**
  * Class to deliver messages to the <code>onMessage()</code> callback. Handles execution on a different thread, timeout
@@ -42,12 +44,40 @@ public class DeliveryExecutor {
     /** Timeout for onMessage executions */
     private final long onMessageTimeoutMs;
 
+    /** Collector of the durations of onMessage executions */
+    private final JmsMetricsCollector metricsCollector;
+
+    /** Factory of the thread of the executor, <code>null</code> for the default one */
+    private final ThreadFactory threadFactory;
+
     /** Executor allocated if/when onMessage calls are made; used to isolate us from potential hangs. */
     private ExecutorService onMessageExecutorService = null;
     private final Object lockOnMessageExecutorService = new Object();
 
     public DeliveryExecutor(long onMessageTimeoutMs) {
+        this(onMessageTimeoutMs, JmsMetricsCollector.NO_OP);
+    }
+
+    /**
+     * @param onMessageTimeoutMs how long to wait for onMessage to return, in milliseconds
+     * @param metricsCollector collector of the durations and timeouts of onMessage executions
+     * @since 2.3.0
+     */
+    public DeliveryExecutor(long onMessageTimeoutMs, JmsMetricsCollector metricsCollector) {
+        this(onMessageTimeoutMs, metricsCollector, null);
+    }
+
+    /**
+     * @param onMessageTimeoutMs how long to wait for onMessage to return, in milliseconds
+     * @param metricsCollector collector of the durations and timeouts of onMessage executions
+     * @param threadFactory factory of the thread calling onMessage, e.g. of virtual threads,
+     *                      <code>null</code> for the default one
+     * @since 2.3.0
+     */
+    public DeliveryExecutor(long onMessageTimeoutMs, JmsMetricsCollector metricsCollector, ThreadFactory threadFactory) {
         this.onMessageTimeoutMs = onMessageTimeoutMs;
+        this.metricsCollector = metricsCollector;
+        this.threadFactory = threadFactory;
     }
 
     /**
@@ -62,28 +92,53 @@ public class DeliveryExecutor {
      * @throws InterruptedException if executing thread is interrupted
      */
     public void deliverMessageWithProtection(RMQMessage rmqMessage, MessageListener messageListener) throws JMSException, InterruptedException {
+        Object event = FlightRecorderEvents.INSTANCE.beginDelivery();
+        long start = System.nanoTime();
         try {
             this.getExecutorService().submit(new CallOnMessage(rmqMessage, messageListener)).get(this.onMessageTimeoutMs, TimeUnit.MILLISECONDS);
+            this.delivered(rmqMessage, start, event, false);
         } catch (TimeoutException e) {
+            this.delivered(rmqMessage, start, event, true);
             this.closeAbruptly();
             throw new RMQJMSException("onMessage took too long and was interrupted", null);
         } catch (ExecutionException e) {
+            this.delivered(rmqMessage, start, event, false);
             throw new RMQMessageListenerExecutionJMSException("onMessage threw exception", e.getCause());
         }
     }
 
+    private void delivered(RMQMessage rmqMessage, long start, Object event, boolean timedOut) throws JMSException {
+        long duration = System.nanoTime() - start;
+        String destination = RMQSession.metricsName(rmqMessage.getJMSDestination());
+        if (timedOut) {
+            this.metricsCollector.listenerTimedOut(destination, duration);
+        } else {
+            this.metricsCollector.listenerInvoked(destination, duration);
+        }
+        FlightRecorderEvents.INSTANCE.endDelivery(event, destination, timedOut);
+    }
+
     public void close() {
-        closeExecutorService(this.takeExecutorService());
+        this.close(new TimeTracker());
+    }
+
+    /**
+     * Waits for the message listener to return, for no longer than the onMessage timeout nor than the deadline,
+     * then interrupts it.
+     * @param deadline the deadline of the closing of the session, or connection
+     */
+    void close(TimeTracker deadline) {
+        closeExecutorService(this.takeExecutorService(), deadline);
     }
 
     private void closeAbruptly() {
         this.takeExecutorService().shutdownNow();
     }
 
-    private void closeExecutorService(ExecutorService executorService) {
+    private void closeExecutorService(ExecutorService executorService, TimeTracker deadline) {
         if (executorService != null) {
             executorService.shutdown();
-            if (!this.waitForTerminatedExecutorService(executorService)) {
+            if (!this.waitForTerminatedExecutorService(executorService, deadline)) {
                 executorService.shutdownNow();
             }
         }
@@ -100,15 +155,16 @@ public class DeliveryExecutor {
     private ExecutorService getExecutorService() {
         synchronized (this.lockOnMessageExecutorService) {
             if (this.onMessageExecutorService == null) {
-                this.onMessageExecutorService = Executors.newSingleThreadExecutor();
+                this.onMessageExecutorService = this.threadFactory == null ?
+                    Executors.newSingleThreadExecutor() : Executors.newSingleThreadExecutor(this.threadFactory);
             }
             return this.onMessageExecutorService;
         }
     }
 
-    private boolean waitForTerminatedExecutorService(ExecutorService executorService) {
+    private boolean waitForTerminatedExecutorService(ExecutorService executorService, TimeTracker deadline) {
         try {
-            return executorService.awaitTermination(this.onMessageTimeoutMs, TimeUnit.MILLISECONDS);
+            return executorService.awaitTermination(Math.min(this.onMessageTimeoutMs, deadline.remainingMillis()), TimeUnit.MILLISECONDS);
         } catch (InterruptedException e) {
             return false;
         }
@@ -0,0 +1,118 @@
+// This Source Code Form is subject to the terms of the Mozilla Public
+// License, v. 2.0. If a copy of the MPL was not distributed with this
+// file, You can obtain one at https://mozilla.org/MPL/2.0/.
+//
+// Copyright (c) 2020 VMware, Inc. or its affiliates. All rights reserved.
+package com.rabbitmq.jms.client;
+
+/**
+ * Emits the JDK Flight Recorder events of the client, so that JMS operations can be correlated with GC pauses,
+ * lock stalls and the like in a recording.
+ * <p>
+ * The events are defined in {@link JfrFlightRecorderEvents}, which is only loaded when the <code>jdk.jfr</code>
+ * module is available: otherwise, and when the events are not enabled in a recording, the methods do nothing.
+ * </p>
+ * <p>
+ * An operation is timed between a <code>begin...</code> method, which returns an opaque event (<code>null</code>
+ * if the event is not enabled), and the matching <code>end...</code> method, called on the same thread, which sets
+ * the fields of the event and commits it.
+ * </p>
+ */
+class FlightRecorderEvents {
+
+    static final FlightRecorderEvents INSTANCE = load();
+
+    private static FlightRecorderEvents load() {
+        try {
+            Class.forName("jdk.jfr.Event", false, FlightRecorderEvents.class.getClassLoader());
+            return (FlightRecorderEvents) Class.forName("com.rabbitmq.jms.client.JfrFlightRecorderEvents")
+                .getDeclaredConstructor().newInstance();
+        } catch (Throwable e) { // no JFR (Java 8 before update 262, or a restricted runtime)
+            return new FlightRecorderEvents();
+        }
+    }
+
+    /**
+     * @return <code>true</code> if the events are emitted, when enabled in a recording
+     */
+    boolean isAvailable() {
+        return false;
+    }
+
+    /** A producer sends a message. */
+    Object beginSend() {
+        return null;
+    }
+
+    /**
+     * Sets the fields of a send event once the message is serialized, before {@link #endSend(Object, String)}.
+     * @param size the size of the serialized message
+     * @param serializationNanos how long the serialization of the message took
+     */
+    void serializedSend(Object event, int size, long serializationNanos) {
+    }
+
+    /**
+     * @param destination the name of the destination of the message
+     */
+    void endSend(Object event, String destination) {
+    }
+
+    /** A message is delivered to a message listener. */
+    Object beginDelivery() {
+        return null;
+    }
+
+    /**
+     * @param destination the name of the destination of the message
+     * @param timedOut <code>true</code> if the listener was interrupted because it took too long
+     */
+    void endDelivery(Object event, String destination, boolean timedOut) {
+    }
+
+    /** A transacted session commits. */
+    Object beginCommit() {
+        return null;
+    }
+
+    /** A transacted session rolls back. */
+    Object beginRollback() {
+        return null;
+    }
+
+    /** A thread waits for another one to leave the commit block of a session. */
+    Object beginCommitLockWait() {
+        return null;
+    }
+
+    /**
+     * Ends a commit, a rollback or a commit lock wait.
+     */
+    void end(Object event) {
+    }
+
+    /** Messages are acknowledged by the application. */
+    Object beginAcknowledge() {
+        return null;
+    }
+
+    /**
+     * @param destination the name of the destination of the message acknowledged
+     * @param individual <code>true</code> if only this message is acknowledged
+     */
+    void endAcknowledge(Object event, String destination, boolean individual) {
+    }
+
+    /** A synchronous consumer polls the queue for a message. */
+    Object beginReceivePoll() {
+        return null;
+    }
+
+    /**
+     * @param destination the name of the destination polled
+     * @param polls the number of times the queue was polled
+     * @param received <code>true</code> if a message was received
+     */
+    void endReceivePoll(Object event, String destination, int polls, boolean received) {
+    }
+}
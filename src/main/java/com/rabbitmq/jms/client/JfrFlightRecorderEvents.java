@@ -0,0 +1,232 @@
+// This Source Code Form is subject to the terms of the Mozilla Public
+// License, v. 2.0. If a copy of the MPL was not distributed with this
+// file, You can obtain one at https://mozilla.org/MPL/2.0/.
+//
+// Copyright (c) 2020 VMware, Inc. or its affiliates. All rights reserved.
+package com.rabbitmq.jms.client;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * The JDK Flight Recorder events of the client. This class must only be loaded when <code>jdk.jfr</code> is available:
+ * see {@link FlightRecorderEvents#INSTANCE}.
+ * <p>
+ * The events are registered on load, disabled unless a recording enables them explicitly, and have no stack trace by default,
+ * to keep continuous recording cheap.
+ * </p>
+ */
+final class JfrFlightRecorderEvents extends FlightRecorderEvents {
+
+    JfrFlightRecorderEvents() {
+        FlightRecorder.register(SendEvent.class);
+        FlightRecorder.register(DeliveryEvent.class);
+        FlightRecorder.register(CommitEvent.class);
+        FlightRecorder.register(RollbackEvent.class);
+        FlightRecorder.register(CommitLockWaitEvent.class);
+        FlightRecorder.register(AcknowledgeEvent.class);
+        FlightRecorder.register(ReceivePollEvent.class);
+    }
+
+    @Override
+    boolean isAvailable() {
+        return true;
+    }
+
+    @Override
+    Object beginSend() {
+        return begin(new SendEvent());
+    }
+
+    @Override
+    void serializedSend(Object event, int size, long serializationNanos) {
+        if (event != null) {
+            SendEvent e = (SendEvent) event;
+            e.size = size;
+            e.serializationTime = serializationNanos;
+        }
+    }
+
+    @Override
+    void endSend(Object event, String destination) {
+        if (event != null) {
+            SendEvent e = (SendEvent) event;
+            e.destination = destination;
+            e.commit();
+        }
+    }
+
+    @Override
+    Object beginDelivery() {
+        return begin(new DeliveryEvent());
+    }
+
+    @Override
+    void endDelivery(Object event, String destination, boolean timedOut) {
+        if (event != null) {
+            DeliveryEvent e = (DeliveryEvent) event;
+            e.destination = destination;
+            e.timedOut = timedOut;
+            e.commit();
+        }
+    }
+
+    @Override
+    Object beginCommit() {
+        return begin(new CommitEvent());
+    }
+
+    @Override
+    Object beginRollback() {
+        return begin(new RollbackEvent());
+    }
+
+    @Override
+    Object beginCommitLockWait() {
+        return begin(new CommitLockWaitEvent());
+    }
+
+    @Override
+    void end(Object event) {
+        if (event != null) {
+            ((Event) event).commit();
+        }
+    }
+
+    @Override
+    Object beginAcknowledge() {
+        return begin(new AcknowledgeEvent());
+    }
+
+    @Override
+    void endAcknowledge(Object event, String destination, boolean individual) {
+        if (event != null) {
+            AcknowledgeEvent e = (AcknowledgeEvent) event;
+            e.destination = destination;
+            e.individual = individual;
+            e.commit();
+        }
+    }
+
+    @Override
+    Object beginReceivePoll() {
+        return begin(new ReceivePollEvent());
+    }
+
+    @Override
+    void endReceivePoll(Object event, String destination, int polls, boolean received) {
+        if (event != null) {
+            ReceivePollEvent e = (ReceivePollEvent) event;
+            e.destination = destination;
+            e.polls = polls;
+            e.received = received;
+            e.commit();
+        }
+    }
+
+    /**
+     * @return the event, begun, if it is enabled; <code>null</code> otherwise
+     */
+    private static Event begin(Event event) {
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.begin();
+        return event;
+    }
+
+    @Name("com.rabbitmq.jms.Send")
+    @Label("JMS Send")
+    @Category({"RabbitMQ", "JMS"})
+    @Description("A message producer sends a message")
+    @Enabled(false)
+    @StackTrace(false)
+    static final class SendEvent extends Event {
+        @Label("Destination")
+        String destination;
+        @Label("Size")
+        @DataAmount
+        int size;
+        @Label("Serialization Time")
+        @Timespan
+        long serializationTime;
+    }
+
+    @Name("com.rabbitmq.jms.Delivery")
+    @Label("JMS Delivery to Listener")
+    @Category({"RabbitMQ", "JMS"})
+    @Description("A message is delivered to a message listener")
+    @Enabled(false)
+    @StackTrace(false)
+    static final class DeliveryEvent extends Event {
+        @Label("Destination")
+        String destination;
+        @Label("Timed Out")
+        @Description("The listener was interrupted because it took too long")
+        boolean timedOut;
+    }
+
+    @Name("com.rabbitmq.jms.Commit")
+    @Label("JMS Commit")
+    @Category({"RabbitMQ", "JMS"})
+    @Description("A transacted session commits")
+    @Enabled(false)
+    @StackTrace(false)
+    static final class CommitEvent extends Event {
+    }
+
+    @Name("com.rabbitmq.jms.Rollback")
+    @Label("JMS Rollback")
+    @Category({"RabbitMQ", "JMS"})
+    @Description("A transacted session rolls back")
+    @Enabled(false)
+    @StackTrace(false)
+    static final class RollbackEvent extends Event {
+    }
+
+    @Name("com.rabbitmq.jms.CommitLockWait")
+    @Label("JMS Commit Lock Wait")
+    @Category({"RabbitMQ", "JMS"})
+    @Description("A thread waits for another one to leave the commit block of a session")
+    @Enabled(false)
+    @StackTrace(false)
+    static final class CommitLockWaitEvent extends Event {
+    }
+
+    @Name("com.rabbitmq.jms.Acknowledge")
+    @Label("JMS Acknowledge")
+    @Category({"RabbitMQ", "JMS"})
+    @Description("Messages are acknowledged by the application")
+    @Enabled(false)
+    @StackTrace(false)
+    static final class AcknowledgeEvent extends Event {
+        @Label("Destination")
+        String destination;
+        @Label("Individual")
+        @Description("Only this message is acknowledged")
+        boolean individual;
+    }
+
+    @Name("com.rabbitmq.jms.ReceivePoll")
+    @Label("JMS Receive Poll")
+    @Category({"RabbitMQ", "JMS"})
+    @Description("A synchronous consumer polls its queue for a message")
+    @Enabled(false)
+    @StackTrace(false)
+    static final class ReceivePollEvent extends Event {
+        @Label("Destination")
+        String destination;
+        @Label("Polls")
+        int polls;
+        @Label("Received")
+        boolean received;
+    }
+}
@@ -0,0 +1,107 @@
+// This Source Code Form is subject to the terms of the Mozilla Public
+// License, v. 2.0. If a copy of the MPL was not distributed with this
+// file, You can obtain one at https://mozilla.org/MPL/2.0/.
+//
+// Copyright (c) 2020 VMware, Inc. or its affiliates. All rights reserved.
+package com.rabbitmq.jms.client;
+
+/**
+ * Collector of JMS-level metrics: how long the operations of the client take, and how large the messages it sends are.
+ * <p>
+ * Durations are in nanoseconds. Metrics are tagged with the name of the destination the operation is about
+ * (see {@link com.rabbitmq.jms.admin.RMQDestination#getDestinationName()}), or <code>null</code> when the operation
+ * is not about a single destination, as for a commit. Temporary destinations, which come and go, are all tagged
+ * with {@link #TEMPORARY_DESTINATIONS}.
+ * </p>
+ * <p>
+ * Methods are called on the paths messages are sent and received on, from many threads: implementations must be
+ * thread-safe, must not block, and should be cheap. Every method does nothing by default.
+ * </p>
+ * This complements the AMQP-level {@link com.rabbitmq.client.MetricsCollector}, which counts frames and does not know
+ * about JMS operations.
+ *
+ * @see StandardJmsMetricsCollector
+ * @see com.rabbitmq.jms.admin.RMQConnectionFactory#setJmsMetricsCollector(JmsMetricsCollector)
+ * @since 2.3.0
+ */
+public interface JmsMetricsCollector {
+
+    /** Destination name of the metrics of all temporary destinations */
+    String TEMPORARY_DESTINATIONS = "<temporary>";
+
+    /** Collector which does not collect anything */
+    JmsMetricsCollector NO_OP = new JmsMetricsCollector() {
+    };
+
+    /**
+     * A message has been sent by a {@link javax.jms.MessageProducer}.
+     * @param destination the destination of the message
+     * @param durationNanos how long sending took, from the call to the publication on the channel
+     */
+    default void messageSent(String destination, long durationNanos) {
+    }
+
+    /**
+     * The body of a message has been serialized to be sent.
+     * @param destination the destination of the message
+     * @param bytes the size of the serialized message, as published
+     */
+    default void messageSerialized(String destination, int bytes) {
+    }
+
+    /**
+     * A publisher confirm has been received for a message.
+     * @param destination the destination of the message
+     * @param roundTripNanos how long after publication the confirm arrived
+     * @param ack <code>true</code> if the message was confirmed, <code>false</code> if it was nack-ed
+     */
+    default void messageConfirmed(String destination, long roundTripNanos, boolean ack) {
+    }
+
+    /**
+     * A message has been returned by {@link javax.jms.MessageConsumer#receive()} (or one of its variants).
+     * @param destination the destination the message was received from
+     * @param waitNanos how long the call waited for the message
+     */
+    default void messageReceived(String destination, long waitNanos) {
+    }
+
+    /**
+     * A {@link javax.jms.MessageListener} has returned from <code>onMessage</code>, normally or not.
+     * @param destination the destination of the message
+     * @param durationNanos how long <code>onMessage</code> took
+     */
+    default void listenerInvoked(String destination, long durationNanos) {
+    }
+
+    /**
+     * A {@link javax.jms.MessageListener} has been interrupted because <code>onMessage</code> took too long.
+     * @param destination the destination of the message
+     * @param durationNanos how long the client waited for <code>onMessage</code>
+     */
+    default void listenerTimedOut(String destination, long durationNanos) {
+    }
+
+    /**
+     * Received messages have been acknowledged to the broker.
+     * @param destination the destination of the acknowledged message (or of the last of them)
+     * @param durationNanos how long the acknowledgement took
+     */
+    default void messagesAcknowledged(String destination, long durationNanos) {
+    }
+
+    /**
+     * A transacted session has been committed.
+     * @param durationNanos how long the commit took
+     */
+    default void transactionCommitted(long durationNanos) {
+    }
+
+    /**
+     * A message selector has been evaluated in the client.
+     * @param destination the destination of the message
+     * @param durationNanos how long the evaluation took
+     */
+    default void selectorEvaluated(String destination, long durationNanos) {
+    }
+}
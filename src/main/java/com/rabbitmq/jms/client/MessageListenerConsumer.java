@@ -6,8 +6,16 @@
 package com.rabbitmq.jms.client;
 
 import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
 
 import javax.jms.JMSException;
 import javax.jms.MessageListener;
@@ -17,7 +25,6 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.rabbitmq.client.AMQP.BasicProperties;
-import com.rabbitmq.client.Channel;
 import com.rabbitmq.client.Consumer;
 import com.rabbitmq.client.Envelope;
 import com.rabbitmq.client.GetResponse;
@@ -32,12 +39,23 @@ import com.rabbitmq.jms.util.TimeTracker;
 class MessageListenerConsumer implements Consumer, Abortable {
     private final Logger logger = LoggerFactory.getLogger(MessageListenerConsumer.class);
 
+    /** Passes held deliveries to the listeners when their connection starts again, see {@link #release()} */
+    private static final ExecutorService HELD_DELIVERIES_EXECUTOR = Executors.newCachedThreadPool(new ThreadFactory() {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "rabbitmq-jms-held-deliveries-" + this.count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
     private final Object tagLock = new Object();
     /** The consumer tag for this RabbitMQ consumer */
     private String consTag = null; // @GuardedBy(tagLock);
 
     private final RMQMessageConsumer messageConsumer;
-    private final Channel channel;
     private final MessageListener messageListener;
     private final boolean autoAck;
     private volatile Completion completion;
@@ -54,17 +72,28 @@ class MessageListenerConsumer implements Consumer, Abortable {
 
     private final ReceivingContextConsumer receivingContextConsumer;
 
+    /** Whether the AMQP subscription is active, between {@link #start()} and the cancellation */
+    private volatile boolean subscribed;
+    /** Deliveries received while {@link #hold() held}, or before the held ones are passed to the listener */
+    private final ArrayDeque<HeldDelivery> heldDeliveries = new ArrayDeque<HeldDelivery>(); // @GuardedBy(heldDeliveries)
+    /** Set by {@link #hold()}, deliveries are held rather than passed to the listener */
+    private boolean holding; // @GuardedBy(heldDeliveries)
+    /** Set while held deliveries are passed to the listener */
+    private boolean draining; // @GuardedBy(heldDeliveries)
+    /** Number of recovers sent and not yet confirmed by a recover-ok, the deliveries received meanwhile are requeued by them */
+    private int pendingRecovers; // @GuardedBy(heldDeliveries)
+    /** Held during a delivery to the listener, so that {@link #hold()} waits for it */
+    private final ReentrantLock deliveryLock = new ReentrantLock();
+
     /**
      * Constructor
      * @param messageConsumer to which this Rabbit Consumer belongs
-     * @param channel Rabbit channel this Consumer uses
      * @param messageListener to call {@link MessageListener#onMessage(javax.jms.Message) onMessage(Message)} with received messages
      * @param terminationTimeout wait time (in nanoseconds) for cancel to take effect
      */
-    public MessageListenerConsumer(RMQMessageConsumer messageConsumer, Channel channel, MessageListener messageListener, long terminationTimeout,
+    public MessageListenerConsumer(RMQMessageConsumer messageConsumer, MessageListener messageListener, long terminationTimeout,
                 boolean requeueOnMessageListenerException, ReceivingContextConsumer receivingContextConsumer) {
         this.messageConsumer = messageConsumer;
-        this.channel = channel;
         this.messageListener = messageListener;
         this.autoAck = messageConsumer.isAutoAck();
         this.terminationTimeout = terminationTimeout;
@@ -124,6 +153,38 @@ class MessageListenerConsumer implements Consumer, Abortable {
             nack(dtag);
             return;
         }
+        if (this.holdIfNeeded(envelope, properties, body)) {
+            return;
+        }
+        this.deliveryLock.lock();
+        try {
+            // checked again with the lock, for hold() to wait for this delivery if it does not see it
+            if (!this.holdIfNeeded(envelope, properties, body)) {
+                this.deliver(envelope, properties, body);
+            }
+        } finally {
+            this.deliveryLock.unlock();
+        }
+    }
+
+    /**
+     * @return true if the delivery is not to be passed to the listener now: held, or requeued by a pending recover
+     */
+    private boolean holdIfNeeded(Envelope envelope, BasicProperties properties, byte[] body) {
+        synchronized (this.heldDeliveries) {
+            if (this.pendingRecovers > 0) {
+                logger.debug("dropping delivery (dtag={}) requeued by pending recover", envelope.getDeliveryTag());
+                return true;
+            }
+            if (this.holding || this.draining) {
+                this.heldDeliveries.add(new HeldDelivery(envelope, properties, body));
+                return true;
+            }
+            return false;
+        }
+    }
+
+    private void deliver(Envelope envelope, BasicProperties properties, byte[] body) throws IOException {
         /* Wrap the incoming message in a GetResponse */
         GetResponse response = new GetResponse(envelope, properties, body, 0); // last parameter is remaining message count, which we don't know.
         try {
@@ -136,19 +197,27 @@ class MessageListenerConsumer implements Consumer, Abortable {
                     RMQMessage msg = RMQMessage.convertMessage(this.messageConsumer.getSession(), this.messageConsumer.getDestination(),
                         response, this.receivingContextConsumer);
                     this.messageConsumer.getSession().addUncommittedTag(dtag);
+                    if (!this.autoAck) {
+                        // registered before the listener runs, which may acknowledge the message, on this thread or another one
+                        dealWithAcknowledgments(dtag);
+                    }
                     boolean runtimeExceptionInListener = false;
                     try {
                         this.messageConsumer.getSession().deliverMessage(msg, this.messageListener);
                     } catch(RMQMessageListenerExecutionJMSException e) {
                         if (e.getCause() instanceof RuntimeException) {
                             runtimeExceptionInListener = true;
-                            nack(dtag);
+                            if (this.autoAck) {
+                                nack(dtag);
+                            } else if (!skipAck) {
+                                this.messageConsumer.getSession().requeueUnackedMessage(dtag);
+                            }
                             this.abort();
                         } else {
                             throw e;
                         }
                     }
-                    if (!runtimeExceptionInListener) {
+                    if (!runtimeExceptionInListener && this.autoAck) {
                         dealWithAcknowledgments(dtag);
                     }
                 } else {
@@ -200,7 +269,34 @@ class MessageListenerConsumer implements Consumer, Abortable {
     @Override
     public void handleRecoverOk(String consumerTag) {
         logger.trace("consumerTag='{}'", consumerTag);
-        // noop
+        // the deliveries held so far have been requeued by the recover (or rollback), redeliveries follow
+        synchronized (this.heldDeliveries) {
+            if (this.pendingRecovers > 0) {
+                this.pendingRecovers--;
+            }
+            this.heldDeliveries.clear();
+        }
+    }
+
+    /**
+     * Called before the session sends a recover, the deliveries received until the recover-ok are dropped,
+     * the broker requeues them.
+     */
+    void recoverStarted() {
+        synchronized (this.heldDeliveries) {
+            this.pendingRecovers++;
+        }
+    }
+
+    /**
+     * Called if the recover could not be sent, no recover-ok will follow.
+     */
+    void recoverFailed() {
+        synchronized (this.heldDeliveries) {
+            if (this.pendingRecovers > 0) {
+                this.pendingRecovers--;
+            }
+        }
     }
 
     @Override
@@ -209,13 +305,15 @@ class MessageListenerConsumer implements Consumer, Abortable {
             if (!this.completion.isComplete()) { // not yet cancelled
                 String cT = this.getConsTag();
                 logger.debug("basicCancel: consumerTag='{}'", cT);
-                this.channel.basicCancel(cT);
+                this.messageConsumer.basicCancel(cT);
             }
         } catch (Exception e) {
             logger.debug("basicCancel threw exception", e);
         }
         this.rejecting = true;
+        this.subscribed = false;
         this.completion.setComplete();
+        this.nackHeldDeliveries();
     }
 
     @Override
@@ -226,7 +324,7 @@ class MessageListenerConsumer implements Consumer, Abortable {
         try {
             if (!this.completion.isComplete()) {
                 logger.debug("consumerTag='{}' basicCancel:", cT);
-                this.channel.basicCancel(cT);
+                this.messageConsumer.basicCancel(cT);
                 this.completion.waitUntilComplete(tt);
                 this.clearConsTag();
             }
@@ -244,6 +342,11 @@ class MessageListenerConsumer implements Consumer, Abortable {
             if (! e.getMessage().equals("Unknown consumerTag")) {
                 logger.error("basicCancel (consumerTag='{}') threw unexpected exception", cT, e);
             }
+        } catch (JMSException e) {
+            logger.error("basicCancel (consumerTag='{}') threw unexpected exception", cT, e);
+        } finally {
+            this.subscribed = false;
+            this.nackHeldDeliveries();
         }
     }
 
@@ -255,6 +358,7 @@ class MessageListenerConsumer implements Consumer, Abortable {
         this.completion = new Completion();  // need a new completion object
         try {
             this.messageConsumer.basicConsume(this, cT);
+            this.subscribed = true;
         } catch (Exception e) {
             this.completion.setComplete();  // just in case someone is waiting on it
             logger.error("basicConsume (consumerTag='{}') threw exception", cT, e);
@@ -262,4 +366,89 @@ class MessageListenerConsumer implements Consumer, Abortable {
         }
     }
 
+    /**
+     * Holds the deliveries instead of passing them to the listener, keeping the subscription, and waits
+     * for the delivery in progress, if any.
+     * Does nothing if the consumer is not subscribed.
+     *
+     * @param deadline until when to wait for the delivery in progress, shared by the consumers of the connection
+     */
+    void hold(TimeTracker deadline) throws InterruptedException {
+        if (!this.subscribed) {
+            return;
+        }
+        synchronized (this.heldDeliveries) {
+            this.holding = true;
+        }
+        if (this.deliveryLock.tryLock(deadline.remainingNanos(), TimeUnit.NANOSECONDS)) {
+            this.deliveryLock.unlock();
+        }
+    }
+
+    /**
+     * Passes the held deliveries to the listener, in order, on another thread, then lets deliveries
+     * through again. Subscribes if the consumer is not subscribed.
+     */
+    void release() throws Exception {
+        if (!this.subscribed) {
+            this.start();
+            return;
+        }
+        synchronized (this.heldDeliveries) {
+            this.holding = false;
+            if (this.draining || this.heldDeliveries.isEmpty()) {
+                return;
+            }
+            this.draining = true;
+        }
+        HELD_DELIVERIES_EXECUTOR.execute(this::drainHeldDeliveries);
+    }
+
+    private void drainHeldDeliveries() {
+        while (true) {
+            HeldDelivery delivery;
+            synchronized (this.heldDeliveries) {
+                delivery = this.holding || this.rejecting ? null : this.heldDeliveries.poll();
+                if (delivery == null) {
+                    this.draining = false;
+                    return;
+                }
+            }
+            this.deliveryLock.lock();
+            try {
+                this.deliver(delivery.envelope, delivery.properties, delivery.body);
+            } catch (Exception e) {
+                logger.error("Error while delivering held message (dtag={})", delivery.envelope.getDeliveryTag(), e);
+            } finally {
+                this.deliveryLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Returns the held deliveries to the queue, they will not be passed to the listener.
+     */
+    private void nackHeldDeliveries() {
+        List<HeldDelivery> held;
+        synchronized (this.heldDeliveries) {
+            held = new ArrayList<HeldDelivery>(this.heldDeliveries);
+            this.heldDeliveries.clear();
+            this.holding = false;
+        }
+        for (HeldDelivery delivery : held) {
+            nack(delivery.envelope.getDeliveryTag());
+        }
+    }
+
+    private static final class HeldDelivery {
+        private final Envelope envelope;
+        private final BasicProperties properties;
+        private final byte[] body;
+
+        private HeldDelivery(Envelope envelope, BasicProperties properties, byte[] body) {
+            this.envelope = envelope;
+            this.properties = properties;
+            this.body = body;
+        }
+    }
 }
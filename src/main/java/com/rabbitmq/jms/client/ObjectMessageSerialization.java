@@ -0,0 +1,54 @@
+// This Source Code Form is subject to the terms of the Mozilla Public
+// License, v. 2.0. If a copy of the MPL was not distributed with this
+// file, You can obtain one at https://mozilla.org/MPL/2.0/.
+//
+// Copyright (c) 2020 VMware, Inc. or its affiliates. All rights reserved.
+package com.rabbitmq.jms.client;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The {@link ObjectMessageSerializer}s available to deserialize inbound messages.
+ */
+final class ObjectMessageSerialization {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ObjectMessageSerialization.class);
+
+    /** The serializers available to all connections, by name */
+    private static final Map<String, ObjectMessageSerializer> AVAILABLE_SERIALIZERS = availableSerializers();
+
+    private ObjectMessageSerialization() {
+    }
+
+    /**
+     * @param name the name of a serializer
+     * @return the serializer, <code>null</code> if there is none with this name
+     */
+    static ObjectMessageSerializer forName(String name) {
+        return AVAILABLE_SERIALIZERS.get(name);
+    }
+
+    private static Map<String, ObjectMessageSerializer> availableSerializers() {
+        Map<String, ObjectMessageSerializer> serializers = new HashMap<String, ObjectMessageSerializer>();
+        ObjectMessageSerializer compact = new CompactObjectMessageSerializer();
+        serializers.put(compact.getName(), compact);
+        try {
+            Iterator<ObjectMessageSerializer> providers = ServiceLoader.load(ObjectMessageSerializer.class, ObjectMessageSerialization.class.getClassLoader()).iterator();
+            while (providers.hasNext()) {
+                ObjectMessageSerializer provided = providers.next();
+                serializers.put(provided.getName(), provided);
+            }
+        } catch (ServiceConfigurationError e) {
+            LOGGER.warn("Error while loading object message serializers", e);
+        }
+        return Collections.unmodifiableMap(serializers);
+    }
+}
@@ -0,0 +1,54 @@
+// This Source Code Form is subject to the terms of the Mozilla Public
+// License, v. 2.0. If a copy of the MPL was not distributed with this
+// file, You can obtain one at https://mozilla.org/MPL/2.0/.
+//
+// Copyright (c) 2020 VMware, Inc. or its affiliates. All rights reserved.
+package com.rabbitmq.jms.client;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * Serializer of the objects of {@link javax.jms.ObjectMessage}s, identified by its name.
+ * <p>
+ * The name of the serializer is sent with each message it serializes, so that the consumer deserializes the object
+ * with the same serializer. Messages without a serializer name are serialized with Java serialization, which is
+ * the default.
+ * </p>
+ * <p>
+ * {@link CompactObjectMessageSerializer} is always available. Other serializers can be set on the connection factory
+ * to serialize outbound messages, and are found with {@link java.util.ServiceLoader} (as providers of this interface)
+ * to deserialize inbound messages.
+ * </p>
+ * Implementations must be thread-safe, and must only instantiate classes trusted by
+ * {@link com.rabbitmq.jms.util.WhiteListObjectInputStream#checkTrusted(Class, List)}.
+ *
+ * @see com.rabbitmq.jms.admin.RMQConnectionFactory#setObjectMessageSerializer(ObjectMessageSerializer)
+ * @since 2.3.0
+ */
+public interface ObjectMessageSerializer {
+
+    /**
+     * @return the name of the serializer, sent with the messages it serializes
+     */
+    String getName();
+
+    /**
+     * @param object the (non-<code>null</code>) object of a message
+     * @return the serialized object
+     * @throws java.io.NotSerializableException if the serializer does not support the object, which is then
+     * serialized with Java serialization
+     * @throws IOException if the object cannot be serialized
+     */
+    byte[] serialize(Serializable object) throws IOException;
+
+    /**
+     * @param serialized an object serialized by {@link #serialize(Serializable)}
+     * @param trustedPackages prefixes of packages that are trusted to be safe to deserialize
+     * @return the object
+     * @throws IOException if the object cannot be deserialized
+     * @throws ClassNotFoundException if a class of the object cannot be found, or is not trusted
+     */
+    Serializable deserialize(byte[] serialized, List<String> trustedPackages) throws IOException, ClassNotFoundException;
+}
@@ -0,0 +1,270 @@
+// This Source Code Form is subject to the terms of the Mozilla Public
+// License, v. 2.0. If a copy of the MPL was not distributed with this
+// file, You can obtain one at https://mozilla.org/MPL/2.0/.
+//
+// Copyright (c) 2020 VMware, Inc. or its affiliates. All rights reserved.
+package com.rabbitmq.jms.client;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The properties of a message, in flat arrays.
+ * <p>
+ * Entries are kept in insertion order in parallel arrays: the name, a type tag, the bits of a primitive value
+ * (so that primitive values are not boxed) and the reference of any other value. Positions are
+ * <code>0</code> to <code>size() - 1</code>. A message usually has a handful of properties, which are found by
+ * scanning the names; beyond {@link #LINEAR_SCAN_LIMIT} entries, an open-addressing (linear probing) index of
+ * the positions is kept as well.
+ * </p>
+ * <p>
+ * No array is allocated until the first entry is added. Not thread-safe, like the messages using it.
+ * </p>
+ */
+final class PropertyMap {
+
+    /** Type tag of a value which is not primitive */
+    static final byte OBJECT = 0;
+    static final byte BOOLEAN = 1;
+    static final byte BYTE = 2;
+    static final byte SHORT = 3;
+    static final byte INT = 4;
+    static final byte LONG = 5;
+    static final byte FLOAT = 6;
+    static final byte DOUBLE = 7;
+
+    /** Largest number of entries found by scanning the names */
+    static final int LINEAR_SCAN_LIMIT = 8;
+
+    private static final String[] NO_NAMES = new String[0];
+    private static final byte[] NO_TAGS = new byte[0];
+    private static final long[] NO_BITS = new long[0];
+    private static final Object[] NO_REFS = new Object[0];
+
+    private String[] names = NO_NAMES;
+    private byte[] tags = NO_TAGS;
+    private long[] bits = NO_BITS;
+    private Object[] refs = NO_REFS;
+    private int size;
+
+    /** Position + 1 of each entry, by hash of its name (0 is empty), when there are more than {@link #LINEAR_SCAN_LIMIT} entries */
+    private int[] index;
+
+    int size() {
+        return this.size;
+    }
+
+    /**
+     * @return the position of the name; <code>-1</code> if it is not in the map
+     */
+    int position(String name) {
+        if (name == null) return -1;
+        if (this.index == null) {
+            for (int i = 0; i < this.size; i++) {
+                if (this.names[i].equals(name)) return i;
+            }
+            return -1;
+        }
+        int mask = this.index.length - 1;
+        for (int i = hash(name) & mask; this.index[i] != 0; i = (i + 1) & mask) {
+            int position = this.index[i] - 1;
+            if (this.names[position].equals(name)) return position;
+        }
+        return -1;
+    }
+
+    boolean contains(String name) {
+        return this.position(name) >= 0;
+    }
+
+    String name(int position) {
+        return this.names[position];
+    }
+
+    byte tag(int position) {
+        return this.tags[position];
+    }
+
+    long bits(int position) {
+        return this.bits[position];
+    }
+
+    /**
+     * @return the value at a position, boxed
+     */
+    Object get(int position) {
+        byte tag = this.tags[position];
+        return (tag == OBJECT) ? this.refs[position] : box(tag, this.bits[position]);
+    }
+
+    /**
+     * @return the primitive value with these bits, boxed
+     */
+    static Object box(byte tag, long value) {
+        switch (tag) {
+        case BOOLEAN: return value != 0;
+        case BYTE:    return (byte) value;
+        case SHORT:   return (short) value;
+        case INT:     return (int) value;
+        case LONG:    return value;
+        case FLOAT:   return Float.intBitsToFloat((int) value);
+        case DOUBLE:  return Double.longBitsToDouble(value);
+        default:      throw new IllegalArgumentException("Not a primitive type " + tag);
+        }
+    }
+
+    /**
+     * @return the value of the name, boxed; <code>null</code> if the name is not in the map
+     */
+    Object get(String name) {
+        int position = this.position(name);
+        return position < 0 ? null : this.get(position);
+    }
+
+    /**
+     * @return the names in the map, in insertion order
+     */
+    List<String> names() {
+        return new ArrayList<String>(Arrays.asList(this.names).subList(0, this.size));
+    }
+
+    /**
+     * Sets the value of a name to a primitive value.
+     * @param tag the type of the value
+     * @param value the bits of the value: <code>0</code> or <code>1</code> for a <code>boolean</code>, the value for
+     * the integer types, and the raw bits for <code>float</code> and <code>double</code>
+     */
+    void putBits(String name, byte tag, long value) {
+        int position = this.positionForPut(name);
+        this.tags[position] = tag;
+        this.bits[position] = value;
+        this.refs[position] = null;
+    }
+
+    /**
+     * Sets the value of a name, removing the name if the value is <code>null</code>. Boxed primitive values are
+     * stored unboxed.
+     */
+    void put(String name, Object value) {
+        if (value == null) {
+            this.remove(name);
+        } else if (value instanceof Boolean) {
+            this.putBits(name, BOOLEAN, (Boolean) value ? 1 : 0);
+        } else if (value instanceof Byte) {
+            this.putBits(name, BYTE, (Byte) value);
+        } else if (value instanceof Short) {
+            this.putBits(name, SHORT, (Short) value);
+        } else if (value instanceof Integer) {
+            this.putBits(name, INT, (Integer) value);
+        } else if (value instanceof Long) {
+            this.putBits(name, LONG, (Long) value);
+        } else if (value instanceof Float) {
+            this.putBits(name, FLOAT, Float.floatToRawIntBits((Float) value));
+        } else if (value instanceof Double) {
+            this.putBits(name, DOUBLE, Double.doubleToRawLongBits((Double) value));
+        } else {
+            int position = this.positionForPut(name);
+            this.tags[position] = OBJECT;
+            this.refs[position] = value;
+        }
+    }
+
+    /**
+     * Removes a name, moving the entries after it down by one position to keep the insertion order.
+     */
+    void remove(String name) {
+        int position = this.position(name);
+        if (position < 0) return;
+        if (this.index != null) {
+            if (this.size - 1 > LINEAR_SCAN_LIMIT) {
+                this.removeFromIndex(position);
+            } else {
+                this.index = null;
+            }
+        }
+        int last = --this.size;
+        int moved = last - position;
+        System.arraycopy(this.names, position + 1, this.names, position, moved);
+        System.arraycopy(this.tags, position + 1, this.tags, position, moved);
+        System.arraycopy(this.bits, position + 1, this.bits, position, moved);
+        System.arraycopy(this.refs, position + 1, this.refs, position, moved);
+        this.names[last] = null;
+        this.refs[last] = null;
+    }
+
+    void clear() {
+        Arrays.fill(this.names, 0, this.size, null);
+        Arrays.fill(this.refs, 0, this.size, null);
+        this.size = 0;
+        this.index = null;
+    }
+
+    private int positionForPut(String name) {
+        int position = this.position(name);
+        if (position >= 0) return position;
+        if (this.size == this.names.length) {
+            int capacity = Math.max(4, this.size + (this.size >> 1));
+            this.names = Arrays.copyOf(this.names, capacity);
+            this.tags = Arrays.copyOf(this.tags, capacity);
+            this.bits = Arrays.copyOf(this.bits, capacity);
+            this.refs = Arrays.copyOf(this.refs, capacity);
+        }
+        position = this.size++;
+        this.names[position] = name;
+        if (this.index != null && this.size * 2 <= this.index.length) {
+            this.addToIndex(this.index, position);
+        } else if (this.size > LINEAR_SCAN_LIMIT) {
+            this.index = buildIndex();
+        }
+        return position;
+    }
+
+    private int[] buildIndex() {
+        int capacity = Integer.highestOneBit(this.size * 4 - 1);
+        int[] newIndex = new int[capacity];
+        for (int position = 0; position < this.size; position++) {
+            this.addToIndex(newIndex, position);
+        }
+        return newIndex;
+    }
+
+    private void addToIndex(int[] index, int position) {
+        int mask = index.length - 1;
+        int i = hash(this.names[position]) & mask;
+        while (index[i] != 0) {
+            i = (i + 1) & mask;
+        }
+        index[i] = position + 1;
+    }
+
+    /**
+     * Removes a position from the index, moving back the entries of its probe sequence into the gap, then moves the
+     * positions after it down by one, as {@link #remove(String)} does with the entries.
+     */
+    private void removeFromIndex(int position) {
+        int[] index = this.index;
+        int mask = index.length - 1;
+        int gap = hash(this.names[position]) & mask;
+        while (index[gap] != position + 1) {
+            gap = (gap + 1) & mask;
+        }
+        for (int i = (gap + 1) & mask; index[i] != 0; i = (i + 1) & mask) {
+            int home = hash(this.names[index[i] - 1]) & mask;
+            // the entry may fill the gap if the gap is between its home slot and its slot
+            if (((i - home) & mask) >= ((i - gap) & mask)) {
+                index[gap] = index[i];
+                gap = i;
+            }
+        }
+        index[gap] = 0;
+        for (int i = 0; i < index.length; i++) {
+            if (index[i] > position + 1) index[i]--;
+        }
+    }
+
+    private static int hash(String name) {
+        int h = name.hashCode();
+        return h ^ (h >>> 16);
+    }
+}
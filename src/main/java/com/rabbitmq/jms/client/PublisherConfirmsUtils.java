@@ -7,6 +7,7 @@ package com.rabbitmq.jms.client;
 
 import com.rabbitmq.client.Channel;
 
+import javax.jms.JMSException;
 import javax.jms.Message;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
@@ -34,25 +35,44 @@ class PublisherConfirmsUtils {
      * @return
      */
     static PublishingListener configurePublisherConfirmsSupport(Channel channel, ConfirmListener confirmListener) {
-        final Map<Long, Message> outstandingConfirms = new ConcurrentHashMap<>();
+        return configurePublisherConfirmsSupport(channel, confirmListener, JmsMetricsCollector.NO_OP);
+    }
+
+    /**
+     * Enables publisher confirms support, as {@link #configurePublisherConfirmsSupport(Channel, ConfirmListener)},
+     * reporting the round-trip time of each confirm to a {@link JmsMetricsCollector}.
+     *
+     * @param channel
+     * @param confirmListener
+     * @param metricsCollector
+     * @return
+     */
+    static PublishingListener configurePublisherConfirmsSupport(Channel channel, ConfirmListener confirmListener,
+                                                                JmsMetricsCollector metricsCollector) {
+        final Map<Long, OutstandingConfirm> outstandingConfirms = new ConcurrentHashMap<>();
         final AtomicLong multipleLowerBound = new AtomicLong(1);
         PublishingListener publishingListener = (message, sequenceNumber) -> {
-            outstandingConfirms.put(sequenceNumber, message);
+            outstandingConfirms.put(sequenceNumber, new OutstandingConfirm(message, System.nanoTime()));
         };
         channel.addConfirmListener(new com.rabbitmq.client.ConfirmListener() {
             @Override
             public void handleAck(long deliveryTag, boolean multiple) {
-                cleanPublisherConfirmsCorrelation(
-                        outstandingConfirms, multipleLowerBound,
-                        deliveryTag, multiple, message -> confirmListener.handle(new PublisherConfirmContext(message, true))
-                );
+                handle(deliveryTag, multiple, true);
             }
 
             @Override
             public void handleNack(long deliveryTag, boolean multiple) {
+                handle(deliveryTag, multiple, false);
+            }
+
+            private void handle(long deliveryTag, boolean multiple, boolean ack) {
+                long now = System.nanoTime();
                 cleanPublisherConfirmsCorrelation(
                         outstandingConfirms, multipleLowerBound,
-                        deliveryTag, multiple, message -> confirmListener.handle(new PublisherConfirmContext(message, false))
+                        deliveryTag, multiple, outstanding -> {
+                            metricsCollector.messageConfirmed(metricsName(outstanding.message), now - outstanding.publishedAt, ack);
+                            confirmListener.handle(new PublisherConfirmContext(outstanding.message, ack));
+                        }
                 );
             }
         });
@@ -70,18 +90,18 @@ class PublisherConfirmsUtils {
      * @param multiple
      * @param messageConsumer
      */
-    private static void cleanPublisherConfirmsCorrelation(Map<Long, Message> outstandingConfirms, AtomicLong multipleLowerBound,
-                                                          long deliveryTag, boolean multiple, Consumer<Message> messageConsumer) {
+    private static <T> void cleanPublisherConfirmsCorrelation(Map<Long, T> outstandingConfirms, AtomicLong multipleLowerBound,
+                                                              long deliveryTag, boolean multiple, Consumer<T> messageConsumer) {
         Long lowerBound = multipleLowerBound.get();
         if (multiple) {
             for (long i = lowerBound; i <= deliveryTag; i++) {
-                Message message = outstandingConfirms.remove(i);
+                T message = outstandingConfirms.remove(i);
                 if (message != null) {
                     messageConsumer.accept(message);
                 }
             }
         } else {
-            Message message = outstandingConfirms.remove(deliveryTag);
+            T message = outstandingConfirms.remove(deliveryTag);
             if (message != null) {
                 messageConsumer.accept(message);
             }
@@ -91,4 +111,26 @@ class PublisherConfirmsUtils {
         }
     }
 
+    private static String metricsName(Message message) {
+        try {
+            return RMQSession.metricsName(message.getJMSDestination());
+        } catch (JMSException e) {
+            return null;
+        }
+    }
+
+    /**
+     * A published message waiting for its confirm.
+     */
+    private static final class OutstandingConfirm {
+
+        private final Message message;
+        private final long publishedAt;
+
+        private OutstandingConfirm(Message message, long publishedAt) {
+            this.message = message;
+            this.publishedAt = publishedAt;
+        }
+    }
+
 }
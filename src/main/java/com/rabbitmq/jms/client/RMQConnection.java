@@ -10,8 +10,13 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.BiFunction;
 
@@ -26,12 +31,16 @@ import org.slf4j.LoggerFactory;
 import com.rabbitmq.client.Channel;
 import com.rabbitmq.client.ShutdownListener;
 import com.rabbitmq.client.ShutdownSignalException;
+import com.rabbitmq.jms.admin.RMQDestination;
+import com.rabbitmq.jms.parse.sql.SqlEvaluator;
 import com.rabbitmq.jms.util.RMQJMSException;
+import com.rabbitmq.jms.util.TimeTracker;
 
 /**
  * Implementation of the {@link Connection}, {@link QueueConnection} and {@link TopicConnection} interfaces.
  * A {@link RMQConnection} object holds a list of {@link RMQSession} objects as well as the actual
- * {link com.rabbitmq.client.Connection} object that represents the TCP connection to the RabbitMQ broker.
+ * {link com.rabbitmq.client.Connection} object that represents the TCP connection to the RabbitMQ broker,
+ * or several of them that the sessions are spread over (see {@link ConnectionShardAssignment}).
  * <p>
  * This implementation also holds a reference to the executor service that is used by the connection so that we
  * can pause incoming messages.
@@ -40,11 +49,42 @@ import com.rabbitmq.jms.util.RMQJMSException;
 public class RMQConnection implements Connection, QueueConnection, TopicConnection {
 
     public static final int NO_CHANNEL_QOS = -1;
+    /**
+     * QoS of the channels when subscriptions are kept on stop and no QoS is set, to bound the
+     * deliveries held in memory while the connection is stopped.
+     *
+     * @see ConnectionParams#setKeepSubscriptionsOnStop(boolean)
+     * @since 2.3.0
+     */
+    public static final int KEEP_SUBSCRIPTIONS_ON_STOP_DEFAULT_QOS = 250;
+
+    static final String QUEUE_EXPIRES_ARG = "x-expires";
+    /**
+     * Default expiry of the queues which would be exclusive to the connection, for temporary queues and non-durable
+     * topic subscribers, when the connection has several shards: they are deleted when the connection closes, or expire.
+     *
+     * @see ConnectionParams#setConnectionShardQueueExpiry(long)
+     * @since 2.3.0
+     */
+    public static final long DEFAULT_CONNECTION_SHARD_QUEUE_EXPIRY_MS = TimeUnit.MINUTES.toMillis(1);
+
+    /** Default maximum number of idle channels kept for reuse by the {@link QueueBrowser}s of a connection */
+    public static final int DEFAULT_QUEUE_BROWSER_CHANNEL_POOL_SIZE = 4;
 
     private final Logger logger = LoggerFactory.getLogger(RMQConnection.class);
 
     /** the TCP connection wrapper to the RabbitMQ broker */
     private final com.rabbitmq.client.Connection rabbitConnection;
+    /** all the TCP connections to the RabbitMQ broker sessions are spread over, {@link #rabbitConnection} first */
+    private final List<com.rabbitmq.client.Connection> rabbitConnections;
+    /** how sessions are assigned to the {@link #rabbitConnections} */
+    private final ConnectionShardAssignment connectionShardAssignment;
+    /** number of open sessions on each of the {@link #rabbitConnections} */
+    private final AtomicIntegerArray sessionsPerShard;
+    /** next of the {@link #rabbitConnections} for {@link ConnectionShardAssignment#ROUND_ROBIN} */
+    private final AtomicInteger nextShard = new AtomicInteger();
+    /** expiry in milliseconds of the queues declared non-exclusive for the sessions on the {@link #rabbitConnections} */
+    private final long connectionShardQueueExpiry;
     /** Hard coded connection meta data returned in the call {@link #getMetaData()} call */
     private static final ConnectionMetaData connectionMetaData = new RMQConnectionMetaData();
     /** The client ID for this connection */
@@ -53,14 +93,19 @@ public class RMQConnection implements Connection, QueueConnection, TopicConnecti
     private final AtomicReference<ExceptionListener> exceptionListener = new AtomicReference<ExceptionListener>();
     /** The list of all {@link RMQSession} objects created by this connection */
     private final List<RMQSession> sessions = Collections.<RMQSession> synchronizedList(new ArrayList<RMQSession>());
+    /** The list of all {@link RMQConnectionConsumer} objects created by this connection */
+    private final List<RMQConnectionConsumer> connectionConsumers = Collections.<RMQConnectionConsumer> synchronizedList(new ArrayList<RMQConnectionConsumer>());
     /** value to see if this connection has been closed */
     private volatile boolean closed = false;
     /** atomic flag to pause and unpause the connection consumers (see {@link #start()} and {@link #stop()} methods) */
     private final AtomicBoolean stopped = new AtomicBoolean(true);
 
-    /** maximum time (in ms) to wait for close() to complete */
+    /** maximum time (in ms) to wait for close() to complete, 0 or less for no limit */
     private final long terminationTimeout;
 
+    /** how the closing of this connection went, <code>null</code> until it is closed */
+    private volatile ConnectionShutdownReport shutdownReport;
+
     /** max number of messages to read from a browsed queue */
     private final int queueBrowserReadMax;
 
@@ -144,19 +189,116 @@ public class RMQConnection implements Connection, QueueConnection, TopicConnecti
      */
     private final List<String> trustedPackages;
 
+    /**
+     * Whether non-durable topic subscribers with a selector share
+     * one AMQP subscription per topic, with selectors evaluated in the client.
+     *
+     * @since 2.3.0
+     */
+    private final boolean topicSelectorDemultiplexing;
+
+    /**
+     * Codec to compress outbound message bodies with.
+     *
+     * @since 2.3.0
+     */
+    private final BodyCodec bodyCodec;
+
+    /**
+     * Minimum size in bytes of the outbound message bodies to compress,
+     * negative to not compress them.
+     *
+     * @since 2.3.0
+     */
+    private final int bodyCompressionThreshold;
+
+    /**
+     * Serializer of the objects of outbound object messages,
+     * Java serialization if <code>null</code>.
+     *
+     * @since 2.3.0
+     */
+    private final ObjectMessageSerializer objectMessageSerializer;
+
+    /**
+     * Maximum size in bytes of decompressed inbound message bodies.
+     *
+     * @since 2.3.0
+     */
+    private final int maxDecompressedBodySize;
+
+    /**
+     * Whether map messages are sent in the compact encoding,
+     * rather than in the legacy encoding older clients can read.
+     *
+     * @since 2.3.0
+     */
+    private final boolean mapMessageCompactFormat;
+
+    /**
+     * Whether stream messages are sent in the compact encoding,
+     * rather than in the legacy encoding older clients can read.
+     *
+     * @since 2.3.0
+     */
+    private final boolean streamMessageCompactFormat;
+
+    /**
+     * Collector of JMS-level metrics.
+     *
+     * @since 2.3.0
+     */
+    private final JmsMetricsCollector jmsMetricsCollector;
+
+    /**
+     * Whether {@link #stop()} keeps the subscriptions of message listeners,
+     * holding their deliveries until {@link #start()}.
+     *
+     * @since 2.3.0
+     */
+    private final boolean keepSubscriptionsOnStop;
+
+    /**
+     * Factory of the threads calling message listeners, virtual threads if enabled and supported,
+     * <code>null</code> for platform threads.
+     *
+     * @since 2.3.0
+     */
+    private final ThreadFactory deliveryThreadFactory;
+
+    /** The shared selector subscriptions, by topic, when {@link #topicSelectorDemultiplexing} is enabled */
+    private final Map<RMQDestination, TopicSelectorDemultiplexer> topicSelectorDemultiplexers = new ConcurrentHashMap<RMQDestination, TopicSelectorDemultiplexer>();
+
+    /**
+     * The channels {@link QueueBrowser}s of this connection browse with.
+     *
+     * @since 2.3.0
+     */
+    private final BrowsingChannelPool browsingChannelPool;
+    /** Queues declared non-exclusive for the sessions on the shards of this connection, to delete on close */
+    private final Set<String> queuesToDeleteOnClose = ConcurrentHashMap.newKeySet();
+
     /**
      * Creates an RMQConnection object.
      * @param connectionParams parameters for this connection
      */
     public RMQConnection(ConnectionParams connectionParams) {
 
-        connectionParams.getRabbitConnection().addShutdownListener(new RMQConnectionShutdownListener());
+        this.rabbitConnections = new ArrayList<com.rabbitmq.client.Connection>(connectionParams.getRabbitConnections());
+        for (com.rabbitmq.client.Connection connection : this.rabbitConnections) {
+            connection.addShutdownListener(new RMQConnectionShutdownListener());
+        }
 
-        this.rabbitConnection = connectionParams.getRabbitConnection();
+        this.rabbitConnection = this.rabbitConnections.get(0);
+        this.connectionShardAssignment = connectionParams.getConnectionShardAssignment() == null ?
+            ConnectionShardAssignment.ROUND_ROBIN : connectionParams.getConnectionShardAssignment();
+        this.sessionsPerShard = new AtomicIntegerArray(this.rabbitConnections.size());
+        this.connectionShardQueueExpiry = connectionParams.getConnectionShardQueueExpiry();
         this.terminationTimeout = connectionParams.getTerminationTimeout();
         this.queueBrowserReadMax = connectionParams.getQueueBrowserReadMax();
         this.onMessageTimeoutMs = connectionParams.getOnMessageTimeoutMs();
-        this.channelsQos = connectionParams.getChannelsQos();
+        this.channelsQos = connectionParams.isKeepSubscriptionsOnStop() && connectionParams.getChannelsQos() == NO_CHANNEL_QOS ?
+            KEEP_SUBSCRIPTIONS_ON_STOP_DEFAULT_QOS : connectionParams.getChannelsQos();
         this.preferProducerMessageProperty = connectionParams.willPreferProducerMessageProperty();
         this.requeueOnMessageListenerException = connectionParams.willRequeueOnMessageListenerException();
         this.nackOnRollback = connectionParams.willNackOnRollback();
@@ -166,6 +308,18 @@ public class RMQConnection implements Connection, QueueConnection, TopicConnecti
         this.receivingContextConsumer = connectionParams.getReceivingContextConsumer();
         this.confirmListener = connectionParams.getConfirmListener();
         this.trustedPackages = connectionParams.getTrustedPackages();
+        this.topicSelectorDemultiplexing = connectionParams.isTopicSelectorDemultiplexing();
+        this.keepSubscriptionsOnStop = connectionParams.isKeepSubscriptionsOnStop();
+        this.deliveryThreadFactory = deliveryThreadFactory(connectionParams.isDeliverOnVirtualThreads());
+        this.bodyCodec = connectionParams.getBodyCodec();
+        this.bodyCompressionThreshold = connectionParams.getBodyCompressionThreshold();
+        this.objectMessageSerializer = connectionParams.getObjectMessageSerializer();
+        this.maxDecompressedBodySize = connectionParams.getMaxDecompressedBodySize();
+        this.mapMessageCompactFormat = connectionParams.isMapMessageCompactFormat();
+        this.streamMessageCompactFormat = connectionParams.isStreamMessageCompactFormat();
+        this.jmsMetricsCollector = connectionParams.getJmsMetricsCollector() == null ?
+            JmsMetricsCollector.NO_OP : connectionParams.getJmsMetricsCollector();
+        this.browsingChannelPool = new BrowsingChannelPool(this, connectionParams.getQueueBrowserChannelPoolSize());
     }
 
     /**
@@ -205,26 +359,75 @@ public class RMQConnection implements Connection, QueueConnection, TopicConnecti
         logger.trace("transacted={}, acknowledgeMode={}", transacted, acknowledgeMode);
         illegalStateExceptionIfClosed();
         freezeClientID();
-        RMQSession session = new RMQSession(new SessionParams()
-            .setConnection(this)
-            .setTransacted(transacted)
-            .setOnMessageTimeoutMs(onMessageTimeoutMs)
-            .setMode(acknowledgeMode)
-            .setSubscriptions(this.subscriptions)
-            .setPreferProducerMessageProperty(this.preferProducerMessageProperty)
-            .setRequeueOnMessageListenerException(this.requeueOnMessageListenerException)
-            .setNackOnRollback(this.nackOnRollback)
-            .setCleanUpServerNamedQueuesForNonDurableTopics(this.cleanUpServerNamedQueuesForNonDurableTopicsOnSessionClose)
-            .setAmqpPropertiesCustomiser(this.amqpPropertiesCustomiser)
-            .setSendingContextConsumer(this.sendingContextConsumer)
-            .setReceivingContextConsumer(this.receivingContextConsumer)
-            .setConfirmListener(this.confirmListener)
-            .setTrustedPackages(this.trustedPackages)
-        );
+        int shard = assignShard();
+        RMQSession session;
+        try {
+            session = new RMQSession(new SessionParams()
+                .setConnection(this)
+                .setConnectionShard(shard)
+                .setTransacted(transacted)
+                .setOnMessageTimeoutMs(onMessageTimeoutMs)
+                .setMode(acknowledgeMode)
+                .setSubscriptions(this.subscriptions)
+                .setPreferProducerMessageProperty(this.preferProducerMessageProperty)
+                .setRequeueOnMessageListenerException(this.requeueOnMessageListenerException)
+                .setNackOnRollback(this.nackOnRollback)
+                .setCleanUpServerNamedQueuesForNonDurableTopics(this.cleanUpServerNamedQueuesForNonDurableTopicsOnSessionClose)
+                .setAmqpPropertiesCustomiser(this.amqpPropertiesCustomiser)
+                .setSendingContextConsumer(this.sendingContextConsumer)
+                .setReceivingContextConsumer(this.receivingContextConsumer)
+                .setConfirmListener(this.confirmListener)
+                .setTrustedPackages(this.trustedPackages)
+                .setBodyCodec(this.bodyCodec)
+                .setBodyCompressionThreshold(this.bodyCompressionThreshold)
+                .setObjectMessageSerializer(this.objectMessageSerializer)
+                .setMaxDecompressedBodySize(this.maxDecompressedBodySize)
+                .setMapMessageCompactFormat(this.mapMessageCompactFormat)
+                .setStreamMessageCompactFormat(this.streamMessageCompactFormat)
+                .setJmsMetricsCollector(this.jmsMetricsCollector)
+                .setDeliveryThreadFactory(this.deliveryThreadFactory)
+            );
+        } catch (JMSException | RuntimeException e) {
+            this.sessionsPerShard.decrementAndGet(shard);
+            throw e;
+        }
         this.sessions.add(session);
         return session;
     }
 
+    /**
+     * Picks the AMQP connection of a new session, preferring open ones, and counts the session on it.
+     * @return the index of the connection in {@link #rabbitConnections}
+     */
+    private int assignShard() {
+        int shards = this.rabbitConnections.size();
+        int shard = 0;
+        if (shards > 1) {
+            int first = this.connectionShardAssignment == ConnectionShardAssignment.ROUND_ROBIN ?
+                Math.floorMod(this.nextShard.getAndIncrement(), shards) : 0;
+            shard = -1;
+            for (int i = 0; i < shards; i++) {
+                int candidate = (first + i) % shards;
+                if (!this.rabbitConnections.get(candidate).isOpen()) {
+                    continue;
+                }
+                if (shard == -1) {
+                    shard = candidate;
+                    if (this.connectionShardAssignment == ConnectionShardAssignment.ROUND_ROBIN) {
+                        break;
+                    }
+                } else if (this.sessionsPerShard.get(candidate) < this.sessionsPerShard.get(shard)) {
+                    shard = candidate;
+                }
+            }
+            if (shard == -1) { // none open, channel creation reports it
+                shard = first;
+            }
+        }
+        this.sessionsPerShard.incrementAndGet(shard);
+        return shard;
+    }
+
     private void freezeClientID() {
         this.canSetClientID = false;
     }
@@ -321,8 +524,10 @@ public class RMQConnection implements Connection, QueueConnection, TopicConnecti
         illegalStateExceptionIfClosed();
         freezeClientID();
         if (stopped.compareAndSet(false, true)) {
+            TimeTracker deadline = this.terminationTimeout > 0 ?
+                new TimeTracker(this.terminationTimeout, TimeUnit.MILLISECONDS) : new TimeTracker();
             for (RMQSession session : this.sessions) {
-                session.pause();
+                session.pause(deadline);
             }
         }
     }
@@ -355,17 +560,49 @@ public class RMQConnection implements Connection, QueueConnection, TopicConnecti
         // We null any exception listener since we don't want it driven during close().
         this.exceptionListener.set(null);
 
-        closeAllSessions();
-
-        try {
-            this.rabbitConnection.close();
-        } catch (ShutdownSignalException x) {
-            //nothing to do
-        } catch (IOException x) {
-            if (!(x.getCause() instanceof ShutdownSignalException)) {
-                throw new RMQJMSException(x);
+        long start = System.nanoTime();
+        // their sessions are closed with the others
+        for (RMQConnectionConsumer connectionConsumer : new ArrayList<RMQConnectionConsumer>(this.connectionConsumers)) {
+            connectionConsumer.stopDispatch();
+        }
+        this.connectionConsumers.clear();
+        SessionsShutdown sessionsShutdown = closeAllSessions();
+        this.browsingChannelPool.close();
+        this.deleteQueuesOnClose();
+        long sessionsClosed = System.nanoTime();
+
+        RMQJMSException closeException = null;
+        for (com.rabbitmq.client.Connection connection : this.rabbitConnections) {
+            try {
+                connection.close();
+            } catch (ShutdownSignalException x) {
+                //nothing to do
+            } catch (IOException x) {
+                if (!(x.getCause() instanceof ShutdownSignalException) && closeException == null) {
+                    closeException = new RMQJMSException(x);
+                }
             }
         }
+        ConnectionShutdownReport report = new ConnectionShutdownReport(sessionsShutdown.getClosed() + sessionsShutdown.getFailed()
+            + sessionsShutdown.getUnfinished(), sessionsShutdown.getClosed(), sessionsShutdown.getFailed(),
+            sessionsShutdown.getUnfinished(), sessionsClosed - start, System.nanoTime() - sessionsClosed);
+        this.shutdownReport = report;
+        if (report.getUnfinishedSessions() > 0) {
+            logger.warn("connection ({}) closed with sessions still closing after {} ms: {}", this, this.terminationTimeout, report);
+        } else {
+            logger.debug("connection ({}) closed: {}", this, report);
+        }
+        if (closeException != null) {
+            throw closeException;
+        }
+    }
+
+    /**
+     * @return how the closing of this connection went, <code>null</code> if it is not closed
+     * @since 2.3.0
+     */
+    public ConnectionShutdownReport getShutdownReport() {
+        return this.shutdownReport;
     }
 
     private void removeClientID() throws JMSException {
@@ -374,35 +611,99 @@ public class RMQConnection implements Connection, QueueConnection, TopicConnecti
             CLIENT_IDS.remove(cID);
     }
 
-    private void closeAllSessions() {
-        for (RMQSession session : this.sessions) {
+    /**
+     * Registers a queue to delete when this connection closes, which the broker would delete if it was exclusive.
+     */
+    void deleteQueueOnClose(String queueName) {
+        this.queuesToDeleteOnClose.add(queueName);
+    }
+
+    /**
+     * Unregisters a queue registered with {@link #deleteQueueOnClose(String)}, which has been deleted already.
+     */
+    void queueDeleted(String queueName) {
+        this.queuesToDeleteOnClose.remove(queueName);
+    }
+
+    /**
+     * @return the expiry in milliseconds of the queues registered with {@link #deleteQueueOnClose(String)}
+     */
+    long getConnectionShardQueueExpiry() {
+        return this.connectionShardQueueExpiry;
+    }
+
+    private void deleteQueuesOnClose() {
+        if (this.queuesToDeleteOnClose.isEmpty()) {
+            return;
+        }
+        Channel channel = null;
+        for (String queueName : this.queuesToDeleteOnClose) {
             try {
-                session.internalClose();
-            } catch (Exception e) {
-                if (e instanceof ShutdownSignalException) {
-                    // do nothing
-                } else {
-                    logger.error("exception closing session ({})", session, e);
+                if (channel == null || !channel.isOpen()) { // a failed delete closes the channel
+                    channel = this.rabbitConnection.createChannel();
                 }
+                channel.queueDelete(queueName);
+            } catch (Exception e) {
+                logger.warn("connection ({}) could not delete queue '{}', it expires after {} ms without use", this, queueName,
+                    this.connectionShardQueueExpiry, e);
             }
         }
+        this.queuesToDeleteOnClose.clear();
+    }
+
+    /**
+     * Closes the sessions in parallel, within the termination timeout.
+     */
+    private SessionsShutdown closeAllSessions() {
+        List<RMQSession> toClose;
+        synchronized (this.sessions) {
+            toClose = new ArrayList<RMQSession>(this.sessions);
+        }
+        TimeTracker deadline = this.terminationTimeout > 0 ?
+            new TimeTracker(this.terminationTimeout, TimeUnit.MILLISECONDS) : new TimeTracker();
+        SessionsShutdown shutdown = new SessionsShutdown(toClose, deadline);
+        shutdown.run();
         this.sessions.clear();
+        return shutdown;
     }
 
     Channel createRabbitChannel(boolean transactional) throws IOException {
-        Channel channel = this.rabbitConnection.createChannel();
-        if(this.channelsQos != NO_CHANNEL_QOS) {
-            channel.basicQos(channelsQos);
-        }
-        if (transactional) {
-            channel.txSelect();
-        }
-        if (this.confirmListener != null) {
-            channel.confirmSelect();
+        return createRabbitChannel(transactional, 0);
+    }
+
+    /**
+     * @param shard index of the AMQP connection to create the channel on
+     */
+    Channel createRabbitChannel(boolean transactional, int shard) throws IOException {
+        Channel channel = this.rabbitConnections.get(shard).createChannel();
+        try {
+            if(this.channelsQos != NO_CHANNEL_QOS) {
+                channel.basicQos(channelsQos);
+            }
+            if (transactional) {
+                channel.txSelect();
+            }
+            if (this.confirmListener != null) {
+                channel.confirmSelect();
+            }
+        } catch (IOException | RuntimeException x) {
+            abortChannel(channel);
+            throw x;
         }
         return channel;
     }
 
+    /**
+     * Aborts a channel which is not used, e.g. because it could not be set up, ignoring any failure.
+     */
+    static void abortChannel(Channel channel) {
+        try {
+            channel.abort();
+        } catch (Exception x) {
+            // ignore any failures, the channel is not used any more
+        }
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -412,12 +713,13 @@ public class RMQConnection implements Connection, QueueConnection, TopicConnecti
     }
 
     /**
-     * @throws UnsupportedOperationException - optional method not implemented
+     * {@inheritDoc}
+     * @see #createConnectionConsumer(Destination, String, ServerSessionPool, int)
      */
     @Override
     public ConnectionConsumer
             createConnectionConsumer(Topic topic, String messageSelector, ServerSessionPool sessionPool, int maxMessages) throws JMSException {
-        throw new UnsupportedOperationException();
+        return this.createConnectionConsumer((Destination) topic, messageSelector, sessionPool, maxMessages);
     }
 
     /**
@@ -429,29 +731,47 @@ public class RMQConnection implements Connection, QueueConnection, TopicConnecti
     }
 
     /**
-     * @throws UnsupportedOperationException - optional method not implemented
+     * {@inheritDoc}
+     * @see #createConnectionConsumer(Destination, String, ServerSessionPool, int)
      */
     @Override
     public ConnectionConsumer createConnectionConsumer(Queue queue,
                                                        String messageSelector,
                                                        ServerSessionPool sessionPool,
                                                        int maxMessages) throws JMSException {
-        throw new UnsupportedOperationException();
+        return this.createConnectionConsumer((Destination) queue, messageSelector, sessionPool, maxMessages);
     }
 
     /**
-     * @throws UnsupportedOperationException - optional method not implemented
+     * {@inheritDoc}
+     * <p>
+     * The connection consumer has a session of its own, which consumes the destination and acknowledges
+     * the messages once the listeners of the server sessions return. The sessions of the server sessions must
+     * be created by this client, see {@link RMQServerSessionPool} for a pool to use outside of an application server.
+     * Message selectors are supported on topics only.
+     * </p>
+     * @throws IllegalArgumentException if maxMessages is less than 1
+     * @see RMQSession#run()
      */
     @Override
     public ConnectionConsumer createConnectionConsumer(Destination destination,
                                                        String messageSelector,
                                                        ServerSessionPool sessionPool,
                                                        int maxMessages) throws JMSException {
-        throw new UnsupportedOperationException();
+        illegalStateExceptionIfClosed();
+        RMQSession session = this.createConnectionConsumerSession(maxMessages);
+        try {
+            return this.startConnectionConsumer(session,
+                (RMQMessageConsumer) session.createConsumer(destination, messageSelector), sessionPool, maxMessages);
+        } catch (JMSException | RuntimeException e) {
+            session.close();
+            throw e;
+        }
     }
 
     /**
-     * @throws UnsupportedOperationException - optional method not implemented
+     * {@inheritDoc}
+     * @see #createConnectionConsumer(Destination, String, ServerSessionPool, int)
      */
     @Override
     public ConnectionConsumer createDurableConnectionConsumer(Topic topic,
@@ -459,11 +779,48 @@ public class RMQConnection implements Connection, QueueConnection, TopicConnecti
                                                               String messageSelector,
                                                               ServerSessionPool sessionPool,
                                                               int maxMessages) throws JMSException {
-        throw new UnsupportedOperationException();
+        illegalStateExceptionIfClosed();
+        RMQSession session = this.createConnectionConsumerSession(maxMessages);
+        try {
+            return this.startConnectionConsumer(session,
+                (RMQMessageConsumer) session.createDurableSubscriber(topic, subscriptionName, messageSelector, false), sessionPool, maxMessages);
+        } catch (JMSException | RuntimeException e) {
+            session.close();
+            throw e;
+        }
+    }
+
+    private RMQSession createConnectionConsumerSession(int maxMessages) throws JMSException {
+        if (maxMessages < 1) {
+            throw new IllegalArgumentException("maxMessages must be at least 1: " + maxMessages);
+        }
+        return (RMQSession) this.createSession(false, RMQSession.CLIENT_INDIVIDUAL_ACKNOWLEDGE);
+    }
+
+    private RMQConnectionConsumer startConnectionConsumer(RMQSession session, RMQMessageConsumer consumer,
+                                                          ServerSessionPool sessionPool, int maxMessages) throws JMSException {
+        RMQConnectionConsumer connectionConsumer = new RMQConnectionConsumer(this, session, consumer, sessionPool, maxMessages);
+        this.connectionConsumers.add(connectionConsumer);
+        try {
+            connectionConsumer.start();
+        } catch (JMSException | RuntimeException e) {
+            connectionConsumer.stopDispatch();
+            this.connectionConsumers.remove(connectionConsumer);
+            throw e;
+        }
+        return connectionConsumer;
     }
 
     /* Internal methods. */
 
+    /**
+     * Called by {@link RMQConnectionConsumer#close()}, which closes its session afterwards.
+     * @param connectionConsumer the connection consumer that is being closed
+     */
+    void connectionConsumerClose(RMQConnectionConsumer connectionConsumer) {
+        this.connectionConsumers.remove(connectionConsumer);
+    }
+
     /** A connection must track all sessions that are created,
      * but when we call {@link RMQSession#close()} we must unregister this
      * session with the connection.
@@ -474,6 +831,7 @@ public class RMQConnection implements Connection, QueueConnection, TopicConnecti
     void sessionClose(RMQSession session) throws JMSException {
         logger.trace("internal:sessionClose({})", session);
         if (this.sessions.remove(session)) {
+            this.sessionsPerShard.decrementAndGet(session.getConnectionShard());
             session.internalClose();
         }
     }
@@ -482,10 +840,90 @@ public class RMQConnection implements Connection, QueueConnection, TopicConnecti
         return this.terminationTimeout;
     }
 
+    boolean isTopicSelectorDemultiplexing() {
+        return this.topicSelectorDemultiplexing;
+    }
+
+    boolean isKeepSubscriptionsOnStop() {
+        return this.keepSubscriptionsOnStop;
+    }
+
+    private ThreadFactory deliveryThreadFactory(boolean deliverOnVirtualThreads) {
+        if (!deliverOnVirtualThreads) {
+            return null;
+        }
+        ThreadFactory threadFactory = VirtualThreads.threadFactory("rabbitmq-jms-delivery-");
+        if (threadFactory == null) {
+            logger.warn("Virtual threads are not supported by this JVM, message listeners are called on platform threads");
+        }
+        return threadFactory;
+    }
+
+    JmsMetricsCollector getJmsMetricsCollector() {
+        return this.jmsMetricsCollector;
+    }
+
+    /**
+     * Adds a subscriber to the demultiplexer shared by the selector subscribers of a topic on this connection.
+     * @param topic the topic subscribed to
+     * @param evaluator the selector of the subscriber
+     * @return the subscription
+     * @throws IOException if the shared subscription cannot be created
+     */
+    TopicSelectorDemultiplexer.Subscription subscribeToTopicSelectorDemultiplexer(RMQDestination topic, SqlEvaluator evaluator) throws IOException {
+        TopicSelectorDemultiplexer.Subscription subscription = null;
+        while (subscription == null) { // null if the demultiplexer lost its last subscriber meanwhile
+            subscription = this.topicSelectorDemultiplexers.computeIfAbsent(topic, t -> new TopicSelectorDemultiplexer(this, t))
+                .subscribe(evaluator);
+        }
+        return subscription;
+    }
+
+    /**
+     * Called by a demultiplexer when its last subscriber leaves.
+     */
+    void removeTopicSelectorDemultiplexer(RMQDestination topic, TopicSelectorDemultiplexer demultiplexer) {
+        this.topicSelectorDemultiplexers.remove(topic, demultiplexer);
+    }
+
+    int getChannelsQos() {
+        return this.channelsQos;
+    }
+
+    BrowsingChannelPool getBrowsingChannelPool() {
+        return this.browsingChannelPool;
+    }
+
+    /**
+     * @return a snapshot of the usage of the channels the {@link QueueBrowser}s of this connection browse with
+     * @since 2.3.0
+     */
+    public BrowsingChannelPoolStatistics getBrowsingChannelPoolStatistics() {
+        return this.browsingChannelPool.statistics();
+    }
+
+    /**
+     * @return the number of AMQP connections the sessions of this connection are spread over
+     * @since 2.3.0
+     */
+    public int getConnectionShardCount() {
+        return this.rabbitConnections.size();
+    }
+
+    /**
+     * @param shard index of an AMQP connection, between <code>0</code> and {@link #getConnectionShardCount()} excluded
+     * @return the number of open sessions on that AMQP connection
+     * @since 2.3.0
+     */
+    public int getSessionCount(int shard) {
+        return this.sessionsPerShard.get(shard);
+    }
+
     @Override
     public String toString() {
         return new StringBuilder("RMQConnection{")
                 .append("rabbitConnection=").append(this.rabbitConnection)
+                .append(", connectionShards=").append(this.rabbitConnections.size())
                 .append(", stopped=").append(this.stopped.get())
                 .append(", queueBrowserReadMax=").append(this.queueBrowserReadMax)
                 .append('}').toString();
@@ -0,0 +1,163 @@
+// This Source Code Form is subject to the terms of the Mozilla Public
+// License, v. 2.0. If a copy of the MPL was not distributed with this
+// file, You can obtain one at https://mozilla.org/MPL/2.0/.
+//
+// Copyright (c) 2020 VMware, Inc. or its affiliates. All rights reserved.
+package com.rabbitmq.jms.client;
+
+import com.rabbitmq.jms.util.RMQJMSException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.jms.ConnectionConsumer;
+import javax.jms.IllegalStateException;
+import javax.jms.JMSException;
+import javax.jms.ServerSession;
+import javax.jms.ServerSessionPool;
+import javax.jms.Session;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The implementation of {@link ConnectionConsumer} in the RabbitMQ JMS Client.
+ * <p>
+ * A connection consumer subscribes to its destination with a {@link RMQMessageConsumer} of its own session,
+ * which acknowledges messages individually. A dispatching thread takes the messages as they arrive, up to
+ * <code>maxMessages</code> at a time, loads them into a {@link ServerSession} of the {@link ServerSessionPool}
+ * and starts it: the server session then passes the messages to the listener of its session with
+ * {@link RMQSession#run()}, which acknowledges them.
+ * </p>
+ * <p>
+ * The messages received and not yet passed to a server session are held in memory: set the
+ * channels QoS of the connection to bound them.
+ * </p>
+ *
+ * @since 2.3.0
+ */
+public class RMQConnectionConsumer implements ConnectionConsumer {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RMQConnectionConsumer.class);
+
+    private static final AtomicInteger DISPATCHER_COUNT = new AtomicInteger();
+
+    private final RMQConnection connection;
+    /** The session of the {@link #consumer}, its messages are acknowledged on its channel */
+    private final RMQSession session;
+    private final RMQMessageConsumer consumer;
+    private final ServerSessionPool serverSessionPool;
+    private final int maxMessages;
+    /** The messages received and not yet loaded into a server session */
+    private final BlockingQueue<RMQMessage> messages = new LinkedBlockingQueue<RMQMessage>();
+    private final Thread dispatcher;
+    private volatile boolean closed = false;
+
+    /**
+     * @param connection the connection this connection consumer belongs to
+     * @param session the session of the consumer, in {@link RMQSession#CLIENT_INDIVIDUAL_ACKNOWLEDGE} mode
+     * @param consumer the consumer of the destination, without message listener
+     * @param serverSessionPool where to get the server sessions to pass the messages to
+     * @param maxMessages the maximum number of messages loaded into a server session at once
+     */
+    RMQConnectionConsumer(RMQConnection connection, RMQSession session, RMQMessageConsumer consumer,
+                          ServerSessionPool serverSessionPool, int maxMessages) {
+        this.connection = connection;
+        this.session = session;
+        this.consumer = consumer;
+        this.serverSessionPool = serverSessionPool;
+        this.maxMessages = maxMessages;
+        this.dispatcher = new Thread(this::dispatch, "rabbitmq-jms-connection-consumer-" + DISPATCHER_COUNT.incrementAndGet());
+        this.dispatcher.setDaemon(true);
+    }
+
+    void start() throws JMSException {
+        this.dispatcher.start();
+        this.consumer.setMessageListener(message -> this.messages.add((RMQMessage) message));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ServerSessionPool getServerSessionPool() throws JMSException {
+        if (this.closed) {
+            throw new IllegalStateException("Connection consumer is closed");
+        }
+        return this.serverSessionPool;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The messages received and not yet loaded into a server session are requeued.
+     * </p>
+     */
+    @Override
+    public void close() throws JMSException {
+        if (this.closed) return;
+        this.stopDispatch();
+        this.connection.connectionConsumerClose(this);
+        this.session.close();
+    }
+
+    /**
+     * Stops the dispatching thread, waiting for it to load the messages it has in hand, if any.
+     * The session is closed by the caller.
+     */
+    void stopDispatch() {
+        this.closed = true;
+        this.dispatcher.interrupt();
+        try {
+            this.dispatcher.join(TimeUnit.SECONDS.toMillis(1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void dispatch() {
+        List<RMQMessage> batch = new ArrayList<RMQMessage>(this.maxMessages);
+        while (!this.closed) {
+            try {
+                batch.add(this.messages.take());
+                this.messages.drainTo(batch, this.maxMessages - 1);
+                ServerSession serverSession = this.serverSessionPool.getServerSession();
+                loadInto(serverSession, batch);
+                batch.clear(); // the server session now requeues them if it closes before running
+                serverSession.start();
+            } catch (InterruptedException e) {
+                break;
+            } catch (JMSException | RuntimeException e) {
+                if (!this.closed) {
+                    LOGGER.error("Cannot pass {} message(s) to a server session of connection consumer {}", batch.size(), this, e);
+                }
+                requeue(batch);
+            } finally {
+                batch.clear();
+            }
+        }
+        // the messages left are requeued when the channel of the session closes
+    }
+
+    private static void loadInto(ServerSession serverSession, List<RMQMessage> batch) throws JMSException {
+        Session session = serverSession.getSession();
+        if (!(session instanceof RMQSession)) {
+            throw new RMQJMSException("Server session must have a session of this client, not " + session, null);
+        }
+        ((RMQSession) session).loadMessages(batch);
+    }
+
+    private void requeue(List<RMQMessage> batch) {
+        for (RMQMessage message : batch) {
+            this.session.requeueLoadedMessage(message);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "RMQConnectionConsumer{destination=" + this.consumer.getDestination()
+            + ", maxMessages=" + this.maxMessages + '}';
+    }
+}
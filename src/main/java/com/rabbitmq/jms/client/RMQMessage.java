@@ -9,14 +9,17 @@ import com.rabbitmq.client.BasicProperties;
 import com.rabbitmq.client.Channel;
 import com.rabbitmq.client.Consumer;
 import com.rabbitmq.client.GetResponse;
+import com.rabbitmq.client.LongString;
 import com.rabbitmq.jms.admin.RMQDestination;
 import com.rabbitmq.jms.client.message.RMQBytesMessage;
 import com.rabbitmq.jms.client.message.RMQMapMessage;
 import com.rabbitmq.jms.client.message.RMQObjectMessage;
 import com.rabbitmq.jms.client.message.RMQStreamMessage;
 import com.rabbitmq.jms.client.message.RMQTextMessage;
+import com.rabbitmq.jms.parse.Environment;
 import com.rabbitmq.jms.util.HexDisplay;
 import com.rabbitmq.jms.util.IteratorEnum;
+import com.rabbitmq.jms.util.RMQByteArrayOutputStream;
 import com.rabbitmq.jms.util.RMQJMSException;
 import com.rabbitmq.jms.util.Util;
 import com.rabbitmq.jms.util.WhiteListObjectInputStream;
@@ -43,6 +46,7 @@ import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.util.Date;
 import java.util.Enumeration;
@@ -121,10 +125,15 @@ public abstract class RMQMessage implements Message, Cloneable {
      */
     private static final Charset CHARSET = Charset.forName("UTF-8");
 
+    /** Property names of received messages, shared across messages */
+    private static final Utf8SymbolTable<String> PROPERTY_NAMES = Utf8SymbolTable.interner(1024);
+    /** Factories of received messages, by class name */
+    private static final Utf8SymbolTable<MessageFactory> MESSAGE_FACTORIES = new Utf8SymbolTable<MessageFactory>(16, RMQMessage::messageFactory);
+
     /** Here we store the JMS_ properties that would have been fields */
-    private final Map<String, Serializable> rmqProperties = new HashMap<String, Serializable>();
+    private final PropertyMap rmqProperties = new PropertyMap();
     /** Here we store the user’s custom JMS properties */
-    private final Map<String, Serializable> userJmsProperties = new HashMap<String, Serializable>();
+    private final PropertyMap userJmsProperties = new PropertyMap();
     /**
      * We generate a unique message ID each time we send a message
      * It is stored here. This is also used for
@@ -246,11 +255,10 @@ public abstract class RMQMessage implements Message, Cloneable {
      */
     @Override
     public long getJMSTimestamp() throws JMSException {
-        Object timestamp = this.getObjectProperty(JMS_MESSAGE_TIMESTAMP);
-        if (timestamp == null) {
-            return 0L;
+        if (this.rmqProperties.contains(JMS_MESSAGE_TIMESTAMP)) {
+            return this.getLongProperty(JMS_MESSAGE_TIMESTAMP);
         } else {
-            return convertToLong(timestamp);
+            return 0L;
         }
     }
 
@@ -425,7 +433,7 @@ public abstract class RMQMessage implements Message, Cloneable {
      */
     @Override
     public boolean propertyExists(String name) throws JMSException {
-        return this.userJmsProperties.containsKey(name) || this.rmqProperties.containsKey(name);
+        return this.userJmsProperties.contains(name) || this.rmqProperties.contains(name);
     }
 
     /**
@@ -433,14 +441,17 @@ public abstract class RMQMessage implements Message, Cloneable {
      */
     @Override
     public boolean getBooleanProperty(String name) throws JMSException {
-        Object o = this.getObjectProperty(name);
-        if (o == null) {
+        PropertyMap properties = this.propertiesOf(name);
+        int position = properties.position(name);
+        if (position < 0) {
             //default value for null is false
             return false;
-        } else if (o instanceof String) {
+        } else if (properties.tag(position) == PropertyMap.BOOLEAN) {
+            return properties.bits(position) != 0;
+        }
+        Object o = properties.get(position);
+        if (o instanceof String) {
             return Boolean.parseBoolean((String) o);
-        } else if (o instanceof Boolean) {
-            return (Boolean) o;
         } else {
             throw new MessageFormatException(String.format("Unable to convert from class [%s]", o.getClass().getName()));
         }
@@ -451,15 +462,13 @@ public abstract class RMQMessage implements Message, Cloneable {
      */
     @Override
     public byte getByteProperty(String name) throws JMSException {
-        Object o = this.getObjectProperty(name);
-        if (o == null)
+        PropertyMap properties = this.propertiesOf(name);
+        int position = properties.position(name);
+        if (position < 0)
             throw new NumberFormatException("Null is not a valid byte");
-        else if (o instanceof String) {
-            return Byte.parseByte((String) o);
-        } else if (o instanceof Byte) {
-            return (Byte) o;
-        } else
-            throw new MessageFormatException(String.format("Unable to convert from class [%s]", o.getClass().getName()));
+        else if (properties.tag(position) == PropertyMap.BYTE)
+            return (byte) properties.bits(position);
+        return Byte.parseByte(stringValue(properties, position));
     }
 
     /**
@@ -467,17 +476,17 @@ public abstract class RMQMessage implements Message, Cloneable {
      */
     @Override
     public short getShortProperty(String name) throws JMSException {
-        Object o = this.getObjectProperty(name);
-        if (o == null)
+        PropertyMap properties = this.propertiesOf(name);
+        int position = properties.position(name);
+        if (position < 0)
             throw new NumberFormatException("Null is not a valid short");
-        else if (o instanceof String) {
-            return Short.parseShort((String) o);
-        } else if (o instanceof Byte) {
-            return (Byte) o;
-        } else if (o instanceof Short) {
-            return (Short) o;
-        } else
-            throw new MessageFormatException(String.format("Unable to convert from class [%s]", o.getClass().getName()));
+        switch (properties.tag(position)) {
+        case PropertyMap.BYTE:
+        case PropertyMap.SHORT:
+            return (short) properties.bits(position);
+        default:
+            return Short.parseShort(stringValue(properties, position));
+        }
     }
 
     /**
@@ -485,19 +494,18 @@ public abstract class RMQMessage implements Message, Cloneable {
      */
     @Override
     public int getIntProperty(String name) throws JMSException {
-        Object o = this.getObjectProperty(name);
-        if (o == null)
+        PropertyMap properties = this.propertiesOf(name);
+        int position = properties.position(name);
+        if (position < 0)
             throw new NumberFormatException("Null is not a valid int");
-        else if (o instanceof String) {
-            return Integer.parseInt((String) o);
-        } else if (o instanceof Byte) {
-            return (Byte) o;
-        } else if (o instanceof Short) {
-            return (Short) o;
-        } else if (o instanceof Integer) {
-            return (Integer) o;
-        } else
-            throw new MessageFormatException(String.format("Unable to convert from class [%s]", o.getClass().getName()));
+        switch (properties.tag(position)) {
+        case PropertyMap.BYTE:
+        case PropertyMap.SHORT:
+        case PropertyMap.INT:
+            return (int) properties.bits(position);
+        default:
+            return Integer.parseInt(stringValue(properties, position));
+        }
     }
 
     /**
@@ -505,24 +513,19 @@ public abstract class RMQMessage implements Message, Cloneable {
      */
     @Override
     public long getLongProperty(String name) throws JMSException {
-        return convertToLong(this.getObjectProperty(name));
-    }
-
-    private static long convertToLong(Object o) throws JMSException {
-        if (o == null)
+        PropertyMap properties = this.propertiesOf(name);
+        int position = properties.position(name);
+        if (position < 0)
             throw new NumberFormatException("Null is not a valid long");
-        else if (o instanceof String) {
-            return Long.parseLong((String) o);
-        } else if (o instanceof Byte) {
-            return (Byte) o;
-        } else if (o instanceof Short) {
-            return (Short) o;
-        } else if (o instanceof Integer) {
-            return (Integer) o;
-        } else if (o instanceof Long) {
-            return (Long) o;
-        } else
-            throw new MessageFormatException(String.format("Unable to convert from class [%s]", o.getClass().getName()));
+        switch (properties.tag(position)) {
+        case PropertyMap.BYTE:
+        case PropertyMap.SHORT:
+        case PropertyMap.INT:
+        case PropertyMap.LONG:
+            return properties.bits(position);
+        default:
+            return Long.parseLong(stringValue(properties, position));
+        }
     }
 
     /**
@@ -530,15 +533,13 @@ public abstract class RMQMessage implements Message, Cloneable {
      */
     @Override
     public float getFloatProperty(String name) throws JMSException {
-        Object o = this.getObjectProperty(name);
-        if (o == null)
+        PropertyMap properties = this.propertiesOf(name);
+        int position = properties.position(name);
+        if (position < 0)
             throw new NumberFormatException("Null is not a valid float");
-        else if (o instanceof String) {
-            return Float.parseFloat((String) o);
-        } else if (o instanceof Float) {
-            return (Float) o;
-        } else
-            throw new MessageFormatException(String.format("Unable to convert from class [%s]", o.getClass().getName()));
+        else if (properties.tag(position) == PropertyMap.FLOAT)
+            return Float.intBitsToFloat((int) properties.bits(position));
+        return Float.parseFloat(stringValue(properties, position));
     }
 
     /**
@@ -546,17 +547,31 @@ public abstract class RMQMessage implements Message, Cloneable {
      */
     @Override
     public double getDoubleProperty(String name) throws JMSException {
-        Object o = this.getObjectProperty(name);
-        if (o == null)
+        PropertyMap properties = this.propertiesOf(name);
+        int position = properties.position(name);
+        if (position < 0)
             throw new NumberFormatException("Null is not a valid double");
-        else if (o instanceof String) {
-            return Double.parseDouble((String) o);
-        } else if (o instanceof Float) {
-            return (Float) o;
-        } else if (o instanceof Double) {
-            return (Double) o;
-        } else
+        switch (properties.tag(position)) {
+        case PropertyMap.FLOAT:
+            return Float.intBitsToFloat((int) properties.bits(position));
+        case PropertyMap.DOUBLE:
+            return Double.longBitsToDouble(properties.bits(position));
+        default:
+            return Double.parseDouble(stringValue(properties, position));
+        }
+    }
+
+    /**
+     * @return the value at a position, which a numeric property getter could not convert, if it is a {@link String}
+     * @throws MessageFormatException if the value is not a {@link String}
+     */
+    private static String stringValue(PropertyMap properties, int position) throws MessageFormatException {
+        Object o = properties.get(position);
+        if (o instanceof String) {
+            return (String) o;
+        } else {
             throw new MessageFormatException(String.format("Unable to convert from class [%s]", o.getClass().getName()));
+        }
     }
 
     /**
@@ -578,10 +593,11 @@ public abstract class RMQMessage implements Message, Cloneable {
      */
     @Override
     public Object getObjectProperty(String name) throws JMSException {
-        if (name.startsWith(PREFIX))
-            return this.rmqProperties.get(name);
-        else
-            return this.userJmsProperties.get(name);
+        return this.propertiesOf(name).get(name);
+    }
+
+    private PropertyMap propertiesOf(String name) {
+        return name.startsWith(PREFIX) ? this.rmqProperties : this.userJmsProperties;
     }
 
     /**
@@ -589,7 +605,7 @@ public abstract class RMQMessage implements Message, Cloneable {
      */
     @Override
     public Enumeration<?> getPropertyNames() throws JMSException {
-        return new IteratorEnum<String>(this.userJmsProperties.keySet().iterator());
+        return new IteratorEnum<String>(this.userJmsProperties.names().iterator());
     }
 
     /**
@@ -597,7 +613,7 @@ public abstract class RMQMessage implements Message, Cloneable {
      */
     @Override
     public void setBooleanProperty(String name, boolean value) throws JMSException {
-        this.setObjectProperty(name, Boolean.valueOf(value));
+        this.setPropertyBits(name, PropertyMap.BOOLEAN, value ? 1 : 0);
     }
 
     /**
@@ -605,7 +621,7 @@ public abstract class RMQMessage implements Message, Cloneable {
      */
     @Override
     public void setByteProperty(String name, byte value) throws JMSException {
-        this.setObjectProperty(name, value);
+        this.setPropertyBits(name, PropertyMap.BYTE, value);
     }
 
     /**
@@ -613,7 +629,7 @@ public abstract class RMQMessage implements Message, Cloneable {
      */
     @Override
     public void setShortProperty(String name, short value) throws JMSException {
-        this.setObjectProperty(name, value);
+        this.setPropertyBits(name, PropertyMap.SHORT, value);
     }
 
     /**
@@ -621,7 +637,7 @@ public abstract class RMQMessage implements Message, Cloneable {
      */
     @Override
     public void setIntProperty(String name, int value) throws JMSException {
-        this.setObjectProperty(name, value);
+        this.setPropertyBits(name, PropertyMap.INT, value);
     }
 
     /**
@@ -629,7 +645,7 @@ public abstract class RMQMessage implements Message, Cloneable {
      */
     @Override
     public void setLongProperty(String name, long value) throws JMSException {
-        this.setObjectProperty(name, value);
+        this.setPropertyBits(name, PropertyMap.LONG, value);
     }
 
     /**
@@ -637,7 +653,7 @@ public abstract class RMQMessage implements Message, Cloneable {
      */
     @Override
     public void setFloatProperty(String name, float value) throws JMSException {
-        this.setObjectProperty(name, value);
+        this.setPropertyBits(name, PropertyMap.FLOAT, Float.floatToRawIntBits(value));
     }
 
     /**
@@ -645,7 +661,7 @@ public abstract class RMQMessage implements Message, Cloneable {
      */
     @Override
     public void setDoubleProperty(String name, double value) throws JMSException {
-        this.setObjectProperty(name, value);
+        this.setPropertyBits(name, PropertyMap.DOUBLE, Double.doubleToRawLongBits(value));
     }
 
     /**
@@ -717,11 +733,7 @@ public abstract class RMQMessage implements Message, Cloneable {
             }
 
             if (name!=null && name.startsWith(PREFIX)) {
-                if (value==null) {
-                    this.rmqProperties.remove(name);
-                } else {
-                    this.rmqProperties.put(name, (Serializable) value);
-                }
+                this.rmqProperties.put(name, (Serializable) value);
             } else {
                 if (isReadOnlyProperties()) throw new MessageNotWriteableException(NOT_WRITEABLE);
                 checkName(name);
@@ -729,7 +741,7 @@ public abstract class RMQMessage implements Message, Cloneable {
                 if (value==null) {
                     this.userJmsProperties.remove(name);
                 } else if (validPropertyValueType(value)) {
-                    this.userJmsProperties.put(name, (Serializable) value);
+                    this.userJmsProperties.put(name, value);
                 } else {
                     throw new MessageFormatException(String.format("Property [%s] has incorrect value type.", name));
                 }
@@ -739,6 +751,24 @@ public abstract class RMQMessage implements Message, Cloneable {
         }
     }
 
+    /**
+     * Sets a property to a primitive value, without boxing it.
+     * @param tag the {@link PropertyMap} type of the value
+     * @param value the bits of the value, see {@link PropertyMap#putBits(String, byte, long)}
+     */
+    private void setPropertyBits(String name, byte tag, long value) throws JMSException {
+        if (RMQConnectionMetaData.JMSX_GROUP_SEQ_LABEL.equals(name) || RMQConnectionMetaData.JMSX_GROUP_ID_LABEL.equals(name)) {
+            // special case properties are checked on their boxed value
+            this.setObjectProperty(name, PropertyMap.box(tag, value));
+        } else if (name!=null && name.startsWith(PREFIX)) {
+            this.rmqProperties.putBits(name, tag, value);
+        } else {
+            if (isReadOnlyProperties()) throw new MessageNotWriteableException(NOT_WRITEABLE);
+            checkName(name);
+            this.userJmsProperties.putBits(name, tag, value);
+        }
+    }
+
     /**
      * Only certain types are allowed as property value types (excluding our own types).
      * @param value property value type
@@ -837,6 +867,31 @@ public abstract class RMQMessage implements Message, Cloneable {
      */
     protected abstract void readAmqpBody(byte[] barr);
 
+    /**
+     * The body of a message which is not encoded as an object stream. When this is not <code>null</code>,
+     * {@link RMQMessage#toByteArray()} appends these bytes to the encoded envelope, and {@link RMQMessage#toAmqpByteArray()}
+     * uses them as they are, instead of calling {@link #writeBody(ObjectOutput, ByteArrayOutputStream)} or
+     * {@link #writeAmqpBody(ByteArrayOutputStream)}, so the bytes are copied at most once on the way to the channel.
+     * @return the body bytes, between the position and the limit of the buffer, which are not modified;
+     * <code>null</code> (the default) if the body is written by {@link #writeBody(ObjectOutput, ByteArrayOutputStream)}
+     */
+    protected ByteBuffer rawBody() {
+        return null;
+    }
+
+    /**
+     * Invoked when a message is being deserialized, before {@link #readBody(ObjectInput, ByteArrayInputStream)}, to read
+     * a body which is not encoded as an object stream in place, without copying it.
+     * @param frame - the whole message bytes, as received, which are not modified
+     * @param offset - the position of the body in <code>frame</code>; the body extends to the end of <code>frame</code>
+     * @return <code>true</code> if the body has been read; <code>false</code> (the default) if it is to be read by
+     * {@link #readBody(ObjectInput, ByteArrayInputStream)}
+     * @throws IOException if the body cannot be read
+     */
+    protected boolean readRawBody(byte[] frame, int offset) throws IOException {
+        return false;
+    }
+
     /**
      * Generate the headers for this JMS message; these are the properties used in selection.
      * <p>
@@ -876,8 +931,8 @@ public abstract class RMQMessage implements Message, Cloneable {
         Map<String, Object> hdrs = new HashMap<String, Object>();
 
         // set non-null user properties
-        for (Map.Entry<String, Serializable> e : this.userJmsProperties.entrySet()) {
-            putIfNotNull(hdrs, e.getKey(), e.getValue());
+        for (int i = 0; i < this.userJmsProperties.size(); i++) {
+            putIfNotNull(hdrs, this.userJmsProperties.name(i), this.userJmsProperties.get(i));
         }
 
         // set (overwrite?) selectable JMS properties
@@ -891,6 +946,52 @@ public abstract class RMQMessage implements Message, Cloneable {
         return hdrs;
     }
 
+    /**
+     * The values of the properties used in selection, as seen by a selector evaluator.
+     * <p>
+     * This gives the same values as {@link #toHeaders()}, but each value is read from the
+     * message properties only when the selector asks for it, and no map is built.
+     * </p>
+     * @return a selector environment backed by the properties of this message
+     */
+    Environment toSelectorEnvironment() {
+        return this::selectorValue;
+    }
+
+    private Object selectorValue(String name) {
+        switch (name) {
+        case "JMSDeliveryMode":
+            Object deliveryMode = this.rmqProperties.get(JMS_MESSAGE_DELIVERY_MODE);
+            return (deliveryMode instanceof Integer && (Integer) deliveryMode == DeliveryMode.PERSISTENT) ? "PERSISTENT" : "NON_PERSISTENT";
+        case "JMSMessageID":      return this.rmqProperties.get(JMS_MESSAGE_ID);
+        case "JMSTimestamp":
+            Object timestamp = this.rmqProperties.get(JMS_MESSAGE_TIMESTAMP);
+            return timestamp == null ? Long.valueOf(0L) : timestamp;
+        case "JMSPriority":       return this.rmqProperties.get(JMS_MESSAGE_PRIORITY);
+        case "JMSCorrelationID":  return this.rmqProperties.get(JMS_MESSAGE_CORR_ID);
+        case "JMSType":           return this.rmqProperties.get(JMS_MESSAGE_TYPE);
+        default:                  return this.userJmsProperties.get(name);
+        }
+    }
+
+    /**
+     * The values of the properties used in selection, read straight from the AMQP headers of a JMS message.
+     * <p>
+     * A JMS message is published with the result of {@link #toHeaders()} as its AMQP headers, so a selector
+     * can be evaluated against a delivery before (or without) the message being decoded.
+     * String values arrive as {@link LongString}s, and are converted only when the selector references them.
+     * </p>
+     * @param headers the AMQP headers of a message sent to a JMS destination
+     * @return a selector environment backed by the headers
+     */
+    static Environment headersEnvironment(Map<String, Object> headers) {
+        if (headers == null) return Environment.EMPTY;
+        return name -> {
+            Object value = headers.get(name);
+            return (value instanceof LongString) ? value.toString() : value;
+        };
+    }
+
     /**
      * Converts a {@link GetResponse} to a {@link RMQMessage}
      *
@@ -910,7 +1011,7 @@ public abstract class RMQMessage implements Message, Cloneable {
 
     static RMQMessage convertJmsMessage(RMQSession session, GetResponse response, ReceivingContextConsumer receivingContextConsumer) throws JMSException {
         // Deserialize the message payload from the byte[] body
-        RMQMessage message = fromMessage(response.getBody(), session.getTrustedPackages());
+        RMQMessage message = fromMessage(decodeBody(session, response), session.getTrustedPackages());
 
         message.setSession(session);                                            // Insert session in received message for Message.acknowledge
         message.setJMSRedelivered(response.getEnvelope().isRedeliver());        // Set the redelivered flag
@@ -930,7 +1031,7 @@ public abstract class RMQMessage implements Message, Cloneable {
             BasicProperties props = response.getProps();
 
             RMQMessage message = RMQMessage.isAmqpTextMessage(props.getHeaders()) ? new RMQTextMessage() : new RMQBytesMessage();
-            message = RMQMessage.fromAmqpMessage(response.getBody(), message);      // Deserialize the message payload from the byte[] body
+            message = RMQMessage.fromAmqpMessage(response.getBody(), message);      // Deserialize the message payload from the byte[] body, never compressed by this client
 
             message.setSession(session);                                            // Insert session in received message for Message.acknowledge
             message.setJMSRedelivered(response.getEnvelope().isRedeliver());        // Set the redelivered flag
@@ -948,6 +1049,21 @@ public abstract class RMQMessage implements Message, Cloneable {
         }
     }
 
+    /**
+     * @return the body of the response, decompressed according to its <code>content-encoding</code> if need be
+     * and compression is configured
+     */
+    private static byte[] decodeBody(RMQSession session, GetResponse response) throws JMSException {
+        String contentEncoding = response.getProps() == null ? null : response.getProps().getContentEncoding();
+        if (contentEncoding == null) return response.getBody();
+        BodyCompression compression = session.getBodyCompression();
+        try {
+            return (compression == null ? BodyCompression.NONE : compression).decode(contentEncoding, response.getBody());
+        } catch (IOException x) {
+            throw new RMQJMSException("Cannot decode message body with content encoding " + contentEncoding, x);
+        }
+    }
+
     /**
      * Properly assign JMSReplyTo header when using direct reply to.
      * <p>
@@ -1018,8 +1134,8 @@ public abstract class RMQMessage implements Message, Cloneable {
         Map<String, Object> hdrs = new HashMap<String, Object>();
 
         // set non-null user properties
-        for (Map.Entry<String, Serializable> e : this.userJmsProperties.entrySet()) {
-            putIfNotNullAndAmqpType(hdrs, e.getKey(), e.getValue());
+        for (int i = 0; i < this.userJmsProperties.size(); i++) {
+            putIfNotNullAndAmqpType(hdrs, this.userJmsProperties.name(i), this.userJmsProperties.get(i));
         }
 
         // set (overwrite?) selectable JMS properties
@@ -1058,7 +1174,11 @@ public abstract class RMQMessage implements Message, Cloneable {
      * @throws IOException if conversion fails
      */
     byte[] toAmqpByteArray() throws IOException, JMSException {
-        ByteArrayOutputStream bout = new ByteArrayOutputStream(DEFAULT_MESSAGE_BODY_SIZE);
+        ByteBuffer rawBody = this.rawBody();
+        if (rawBody != null) {
+            return bytesOf(rawBody);
+        }
+        ByteArrayOutputStream bout = new RMQByteArrayOutputStream(DEFAULT_MESSAGE_BODY_SIZE);
         //invoke write body
         this.writeAmqpBody(bout);
         //flush and return
@@ -1066,6 +1186,19 @@ public abstract class RMQMessage implements Message, Cloneable {
         return bout.toByteArray();
     }
 
+    /**
+     * @return the bytes of the buffer, between its position and its limit: the backing array itself if it holds
+     * exactly these bytes, a copy otherwise
+     */
+    private static byte[] bytesOf(ByteBuffer buffer) {
+        if (buffer.hasArray() && buffer.arrayOffset() + buffer.position() == 0 && buffer.remaining() == buffer.array().length) {
+            return buffer.array();
+        }
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return bytes;
+    }
+
     /**
      * Generates a JMS byte array body for this message.
      * This method invokes the {@link #writeBody(ObjectOutput, ByteArrayOutputStream)} method
@@ -1074,30 +1207,39 @@ public abstract class RMQMessage implements Message, Cloneable {
      * @throws IOException if serialization fails
      */
     byte[] toByteArray() throws IOException, JMSException {
-        ByteArrayOutputStream bout = new ByteArrayOutputStream(DEFAULT_MESSAGE_BODY_SIZE);
+        ByteArrayOutputStream bout = new RMQByteArrayOutputStream(DEFAULT_MESSAGE_BODY_SIZE);
         ObjectOutputStream out = new ObjectOutputStream(bout);
         //write the class of the message so we can instantiate on the other end
         out.writeUTF(this.getClass().getName());
         //write out message id
         out.writeUTF(this.internalMessageID);
         //write our JMS properties
-        out.writeInt(this.rmqProperties.size());
-        for (Map.Entry<String, Serializable> entry : this.rmqProperties.entrySet()) {
-            out.writeUTF(entry.getKey());
-            writePrimitive(entry.getValue(), out, true);
-        }
+        writeProperties(this.rmqProperties, out);
         //write custom properties
-        out.writeInt(this.userJmsProperties.size());
-        for (Map.Entry<String, Serializable> entry : this.userJmsProperties.entrySet()) {
-            out.writeUTF(entry.getKey());
-            writePrimitive(entry.getValue(), out, true);
-        }
+        writeProperties(this.userJmsProperties, out);
         out.flush();  // ensure structured part written to byte stream
+        ByteBuffer rawBody = this.rawBody();
+        if (rawBody != null) {
+            // copy the body once, straight into a frame of the exact size
+            byte[] frame = new byte[bout.size() + rawBody.remaining()];
+            int envelopeSize = bout.size();
+            System.arraycopy(bout.toByteArray(), 0, frame, 0, envelopeSize);
+            rawBody.duplicate().get(frame, envelopeSize, frame.length - envelopeSize);
+            return frame;
+        }
         this.writeBody(out, bout);
         out.flush();  // force any more structured data to byte stream
         return bout.toByteArray();
     }
 
+    private static void writeProperties(PropertyMap properties, ObjectOutput out) throws IOException, MessageFormatException {
+        out.writeInt(properties.size());
+        for (int i = 0; i < properties.size(); i++) {
+            out.writeUTF(properties.name(i));
+            writePrimitive(properties.get(i), out, true);
+        }
+    }
+
     /**
      * Deserializes a {@link RMQMessage} from a JMS generated byte array
      * This method invokes the {@link #readBody(ObjectInput, ByteArrayInputStream)} method
@@ -1112,29 +1254,30 @@ public abstract class RMQMessage implements Message, Cloneable {
         try {
             ByteArrayInputStream bin = new ByteArrayInputStream(b);
             WhiteListObjectInputStream in = new WhiteListObjectInputStream(bin, trustedPackages);
-            // read the class name from the stream
-            String clazz = in.readUTF();
-            // instantiate the message object
-            RMQMessage msg = instantiateRmqMessage(clazz, trustedPackages);
+            byte[] scratch = Utf8SymbolTable.newScratch();
+            // read the class name from the stream and instantiate the message object
+            RMQMessage msg = MESSAGE_FACTORIES.read(in, scratch).create(trustedPackages);
 
             // read the message id
             msg.internalMessageID = in.readUTF();
             // read JMS properties
             int propsize = in.readInt();
             for (int i = 0; i < propsize; i++) {
-                String name = in.readUTF();
+                String name = PROPERTY_NAMES.read(in, scratch);
                 Object value = readPrimitive(in);
-                msg.rmqProperties.put(name, (Serializable) value);
+                msg.rmqProperties.put(name, value);
             }
             //read custom properties
             propsize = in.readInt();
             for (int i = 0; i < propsize; i++) {
-                String name = in.readUTF();
+                String name = PROPERTY_NAMES.read(in, scratch);
                 Object value = readPrimitive(in);
-                msg.userJmsProperties.put(name, (Serializable) value);
+                msg.userJmsProperties.put(name, value);
             }
             // read the body of the message
-            msg.readBody(in, bin);
+            if (!msg.readRawBody(b, b.length - bin.available())) {
+                msg.readBody(in, bin);
+            }
             return msg;
         } catch (IOException x) {
             throw new RMQJMSException(x);
@@ -1143,6 +1286,41 @@ public abstract class RMQMessage implements Message, Cloneable {
         }
     }
 
+    /**
+     * @param name the name of an {@link ObjectMessageSerializer}
+     * @return the serializer available to deserialize inbound messages with this name, <code>null</code> if there is none
+     */
+    protected static ObjectMessageSerializer objectMessageSerializer(String name) {
+        return ObjectMessageSerialization.forName(name);
+    }
+
+    /**
+     * Creates a message to deserialize.
+     */
+    private interface MessageFactory {
+        RMQMessage create(List<String> trustedPackages) throws RMQJMSException;
+    }
+
+    /**
+     * @return the factory of the messages of a class: our own message classes are instantiated directly,
+     * any other class by reflection
+     */
+    private static MessageFactory messageFactory(String messageClass) {
+        if (isRmqObjectMessageClass(messageClass)) {
+            return RMQObjectMessage::new;
+        } else if (isRmqStreamMessageClass(messageClass)) {
+            return RMQStreamMessage::new;
+        } else if (RMQBytesMessage.class.getName().equals(messageClass)) {
+            return trustedPackages -> new RMQBytesMessage();
+        } else if (RMQTextMessage.class.getName().equals(messageClass)) {
+            return trustedPackages -> new RMQTextMessage();
+        } else if (RMQMapMessage.class.getName().equals(messageClass)) {
+            return trustedPackages -> new RMQMapMessage();
+        } else {
+            return trustedPackages -> instantiateRmqMessage(messageClass, trustedPackages);
+        }
+    }
+
     private static RMQMessage instantiateRmqMessage(String messageClass, List<String> trustedPackages) throws RMQJMSException {
         if(isRmqObjectMessageClass(messageClass)) {
             return instantiateRmqObjectMessageWithTrustedPackages(trustedPackages);
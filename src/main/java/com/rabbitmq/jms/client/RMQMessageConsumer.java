@@ -92,6 +92,11 @@ public class RMQMessageConsumer implements MessageConsumer, QueueReceiver, Topic
 
     private final ReceivingContextConsumer receivingContextConsumer;
 
+    private final JmsMetricsCollector metricsCollector;
+
+    /** The shared topic subscription this consumer gets messages from, <code>null</code> if it has its own queue. */
+    private volatile TopicSelectorDemultiplexer.Subscription demultiplexedSubscription;
+
     /**
      * Creates a RMQMessageConsumer object. Internal constructor used by {@link RMQSession}
      *
@@ -114,6 +119,7 @@ public class RMQMessageConsumer implements MessageConsumer, QueueReceiver, Topic
         this.autoAck = session.isAutoAck();
         this.requeueOnMessageListenerException = requeueOnMessageListenerException;
         this.receivingContextConsumer = receivingContextConsumer;
+        this.metricsCollector = session.getJmsMetricsCollector();
     }
 
     /**
@@ -208,7 +214,6 @@ public class RMQMessageConsumer implements MessageConsumer, QueueReceiver, Topic
         if (messageListener != null) {
             MessageListenerConsumer mlConsumer =
               new MessageListenerConsumer(this,
-                                          getSession().getChannel(),
                                           messageListener,
                                           TimeUnit.MILLISECONDS.toNanos(this.session.getConnection()
                                                                                     .getTerminationTimeout()),
@@ -279,14 +284,21 @@ public class RMQMessageConsumer implements MessageConsumer, QueueReceiver, Topic
      * @param consumer the SynchronousConsumer being registered
      * @param consTag the ConsumerTag to use for RabbitMQ callbacks
      * @throws IOException from RabbitMQ calls
+     * @throws JMSException if the channel of the session cannot be opened
      * @see Channel#basicConsume(String, boolean, String, boolean, boolean, java.util.Map, Consumer)
      */
-    void basicConsume(Consumer consumer, String consTag) throws IOException {
+    void basicConsume(Consumer consumer, String consTag) throws IOException, JMSException {
         String name = rmqQueueName();
         // never ack async messages automatically, only when we can deliver them
         // to the actual consumer so we pass in false as the auto ack mode
         // we must support setMessageListener(null) while messages are arriving
         // and those message we NACK
+        TopicSelectorDemultiplexer.Subscription subscription = this.demultiplexedSubscription;
+        if (subscription != null) {
+            logger.debug("consuming from shared subscription to topic '{}' with tag '{}'", this.destination, consTag);
+            subscription.attach(consumer, consTag);
+            return;
+        }
         logger.debug("consuming from queue '{}' with tag '{}'", name, consTag);
         getSession().getChannel()
          .basicConsume(name, /* the name of the queue */
@@ -302,6 +314,25 @@ public class RMQMessageConsumer implements MessageConsumer, QueueReceiver, Topic
                        );
     }
 
+    /**
+     * Cancel a {@link Consumer} registered with {@link #basicConsume}.
+     *
+     * @param consTag the ConsumerTag used to register the consumer
+     * @throws IOException from RabbitMQ calls, or if the consumer tag is unknown
+     * @throws JMSException if the channel of the session cannot be opened
+     * @see Channel#basicCancel(String)
+     */
+    void basicCancel(String consTag) throws IOException, JMSException {
+        TopicSelectorDemultiplexer.Subscription subscription = this.demultiplexedSubscription;
+        if (subscription != null) {
+            if (!subscription.detach(consTag)) {
+                throw new IOException("Unknown consumerTag");
+            }
+        } else {
+            getSession().getChannel().basicCancel(consTag);
+        }
+    }
+
     /**
      * RabbitMQ {@link Channel#basicConsume} should accept a {@link null} consumer-tag, to cause it to generate a new,
      * unique one for us; but it doesn't :-(
@@ -338,6 +369,7 @@ public class RMQMessageConsumer implements MessageConsumer, QueueReceiver, Topic
             throw new IllegalStateException("A session may not receive() when a MessageListener is set. (See JMS 1.1 §4.4.6.)");
         }
         this.numberOfReceives.incrementAndGet();
+        long start = System.nanoTime();
         try {
             if (!this.receiveManager.enter(tt))  // stopped?
                 return null; // timed out while stopped
@@ -345,8 +377,11 @@ public class RMQMessageConsumer implements MessageConsumer, QueueReceiver, Topic
             try {
                 GetResponse resp = this.delayedReceiver.get(tt);
                 if (resp == null) return null; // nothing received in time or aborted
-                this.dealWithAcknowledgements(this.isAutoAck(), resp.getEnvelope().getDeliveryTag());
-                this.session.addUncommittedTag(resp.getEnvelope().getDeliveryTag());
+                if (this.demultiplexedSubscription == null) { // shared subscriptions are acknowledged on delivery
+                    this.dealWithAcknowledgements(this.isAutoAck(), resp.getEnvelope().getDeliveryTag());
+                    this.session.addUncommittedTag(resp.getEnvelope().getDeliveryTag());
+                }
+                this.metricsCollector.messageReceived(RMQSession.metricsName(this.destination), System.nanoTime() - start);
                 return RMQMessage.convertMessage(this.session, this.destination, resp, this.receivingContextConsumer);
             } finally {
                 this.receiveManager.exit();
@@ -365,7 +400,7 @@ public class RMQMessageConsumer implements MessageConsumer, QueueReceiver, Topic
 
     void dealWithAcknowledgements(boolean ack, long dtag) {
         if (ack) {
-            this.session.explicitAck(dtag);
+            this.session.explicitAck(dtag, this.destination.getDestinationName());
         } else {
             this.session.unackedMessageReceived(dtag);
         }
@@ -431,6 +466,11 @@ public class RMQMessageConsumer implements MessageConsumer, QueueReceiver, Topic
             throw new RMQJMSException(e);
         }
 
+        TopicSelectorDemultiplexer.Subscription subscription = this.demultiplexedSubscription;
+        if (subscription != null) {
+            subscription.close();
+        }
+
         this.closed = true;
         this.closing = false;
     }
@@ -494,12 +534,18 @@ public class RMQMessageConsumer implements MessageConsumer, QueueReceiver, Topic
      * {@link javax.jms.Connection#stop()} is invoked. In this implementation, any async consumers will be cancelled,
      * only to be re-subscribed when <code>resume()</code>d.
      *
+     * @param deadline until when to wait for the delivery in progress if the subscription is kept
      * @throws InterruptedException if the thread is interrupted
      */
-    void pause() throws Exception {
+    void pause(TimeTracker deadline) throws Exception {
         this.receiveManager.closeGate();
         this.receiveManager.waitToClear(new TimeTracker(STOP_TIMEOUT_MS, TimeUnit.MILLISECONDS));
-        this.abortables.stop();
+        MessageListenerConsumer listener = this.listenerConsumer.get();
+        if (this.keepsSubscriptionOnStop(listener)) {
+            listener.hold(deadline); // keeps the subscription
+        } else {
+            this.abortables.stop();
+        }
     }
 
     /**
@@ -510,7 +556,12 @@ public class RMQMessageConsumer implements MessageConsumer, QueueReceiver, Topic
      */
     void resume() throws JMSException {
         try {
-            this.abortables.start(); // async listener restarted
+            MessageListenerConsumer listener = this.listenerConsumer.get();
+            if (this.keepsSubscriptionOnStop(listener)) {
+                listener.release(); // held deliveries passed on
+            } else {
+                this.abortables.start(); // async listener restarted
+            }
         } catch (JMSException e) {
             throw e;
         } catch (Exception e) {
@@ -519,6 +570,32 @@ public class RMQMessageConsumer implements MessageConsumer, QueueReceiver, Topic
         this.receiveManager.openGate(); // sync listener allowed to run
     }
 
+    /**
+     * Called before the session recovers, so that a listener holding deliveries while the connection is stopped
+     * drops those the recover requeues.
+     */
+    void recoverStarted() {
+        MessageListenerConsumer listener = this.listenerConsumer.get();
+        if (this.keepsSubscriptionOnStop(listener)) {
+            listener.recoverStarted();
+        }
+    }
+
+    void recoverFailed() {
+        MessageListenerConsumer listener = this.listenerConsumer.get();
+        if (this.keepsSubscriptionOnStop(listener)) {
+            listener.recoverFailed();
+        }
+    }
+
+    /**
+     * Deliveries acknowledged by the broker on delivery (direct reply-to) are not held: they cannot be
+     * requeued if the session recovers or the consumer closes, so the subscription is cancelled on stop.
+     */
+    private boolean keepsSubscriptionOnStop(MessageListenerConsumer listener) {
+        return listener != null && this.session.getConnection().isKeepSubscriptionsOnStop() && !amqpAutoAck();
+    }
+
     /**
      * @return true if durable
      */
@@ -545,7 +622,21 @@ public class RMQMessageConsumer implements MessageConsumer, QueueReceiver, Topic
         this.noLocal = noLocal;
     }
 
+    /**
+     * Makes this consumer get its messages from a subscription shared with other topic subscribers,
+     * rather than from its own queue.
+     *
+     * @param subscription the shared subscription
+     */
+    void setDemultiplexedSubscription(TopicSelectorDemultiplexer.Subscription subscription) {
+        this.demultiplexedSubscription = subscription;
+    }
+
     GetResponse getFromRabbitQueue() {
+        TopicSelectorDemultiplexer.Subscription subscription = this.demultiplexedSubscription;
+        if (subscription != null) {
+            return subscription.poll();
+        }
         String qN = rmqQueueName();
         try {
             return getSession().getChannel().basicGet(qN, false);
@@ -560,12 +651,13 @@ public class RMQMessageConsumer implements MessageConsumer, QueueReceiver, Topic
     /**
      * Whether the underlying AMQP consumer uses auto-ack or not.
      *
-     * Auto-ack is enabled only for when consuming on direct reply to.
+     * Auto-ack is enabled only for when consuming on direct reply to,
+     * or from a subscription shared with other topic subscribers.
      *
      * @return
      */
     protected boolean amqpAutoAck() {
-        return  isDirectReplyTo();
+        return  isDirectReplyTo() || this.demultiplexedSubscription != null;
     }
 
     private boolean isDirectReplyTo() {
@@ -81,6 +81,8 @@ public class RMQMessageProducer implements MessageProducer, QueueSender, TopicPu
 
     private final BeforePublishingCallback beforePublishingCallback;
 
+    private final JmsMetricsCollector metricsCollector;
+
     RMQMessageProducer(RMQSession session, RMQDestination destination, boolean preferProducerMessageProperty,
                               BiFunction<AMQP.BasicProperties.Builder, Message, AMQP.BasicProperties.Builder> amqpPropertiesCustomiser,
                               SendingContextConsumer sendingContextConsumer,
@@ -99,6 +101,7 @@ public class RMQMessageProducer implements MessageProducer, QueueSender, TopicPu
         } else {
             this.beforePublishingCallback = (message, channel) -> publishingListener.publish(message, channel.getNextPublishSeqNo());
         }
+        this.metricsCollector = session.getJmsMetricsCollector();
     }
 
     public RMQMessageProducer(RMQSession session, RMQDestination destination, boolean preferProducerMessageProperty,
@@ -276,6 +279,8 @@ public class RMQMessageProducer implements MessageProducer, QueueSender, TopicPu
 
     private void internalSend(RMQDestination destination, Message message, int deliveryMode, int priority, long timeToLiveOrExpiration, MessageExpirationType messageExpirationType) throws JMSException {
         logger.trace("send/publish message({}) to destination({}) with properties deliveryMode({}), priority({}), timeToLive({})", message, destination, deliveryMode, priority, timeToLiveOrExpiration);
+        Object event = FlightRecorderEvents.INSTANCE.beginSend();
+        long start = System.nanoTime();
 
         this.sendingContextConsumer.accept(new SendingContext(destination, message));
 
@@ -310,13 +315,19 @@ public class RMQMessageProducer implements MessageProducer, QueueSender, TopicPu
 
         /* Now send it */
         if (destination.isAmqp()) {
-            sendAMQPMessage(destination, rmqMessage, message, deliveryMode, priority, ttl);
+            sendAMQPMessage(destination, rmqMessage, message, deliveryMode, priority, ttl, event);
         } else {
-            sendJMSMessage(destination, rmqMessage, message, deliveryMode, priority, ttl);
+            sendJMSMessage(destination, rmqMessage, message, deliveryMode, priority, ttl, event);
         }
+        this.metricsCollector.messageSent(RMQSession.metricsName(destination), System.nanoTime() - start);
+        FlightRecorderEvents.INSTANCE.endSend(event, destination.getDestinationName());
     }
 
-    private void sendAMQPMessage(RMQDestination destination, RMQMessage msg, Message originalMessage, int deliveryMode, int priority, long timeToLive) throws JMSException {
+    /**
+     * @param sendEvent the Flight Recorder event of the send, <code>null</code> if it is not recorded
+     */
+    private void sendAMQPMessage(RMQDestination destination, RMQMessage msg, Message originalMessage, int deliveryMode, int priority, long timeToLive,
+                                 Object sendEvent) throws JMSException {
         if (!destination.amqpWritable()) {
             this.logger.error("Cannot write to AMQP destination {}", destination);
             throw new RMQJMSException("Cannot write to AMQP destination", new UnsupportedOperationException("MessageProducer.send to undefined AMQP resource"));
@@ -335,7 +346,9 @@ public class RMQMessageProducer implements MessageProducer, QueueSender, TopicPu
 
                 bob = amqpPropertiesCustomiser.apply(bob, msg);
 
+                long serializationStart = System.nanoTime();
                 byte[] data = msg.toAmqpByteArray();
+                this.serialized(destination, data, serializationStart, sendEvent);
 
                 this.beforePublishingCallback.beforePublishing(originalMessage, this.session.getChannel());
                 this.session.getChannel().basicPublish(destination.getAmqpExchangeName(), destination.getAmqpRoutingKey(), bob.build(), data);
@@ -348,8 +361,12 @@ public class RMQMessageProducer implements MessageProducer, QueueSender, TopicPu
         }
     }
 
+    /**
+     * @param sendEvent the Flight Recorder event of the send, <code>null</code> if it is not recorded
+     */
     // protected for testing
-    protected void sendJMSMessage(RMQDestination destination, RMQMessage msg, Message originalMessage, int deliveryMode, int priority, long timeToLive) throws JMSException {
+    protected void sendJMSMessage(RMQDestination destination, RMQMessage msg, Message originalMessage, int deliveryMode, int priority, long timeToLive,
+                                  Object sendEvent) throws JMSException {
         this.session.declareDestinationIfNecessary(destination);
         try {
             AMQP.BasicProperties.Builder bob = new AMQP.BasicProperties.Builder();
@@ -361,7 +378,9 @@ public class RMQMessageProducer implements MessageProducer, QueueSender, TopicPu
 
             maybeSetReplyToPropertyToDirectReplyTo(bob, msg);
 
-            byte[] data = msg.toByteArray();
+            long serializationStart = System.nanoTime();
+            byte[] data = this.session.getBodyCompression().encode(msg.toByteArray(), bob);
+            this.serialized(destination, data, serializationStart, sendEvent);
 
             this.beforePublishingCallback.beforePublishing(originalMessage, this.session.getChannel());
             this.session.getChannel().basicPublish(destination.getAmqpExchangeName(), destination.getAmqpRoutingKey(), bob.build(), data);
@@ -370,6 +389,11 @@ public class RMQMessageProducer implements MessageProducer, QueueSender, TopicPu
         }
     }
 
+    private void serialized(RMQDestination destination, byte[] data, long serializationStart, Object sendEvent) {
+        FlightRecorderEvents.INSTANCE.serializedSend(sendEvent, data.length, System.nanoTime() - serializationStart);
+        this.metricsCollector.messageSerialized(RMQSession.metricsName(destination), data.length);
+    }
+
     /**
      * Set AMQP reply-to property to direct-reply-to if necessary.
      * <p>
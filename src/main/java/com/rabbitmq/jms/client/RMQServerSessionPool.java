@@ -0,0 +1,198 @@
+// This Source Code Form is subject to the terms of the Mozilla Public
+// License, v. 2.0. If a copy of the MPL was not distributed with this
+// file, You can obtain one at https://mozilla.org/MPL/2.0/.
+//
+// Copyright (c) 2020 VMware, Inc. or its affiliates. All rights reserved.
+package com.rabbitmq.jms.client;
+
+import com.rabbitmq.jms.util.RMQJMSException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.jms.Connection;
+import javax.jms.IllegalStateException;
+import javax.jms.JMSException;
+import javax.jms.MessageListener;
+import javax.jms.ServerSession;
+import javax.jms.ServerSessionPool;
+import javax.jms.Session;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A {@link ServerSessionPool} backed by a fixed thread pool, to use {@link javax.jms.ConnectionConsumer}s
+ * outside of an application server.
+ * <p>
+ * The pool creates its sessions on a connection, with the same {@link MessageListener}, and runs each
+ * {@link ServerSession} on a thread of its own: the number of sessions is the number of messages processed
+ * in parallel. {@link #getServerSession()} waits for a session to be idle.
+ * </p>
+ * <pre>
+ * RMQServerSessionPool pool = new RMQServerSessionPool(connection, 8, listener);
+ * ConnectionConsumer consumer = connection.createConnectionConsumer(queue, null, pool, 10);
+ * connection.start();
+ * </pre>
+ *
+ * @since 2.3.0
+ */
+public class RMQServerSessionPool implements ServerSessionPool, AutoCloseable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RMQServerSessionPool.class);
+
+    private static final AtomicInteger POOL_COUNT = new AtomicInteger();
+
+    private final List<PooledServerSession> serverSessions;
+    private final BlockingQueue<PooledServerSession> idleServerSessions;
+    private final ExecutorService executorService;
+    private volatile boolean closed = false;
+
+    /**
+     * Creates a pool of non-transacted sessions in {@link Session#AUTO_ACKNOWLEDGE} mode.
+     *
+     * @param connection the connection to create the sessions on
+     * @param size the number of sessions, and threads
+     * @param messageListener the listener of the sessions
+     * @throws JMSException if a session cannot be created
+     */
+    public RMQServerSessionPool(Connection connection, int size, MessageListener messageListener) throws JMSException {
+        this(connection, size, false, Session.AUTO_ACKNOWLEDGE, messageListener);
+    }
+
+    /**
+     * @param connection the connection to create the sessions on
+     * @param size the number of sessions, and threads
+     * @param transacted whether the sessions are transacted, the messages the listener sends are then committed
+     *                   once it processed the messages a server session was started with
+     * @param acknowledgeMode the acknowledgement mode of the sessions
+     * @param messageListener the listener of the sessions
+     * @throws JMSException if a session cannot be created
+     * @throws IllegalArgumentException if size is less than 1
+     * @see RMQSession#run()
+     */
+    public RMQServerSessionPool(Connection connection, int size, boolean transacted, int acknowledgeMode,
+                                MessageListener messageListener) throws JMSException {
+        if (size < 1) {
+            throw new IllegalArgumentException("Server session pool size must be at least 1: " + size);
+        }
+        this.serverSessions = new ArrayList<PooledServerSession>(size);
+        this.idleServerSessions = new LinkedBlockingQueue<PooledServerSession>();
+        try {
+            for (int i = 0; i < size; i++) {
+                Session session = connection.createSession(transacted, acknowledgeMode);
+                session.setMessageListener(messageListener);
+                PooledServerSession serverSession = new PooledServerSession(session);
+                this.serverSessions.add(serverSession);
+                this.idleServerSessions.add(serverSession);
+            }
+        } catch (JMSException | RuntimeException e) {
+            this.closeSessions();
+            throw e;
+        }
+        int poolNumber = POOL_COUNT.incrementAndGet();
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executorService = Executors.newFixedThreadPool(size, runnable -> {
+            Thread thread = new Thread(runnable, "rabbitmq-jms-server-session-" + poolNumber + "-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Waits for a session to be idle.
+     * </p>
+     */
+    @Override
+    public ServerSession getServerSession() throws JMSException {
+        if (this.closed) {
+            throw new IllegalStateException("Server session pool is closed");
+        }
+        try {
+            return this.idleServerSessions.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RMQJMSException("Interrupted while waiting for a server session", e);
+        }
+    }
+
+    /**
+     * @return the number of sessions not running
+     */
+    public int getIdleCount() {
+        return this.idleServerSessions.size();
+    }
+
+    /**
+     * Waits for the running sessions, for no longer than a minute, and closes the sessions.
+     * Close the connection consumers using this pool first.
+     */
+    @Override
+    public void close() throws JMSException {
+        if (this.closed) return;
+        this.closed = true;
+        this.executorService.shutdown();
+        try {
+            if (!this.executorService.awaitTermination(1, TimeUnit.MINUTES)) {
+                this.executorService.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            this.executorService.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        this.closeSessions();
+    }
+
+    private void closeSessions() {
+        for (PooledServerSession serverSession : this.serverSessions) {
+            try {
+                serverSession.session.close();
+            } catch (JMSException e) {
+                LOGGER.warn("Cannot close session {} of server session pool", serverSession.session, e);
+            }
+        }
+    }
+
+    private final class PooledServerSession implements ServerSession {
+
+        private final Session session;
+
+        private PooledServerSession(Session session) {
+            this.session = session;
+        }
+
+        @Override
+        public Session getSession() {
+            return this.session;
+        }
+
+        @Override
+        public void start() throws JMSException {
+            try {
+                RMQServerSessionPool.this.executorService.execute(this::run);
+            } catch (RuntimeException e) {
+                RMQServerSessionPool.this.idleServerSessions.add(this);
+                throw new RMQJMSException("Cannot start server session", e);
+            }
+        }
+
+        private void run() {
+            try {
+                this.session.run();
+                if (this.session.getTransacted()) {
+                    this.session.commit();
+                }
+            } catch (JMSException | RuntimeException e) {
+                LOGGER.error("Server session {} failed", this.session, e);
+            } finally {
+                RMQServerSessionPool.this.idleServerSessions.add(this);
+            }
+        }
+    }
+}
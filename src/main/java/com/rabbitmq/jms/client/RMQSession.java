@@ -7,6 +7,7 @@ package com.rabbitmq.jms.client;
 
 import java.io.IOException;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
@@ -16,7 +17,12 @@ import java.util.Map;
 import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.BiFunction;
 
 import javax.jms.BytesMessage;
@@ -62,9 +68,11 @@ import com.rabbitmq.jms.parse.sql.SqlCompiler;
 import com.rabbitmq.jms.parse.sql.SqlEvaluator;
 import com.rabbitmq.jms.parse.sql.SqlExpressionType;
 import com.rabbitmq.jms.parse.sql.SqlParser;
+import com.rabbitmq.jms.parse.sql.SqlSelectorAnalyzer;
 import com.rabbitmq.jms.parse.sql.SqlTokenStream;
 import com.rabbitmq.jms.util.RMQJMSException;
 import com.rabbitmq.jms.util.RMQJMSSelectorException;
+import com.rabbitmq.jms.util.TimeTracker;
 import com.rabbitmq.jms.util.Util;
 /**
  * RabbitMQ implementation of JMS {@link Session}
@@ -133,14 +141,24 @@ public class RMQSession implements Session, QueueSession, TopicSession {
 
     private final ReceivingContextConsumer receivingContextConsumer;
 
-    private final PublishingListener publishingListener;
+    /** Callback for publisher confirms, <code>null</code> if they are not enabled */
+    private final ConfirmListener confirmListener;
 
-    /** The main RabbitMQ channel we use under the hood */
-    private final Channel channel;
+    /** Tracks the messages published on {@link #channel} for publisher confirms, set when the channel is opened */
+    private volatile PublishingListener publishingListener;
+
+    /** The main RabbitMQ channel we use under the hood, opened on first use (see {@link #getChannel()}) */
+    private volatile Channel channel;
+    /** Guards the opening and closing of {@link #channel} */
+    private final Object channelLock = new Object();
+    /** Set when the session closes its channel, which must not be opened afterwards */
+    private boolean channelClosed = false; // @GuardedBy(channelLock)
     /** Set to true if close() has been called and completed */
     private volatile boolean closed = false;
     /** The message listener for this session. */
     private volatile MessageListener messageListener;
+    /** Messages loaded by a {@link RMQConnectionConsumer}, passed to the {@link #messageListener} by {@link #run()} */
+    private final ConcurrentLinkedQueue<RMQMessage> loadedMessages = new ConcurrentLinkedQueue<RMQMessage>();
     /** A list of all the producers created by this session.
      * When a producer is closed, it will be removed from this list */
     private final ArrayList<RMQMessageProducer> producers = new ArrayList<RMQMessageProducer>();
@@ -162,7 +180,8 @@ public class RMQSession implements Session, QueueSession, TopicSession {
     private final Object closeLock = new Object();
 
     /** Lock and parms for commit and rollback blocking of other commands */
-    private final Object commitLock = new Object();
+    private final ReentrantLock commitLock = new ReentrantLock(); // not a monitor, for virtual threads not to pin their carrier while waiting
+    private final Condition commitEnded = this.commitLock.newCondition();
     private static final long COMMIT_WAIT_MAX = 2000L; // 2 seconds
     private boolean committing = false; // GuardedBy("commitLock");
 
@@ -201,6 +220,14 @@ public class RMQSession implements Session, QueueSession, TopicSession {
 
     private static final String JMS_TOPIC_SELECTOR_EXCHANGE_TYPE = "x-jms-topic";
 
+    /** Headers exchanges for topic selection by equality tests, one per topic */
+    private final Map<RMQDestination, String> durableTopicHeadersExchanges = new ConcurrentHashMap<RMQDestination, String>();
+    /** Headers exchanges for topic selection by equality tests, one per topic */
+    private final Map<RMQDestination, String> nonDurableTopicHeadersExchanges = new ConcurrentHashMap<RMQDestination, String>();
+    private static final String TOPIC_HEADERS_SELECTOR_EXCHANGE_TYPE = "headers";
+    /** Headers exchange binding arg key for the match mode */
+    private static final String HEADERS_MATCH_ARG = "x-match";
+
     private final DeliveryExecutor deliveryExecutor;
 
     /** The channels we use for browsing queues (there may be more than one in operation at a time) */
@@ -214,6 +241,28 @@ public class RMQSession implements Session, QueueSession, TopicSession {
      */
     private final List<String> trustedPackages;
 
+    /**
+     * Compression of the message bodies sent and received by this session.
+     *
+     * @since 2.3.0
+     */
+    private final BodyCompression bodyCompression;
+
+    /** Serializer of the objects of created object messages, <code>null</code> for Java serialization */
+    private final ObjectMessageSerializer objectMessageSerializer;
+
+    /** Whether created map messages are sent in the compact encoding */
+    private final boolean mapMessageCompactFormat;
+
+    /** Whether created stream messages are sent in the compact encoding */
+    private final boolean streamMessageCompactFormat;
+
+    /** Collector of JMS-level metrics, never <code>null</code> */
+    private final JmsMetricsCollector jmsMetricsCollector;
+
+    /** Index of the AMQP connection of {@link #connection} the channel of this session is on */
+    private final int connectionShard;
+
     /**
      * Arguments to be used when declaring a queue while creating a producer
      *
@@ -231,9 +280,13 @@ public class RMQSession implements Session, QueueSession, TopicSession {
             throw new JMSException(String.format("cannot create session with acknowledgement mode = %d.", sessionParams.getMode()));
         }
         this.connection = sessionParams.getConnection();
+        this.connectionShard = sessionParams.getConnectionShard();
         this.transacted = sessionParams.isTransacted();
         this.subscriptions = sessionParams.getSubscriptions();
-        this.deliveryExecutor = new DeliveryExecutor(sessionParams.getOnMessageTimeoutMs());
+        this.jmsMetricsCollector = sessionParams.getJmsMetricsCollector() == null ?
+            JmsMetricsCollector.NO_OP : sessionParams.getJmsMetricsCollector();
+        this.deliveryExecutor = new DeliveryExecutor(sessionParams.getOnMessageTimeoutMs(), this.jmsMetricsCollector,
+            sessionParams.getDeliveryThreadFactory());
         this.preferProducerMessageProperty = sessionParams.willPreferProducerMessageProperty();
         this.requeueOnMessageListenerException = sessionParams.willRequeueOnMessageListenerException();
         this.nackOnRollback = sessionParams.willNackOnRollback();
@@ -243,6 +296,11 @@ public class RMQSession implements Session, QueueSession, TopicSession {
         this.receivingContextConsumer = sessionParams.getReceivingContextConsumer() == null ?
             ReceivingContextConsumer.NO_OP : sessionParams.getReceivingContextConsumer();
         this.trustedPackages = sessionParams.getTrustedPackages();
+        this.bodyCompression = new BodyCompression(sessionParams.getBodyCodec(), sessionParams.getBodyCompressionThreshold(),
+            sessionParams.getMaxDecompressedBodySize());
+        this.objectMessageSerializer = sessionParams.getObjectMessageSerializer();
+        this.mapMessageCompactFormat = sessionParams.isMapMessageCompactFormat();
+        this.streamMessageCompactFormat = sessionParams.isStreamMessageCompactFormat();
 
         if (transacted) {
             this.acknowledgeMode = Session.SESSION_TRANSACTED;
@@ -254,18 +312,7 @@ public class RMQSession implements Session, QueueSession, TopicSession {
             this.acknowledgeMode = sessionParams.getMode();
             this.isIndividualAck = false;
         }
-        try {
-            this.channel = connection.createRabbitChannel(transacted);
-            if (sessionParams.getConfirmListener() != null) {
-                this.publishingListener = PublisherConfirmsUtils.configurePublisherConfirmsSupport(
-                        this.channel, sessionParams.getConfirmListener()
-                );
-            } else {
-                this.publishingListener = null;
-            }
-        } catch (Exception x) { // includes unchecked exceptions, e.g. ShutdownSignalException
-            throw new RMQJMSException(x);
-        }
+        this.confirmListener = sessionParams.getConfirmListener();
     }
 
     /**
@@ -296,6 +343,46 @@ public class RMQSession implements Session, QueueSession, TopicSession {
         return new RMQBytesMessage();
     }
 
+    /**
+     * Creates a {@link BytesMessage} whose body is the given range of a byte array, without copying it.
+     * <p>
+     * The message body is read-only, as after {@link BytesMessage#reset()}. The array is owned by the message from
+     * then on: the caller must not modify the range until the message has been sent and is no longer used,
+     * since it is published (and read by {@link BytesMessage#readBytes(byte[])}) in place. {@link Message#clearBody()}
+     * releases it.
+     * </p>
+     *
+     * @param payload the array holding the message body
+     * @param offset the start of the body in the array
+     * @param length the length of the body
+     * @return a read-only message wrapping the given range
+     * @throws JMSException if the session is closed
+     * @throws IndexOutOfBoundsException if the range is not within the array
+     * @since 2.3.0
+     */
+    public BytesMessage createBytesMessage(byte[] payload, int offset, int length) throws JMSException {
+        illegalStateExceptionIfClosed();
+        return RMQBytesMessage.wrap(payload, offset, length);
+    }
+
+    /**
+     * Creates a {@link BytesMessage} whose body is the remaining bytes of the given buffer.
+     * <p>
+     * The bytes of a buffer backed by an accessible array are not copied, and the same ownership rules as for
+     * {@link #createBytesMessage(byte[], int, int)} apply; other buffers (direct or read-only) are copied.
+     * The position of the buffer is not changed.
+     * </p>
+     *
+     * @param payload the buffer holding the message body, between its position and its limit
+     * @return a read-only message wrapping the buffer
+     * @throws JMSException if the session is closed
+     * @since 2.3.0
+     */
+    public BytesMessage createBytesMessage(ByteBuffer payload) throws JMSException {
+        illegalStateExceptionIfClosed();
+        return RMQBytesMessage.wrap(payload);
+    }
+
     private void illegalStateExceptionIfClosed() throws IllegalStateException {
         if (this.closed) throw new IllegalStateException("Session is closed");
     }
@@ -306,7 +393,7 @@ public class RMQSession implements Session, QueueSession, TopicSession {
     @Override
     public MapMessage createMapMessage() throws JMSException {
         illegalStateExceptionIfClosed();
-        return new RMQMapMessage();
+        return new RMQMapMessage(this.mapMessageCompactFormat);
     }
 
     /**
@@ -324,7 +411,7 @@ public class RMQSession implements Session, QueueSession, TopicSession {
     @Override
     public ObjectMessage createObjectMessage() throws JMSException {
         illegalStateExceptionIfClosed();
-        return new RMQObjectMessage();
+        return new RMQObjectMessage(WhiteListObjectInputStream.DEFAULT_TRUSTED_PACKAGES, this.objectMessageSerializer);
     }
 
     /**
@@ -344,7 +431,7 @@ public class RMQSession implements Session, QueueSession, TopicSession {
     @Override
     public StreamMessage createStreamMessage() throws JMSException {
         illegalStateExceptionIfClosed();
-        return new RMQStreamMessage();
+        return new RMQStreamMessage(WhiteListObjectInputStream.DEFAULT_TRUSTED_PACKAGES, this.streamMessageCompactFormat);
     }
 
     /**
@@ -398,6 +485,30 @@ public class RMQSession implements Session, QueueSession, TopicSession {
         return trustedPackages;
     }
 
+    BodyCompression getBodyCompression() {
+        return this.bodyCompression;
+    }
+
+    int getConnectionShard() {
+        return this.connectionShard;
+    }
+
+    JmsMetricsCollector getJmsMetricsCollector() {
+        return this.jmsMetricsCollector;
+    }
+
+    /**
+     * @return the name metrics of a destination are tagged with, {@link JmsMetricsCollector#TEMPORARY_DESTINATIONS}
+     * for all temporary destinations, <code>null</code> if it is not an {@link RMQDestination}
+     */
+    static String metricsName(Destination destination) {
+        if (!(destination instanceof RMQDestination)) {
+            return null;
+        }
+        RMQDestination rmqDestination = (RMQDestination) destination;
+        return rmqDestination.isTemporary() ? JmsMetricsCollector.TEMPORARY_DESTINATIONS : rmqDestination.getDestinationName();
+    }
+
     /**
      * Set arguments to be used when declaring a queue while creating a producer.
      * <p>
@@ -423,24 +534,33 @@ public class RMQSession implements Session, QueueSession, TopicSession {
     }
 
     private boolean enterCommittingBlock() {
-        synchronized(this.commitLock){
+        this.commitLock.lock();
+        try {
+            Object waitEvent = this.committing ? FlightRecorderEvents.INSTANCE.beginCommitLockWait() : null;
             try {
                 while(this.committing) {
-                    this.commitLock.wait(COMMIT_WAIT_MAX);
+                    this.commitEnded.await(COMMIT_WAIT_MAX, TimeUnit.MILLISECONDS);
                 }
                 this.committing = true;
                 return true;
             } catch(InterruptedException ie) {
                 Thread.currentThread().interrupt();
                 return false;
+            } finally {
+                FlightRecorderEvents.INSTANCE.end(waitEvent);
             }
+        } finally {
+            this.commitLock.unlock();
         }
     }
 
     private void leaveCommittingBlock() {
-        synchronized(this.commitLock){
+        this.commitLock.lock();
+        try {
             this.committing = false;
-            this.commitLock.notifyAll();
+            this.commitEnded.signalAll();
+        } finally {
+            this.commitLock.unlock();
         }
     }
 
@@ -453,15 +573,23 @@ public class RMQSession implements Session, QueueSession, TopicSession {
         illegalStateExceptionIfClosed();
         if (!this.transacted) throw new IllegalStateException("Session is not transacted");
         if (this.enterCommittingBlock()) {
+            Object event = FlightRecorderEvents.INSTANCE.beginCommit();
             try {
+                long start = System.nanoTime();
                 // Call commit on the channel.
                 // All messages ought already to have been acked.
-                this.channel.txCommit();
+                // Without a channel, nothing was sent or received in the transaction.
+                Channel channel = this.channel;
+                if (channel != null) {
+                    channel.txCommit();
+                }
+                this.jmsMetricsCollector.transactionCommitted(System.nanoTime() - start);
                 this.clearUncommittedTags();
             } catch (Exception x) {
                 this.logger.error("RabbitMQ exception on channel.txCommit() in session {}", this, x);
                 throw new RMQJMSException(x);
             } finally {
+                FlightRecorderEvents.INSTANCE.end(event);
                 this.leaveCommittingBlock();
             }
         }
@@ -476,32 +604,57 @@ public class RMQSession implements Session, QueueSession, TopicSession {
         illegalStateExceptionIfClosed();
         if (!this.transacted) throw new IllegalStateException("Session is not transacted");
         if (this.enterCommittingBlock()) {
+            Object event = FlightRecorderEvents.INSTANCE.beginRollback();
             try {
-                // rollback the RabbitMQ transaction which may cause some messages to become unacknowledged
-                this.channel.txRollback();
-                if (this.nackOnRollback && this.uncommittedMessageTags.size() > 0) {
-                    for (Long dtag : this.uncommittedMessageTags) {
-                        this.channel.basicNack(dtag, false, false);
+                Channel channel = this.channel;
+                if (channel != null) { // otherwise nothing was sent or received in the transaction
+                    // rollback the RabbitMQ transaction which may cause some messages to become unacknowledged
+                    channel.txRollback();
+                    if (this.nackOnRollback && this.uncommittedMessageTags.size() > 0) {
+                        for (Long dtag : this.uncommittedMessageTags) {
+                            channel.basicNack(dtag, false, false);
+                        }
+                        channel.txCommit();
+                        this.clearUncommittedTags();
                     }
-                    this.channel.txCommit();
-                    this.clearUncommittedTags();
+                    // requeue all unacknowledged messages (not automatically done by RabbitMQ)
+                    this.basicRecover(channel);
                 }
-                // requeue all unacknowledged messages (not automatically done by RabbitMQ)
-                this.channel.basicRecover(true); // requeue
             } catch (IOException x) {
                 this.logger.error("RabbitMQ exception on channel.txRollback() or channel.basicRecover(true) in session {}",
                                   this, x);
                 throw new RMQJMSException(x);
             } finally {
+                FlightRecorderEvents.INSTANCE.end(event);
                 this.leaveCommittingBlock();
             }
         }
     }
 
-    void explicitAck(long deliveryTag) {
+    /**
+     * Requeues the unacknowledged messages, letting the consumers know that the deliveries
+     * received until the recover-ok are requeued.
+     */
+    private void basicRecover(Channel channel) throws IOException {
+        for (RMQMessageConsumer consumer : this.consumers) {
+            consumer.recoverStarted();
+        }
+        try {
+            channel.basicRecover(true); // requeue
+        } catch (IOException | RuntimeException e) {
+            for (RMQMessageConsumer consumer : this.consumers) {
+                consumer.recoverFailed();
+            }
+            throw e;
+        }
+    }
+
+    void explicitAck(long deliveryTag, String destination) {
         if (this.enterCommittingBlock()) {
             try {
-                this.channel.basicAck(deliveryTag, false);
+                long start = System.nanoTime();
+                this.getChannel().basicAck(deliveryTag, false);
+                this.jmsMetricsCollector.messagesAcknowledged(destination, System.nanoTime() - start);
             } catch (Exception x) {
                 // this is problematic, we have received a message, but we can't ACK it to the server
                 this.logger.error("Cannot acknowledge message received (dTag={})", deliveryTag, x);
@@ -516,7 +669,7 @@ public class RMQSession implements Session, QueueSession, TopicSession {
     void explicitNack(long deliveryTag) {
         if (this.enterCommittingBlock()) {
             try {
-                this.channel.basicNack(deliveryTag, false, true);
+                this.getChannel().basicNack(deliveryTag, false, true);
             } catch (Exception x) {
                 // TODO logging impl debug message
                 this.logger.warn("Cannot reject/requeue message received (dTag={})", deliveryTag, x);
@@ -536,6 +689,14 @@ public class RMQSession implements Session, QueueSession, TopicSession {
     }
 
     void internalClose() throws JMSException {
+        this.internalClose(new TimeTracker());
+    }
+
+    /**
+     * Closes the session, waiting for its message listeners no longer than the deadline.
+     * @param deadline the deadline of the closing of the connection
+     */
+    void internalClose(TimeTracker deadline) throws JMSException {
         if (this.closed) return;
         logger.trace("close session {}", this);
 
@@ -545,14 +706,14 @@ public class RMQSession implements Session, QueueSession, TopicSession {
                 closeAllConsumers();
 
                 // rollback anything not committed already
-                if (this.getTransactedNoException()) {
+                if (this.getTransactedNoException() && !closeAbandoned(deadline)) {
                     // don't nack messages on close
                     this.clearUncommittedTags();
                     this.rollback();
                 }
 
                 //clear up potential executor
-                this.deliveryExecutor.close();
+                this.deliveryExecutor.close(deadline);
 
                 //close all producers created by this session
                 for (RMQMessageProducer producer : this.producers) {
@@ -561,18 +722,37 @@ public class RMQSession implements Session, QueueSession, TopicSession {
                 this.producers.clear();
 
                 //now commit anything done during close
-                if (this.getTransactedNoException()) {
+                if (this.getTransactedNoException() && !closeAbandoned(deadline)) {
                     this.commit();
                 }
 
-                this.closeRabbitChannels();
-
+                if (closeAbandoned(deadline)) {
+                    // the channels go with the AMQP connection, loaded messages are requeued by the broker
+                    synchronized (this.channelLock) {
+                        this.channelClosed = true;
+                    }
+                } else {
+                    this.closeRabbitChannels();
+                    this.requeueLoadedMessages();
+                }
             } finally {
                 this.closed = true;
             }
         }
     }
 
+    /**
+     * @return true if the connection gave up waiting for this session to close: the channel operations left are
+     * not performed, the AMQP connection is closing
+     */
+    private boolean closeAbandoned(TimeTracker deadline) {
+        if (deadline.timedOut()) {
+            logger.debug("termination timeout reached while closing session {}, leaving its channels to the connection", this);
+            return true;
+        }
+        return false;
+    }
+
     private void closeAllConsumers() {
         //close all consumers created by this session
         for (RMQMessageConsumer consumer : this.consumers) {
@@ -591,22 +771,27 @@ public class RMQSession implements Session, QueueSession, TopicSession {
 
     private void closeRabbitChannels() throws JMSException {
         this.clearBrowsingChannels(); // does not throw exception
-        if (this.channel == null)
+        Channel channel;
+        synchronized (this.channelLock) {
+            this.channelClosed = true;
+            channel = this.channel;
+        }
+        if (channel == null)
             return;
         try {
-            this.channel.close();
+            channel.close();
         } catch (ShutdownSignalException x) {
             // nothing to do
         } catch (Exception x) {
             if (x instanceof IOException) {
                 IOException ioe = (IOException) x;
                 if (!(ioe.getCause() instanceof ShutdownSignalException)) {
-                    this.logger.warn("RabbitMQ channel({}) failed to close on session {}", this.channel, this, ioe);
+                    this.logger.warn("RabbitMQ channel({}) failed to close on session {}", channel, this, ioe);
                     throw new RMQJMSException(ioe);
                 }
             } else if (x instanceof TimeoutException) {
                 TimeoutException te = (TimeoutException) x;
-                this.logger.warn("RabbitMQ channel({}) timed out trying to close session {}", this.channel, this, te);
+                this.logger.warn("RabbitMQ channel({}) timed out trying to close session {}", channel, this, te);
                 throw new RMQJMSException(te);
             } else {
                 throw new RMQJMSException("Unexpected exception from channel.close()", x);
@@ -627,7 +812,7 @@ public class RMQSession implements Session, QueueSession, TopicSession {
                 /* If we have messages to recover */
                 if (!this.unackedMessageTags.isEmpty()) {
                     try {
-                        this.channel.basicRecover(true); // requeue
+                        this.basicRecover(this.getChannel());
                     } catch (IOException x) {
                         logger.warn("basicRecover on channel({}) failed", this.channel, x);
                         throw new RMQJMSException(x);
@@ -649,20 +834,88 @@ public class RMQSession implements Session, QueueSession, TopicSession {
 
     /**
      * {@inheritDoc}
+     * <p>
+     * The listener is for the messages a {@link javax.jms.ConnectionConsumer} loads into this session,
+     * see {@link #run()}.
+     * </p>
      */
     @Override
     public void setMessageListener(MessageListener listener) throws JMSException {
-        // not implemented
-        throw new UnsupportedOperationException();
+        illegalStateExceptionIfClosed();
+        this.messageListener = listener;
     }
 
     /**
      * {@inheritDoc}
+     * <p>
+     * Passes the messages a {@link javax.jms.ConnectionConsumer} loaded into this session to its
+     * {@link #setMessageListener(MessageListener) message listener}, in order, on the calling thread.
+     * Each message is acknowledged once the listener returns, whatever the acknowledgement mode of this session.
+     * If the listener throws a {@link RuntimeException}, the message is requeued when the connection
+     * is configured to requeue on listener exceptions, acknowledged otherwise.
+     * </p>
      */
     @Override
     public void run() {
-        //this will not be implemented
-        throw new UnsupportedOperationException();
+        RMQMessage message;
+        while ((message = this.loadedMessages.poll()) != null) {
+            MessageListener listener = this.messageListener;
+            if (listener == null || this.closed) {
+                logger.warn("No message listener to pass message (dTag={}) to in session {}, requeuing it", message.getRabbitDeliveryTag(), this);
+                message.getSession().requeueLoadedMessage(message);
+                continue;
+            }
+            try {
+                listener.onMessage(message);
+            } catch (RuntimeException e) {
+                logger.error("Message listener of session {} threw exception on message (dTag={})", this, message.getRabbitDeliveryTag(), e);
+                if (this.requeueOnMessageListenerException) {
+                    message.getSession().requeueLoadedMessage(message);
+                    continue;
+                }
+            }
+            try {
+                message.acknowledge();
+            } catch (JMSException e) {
+                logger.error("Cannot acknowledge message (dTag={}) passed to listener of session {}", message.getRabbitDeliveryTag(), this, e);
+            }
+        }
+    }
+
+    /**
+     * Loads messages of a {@link RMQConnectionConsumer}, for {@link #run()}.
+     * The messages belong to the session of the connection consumer, which acknowledges them individually.
+     */
+    void loadMessages(List<RMQMessage> messages) throws IllegalStateException {
+        illegalStateExceptionIfClosed();
+        this.loadedMessages.addAll(messages);
+    }
+
+    private void requeueLoadedMessages() {
+        RMQMessage message;
+        while ((message = this.loadedMessages.poll()) != null) {
+            message.getSession().requeueLoadedMessage(message);
+        }
+    }
+
+    /**
+     * Requeues a message received by this session and loaded into another one, which did not acknowledge it.
+     */
+    void requeueLoadedMessage(RMQMessage message) {
+        long deliveryTag = message.getRabbitDeliveryTag();
+        if (this.unackedMessageTags.remove(deliveryTag)) {
+            this.explicitNack(deliveryTag);
+        }
+    }
+
+    /**
+     * Requeues a message received by this session and not acknowledged, if it has not been acknowledged
+     * or requeued in the meantime.
+     */
+    void requeueUnackedMessage(long deliveryTag) {
+        if (this.unackedMessageTags.remove(deliveryTag) || this.getTransactedNoException()) {
+            this.explicitNack(deliveryTag);
+        }
     }
 
     /**
@@ -678,7 +931,8 @@ public class RMQSession implements Session, QueueSession, TopicSession {
         RMQDestination dest = (RMQDestination) destination;
         declareDestinationIfNecessary(dest);
         RMQMessageProducer producer = new RMQMessageProducer(this, dest, this.preferProducerMessageProperty,
-            this.amqpPropertiesCustomiser, this.sendingContextConsumer, this.publishingListener);
+            this.amqpPropertiesCustomiser, this.sendingContextConsumer,
+            this.confirmListener == null ? null : (message, sequenceNumber) -> this.publishingListener.publish(message, sequenceNumber));
         this.producers.add(producer);
         return producer;
     }
@@ -733,6 +987,24 @@ public class RMQSession implements Session, QueueSession, TopicSession {
         logger.trace("create consumer for destination '{}' with consumerTag '{}' and selector '{}'", dest, consumerTag, jmsSelector);
         declareDestinationIfNecessary(dest);
 
+        if (isDemultiplexed(dest, durableSubscriber, jmsSelector)) {
+            // This is a selector subscriber sharing a subscription to the topic with others on the connection.
+            SqlEvaluator evaluator = new SqlEvaluator(new SqlParser(new SqlTokenStream(jmsSelector)), JMS_TYPE_IDENTS);
+            if (!evaluator.evaluatorOk()) {
+                throw new RMQJMSSelectorException(String.format("Selector expression failure: \"%s\".", jmsSelector));
+            }
+            RMQMessageConsumer consumer = new RMQMessageConsumer(this, dest, consumerTag, getConnection().isStopped(),
+                jmsSelector, this.requeueOnMessageListenerException, this.receivingContextConsumer);
+            try {
+                consumer.setDemultiplexedSubscription(getConnection().subscribeToTopicSelectorDemultiplexer(dest, evaluator));
+            } catch (IOException x) {
+                logger.error("consumer with tag '{}' could not be created", consumerTag, x);
+                throw new RMQJMSException("RabbitMQ Exception creating Consumer", x);
+            }
+            this.consumers.add(consumer);
+            return consumer;
+        }
+
         if (!dest.isQueue()) {
             // This is a topic, we need to define a queue, and bind to it.
             // The queue name is distinct for each consumer.
@@ -741,13 +1013,21 @@ public class RMQSession implements Session, QueueSession, TopicSession {
                 this.declareRMQQueue(dest, queueName, durableSubscriber, false);
                 if (nullOrEmpty(jmsSelector)) {
                     // bind the queue to the exchange with the correct routing key
-                    this.channel.queueBind(queueName, dest.getAmqpExchangeName(), dest.getAmqpRoutingKey());
+                    this.getChannel().queueBind(queueName, dest.getAmqpExchangeName(), dest.getAmqpRoutingKey());
                 } else {
-                    // get this session's topic selector exchange (name)
-                    String selectionExchange = this.getSelectionExchange(durableSubscriber);
-                    // bind it to the topic exchange with the topic routing key
-                    this.channel.exchangeBind(selectionExchange, dest.getAmqpExchangeName(), dest.getAmqpRoutingKey());
-                    this.bindSelectorQueue(dest, jmsSelector, queueName, selectionExchange);
+                    SqlEvaluator evaluator = new SqlEvaluator(new SqlParser(new SqlTokenStream(jmsSelector)), JMS_TYPE_IDENTS);
+                    List<Map<String, String>> equalityDisjuncts = new SqlSelectorAnalyzer(evaluator).equalityDisjuncts();
+                    if (equalityDisjuncts != null) {
+                        // the selector only tests string properties for equality: the broker can route on the headers
+                        String headersExchange = this.getHeadersSelectionExchange(dest, durableSubscriber);
+                        this.bindHeadersSelectorQueue(equalityDisjuncts, queueName, headersExchange);
+                    } else {
+                        // get this session's topic selector exchange (name)
+                        String selectionExchange = this.getSelectionExchange(durableSubscriber);
+                        // bind it to the topic exchange with the topic routing key
+                        this.getChannel().exchangeBind(selectionExchange, dest.getAmqpExchangeName(), dest.getAmqpRoutingKey());
+                        this.bindSelectorQueue(dest, jmsSelector, evaluator, queueName, selectionExchange);
+                    }
                 }
             } catch (IOException x) {
                 logger.error("consumer with tag '{}' could not be created", consumerTag, x);
@@ -760,27 +1040,91 @@ public class RMQSession implements Session, QueueSession, TopicSession {
         return consumer;
     }
 
-    private void bindSelectorQueue(RMQDestination dest, String jmsSelector, String queueName, String selectionExchange)
-            throws InvalidSelectorException, IOException {
-        SqlCompiler compiler = new SqlCompiler(new SqlEvaluator(new SqlParser(new SqlTokenStream(jmsSelector)), JMS_TYPE_IDENTS));
+    /**
+     * Non-durable topic subscribers with a selector share a subscription to the topic if the connection is configured
+     * to do so, and messages can be acknowledged on delivery.
+     */
+    private boolean isDemultiplexed(RMQDestination dest, boolean durableSubscriber, String jmsSelector) {
+        return getConnection().isTopicSelectorDemultiplexing()
+            && !dest.isQueue() && !dest.isAmqp() && !durableSubscriber && !nullOrEmpty(jmsSelector)
+            && !this.transacted && !this.requeueOnMessageListenerException
+            && (this.acknowledgeMode == Session.AUTO_ACKNOWLEDGE || this.acknowledgeMode == Session.DUPS_OK_ACKNOWLEDGE);
+    }
+
+    private void bindSelectorQueue(RMQDestination dest, String jmsSelector, SqlEvaluator evaluator, String queueName, String selectionExchange)
+            throws JMSException, IOException {
+        SqlCompiler compiler = new SqlCompiler(evaluator);
         if (compiler.compileOk()) {
             Map<String, Object> args = new HashMap<String, Object>(5);
             args.put(RJMS_COMPILED_SELECTOR_ARG, (Object)compiler.compile());
             args.put(RJMS_VERSION_ARG, (Object)RJMS_CLIENT_VERSION);
             // bind the queue to the topic selector exchange with the jmsSelector expression as argument
-            this.channel.queueBind(queueName, selectionExchange, dest.getAmqpRoutingKey(), args);
+            this.getChannel().queueBind(queueName, selectionExchange, dest.getAmqpRoutingKey(), args);
         } else {
             throw new RMQJMSSelectorException(String.format("Selector expression failure: \"%s\".", jmsSelector));
         }
     }
 
+    /**
+     * Bind a queue to a headers exchange so that it receives the messages selected by a disjunction of conjunctions of
+     * string equality tests. A disjunction of single tests on distinct properties is a single <code>x-match=any</code>
+     * binding, otherwise each conjunction is an <code>x-match=all</code> binding. The broker routes a message at most
+     * once to the queue, however many bindings it matches.
+     * @param equalityDisjuncts - the required property values of each conjunction, see {@link SqlSelectorAnalyzer#equalityDisjuncts()}
+     * @param queueName - the queue to bind
+     * @param headersExchange - the headers exchange bound to the topic
+     * @throws IOException
+     */
+    private void bindHeadersSelectorQueue(List<Map<String, String>> equalityDisjuncts, String queueName, String headersExchange)
+            throws JMSException, IOException {
+        if (equalityDisjuncts.size() > 1 && isDisjunctionOfDistinctTests(equalityDisjuncts)) {
+            Map<String, Object> args = new HashMap<String, Object>();
+            for (Map<String, String> conjunction : equalityDisjuncts) {
+                args.putAll(conjunction);
+            }
+            args.put(HEADERS_MATCH_ARG, "any");
+            this.getChannel().queueBind(queueName, headersExchange, "", args);
+        } else {
+            for (Map<String, String> conjunction : equalityDisjuncts) {
+                Map<String, Object> args = new HashMap<String, Object>(conjunction);
+                args.put(HEADERS_MATCH_ARG, "all");
+                this.getChannel().queueBind(queueName, headersExchange, "", args);
+            }
+        }
+    }
+
+    private static boolean isDisjunctionOfDistinctTests(List<Map<String, String>> equalityDisjuncts) {
+        Set<String> idents = new HashSet<String>();
+        for (Map<String, String> conjunction : equalityDisjuncts) {
+            if (conjunction.size() != 1 || !idents.addAll(conjunction.keySet())) return false;
+        }
+        return true;
+    }
+
+    /**
+     * The headers exchange for selection by equality tests on a topic is created for this session, and bound to the
+     * topic exchange with the topic routing key (headers exchanges ignore routing keys, so there is one per topic).
+     * @param dest - the topic
+     * @param durableSubscriber - set to true if we need to use a durable exchange, false otherwise.
+     * @return this session's headers selection exchange for the topic
+     * @throws IOException
+     */
+    private String getHeadersSelectionExchange(RMQDestination dest, boolean durableSubscriber) throws JMSException, IOException {
+        Map<RMQDestination, String> exchanges = durableSubscriber ? this.durableTopicHeadersExchanges : this.nonDurableTopicHeadersExchanges;
+        String exchange = exchanges.computeIfAbsent(dest,
+            d -> Util.generateUUID(durableSubscriber ? "jms-dutop-hdx-" : "jms-ndtop-hdx-"));
+        this.getChannel().exchangeDeclare(exchange, TOPIC_HEADERS_SELECTOR_EXCHANGE_TYPE, durableSubscriber, true, null);
+        this.getChannel().exchangeBind(exchange, dest.getAmqpExchangeName(), dest.getAmqpRoutingKey());
+        return exchange;
+    }
+
     /**
      * The topic selector exchange may be created for this session (there are at most two per session).
      * @param durableSubscriber - set to true if we need to use a durable exchange, false otherwise.
      * @return this session's Selection Exchange
      * @throws IOException
      */
-    private String getSelectionExchange(boolean durableSubscriber) throws IOException {
+    private String getSelectionExchange(boolean durableSubscriber) throws JMSException, IOException {
         if (durableSubscriber) {
             return this.getDurableTopicSelectorExchange();
         } else {
@@ -788,19 +1132,19 @@ public class RMQSession implements Session, QueueSession, TopicSession {
         }
     }
 
-    private String getDurableTopicSelectorExchange() throws IOException {
+    private String getDurableTopicSelectorExchange() throws JMSException, IOException {
         if (this.durableTopicSelectorExchange==null) {
             this.durableTopicSelectorExchange = Util.generateUUID("jms-dutop-slx-");
         }
-        this.channel.exchangeDeclare(this.durableTopicSelectorExchange, JMS_TOPIC_SELECTOR_EXCHANGE_TYPE, true, true, RJMS_SELECTOR_EXCHANGE_ARGS);
+        this.getChannel().exchangeDeclare(this.durableTopicSelectorExchange, JMS_TOPIC_SELECTOR_EXCHANGE_TYPE, true, true, RJMS_SELECTOR_EXCHANGE_ARGS);
         return this.durableTopicSelectorExchange;
     }
 
-    private String getNonDurableTopicSelectorExchange() throws IOException {
+    private String getNonDurableTopicSelectorExchange() throws JMSException, IOException {
         if (this.nonDurableTopicSelectorExchange==null) {
             this.nonDurableTopicSelectorExchange = Util.generateUUID("jms-ndtop-slx-");
         }
-        this.channel.exchangeDeclare(this.nonDurableTopicSelectorExchange, JMS_TOPIC_SELECTOR_EXCHANGE_TYPE, false, true, RJMS_SELECTOR_EXCHANGE_ARGS);
+        this.getChannel().exchangeDeclare(this.nonDurableTopicSelectorExchange, JMS_TOPIC_SELECTOR_EXCHANGE_TYPE, false, true, RJMS_SELECTOR_EXCHANGE_ARGS);
         return this.nonDurableTopicSelectorExchange;
     }
 
@@ -891,6 +1235,21 @@ public class RMQSession implements Session, QueueSession, TopicSession {
          */
         boolean exclusive = dest.isTemporary() || ((!dest.isQueue()) && (!durableSubscriber));
 
+        /*
+         * An exclusive queue is locked to the AMQP connection which declares it, and the other sessions of a
+         * sharded connection are on other AMQP connections: the queue is declared non-exclusive, deleted when
+         * the connection closes, and expires if the connection is lost.
+         */
+        Map<String, Object> arguments = queueDeclareArguments;
+        boolean deleteOnConnectionClose = exclusive && getConnection().getConnectionShardCount() > 1;
+        if (deleteOnConnectionClose) {
+            exclusive = false;
+            arguments = queueDeclareArguments == null ? new HashMap<String, Object>() : new HashMap<String, Object>(queueDeclareArguments);
+            if (!arguments.containsKey(RMQConnection.QUEUE_EXPIRES_ARG)) {
+                arguments.put(RMQConnection.QUEUE_EXPIRES_ARG, getConnection().getConnectionShardQueueExpiry());
+            }
+        }
+
         if (dest.isQueue()) {
             if (dest.noNeedToDeclareExchange()) {
                 logger.warn("no need to declare built-in exchange for queue destination '{}'", dest);
@@ -898,7 +1257,7 @@ public class RMQSession implements Session, QueueSession, TopicSession {
             else {
                 logger.trace("declare RabbitMQ exchange for queue destinations '{}'", dest);
                 try {
-                    this.channel.exchangeDeclare(exchangeName, exchangeType, durable,
+                    this.getChannel().exchangeDeclare(exchangeName, exchangeType, durable,
                                                  false, // autoDelete
                                                  false, // internal
                                                  null); // object properties
@@ -916,17 +1275,20 @@ public class RMQSession implements Session, QueueSession, TopicSession {
 
         try { /* Declare the queue to RabbitMQ -- this creates it if it doesn't already exist */
             this.logger.debug("declare RabbitMQ queue name({}), durable({}), exclusive({}), auto-delete({}), arguments({})",
-                              queueName, durable, exclusive, false, queueDeclareArguments);
-            this.channel.queueDeclare(queueName,
+                              queueName, durable, exclusive, false, arguments);
+            this.getChannel().queueDeclare(queueName,
                                       durable,
                                       exclusive,
                                       autoDelete,
-                                      queueDeclareArguments);
+                                      arguments);
+            if (deleteOnConnectionClose) {
+                getConnection().deleteQueueOnClose(queueName);
+            }
 
             /* Temporary or 'topic queues' are exclusive and therefore get deleted by RabbitMQ on close */
         } catch (Exception x) {
             this.logger.error("RabbitMQ exception on queue declare name({}), durable({}), exclusive({}), auto-delete({}), arguments({})",
-                              queueName, durable, exclusive, autoDelete, queueDeclareArguments, x);
+                              queueName, durable, exclusive, autoDelete, arguments, x);
             throw new RMQJMSException(x);
         }
 
@@ -934,7 +1296,7 @@ public class RMQSession implements Session, QueueSession, TopicSession {
             try { /* Bind the queue to our exchange -- this allows publications to succeed. */
                 this.logger.debug("bind queue name({}), to exchange({}), with r-key({}), no arguments",
                         queueName, exchangeName, queueName);
-                this.channel.queueBind(queueName, exchangeName,
+                this.getChannel().queueBind(queueName, exchangeName,
                         queueName, // routing key
                         null); // arguments
             } catch (Exception x) {
@@ -970,7 +1332,7 @@ public class RMQSession implements Session, QueueSession, TopicSession {
         else {
             logger.trace("declare RabbitMQ exchange for topic destination '{}'", dest);
             try {
-                this.channel.exchangeDeclare(/* the name of the exchange */
+                this.getChannel().exchangeDeclare(/* the name of the exchange */
                                              dest.getAmqpExchangeName(),
                                              /* the type of exchange to use */
                                              dest.amqpExchangeType(),
@@ -1058,14 +1420,14 @@ public class RMQSession implements Session, QueueSession, TopicSession {
     }
 
     /**
-     * Get a (new) channel for queue browsing.
+     * Get a channel for queue browsing, from the connection's pool.
      * @return channel for browsing queues
      * @throws JMSException if channel not available
      */
     Channel getBrowsingChannel() throws JMSException {
         try {
             synchronized (this.bcLock) {
-                Channel chan = this.getConnection().createRabbitChannel(false); // not transactional
+                Channel chan = this.getConnection().getBrowsingChannelPool().borrow();
                 this.browsingChannels.add(chan);
                 return chan;
             }
@@ -1075,36 +1437,28 @@ public class RMQSession implements Session, QueueSession, TopicSession {
     }
 
     /**
-     * Silently close and discard browsing channels, if any.
+     * Silently close and discard browsing channels, if any. Browsers may still be consuming on them,
+     * so they are not given back to the pool.
      */
     private void clearBrowsingChannels() {
         synchronized (this.bcLock) {
             for (Channel chan : this.browsingChannels) {
-                try {
-                    if (chan.isOpen())
-                        chan.close();
-                } catch (Exception e) {
-                    // ignore any failures, we are clearing up
-                }
+                this.getConnection().getBrowsingChannelPool().discard(chan);
             }
             this.browsingChannels.clear();
         }
     }
 
     /**
-     * Close a specific browsing channel.
+     * Give back a specific browsing channel, with no consumer left on it, to the connection's pool.
      */
     void closeBrowsingChannel(Channel chan) {
-        try {
-            synchronized (this.bcLock) {
-                if (this.browsingChannels.remove(chan)) {
-                    if (chan.isOpen())
-                        chan.close();
-                }
-            }
-        } catch (Exception e) {
-            // throw new RMQJMSException("Cannot close browsing channel", _);
-            // ignore errors in clearing up
+        boolean removed;
+        synchronized (this.bcLock) {
+            removed = this.browsingChannels.remove(chan);
+        }
+        if (removed) {
+            this.getConnection().getBrowsingChannelPool().release(chan); // does not throw exception
         }
     }
 
@@ -1136,7 +1490,8 @@ public class RMQSession implements Session, QueueSession, TopicSession {
         try {
             if (name != null && this.subscriptions.remove(name) != null) {
                 // remove the queue
-                this.channel.queueDelete(name);
+                this.getChannel().queueDelete(name);
+                getConnection().queueDeleted(name);
             } else {
                 logger.warn("Cannot unsubscribe subscription named '{}'", name);
             }
@@ -1214,17 +1569,48 @@ public class RMQSession implements Session, QueueSession, TopicSession {
     }
 
     /**
-     * Returns the {@link Channel} this session has created
-     * @return
+     * Returns the {@link Channel} of this session, opening it on first use: sessions that are only used
+     * to create messages, or closed right away, do not open a channel, nor pay the round trips to set it up.
+     * @return the channel of this session
+     * @throws JMSException if the channel cannot be opened, or the session is closed
      */
-    Channel getChannel() {
-        return this.channel;
+    Channel getChannel() throws JMSException {
+        Channel channel = this.channel;
+        if (channel != null) {
+            return channel;
+        }
+        synchronized (this.channelLock) {
+            if (this.channel == null) {
+                if (this.channelClosed) {
+                    throw new IllegalStateException("Session is closed");
+                }
+                try {
+                    channel = this.connection.createRabbitChannel(this.transacted, this.connectionShard);
+                    if (this.confirmListener != null) {
+                        this.publishingListener = PublisherConfirmsUtils.configurePublisherConfirmsSupport(
+                                channel, this.confirmListener, this.jmsMetricsCollector
+                        );
+                    }
+                } catch (Exception x) { // includes unchecked exceptions, e.g. ShutdownSignalException
+                    if (channel != null) {
+                        RMQConnection.abortChannel(channel); // opened, but failed to be set up
+                    }
+                    throw new RMQJMSException(x);
+                }
+                this.channel = channel;
+            }
+            return this.channel;
+        }
     }
 
     void consumerClose(RMQMessageConsumer consumer) throws JMSException {
         if (this.consumers.remove(consumer)) {
             //TODO: if (consumer.isDurable()) { don't cancel it? cancel it? -- decide }
             consumer.internalClose();
+            if (this.cleanUpServerNamedQueuesForNonDurableTopics && !consumer.isDurable() && !consumer.getDestination().isQueue()) {
+                // the queue of the consumer is auto-delete: the broker has deleted it with the subscription
+                getConnection().queueDeleted(consumer.rmqQueueName());
+            }
         }
     }
 
@@ -1244,12 +1630,13 @@ public class RMQSession implements Session, QueueSession, TopicSession {
      * invoked. In this implementation, any async consumers will be cancelled,
      * only to be re-subscribed when
      *
+     * @param deadline until when to wait for the deliveries in progress to the listeners of kept subscriptions
      * @throws javax.jms.JMSException if the thread is interrupted
      */
-    void pause() throws JMSException {
+    void pause(TimeTracker deadline) throws JMSException {
         for (RMQMessageConsumer consumer : this.consumers) {
             try {
-                consumer.pause();
+                consumer.pause(deadline);
             } catch (JMSException e) {
                 throw e;
             } catch (InterruptedException x) {
@@ -1308,6 +1695,8 @@ public class RMQSession implements Session, QueueSession, TopicSession {
              * </p>
              */
             synchronized (this.unackedMessageTags) {
+                Object event = FlightRecorderEvents.INSTANCE.beginAcknowledge();
+                long start = System.nanoTime();
                 try {
                     if (individualAck) {
                         long messageTag = message.getRabbitDeliveryTag();
@@ -1331,6 +1720,9 @@ public class RMQSession implements Session, QueueSession, TopicSession {
                                               true);                          // and everything prior to that
                         this.unackedMessageTags.clear();
                     }
+                    String destination = metricsName(message.getJMSDestination());
+                    this.jmsMetricsCollector.messagesAcknowledged(destination, System.nanoTime() - start);
+                    FlightRecorderEvents.INSTANCE.endAcknowledge(event, destination, individualAck);
                 } catch (IOException x) {
                     this.logger.error("RabbitMQ exception on basicAck of message {}; on session '{}'", message, this, x);
                     throw new RMQJMSException(x);
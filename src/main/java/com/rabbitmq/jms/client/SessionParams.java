@@ -12,6 +12,7 @@ import javax.jms.Message;
 import javax.jms.MessageProducer;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ThreadFactory;
 import java.util.function.BiFunction;
 
 /**
@@ -97,6 +98,75 @@ public class SessionParams {
 
     private List<String> trustedPackages = WhiteListObjectInputStream.DEFAULT_TRUSTED_PACKAGES;
 
+    /**
+     * Codec to compress outbound message bodies with.
+     *
+     * @since 2.3.0
+     */
+    private BodyCodec bodyCodec;
+
+    /**
+     * Minimum size in bytes of the outbound message bodies to compress,
+     * negative to not compress them, which is the default.
+     *
+     * @since 2.3.0
+     */
+    private int bodyCompressionThreshold = -1;
+
+    /**
+     * Serializer of the objects of outbound object messages,
+     * Java serialization if <code>null</code>.
+     *
+     * @since 2.3.0
+     */
+    private ObjectMessageSerializer objectMessageSerializer;
+
+    /**
+     * Maximum size in bytes of decompressed inbound message bodies.
+     *
+     * @since 2.3.0
+     */
+    private int maxDecompressedBodySize = BodyCodec.DEFAULT_MAX_DECODED_SIZE;
+
+    /**
+     * Whether map messages are sent in the compact encoding,
+     * rather than in the legacy encoding older clients can read.
+     *
+     * @since 2.3.0
+     */
+    private boolean mapMessageCompactFormat = false;
+
+    /**
+     * Whether stream messages are sent in the compact encoding,
+     * rather than in the legacy encoding older clients can read.
+     *
+     * @since 2.3.0
+     */
+    private boolean streamMessageCompactFormat = false;
+
+    /**
+     * Collector of JMS-level metrics, none if <code>null</code>.
+     *
+     * @since 2.3.0
+     */
+    private JmsMetricsCollector jmsMetricsCollector;
+
+    /**
+     * Index of the AMQP connection of {@link #connection} the session
+     * opens its channel on.
+     *
+     * @since 2.3.0
+     */
+    private int connectionShard;
+
+    /**
+     * Factory of the threads calling message listeners, <code>null</code>
+     * for the default one.
+     *
+     * @since 2.3.0
+     */
+    private ThreadFactory deliveryThreadFactory;
+
     public RMQConnection getConnection() {
         return connection;
     }
@@ -222,4 +292,85 @@ public class SessionParams {
     public List<String> getTrustedPackages() {
         return trustedPackages;
     }
+
+    public SessionParams setBodyCodec(BodyCodec bodyCodec) {
+        this.bodyCodec = bodyCodec;
+        return this;
+    }
+
+    public BodyCodec getBodyCodec() {
+        return bodyCodec;
+    }
+
+    public SessionParams setBodyCompressionThreshold(int bodyCompressionThreshold) {
+        this.bodyCompressionThreshold = bodyCompressionThreshold;
+        return this;
+    }
+
+    public int getBodyCompressionThreshold() {
+        return bodyCompressionThreshold;
+    }
+
+    public SessionParams setObjectMessageSerializer(ObjectMessageSerializer objectMessageSerializer) {
+        this.objectMessageSerializer = objectMessageSerializer;
+        return this;
+    }
+
+    public ObjectMessageSerializer getObjectMessageSerializer() {
+        return objectMessageSerializer;
+    }
+
+    public SessionParams setMaxDecompressedBodySize(int maxDecompressedBodySize) {
+        this.maxDecompressedBodySize = maxDecompressedBodySize;
+        return this;
+    }
+
+    public int getMaxDecompressedBodySize() {
+        return maxDecompressedBodySize;
+    }
+
+    public SessionParams setMapMessageCompactFormat(boolean mapMessageCompactFormat) {
+        this.mapMessageCompactFormat = mapMessageCompactFormat;
+        return this;
+    }
+
+    public boolean isMapMessageCompactFormat() {
+        return mapMessageCompactFormat;
+    }
+
+    public SessionParams setStreamMessageCompactFormat(boolean streamMessageCompactFormat) {
+        this.streamMessageCompactFormat = streamMessageCompactFormat;
+        return this;
+    }
+
+    public boolean isStreamMessageCompactFormat() {
+        return streamMessageCompactFormat;
+    }
+
+    public SessionParams setJmsMetricsCollector(JmsMetricsCollector jmsMetricsCollector) {
+        this.jmsMetricsCollector = jmsMetricsCollector;
+        return this;
+    }
+
+    public JmsMetricsCollector getJmsMetricsCollector() {
+        return jmsMetricsCollector;
+    }
+
+    public int getConnectionShard() {
+        return connectionShard;
+    }
+
+    public SessionParams setConnectionShard(int connectionShard) {
+        this.connectionShard = connectionShard;
+        return this;
+    }
+
+    public ThreadFactory getDeliveryThreadFactory() {
+        return deliveryThreadFactory;
+    }
+
+    public SessionParams setDeliveryThreadFactory(ThreadFactory deliveryThreadFactory) {
+        this.deliveryThreadFactory = deliveryThreadFactory;
+        return this;
+    }
 }
@@ -0,0 +1,124 @@
+// This Source Code Form is subject to the terms of the Mozilla Public
+// License, v. 2.0. If a copy of the MPL was not distributed with this
+// file, You can obtain one at https://mozilla.org/MPL/2.0/.
+//
+// Copyright (c) 2020 VMware, Inc. or its affiliates. All rights reserved.
+package com.rabbitmq.jms.client;
+
+import com.rabbitmq.client.ShutdownSignalException;
+import com.rabbitmq.jms.util.TimeTracker;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Closes the sessions of a connection in parallel, so that consumers are cancelled, message listeners drained
+ * and channels closed concurrently, all within one deadline. Sessions still closing at the deadline are left to
+ * end when the AMQP connections close: they skip the channel operations left once the deadline has passed.
+ */
+final class SessionsShutdown {
+
+    /** Maximum number of sessions closed at the same time */
+    private static final int MAX_THREADS = 32;
+    private static final long PROGRESS_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final Logger logger = LoggerFactory.getLogger(SessionsShutdown.class);
+
+    private final List<RMQSession> sessions;
+    private final TimeTracker deadline;
+    private final AtomicInteger closed = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    /** Counts when {@link #run()} returned: sessions still closing may end afterwards */
+    private int closedCount;
+    private int failedCount;
+    private int unfinishedCount;
+
+    /**
+     * @param sessions the sessions to close
+     * @param deadline when to give up waiting for the sessions to close
+     */
+    SessionsShutdown(List<RMQSession> sessions, TimeTracker deadline) {
+        this.sessions = sessions;
+        this.deadline = deadline;
+    }
+
+    /**
+     * Closes the sessions, returning when they are all closed, or at the deadline.
+     */
+    void run() {
+        if (this.sessions.size() <= 1) {
+            for (RMQSession session : this.sessions) {
+                this.close(session);
+            }
+            this.closedCount = this.closed.get();
+            this.failedCount = this.failed.get();
+            return;
+        }
+        AtomicInteger threadCount = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(this.sessions.size(), MAX_THREADS), runnable -> {
+            Thread thread = new Thread(runnable, "rabbitmq-jms-session-shutdown-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        CountDownLatch done = new CountDownLatch(this.sessions.size());
+        for (RMQSession session : this.sessions) {
+            executor.execute(() -> {
+                try {
+                    this.close(session);
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        executor.shutdown(); // threads end after the last session
+        try {
+            while (!done.await(Math.min(PROGRESS_INTERVAL_NANOS, this.deadline.remainingNanos()), TimeUnit.NANOSECONDS)
+                    && !this.deadline.timedOut()) {
+                logger.debug("{} of {} sessions closed", this.sessions.size() - done.getCount(), this.sessions.size());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        this.unfinishedCount = (int) done.getCount();
+        this.failedCount = this.failed.get();
+        this.closedCount = this.sessions.size() - this.failedCount - this.unfinishedCount;
+    }
+
+    private void close(RMQSession session) {
+        try {
+            session.internalClose(this.deadline);
+            this.closed.incrementAndGet();
+        } catch (Exception e) {
+            if (e instanceof ShutdownSignalException) {
+                this.closed.incrementAndGet();
+            } else if (this.deadline.timedOut()) {
+                this.failed.incrementAndGet();
+                logger.debug("exception closing session ({}) after the termination timeout", session, e);
+            } else {
+                this.failed.incrementAndGet();
+                logger.error("exception closing session ({})", session, e);
+            }
+        }
+    }
+
+    int getClosed() {
+        return this.closedCount;
+    }
+
+    int getFailed() {
+        return this.failedCount;
+    }
+
+    /**
+     * @return the number of sessions still closing when {@link #run()} returned
+     */
+    int getUnfinished() {
+        return this.unfinishedCount;
+    }
+}
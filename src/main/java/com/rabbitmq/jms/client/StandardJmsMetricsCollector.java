@@ -0,0 +1,311 @@
+// This Source Code Form is subject to the terms of the Mozilla Public
+// License, v. 2.0. If a copy of the MPL was not distributed with this
+// file, You can obtain one at https://mozilla.org/MPL/2.0/.
+//
+// Copyright (c) 2020 VMware, Inc. or its affiliates. All rights reserved.
+package com.rabbitmq.jms.client;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@link JmsMetricsCollector} which keeps a {@link Histogram} of each {@link Metric}, by destination, in memory.
+ * <p>
+ * Recording a value does not allocate (once the histogram of its metric and destination exists) and does not lock:
+ * histograms have fixed buckets, and count with striped counters ({@link LongAdder}), so that threads recording
+ * at the same time do not contend. Metrics which are not about a single destination are recorded under
+ * {@link #NO_DESTINATION}.
+ * </p>
+ * <p>
+ * Temporary destinations share the histograms of {@link JmsMetricsCollector#TEMPORARY_DESTINATIONS}. The number of
+ * destinations with histograms of their own is bounded (see {@link #StandardJmsMetricsCollector(int)}): once it
+ * is reached, the metrics of other destinations are recorded under {@link #OTHER_DESTINATIONS}.
+ * </p>
+ *
+ * @see com.rabbitmq.jms.admin.RMQConnectionFactory#setJmsMetricsCollector(JmsMetricsCollector)
+ * @since 2.3.0
+ */
+public class StandardJmsMetricsCollector implements JmsMetricsCollector {
+
+    /** Destination name of the metrics which are not about a single destination */
+    public static final String NO_DESTINATION = "";
+
+    /** Destination name of the metrics of the destinations beyond the maximum number of destinations */
+    public static final String OTHER_DESTINATIONS = "<other>";
+
+    /** Default maximum number of destinations with histograms of their own */
+    public static final int DEFAULT_MAX_DESTINATIONS = 1000;
+
+    /**
+     * The metrics, which are durations in nanoseconds, but for {@link #SERIALIZED_BYTES}.
+     */
+    public enum Metric {
+        /** {@link JmsMetricsCollector#messageSent(String, long)} */
+        SEND,
+        /** {@link JmsMetricsCollector#messageSerialized(String, int)}, in bytes */
+        SERIALIZED_BYTES,
+        /** {@link JmsMetricsCollector#messageConfirmed(String, long, boolean)}, of confirmed messages */
+        CONFIRM,
+        /** {@link JmsMetricsCollector#messageConfirmed(String, long, boolean)}, of nack-ed messages */
+        NACK,
+        /** {@link JmsMetricsCollector#messageReceived(String, long)} */
+        RECEIVE_WAIT,
+        /** {@link JmsMetricsCollector#listenerInvoked(String, long)} */
+        LISTENER,
+        /** {@link JmsMetricsCollector#listenerTimedOut(String, long)} */
+        LISTENER_TIMEOUT,
+        /** {@link JmsMetricsCollector#messagesAcknowledged(String, long)} */
+        ACK,
+        /** {@link JmsMetricsCollector#transactionCommitted(long)} */
+        COMMIT,
+        /** {@link JmsMetricsCollector#selectorEvaluated(String, long)} */
+        SELECTOR
+    }
+
+    private static final Metric[] METRICS = Metric.values();
+
+    /** Histograms, by destination, by metric */
+    private final ConcurrentMap<String, AtomicReferenceArray<Histogram>> histograms =
+        new ConcurrentHashMap<String, AtomicReferenceArray<Histogram>>();
+
+    private final int maxDestinations;
+
+    public StandardJmsMetricsCollector() {
+        this(DEFAULT_MAX_DESTINATIONS);
+    }
+
+    /**
+     * @param maxDestinations maximum number of destinations with histograms of their own, not counting
+     * {@link #NO_DESTINATION}, {@link JmsMetricsCollector#TEMPORARY_DESTINATIONS} and {@link #OTHER_DESTINATIONS}
+     */
+    public StandardJmsMetricsCollector(int maxDestinations) {
+        if (maxDestinations < 0) {
+            throw new IllegalArgumentException("Maximum number of destinations must be positive or zero");
+        }
+        this.maxDestinations = maxDestinations;
+    }
+
+    @Override
+    public void messageSent(String destination, long durationNanos) {
+        this.record(Metric.SEND, destination, durationNanos);
+    }
+
+    @Override
+    public void messageSerialized(String destination, int bytes) {
+        this.record(Metric.SERIALIZED_BYTES, destination, bytes);
+    }
+
+    @Override
+    public void messageConfirmed(String destination, long roundTripNanos, boolean ack) {
+        this.record(ack ? Metric.CONFIRM : Metric.NACK, destination, roundTripNanos);
+    }
+
+    @Override
+    public void messageReceived(String destination, long waitNanos) {
+        this.record(Metric.RECEIVE_WAIT, destination, waitNanos);
+    }
+
+    @Override
+    public void listenerInvoked(String destination, long durationNanos) {
+        this.record(Metric.LISTENER, destination, durationNanos);
+    }
+
+    @Override
+    public void listenerTimedOut(String destination, long durationNanos) {
+        this.record(Metric.LISTENER_TIMEOUT, destination, durationNanos);
+    }
+
+    @Override
+    public void messagesAcknowledged(String destination, long durationNanos) {
+        this.record(Metric.ACK, destination, durationNanos);
+    }
+
+    @Override
+    public void transactionCommitted(long durationNanos) {
+        this.record(Metric.COMMIT, null, durationNanos);
+    }
+
+    @Override
+    public void selectorEvaluated(String destination, long durationNanos) {
+        this.record(Metric.SELECTOR, destination, durationNanos);
+    }
+
+    /**
+     * @return the names of the destinations with metrics, {@link #NO_DESTINATION} included
+     */
+    public Set<String> getDestinations() {
+        return Collections.unmodifiableSet(this.histograms.keySet());
+    }
+
+    /**
+     * @param metric the metric
+     * @param destination the name of the destination, <code>null</code> or {@link #NO_DESTINATION} for metrics
+     * which are not about a single destination
+     * @return the (live) histogram of the metric for the destination; <code>null</code> if nothing has been recorded
+     */
+    public Histogram getHistogram(Metric metric, String destination) {
+        AtomicReferenceArray<Histogram> byMetric = this.histograms.get(destination == null ? NO_DESTINATION : destination);
+        return byMetric == null ? null : byMetric.get(metric.ordinal());
+    }
+
+    /**
+     * Forgets all the metrics.
+     */
+    public void clear() {
+        this.histograms.clear();
+    }
+
+    private void record(Metric metric, String destination, long value) {
+        String key = destination == null ? NO_DESTINATION : destination;
+        AtomicReferenceArray<Histogram> byMetric = this.histograms.get(key);
+        if (byMetric == null) {
+            if (!isSharedKey(key) && this.destinationCount() >= this.maxDestinations) {
+                key = OTHER_DESTINATIONS;
+            }
+            byMetric = this.histograms.computeIfAbsent(key, k -> new AtomicReferenceArray<Histogram>(METRICS.length));
+        }
+        Histogram histogram = byMetric.get(metric.ordinal());
+        if (histogram == null) {
+            byMetric.compareAndSet(metric.ordinal(), null, new Histogram());
+            histogram = byMetric.get(metric.ordinal());
+        }
+        histogram.record(value);
+    }
+
+    private static boolean isSharedKey(String key) {
+        return NO_DESTINATION.equals(key) || TEMPORARY_DESTINATIONS.equals(key) || OTHER_DESTINATIONS.equals(key);
+    }
+
+    /**
+     * @return the number of destinations with histograms of their own (approximate under concurrent updates)
+     */
+    private int destinationCount() {
+        int count = this.histograms.size();
+        for (String key : new String[] {NO_DESTINATION, TEMPORARY_DESTINATIONS, OTHER_DESTINATIONS}) {
+            if (this.histograms.containsKey(key)) {
+                count--;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Distribution of recorded values, in buckets of powers of two: bucket <code>0</code> counts the values up to
+     * <code>0</code>, and bucket <code>i &gt; 0</code> counts the values from <code>2<sup>i-1</sup></code> to
+     * <code>2<sup>i</sup> - 1</code>. Percentiles are thus known within a factor of two.
+     * <p>
+     * Thread-safe. Reads are not atomic: values recorded while reading may be partially taken into account.
+     * </p>
+     */
+    public static final class Histogram {
+
+        /** Number of buckets */
+        public static final int BUCKETS = 64;
+
+        private final LongAdder[] buckets = new LongAdder[BUCKETS];
+        private final LongAdder count = new LongAdder();
+        private final LongAdder sum = new LongAdder();
+        private final LongAccumulator max = new LongAccumulator(Math::max, Long.MIN_VALUE);
+
+        Histogram() {
+            for (int i = 0; i < BUCKETS; i++) {
+                this.buckets[i] = new LongAdder();
+            }
+        }
+
+        void record(long value) {
+            this.buckets[bucket(value)].increment();
+            this.count.increment();
+            this.sum.add(value);
+            this.max.accumulate(value);
+        }
+
+        private static int bucket(long value) {
+            return value <= 0 ? 0 : Long.SIZE - Long.numberOfLeadingZeros(value);
+        }
+
+        /**
+         * @return the largest value counted by a bucket
+         */
+        public static long getBucketUpperBound(int bucket) {
+            if (bucket == 0) return 0;
+            if (bucket == BUCKETS - 1) return Long.MAX_VALUE;
+            return (1L << bucket) - 1;
+        }
+
+        /**
+         * @return the number of values in a bucket
+         */
+        public long getBucketCount(int bucket) {
+            return this.buckets[bucket].sum();
+        }
+
+        /**
+         * @return the number of values recorded
+         */
+        public long getCount() {
+            return this.count.sum();
+        }
+
+        /**
+         * @return the sum of the values recorded
+         */
+        public long getSum() {
+            return this.sum.sum();
+        }
+
+        /**
+         * @return the largest value recorded, <code>0</code> if none has been
+         */
+        public long getMax() {
+            return this.getCount() == 0 ? 0 : this.max.get();
+        }
+
+        /**
+         * @return the mean of the values recorded, <code>0</code> if none has been
+         */
+        public double getMean() {
+            long count = this.getCount();
+            return count == 0 ? 0 : (double) this.getSum() / count;
+        }
+
+        /**
+         * @param quantile between <code>0</code> and <code>1</code>, e.g. <code>0.99</code> for the 99th percentile
+         * @return an upper bound of the quantile of the values recorded (the upper bound of its bucket, or the largest
+         * value if it is lower), <code>0</code> if none has been recorded
+         */
+        public long getQuantileUpperBound(double quantile) {
+            if (quantile < 0 || quantile > 1) {
+                throw new IllegalArgumentException("Quantile must be between 0 and 1");
+            }
+            long[] counts = new long[BUCKETS];
+            long total = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                counts[i] = this.buckets[i].sum();
+                total += counts[i];
+            }
+            if (total == 0) return 0;
+            long rank = Math.max(1, (long) Math.ceil(quantile * total));
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return Math.min(getBucketUpperBound(i), this.getMax());
+                }
+            }
+            return this.getMax();
+        }
+
+        @Override
+        public String toString() {
+            return "Histogram{count=" + this.getCount() + ", mean=" + this.getMean()
+                + ", p50<=" + this.getQuantileUpperBound(0.5) + ", p99<=" + this.getQuantileUpperBound(0.99)
+                + ", max=" + this.getMax() + '}';
+        }
+    }
+}
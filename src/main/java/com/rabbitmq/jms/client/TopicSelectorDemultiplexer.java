@@ -0,0 +1,354 @@
+// This Source Code Form is subject to the terms of the Mozilla Public
+// License, v. 2.0. If a copy of the MPL was not distributed with this
+// file, You can obtain one at https://mozilla.org/MPL/2.0/.
+//
+// Copyright (c) 2020 VMware, Inc. or its affiliates. All rights reserved.
+package com.rabbitmq.jms.client;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Consumer;
+import com.rabbitmq.client.DefaultConsumer;
+import com.rabbitmq.client.Envelope;
+import com.rabbitmq.client.GetResponse;
+import com.rabbitmq.client.ShutdownSignalException;
+import com.rabbitmq.jms.admin.RMQDestination;
+import com.rabbitmq.jms.parse.Environment;
+import com.rabbitmq.jms.parse.sql.SqlEvaluator;
+import com.rabbitmq.jms.parse.sql.SqlSelectorAnalyzer;
+import com.rabbitmq.jms.util.Util;
+
+/**
+ * Shares a single AMQP subscription to a topic among all the non-durable subscribers with a selector
+ * on the same connection.
+ * <p>
+ * Instead of declaring a queue per subscriber, bound to a selector exchange, the demultiplexer consumes
+ * from one exclusive queue bound to the topic, and evaluates the subscribers' selectors in the client.
+ * Selectors are indexed on their first required <code>ident = 'string'</code> test, so a message is only evaluated against the selectors which can match its property values, and those without
+ * such a test.
+ * </p>
+ * <p>
+ * Matching messages are handed to the {@link Consumer} registered for a {@link Subscription}, one subscriber
+ * after the other, on the consumer thread of the demultiplexer channel. Messages for a subscription without
+ * a registered {@link Consumer} (for <code>receive()</code>, or while the connection is stopped) are buffered in
+ * the client, up to a bound: when the buffer of a subscription is full, the messages for that subscription are
+ * dropped, and counted, until it takes some. The dispatch never waits, so a subscriber that does not read its
+ * messages does not hold up the others.
+ * </p>
+ * <p>
+ * A delivery is acknowledged once it has been handed to, or buffered for, all the matching subscribers,
+ * which do not acknowledge messages themselves.
+ * </p>
+ */
+class TopicSelectorDemultiplexer {
+
+    /** Maximum number of messages buffered for a subscription, and prefetch of the channel if the connection sets none */
+    static final int DEFAULT_BUFFER_SIZE = 1000;
+
+    private final Logger logger = LoggerFactory.getLogger(TopicSelectorDemultiplexer.class);
+
+    private final RMQConnection connection;
+    private final RMQDestination topic;
+    private final JmsMetricsCollector metricsCollector;
+    private final int bufferSize;
+
+    private final Object lock = new Object();
+    private final List<Subscription> subscriptions = new ArrayList<Subscription>(); // @GuardedBy(lock)
+    private Channel channel; // @GuardedBy(lock)
+    /** Set when the last subscriber leaves, the connection then creates a new demultiplexer for the next one */
+    private boolean retired; // @GuardedBy(lock)
+
+    /** Rebuilt, under lock, each time a subscriber is added or removed, read without lock on delivery. */
+    private volatile SubscriberIndex index = SubscriberIndex.EMPTY;
+
+    TopicSelectorDemultiplexer(RMQConnection connection, RMQDestination topic) {
+        this(connection, topic, DEFAULT_BUFFER_SIZE);
+    }
+
+    TopicSelectorDemultiplexer(RMQConnection connection, RMQDestination topic, int bufferSize) {
+        this.connection = connection;
+        this.topic = topic;
+        this.metricsCollector = connection.getJmsMetricsCollector();
+        this.bufferSize = bufferSize;
+    }
+
+    /**
+     * Adds a subscriber, and starts consuming from the topic if it is the first one.
+     * @param evaluator the (valid) selector of the subscriber
+     * @return the new subscription, or <code>null</code> if this demultiplexer has lost its last subscriber
+     * and has been removed from the connection
+     * @throws IOException if the shared subscription cannot be created
+     */
+    Subscription subscribe(SqlEvaluator evaluator) throws IOException {
+        Subscription subscription = new Subscription(this, evaluator, this.bufferSize);
+        synchronized (this.lock) {
+            if (this.retired) {
+                return null;
+            }
+            if (this.channel == null) {
+                this.channel = openChannel();
+            }
+            this.subscriptions.add(subscription);
+            this.index = SubscriberIndex.of(this.subscriptions);
+        }
+        return subscription;
+    }
+
+    /**
+     * Removes a subscriber, and deletes the shared subscription if it was the last one.
+     * @param subscription the subscription to remove
+     */
+    void unsubscribe(Subscription subscription) {
+        Channel toClose = null;
+        synchronized (this.lock) {
+            if (this.subscriptions.remove(subscription)) {
+                this.index = SubscriberIndex.of(this.subscriptions);
+                if (this.subscriptions.isEmpty()) {
+                    toClose = this.channel;
+                    this.channel = null;
+                    this.retired = true;
+                    this.connection.removeTopicSelectorDemultiplexer(this.topic, this);
+                }
+            }
+        }
+        if (toClose != null) {
+            try {
+                toClose.close(); // the exclusive queue goes with the channel
+            } catch (Exception e) {
+                logger.debug("Error while closing demultiplexer channel for {}", this.topic, e);
+            }
+        }
+    }
+
+    private Channel openChannel() throws IOException {
+        Channel ch = this.connection.createRabbitChannel(false);
+        if (this.connection.getChannelsQos() <= 0) {
+            ch.basicQos(this.bufferSize);
+        }
+        String queueName = Util.generateUUID("jms-dmx-");
+        ch.queueDeclare(queueName, false, true, true, null);
+        ch.queueBind(queueName, this.topic.getAmqpExchangeName(), this.topic.getAmqpRoutingKey());
+        ch.basicConsume(queueName, false, new DemultiplexingConsumer(ch));
+        logger.debug("consuming from topic {} for selector subscribers through queue '{}'", this.topic, queueName);
+        return ch;
+    }
+
+    /**
+     * Hands a delivery to every subscriber whose selector it satisfies.
+     */
+    void dispatch(Envelope envelope, AMQP.BasicProperties properties, byte[] body) {
+        Environment env = RMQMessage.headersEnvironment(properties.getHeaders());
+        SubscriberIndex idx = this.index;
+        for (Map.Entry<String, Map<String, List<Subscription>>> entry : idx.byEquality.entrySet()) {
+            Object value = env.get(entry.getKey());
+            if (value instanceof String) {
+                List<Subscription> candidates = entry.getValue().get(value);
+                if (candidates != null) {
+                    dispatch(candidates, env, envelope, properties, body);
+                }
+            }
+        }
+        dispatch(idx.residual, env, envelope, properties, body);
+    }
+
+    private void dispatch(List<Subscription> candidates, Environment env, Envelope envelope, AMQP.BasicProperties properties, byte[] body) {
+        for (Subscription subscription : candidates) {
+            long start = System.nanoTime();
+            boolean selected = subscription.evaluator.evaluate(env);
+            this.metricsCollector.selectorEvaluated(RMQSession.metricsName(this.topic), System.nanoTime() - start);
+            if (selected) {
+                try {
+                    subscription.deliver(envelope, properties, body);
+                } catch (Exception e) {
+                    logger.error("Error while delivering message to selector subscriber on {}", this.topic, e);
+                }
+            }
+        }
+    }
+
+    private class DemultiplexingConsumer extends DefaultConsumer {
+
+        DemultiplexingConsumer(Channel channel) {
+            super(channel);
+        }
+
+        @Override
+        public void handleDelivery(String consumerTag, Envelope envelope, AMQP.BasicProperties properties, byte[] body) throws IOException {
+            dispatch(envelope, properties, body);
+            getChannel().basicAck(envelope.getDeliveryTag(), false);
+        }
+
+        @Override
+        public void handleShutdownSignal(String consumerTag, ShutdownSignalException sig) {
+            if (!sig.isInitiatedByApplication()) {
+                logger.error("Demultiplexer channel for {} shut down, selector subscribers will no longer receive messages", topic, sig);
+            }
+            synchronized (lock) {
+                if (channel == getChannel()) {
+                    channel = null;
+                }
+            }
+        }
+    }
+
+    /**
+     * The selector subscribers, indexed on the value of their first required equality test.
+     * Subscribers without such a test are in the residual list. Each subscriber appears exactly once.
+     */
+    static final class SubscriberIndex {
+        static final SubscriberIndex EMPTY = of(Collections.<Subscription>emptyList());
+
+        final Map<String, Map<String, List<Subscription>>> byEquality;
+        final List<Subscription> residual;
+
+        private SubscriberIndex(Map<String, Map<String, List<Subscription>>> byEquality, List<Subscription> residual) {
+            this.byEquality = byEquality;
+            this.residual = residual;
+        }
+
+        static SubscriberIndex of(List<Subscription> subscriptions) {
+            Map<String, Map<String, List<Subscription>>> byEquality = new HashMap<String, Map<String, List<Subscription>>>();
+            List<Subscription> residual = new ArrayList<Subscription>();
+            for (Subscription subscription : subscriptions) {
+                if (subscription.indexIdent == null) {
+                    residual.add(subscription);
+                } else {
+                    Map<String, List<Subscription>> byValue = byEquality.get(subscription.indexIdent);
+                    if (byValue == null) {
+                        byValue = new HashMap<String, List<Subscription>>();
+                        byEquality.put(subscription.indexIdent, byValue);
+                    }
+                    List<Subscription> list = byValue.get(subscription.indexValue);
+                    if (list == null) {
+                        list = new ArrayList<Subscription>();
+                        byValue.put(subscription.indexValue, list);
+                    }
+                    list.add(subscription);
+                }
+            }
+            return new SubscriberIndex(byEquality, residual);
+        }
+    }
+
+    /**
+     * One selector subscriber of a {@link TopicSelectorDemultiplexer}.
+     * <p>
+     * Deliveries are passed to the registered {@link Consumer}, as they would be by a channel, or buffered
+     * until one is registered or they are {@link #poll}ed. Deliveries are dropped while the buffer is full.
+     * </p>
+     */
+    static final class Subscription {
+        private final TopicSelectorDemultiplexer demultiplexer;
+        private final SqlEvaluator evaluator;
+        private final String indexIdent;
+        private final String indexValue;
+        private final int bufferSize;
+
+        private final ArrayDeque<GetResponse> buffer = new ArrayDeque<GetResponse>(); // @GuardedBy(this)
+        private Consumer consumer;  // @GuardedBy(this)
+        private String consumerTag; // @GuardedBy(this)
+        private boolean closed;     // @GuardedBy(this)
+        private long dropped;       // @GuardedBy(this)
+        private boolean overflowing; // @GuardedBy(this)
+
+        Subscription(TopicSelectorDemultiplexer demultiplexer, SqlEvaluator evaluator, int bufferSize) {
+            this.demultiplexer = demultiplexer;
+            this.evaluator = evaluator;
+            this.bufferSize = bufferSize;
+            Map<String, String> equalities = new SqlSelectorAnalyzer(evaluator).requiredEqualities();
+            if (equalities.isEmpty()) {
+                this.indexIdent = null;
+                this.indexValue = null;
+            } else {
+                Map.Entry<String, String> first = equalities.entrySet().iterator().next();
+                this.indexIdent = first.getKey();
+                this.indexValue = first.getValue();
+            }
+        }
+
+        synchronized void deliver(Envelope envelope, AMQP.BasicProperties properties, byte[] body) throws IOException {
+            if (this.closed) {
+                return;
+            }
+            if (this.consumer != null) {
+                this.consumer.handleDelivery(this.consumerTag, envelope, properties, body);
+            } else if (this.buffer.size() < this.bufferSize) {
+                this.buffer.add(new GetResponse(envelope, properties, body, 0));
+                this.overflowing = false;
+            } else {
+                this.dropped++;
+                if (!this.overflowing) {
+                    this.overflowing = true;
+                    this.demultiplexer.logger.warn("Buffer of selector subscriber on {} is full ({} messages), dropping its messages "
+                        + "until it reads some ({} dropped so far)", this.demultiplexer.topic, this.bufferSize, this.dropped);
+                }
+            }
+        }
+
+        /**
+         * @return the number of messages dropped because the buffer was full
+         */
+        synchronized long getDroppedCount() {
+            return this.dropped;
+        }
+
+        /**
+         * Registers the consumer to deliver to, after handing it any buffered messages.
+         */
+        synchronized void attach(Consumer consumer, String consumerTag) throws IOException {
+            consumer.handleConsumeOk(consumerTag);
+            GetResponse buffered;
+            while ((buffered = this.buffer.poll()) != null) {
+                consumer.handleDelivery(consumerTag, buffered.getEnvelope(), buffered.getProps(), buffered.getBody());
+            }
+            this.consumer = consumer;
+            this.consumerTag = consumerTag;
+        }
+
+        /**
+         * Unregisters the consumer with the given tag; later messages are buffered.
+         * @return <code>false</code> if no consumer is registered with this tag
+         */
+        boolean detach(String consumerTag) {
+            Consumer detached = null;
+            synchronized (this) {
+                if (this.consumer != null && this.consumerTag.equals(consumerTag)) {
+                    detached = this.consumer;
+                    this.consumer = null;
+                    this.consumerTag = null;
+                }
+            }
+            if (detached == null) {
+                return false;
+            }
+            detached.handleCancelOk(consumerTag);
+            return true;
+        }
+
+        /**
+         * @return the next buffered message, or <code>null</code> if there is none.
+         */
+        synchronized GetResponse poll() {
+            return this.buffer.poll();
+        }
+
+        void close() {
+            synchronized (this) {
+                this.closed = true;
+                this.buffer.clear();
+            }
+            this.demultiplexer.unsubscribe(this);
+        }
+    }
+}
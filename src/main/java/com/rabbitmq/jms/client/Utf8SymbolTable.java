@@ -0,0 +1,131 @@
+// This Source Code Form is subject to the terms of the Mozilla Public
+// License, v. 2.0. If a copy of the MPL was not distributed with this
+// file, You can obtain one at https://mozilla.org/MPL/2.0/.
+//
+// Copyright (c) 2020 VMware, Inc. or its affiliates. All rights reserved.
+package com.rabbitmq.jms.client;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.function.Function;
+
+/**
+ * A bounded cache of the values of strings read with {@link DataInput#readUTF()}, keyed by their encoded bytes.
+ * <p>
+ * Messages repeat the same few class and property names: on a hit, the string is neither decoded nor allocated, and
+ * its value (the string itself, or anything resolved from it) is found without comparing strings. The cache is
+ * direct-mapped: each encoding hashes to one slot, and a miss replaces the value in the slot. Strings longer than
+ * {@link #MAX_SYMBOL_LENGTH} bytes are not cached.
+ * </p>
+ * <p>
+ * Thread-safe: slots hold immutable entries.
+ * </p>
+ * @param <V> the type of the values
+ */
+final class Utf8SymbolTable<V> {
+
+    /** Longest encoding, in bytes, which is cached */
+    static final int MAX_SYMBOL_LENGTH = 128;
+
+    private final Entry<V>[] entries;
+    private final Function<String, V> resolver;
+
+    /**
+     * @param capacity the number of slots, rounded up to a power of two
+     * @param resolver the value of a string, on a miss
+     */
+    @SuppressWarnings("unchecked")
+    Utf8SymbolTable(int capacity, Function<String, V> resolver) {
+        this.entries = (Entry<V>[]) new Entry<?>[Integer.highestOneBit(Math.max(1, capacity - 1) << 1)];
+        this.resolver = resolver;
+    }
+
+    /**
+     * @return a table of the strings themselves, to share their instances
+     */
+    static Utf8SymbolTable<String> interner(int capacity) {
+        return new Utf8SymbolTable<String>(capacity, Function.identity());
+    }
+
+    /**
+     * @return a buffer for {@link #read(DataInput, byte[])}, which can be reused for successive reads on a thread
+     */
+    static byte[] newScratch() {
+        return new byte[MAX_SYMBOL_LENGTH];
+    }
+
+    /**
+     * Reads a string written with {@link java.io.DataOutput#writeUTF(String)}.
+     * @param in the input to read from
+     * @param scratch a buffer returned by {@link #newScratch()}
+     * @return the value of the string
+     * @throws IOException if the string cannot be read
+     */
+    V read(DataInput in, byte[] scratch) throws IOException {
+        int length = in.readUnsignedShort();
+        if (length > MAX_SYMBOL_LENGTH) {
+            byte[] utf = new byte[length];
+            in.readFully(utf);
+            return this.resolver.apply(decode(utf, length));
+        }
+        in.readFully(scratch, 0, length);
+        int hash = hash(scratch, length);
+        int slot = hash & (this.entries.length - 1);
+        Entry<V> entry = this.entries[slot];
+        if (entry != null && entry.hash == hash && entry.matches(scratch, length)) {
+            return entry.value;
+        }
+        byte[] utf = Arrays.copyOf(scratch, length);
+        V value = this.resolver.apply(decode(utf, length));
+        this.entries[slot] = new Entry<V>(utf, hash, value);
+        return value;
+    }
+
+    private static int hash(byte[] b, int length) {
+        int h = 1;
+        for (int i = 0; i < length; i++) {
+            h = 31 * h + b[i];
+        }
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * @return the string of a modified UTF-8 encoding
+     */
+    private static String decode(byte[] utf, int length) throws IOException {
+        for (int i = 0; i < length; i++) {
+            if (utf[i] < 0) {
+                byte[] framed = new byte[length + 2];
+                framed[0] = (byte) (length >>> 8);
+                framed[1] = (byte) length;
+                System.arraycopy(utf, 0, framed, 2, length);
+                return new DataInputStream(new ByteArrayInputStream(framed)).readUTF();
+            }
+        }
+        return new String(utf, 0, length, StandardCharsets.US_ASCII); // encoding of ASCII characters is ASCII
+    }
+
+    private static final class Entry<V> {
+        private final byte[] utf;
+        private final int hash;
+        private final V value;
+
+        Entry(byte[] utf, int hash, V value) {
+            this.utf = utf;
+            this.hash = hash;
+            this.value = value;
+        }
+
+        boolean matches(byte[] b, int length) {
+            if (this.utf.length != length) return false;
+            for (int i = 0; i < length; i++) {
+                if (this.utf[i] != b[i]) return false;
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+// This Source Code Form is subject to the terms of the Mozilla Public
+// License, v. 2.0. If a copy of the MPL was not distributed with this
+// file, You can obtain one at https://mozilla.org/MPL/2.0/.
+//
+// Copyright (c) 2020 VMware, Inc. or its affiliates. All rights reserved.
+package com.rabbitmq.jms.client;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Creates virtual threads on Java 21 and later. The client is compiled for Java 8, so
+ * <code>Thread.ofVirtual()</code> is looked up once, reflectively; on older JVMs, or if virtual threads
+ * are not enabled, {@link #threadFactory(String)} returns <code>null</code> and callers use platform threads.
+ */
+final class VirtualThreads {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(VirtualThreads.class);
+
+    /** <code>Thread.ofVirtual()</code>, <code>null</code> if not supported */
+    private static final MethodHandle OF_VIRTUAL;
+    /** <code>Thread.Builder.name(String, long)</code> */
+    private static final MethodHandle NAME;
+    /** <code>Thread.Builder.factory()</code> */
+    private static final MethodHandle FACTORY;
+
+    static {
+        MethodHandle ofVirtual = null;
+        MethodHandle name = null;
+        MethodHandle factory = null;
+        try {
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            Class<?> ofVirtualClass = Class.forName("java.lang.Thread$Builder$OfVirtual");
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            ofVirtual = lookup.findStatic(Thread.class, "ofVirtual", MethodType.methodType(ofVirtualClass));
+            name = lookup.findVirtual(builderClass, "name", MethodType.methodType(builderClass, String.class, long.class));
+            factory = lookup.findVirtual(builderClass, "factory", MethodType.methodType(ThreadFactory.class));
+            // Java 19 and 20 have the method, but throw if preview features are not enabled
+            ofVirtual.invoke();
+        } catch (Throwable e) {
+            LOGGER.debug("Virtual threads are not supported by this JVM", e);
+            ofVirtual = null;
+        }
+        OF_VIRTUAL = ofVirtual;
+        NAME = name;
+        FACTORY = factory;
+    }
+
+    private VirtualThreads() { }
+
+    /**
+     * @return whether this JVM can create virtual threads
+     */
+    static boolean isSupported() {
+        return OF_VIRTUAL != null;
+    }
+
+    /**
+     * @param namePrefix prefix of the thread names, followed by a counter
+     * @return a factory of virtual threads, <code>null</code> if this JVM cannot create them
+     */
+    static ThreadFactory threadFactory(String namePrefix) {
+        if (OF_VIRTUAL == null) {
+            return null;
+        }
+        try {
+            Object builder = NAME.invoke(OF_VIRTUAL.invoke(), namePrefix, 0L);
+            return (ThreadFactory) FACTORY.invoke(builder);
+        } catch (Throwable e) {
+            LOGGER.warn("Cannot create virtual thread factory", e);
+            return null;
+        }
+    }
+}
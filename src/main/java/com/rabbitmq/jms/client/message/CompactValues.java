@@ -0,0 +1,253 @@
+// This Source Code Form is subject to the terms of the Mozilla Public
+// License, v. 2.0. If a copy of the MPL was not distributed with this
+// file, You can obtain one at https://mozilla.org/MPL/2.0/.
+//
+// Copyright (c) 2020 VMware, Inc. or its affiliates. All rights reserved.
+package com.rabbitmq.jms.client.message;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.jms.JMSException;
+import javax.jms.MessageEOFException;
+import javax.jms.MessageFormatException;
+
+import com.rabbitmq.jms.util.RMQByteArrayOutputStream;
+import com.rabbitmq.jms.util.RMQJMSException;
+import com.rabbitmq.jms.util.RMQMessageFormatException;
+import com.rabbitmq.jms.util.WhiteListObjectInputStream;
+
+/**
+ * The compact encoding of message body values.
+ * <p>
+ * A value is a type tag (the same as {@link com.rabbitmq.jms.client.RMQMessage#writePrimitive(Object, java.io.ObjectOutput)})
+ * followed by the value in big-endian order; strings (in UTF-8), byte arrays and serialized objects are prefixed
+ * with their length as an <code>int</code>.
+ * </p>
+ * <p>
+ * Primitive values are handled as their <i>bits</i>, in a <code>long</code>: <code>0</code> or <code>1</code> for a
+ * <code>boolean</code>, the (sign-extended) value for the integer types and <code>char</code>, and the raw bits for
+ * <code>float</code> and <code>double</code>, so that they can be stored and read without boxing.
+ * </p>
+ */
+final class CompactValues {
+
+    static final byte NULL = -1;
+    static final byte BOOLEAN = 1;
+    static final byte BYTE = 2;
+    static final byte SHORT = 3;
+    static final byte INT = 4;
+    static final byte LONG = 5;
+    static final byte FLOAT = 6;
+    static final byte DOUBLE = 7;
+    static final byte STRING = 8;
+    static final byte CHAR = 9;
+    static final byte BYTES = 10;
+    static final byte SERIALIZABLE = Byte.MAX_VALUE;
+
+    /** Size of the tag and length of a length-prefixed value */
+    static final int LENGTH_PREFIXED_HEADER_SIZE = 5;
+
+    private static final String MSG_EOF = "Message EOF";
+
+    private CompactValues() {
+    }
+
+    /**
+     * @return <code>true</code> if values with this tag are stored as bits
+     */
+    static boolean isPrimitive(byte tag) {
+        return tag >= BOOLEAN && tag <= DOUBLE || tag == CHAR;
+    }
+
+    /**
+     * @return the end of the value at position <code>p</code> in <code>b</code>
+     * @throws MessageEOFException if there is no value before <code>limit</code>, or it is truncated
+     * @throws MessageFormatException if the value is not in the compact encoding
+     */
+    static int valueEnd(byte[] b, int p, int limit) throws JMSException {
+        if (p >= limit)
+            throw new MessageEOFException(MSG_EOF);
+        long end;
+        switch (b[p]) {
+        case NULL:
+            end = p + 1;
+            break;
+        case BOOLEAN:
+        case BYTE:
+            end = p + 2;
+            break;
+        case SHORT:
+        case CHAR:
+            end = p + 3;
+            break;
+        case INT:
+        case FLOAT:
+            end = p + 5;
+            break;
+        case LONG:
+        case DOUBLE:
+            end = p + 9;
+            break;
+        case STRING:
+        case BYTES:
+        case SERIALIZABLE:
+            if (p + LENGTH_PREFIXED_HEADER_SIZE > limit)
+                throw new MessageEOFException(MSG_EOF);
+            int length = getInt(b, p + 1);
+            if (length < 0)
+                throw new RMQMessageFormatException(new IOException("Invalid length in message body"));
+            end = (long) p + LENGTH_PREFIXED_HEADER_SIZE + length;
+            break;
+        default:
+            throw new MessageFormatException("Unknown value type " + b[p] + " in message body");
+        }
+        if (end > limit)
+            throw new MessageEOFException(MSG_EOF);
+        return (int) end;
+    }
+
+    /**
+     * @return the bits of the primitive value at position <code>p</code> in <code>b</code>
+     */
+    static long bitsAt(byte[] b, int p) {
+        switch (b[p]) {
+        case BOOLEAN:
+            return b[p + 1] != 0 ? 1 : 0;
+        case BYTE:
+            return b[p + 1];
+        case SHORT:
+            return getShort(b, p + 1);
+        case CHAR:
+            return (char) getShort(b, p + 1);
+        case INT:
+        case FLOAT:
+            return getInt(b, p + 1);
+        case LONG:
+        case DOUBLE:
+            return getLong(b, p + 1);
+        default:
+            throw new IllegalArgumentException("Not a primitive value type " + b[p]);
+        }
+    }
+
+    /**
+     * @return the primitive value with these bits, boxed
+     */
+    static Object box(byte tag, long bits) {
+        switch (tag) {
+        case BOOLEAN:
+            return bits != 0;
+        case BYTE:
+            return (byte) bits;
+        case SHORT:
+            return (short) bits;
+        case CHAR:
+            return (char) bits;
+        case INT:
+            return (int) bits;
+        case LONG:
+            return bits;
+        case FLOAT:
+            return Float.intBitsToFloat((int) bits);
+        case DOUBLE:
+            return Double.longBitsToDouble(bits);
+        default:
+            throw new IllegalArgumentException("Not a primitive value type " + tag);
+        }
+    }
+
+    /**
+     * @return the value at position <code>p</code> in <code>b</code>, which ends at <code>end</code>, boxed
+     * @param trustedPackages prefixes of packages that are trusted to be safe to deserialize
+     */
+    static Object valueAt(byte[] b, int p, int end, List<String> trustedPackages) throws JMSException {
+        byte tag = b[p];
+        if (isPrimitive(tag)) {
+            return box(tag, bitsAt(b, p));
+        }
+        switch (tag) {
+        case STRING:
+            return stringAt(b, p, end);
+        case BYTES:
+            return Arrays.copyOfRange(b, p + LENGTH_PREFIXED_HEADER_SIZE, end);
+        case SERIALIZABLE:
+            try {
+                ByteArrayInputStream serialized = new ByteArrayInputStream(b, p + LENGTH_PREFIXED_HEADER_SIZE, end - p - LENGTH_PREFIXED_HEADER_SIZE);
+                return new WhiteListObjectInputStream(serialized, trustedPackages).readObject();
+            } catch (ClassNotFoundException x) {
+                throw new RMQJMSException(x);
+            } catch (IOException x) {
+                throw new RMQJMSException(x);
+            }
+        default:
+            return null;
+        }
+    }
+
+    /**
+     * @return the string value at position <code>p</code> in <code>b</code>, which ends at <code>end</code>
+     */
+    static String stringAt(byte[] b, int p, int end) {
+        return new String(b, p + LENGTH_PREFIXED_HEADER_SIZE, end - p - LENGTH_PREFIXED_HEADER_SIZE, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes a primitive value from its bits.
+     */
+    static void writeBits(RMQByteArrayOutputStream out, byte tag, long bits) {
+        out.write(tag);
+        switch (tag) {
+        case BOOLEAN:
+        case BYTE:
+            out.write((int) bits);
+            break;
+        case SHORT:
+        case CHAR:
+            out.writeShort((short) bits);
+            break;
+        case INT:
+        case FLOAT:
+            out.writeInt((int) bits);
+            break;
+        case LONG:
+        case DOUBLE:
+            out.writeLong(bits);
+            break;
+        default:
+            throw new IllegalArgumentException("Not a primitive value type " + tag);
+        }
+    }
+
+    static void writeLengthPrefixed(RMQByteArrayOutputStream out, byte tag, byte[] value, int offset, int length) {
+        out.write(tag);
+        out.writeInt(length);
+        out.write(value, offset, length);
+    }
+
+    static short getShort(byte[] b, int off) {
+        return (short) (((b[off + 1] & 0xFF)) +
+                        ((b[off]) << 8));
+    }
+
+    static int getInt(byte[] b, int off) {
+        return ((b[off + 3] & 0xFF)) +
+               ((b[off + 2] & 0xFF) << 8) +
+               ((b[off + 1] & 0xFF) << 16) +
+               ((b[off]) << 24);
+    }
+
+    static long getLong(byte[] b, int off) {
+        return ((b[off + 7] & 0xFFL)) +
+               ((b[off + 6] & 0xFFL) << 8) +
+               ((b[off + 5] & 0xFFL) << 16) +
+               ((b[off + 4] & 0xFFL) << 24) +
+               ((b[off + 3] & 0xFFL) << 32) +
+               ((b[off + 2] & 0xFFL) << 40) +
+               ((b[off + 1] & 0xFFL) << 48) +
+               (((long) b[off]) << 56);
+    }
+}
@@ -0,0 +1,323 @@
+// This Source Code Form is subject to the terms of the Mozilla Public
+// License, v. 2.0. If a copy of the MPL was not distributed with this
+// file, You can obtain one at https://mozilla.org/MPL/2.0/.
+//
+// Copyright (c) 2020 VMware, Inc. or its affiliates. All rights reserved.
+package com.rabbitmq.jms.client.message;
+
+import static com.rabbitmq.jms.client.message.CompactValues.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.jms.JMSException;
+
+import com.rabbitmq.jms.util.RMQByteArrayOutputStream;
+
+/**
+ * A map from names to message body values, which does not box primitive values.
+ * <p>
+ * The map is an open-addressing hash table with linear probing: each slot holds a name, the type tag of its value
+ * (from {@link CompactValues}), the bits of a primitive value and the reference of any other value.
+ * </p>
+ * <p>
+ * A map can be indexed on an encoded map (see {@link #writeTo(RMQByteArrayOutputStream)}): the names are decoded,
+ * but each value is only decoded the first time its slot is looked up. The encoded map must not be modified
+ * while it is in use. Changing an indexed map decodes all the remaining values first, and detaches the map from
+ * the encoded map.
+ * </p>
+ * <p>
+ * Not thread-safe, like the messages using it.
+ * </p>
+ */
+final class PrimitiveMap {
+
+    /** Tag of a value which has not been decoded yet: its bits are its position in the encoded map */
+    private static final byte ENCODED = 0;
+
+    private static final int MIN_CAPACITY = 16;
+
+    private String[] names = new String[MIN_CAPACITY];
+    private byte[] tags = new byte[MIN_CAPACITY];
+    private long[] bits = new long[MIN_CAPACITY];
+    private Object[] refs = new Object[MIN_CAPACITY];
+    private int size;
+
+    /** The encoded map this map is indexed on, or <code>null</code> */
+    private byte[] encoded;
+
+    int size() {
+        return this.size;
+    }
+
+    /**
+     * @return <code>true</code> if this map is indexed on an encoded map, and has not been changed since
+     */
+    boolean isIndexed() {
+        return this.encoded != null;
+    }
+
+    /**
+     * @return the slot of the name, with its value decoded; <code>-1</code> if the name is not in the map
+     */
+    int slot(String name) {
+        if (name == null) return -1;
+        int mask = this.names.length - 1;
+        for (int i = hash(name) & mask; this.names[i] != null; i = (i + 1) & mask) {
+            if (this.names[i].equals(name)) {
+                if (this.tags[i] == ENCODED) {
+                    this.decode(i);
+                }
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    boolean contains(String name) {
+        return this.slot(name) >= 0;
+    }
+
+    /**
+     * @return the type tag of the value in a slot returned by {@link #slot(String)}
+     */
+    byte tag(int slot) {
+        return this.tags[slot];
+    }
+
+    /**
+     * @return the bits of the primitive value in a slot returned by {@link #slot(String)}
+     */
+    long bits(int slot) {
+        return this.bits[slot];
+    }
+
+    /**
+     * @return the (not copied) string or byte array value in a slot returned by {@link #slot(String)}
+     */
+    Object ref(int slot) {
+        return this.refs[slot];
+    }
+
+    /**
+     * @return the value in a slot returned by {@link #slot(String)}, boxed; byte arrays are not copied
+     */
+    Object get(int slot) {
+        byte tag = this.tags[slot];
+        return isPrimitive(tag) ? box(tag, this.bits[slot]) : this.refs[slot];
+    }
+
+    /**
+     * @return the names in the map
+     */
+    List<String> names() {
+        List<String> result = new ArrayList<String>(this.size);
+        for (String name : this.names) {
+            if (name != null) result.add(name);
+        }
+        return result;
+    }
+
+    void putBits(String name, byte tag, long value) {
+        this.put(name, tag, value, null);
+    }
+
+    void putString(String name, String value) {
+        if (value == null) {
+            this.put(name, NULL, 0, null);
+        } else {
+            this.put(name, STRING, 0, value);
+        }
+    }
+
+    void putBytes(String name, byte[] value) {
+        this.put(name, BYTES, 0, value);
+    }
+
+    void remove(String name) {
+        this.detach();
+        int slot = this.slot(name);
+        if (slot < 0) return;
+        this.size--;
+        // shift back the following entries of the probe sequence into the gap
+        int mask = this.names.length - 1;
+        int gap = slot;
+        for (int i = (slot + 1) & mask; this.names[i] != null; i = (i + 1) & mask) {
+            int home = hash(this.names[i]) & mask;
+            if (((i - home) & mask) >= ((i - gap) & mask)) {
+                this.move(i, gap);
+                gap = i;
+            }
+        }
+        this.clearSlot(gap);
+    }
+
+    void clear() {
+        this.encoded = null;
+        if (this.names.length > MIN_CAPACITY) {
+            this.allocate(MIN_CAPACITY);
+        } else {
+            Arrays.fill(this.names, null);
+            Arrays.fill(this.refs, null);
+        }
+        this.size = 0;
+    }
+
+    /**
+     * Replaces the content of this map by the names of an encoded map, without decoding the values.
+     * @param frame the bytes holding the encoded map, which must not be modified while this map is indexed on it
+     * @param offset the position of the encoded map in <code>frame</code>
+     * @param limit the end of the encoded map in <code>frame</code>
+     * @throws IOException if the encoded map is not valid
+     */
+    void index(byte[] frame, int offset, int limit) throws IOException {
+        this.clear();
+        if (limit - offset < 4) throw new IOException("Truncated map in message body");
+        int count = getInt(frame, offset);
+        if (count < 0) throw new IOException("Invalid map size in message body");
+        int p = offset + 4;
+        try {
+            for (int i = 0; i < count; i++) {
+                if (limit - p < 4) throw new IOException("Truncated map in message body");
+                int nameLength = getInt(frame, p);
+                if (nameLength < 0 || nameLength > limit - p - 4) throw new IOException("Invalid name in message body");
+                String name = new String(frame, p + 4, nameLength, StandardCharsets.UTF_8);
+                p += 4 + nameLength;
+                int end = valueEnd(frame, p, limit);
+                if (frame[p] == SERIALIZABLE) throw new IOException("Invalid value type in map message body");
+                this.put(name, ENCODED, p, null);
+                p = end;
+            }
+        } catch (JMSException x) {
+            throw new IOException(x);
+        }
+        this.encoded = frame;
+    }
+
+    /**
+     * Encodes this map: the number of entries, as an <code>int</code>, then each name, as the length of its UTF-8
+     * encoding, as an <code>int</code>, followed by the encoding, and its value, in the compact encoding.
+     */
+    void writeTo(RMQByteArrayOutputStream out) {
+        out.writeInt(this.size);
+        for (int i = 0; i < this.names.length; i++) {
+            if (this.names[i] == null) continue;
+            byte[] name = this.names[i].getBytes(StandardCharsets.UTF_8);
+            out.writeInt(name.length);
+            out.write(name, 0, name.length);
+            byte tag = this.tags[i];
+            if (tag == ENCODED) {
+                int p = (int) this.bits[i];
+                try {
+                    out.write(this.encoded, p, valueEnd(this.encoded, p, this.encoded.length) - p);
+                } catch (JMSException x) {
+                    throw new IllegalStateException(x); // checked by index()
+                }
+            } else if (isPrimitive(tag)) {
+                writeBits(out, tag, this.bits[i]);
+            } else if (tag == STRING) {
+                byte[] value = ((String) this.refs[i]).getBytes(StandardCharsets.UTF_8);
+                writeLengthPrefixed(out, STRING, value, 0, value.length);
+            } else if (tag == BYTES) {
+                byte[] value = (byte[]) this.refs[i];
+                writeLengthPrefixed(out, BYTES, value, 0, value.length);
+            } else {
+                out.write(NULL);
+            }
+        }
+    }
+
+    private void put(String name, byte tag, long value, Object ref) {
+        if (name == null) throw new IllegalArgumentException("Map entry name must not be null");
+        if (tag != ENCODED) this.detach();
+        if ((this.size + 1) * 2 > this.names.length) {
+            this.rehash(this.names.length * 2);
+        }
+        int mask = this.names.length - 1;
+        int i = hash(name) & mask;
+        while (this.names[i] != null && !this.names[i].equals(name)) {
+            i = (i + 1) & mask;
+        }
+        if (this.names[i] == null) {
+            this.names[i] = name;
+            this.size++;
+        }
+        this.tags[i] = tag;
+        this.bits[i] = value;
+        this.refs[i] = ref;
+    }
+
+    private void decode(int slot) {
+        byte[] b = this.encoded;
+        int p = (int) this.bits[slot];
+        byte tag = b[p];
+        if (isPrimitive(tag)) {
+            this.bits[slot] = bitsAt(b, p);
+        } else if (tag == STRING) {
+            this.refs[slot] = stringAt(b, p, p + LENGTH_PREFIXED_HEADER_SIZE + getInt(b, p + 1));
+        } else if (tag == BYTES) {
+            this.refs[slot] = Arrays.copyOfRange(b, p + LENGTH_PREFIXED_HEADER_SIZE, p + LENGTH_PREFIXED_HEADER_SIZE + getInt(b, p + 1));
+        }
+        this.tags[slot] = tag;
+    }
+
+    /**
+     * Decodes all the remaining values, so that the map no longer refers to the encoded map.
+     */
+    private void detach() {
+        if (this.encoded == null) return;
+        for (int i = 0; i < this.names.length; i++) {
+            if (this.names[i] != null && this.tags[i] == ENCODED) {
+                this.decode(i);
+            }
+        }
+        this.encoded = null;
+    }
+
+    private void rehash(int capacity) {
+        String[] oldNames = this.names;
+        byte[] oldTags = this.tags;
+        long[] oldBits = this.bits;
+        Object[] oldRefs = this.refs;
+        this.allocate(capacity);
+        int mask = capacity - 1;
+        for (int j = 0; j < oldNames.length; j++) {
+            if (oldNames[j] == null) continue;
+            int i = hash(oldNames[j]) & mask;
+            while (this.names[i] != null) {
+                i = (i + 1) & mask;
+            }
+            this.names[i] = oldNames[j];
+            this.tags[i] = oldTags[j];
+            this.bits[i] = oldBits[j];
+            this.refs[i] = oldRefs[j];
+        }
+    }
+
+    private void allocate(int capacity) {
+        this.names = new String[capacity];
+        this.tags = new byte[capacity];
+        this.bits = new long[capacity];
+        this.refs = new Object[capacity];
+    }
+
+    private void move(int from, int to) {
+        this.names[to] = this.names[from];
+        this.tags[to] = this.tags[from];
+        this.bits[to] = this.bits[from];
+        this.refs[to] = this.refs[from];
+    }
+
+    private void clearSlot(int slot) {
+        this.names[slot] = null;
+        this.refs[slot] = null;
+    }
+
+    private static int hash(String name) {
+        int h = name.hashCode();
+        return h ^ (h >>> 16);
+    }
+}
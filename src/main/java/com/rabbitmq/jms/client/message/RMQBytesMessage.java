@@ -12,6 +12,7 @@ import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
 
 import javax.jms.BytesMessage;
 import javax.jms.JMSException;
@@ -35,8 +36,12 @@ public class RMQBytesMessage extends RMQMessage implements BytesMessage {
      */
     private volatile boolean reading;
 
-    /** <code>buf</code> stores the byte array payload and we read from it directly */
+    /** <code>buf</code> stores the byte array payload, from <code>offset</code> to <code>limit</code>, and we read from it directly */
     private volatile transient byte[] buf;
+    /** The start of the payload in the byte array <code>buf</code> (non-zero when <code>buf</code> is a received frame) */
+    private volatile transient int offset;
+    /** The end (exclusive) of the payload in the byte array <code>buf</code> */
+    private volatile transient int limit;
     /** The position of our read in the byte array <code>buf</code> */
     private volatile transient int pos;
 
@@ -60,6 +65,40 @@ public class RMQBytesMessage extends RMQMessage implements BytesMessage {
         }
     }
 
+    /**
+     * Instantiates a read-only RMQBytesMessage whose body is the given range of a byte array, which is not copied.
+     * @param payload - the array holding the body, which must not be modified while the message is in use
+     * @param offset - the start of the body in the array
+     * @param length - the length of the body
+     * @return the message, in read state
+     * @throws IndexOutOfBoundsException if the range is not within the array
+     * @since 2.3.0
+     */
+    public static RMQBytesMessage wrap(byte[] payload, int offset, int length) {
+        if (offset < 0 || length < 0 || offset > payload.length - length) {
+            throw new IndexOutOfBoundsException();
+        }
+        RMQBytesMessage message = new RMQBytesMessage(true);
+        message.setPayload(payload, offset, offset + length);
+        return message;
+    }
+
+    /**
+     * Instantiates a read-only RMQBytesMessage whose body is the remaining bytes of a buffer, which are not copied
+     * if the buffer is backed by an accessible array.
+     * @param payload - the buffer holding the body, between its position and its limit; its position is not changed
+     * @return the message, in read state
+     * @since 2.3.0
+     */
+    public static RMQBytesMessage wrap(ByteBuffer payload) {
+        if (payload.hasArray()) {
+            return wrap(payload.array(), payload.arrayOffset() + payload.position(), payload.remaining());
+        }
+        byte[] copy = new byte[payload.remaining()];
+        payload.duplicate().get(copy);
+        return wrap(copy, 0, copy.length);
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -67,7 +106,7 @@ public class RMQBytesMessage extends RMQMessage implements BytesMessage {
     public boolean readBoolean() throws JMSException {
         if (!this.reading)
             throw new MessageNotReadableException(NOT_READABLE);
-        if (this.pos + Bits.NUM_BYTES_IN_BOOLEAN > this.buf.length)
+        if (this.pos + Bits.NUM_BYTES_IN_BOOLEAN > this.limit)
             throw new MessageEOFException(MSG_EOF);
         return Bits.getBoolean(this.buf, this.pos++);
     }
@@ -79,7 +118,7 @@ public class RMQBytesMessage extends RMQMessage implements BytesMessage {
     public byte readByte() throws JMSException {
         if (!this.reading)
             throw new MessageNotReadableException(NOT_READABLE);
-        if (this.pos + 1 > this.buf.length)
+        if (this.pos + 1 > this.limit)
             throw new MessageEOFException(MSG_EOF);
         return this.buf[this.pos++];
     }
@@ -91,7 +130,7 @@ public class RMQBytesMessage extends RMQMessage implements BytesMessage {
     public int readUnsignedByte() throws JMSException {
         if (!this.reading)
             throw new MessageNotReadableException(NOT_READABLE);
-        if (this.pos + 1 > this.buf.length)
+        if (this.pos + 1 > this.limit)
             throw new MessageEOFException(MSG_EOF);
         return ((int) (this.buf[this.pos++])) & 0xFF;
     }
@@ -103,7 +142,7 @@ public class RMQBytesMessage extends RMQMessage implements BytesMessage {
     public short readShort() throws JMSException {
         if (!this.reading)
             throw new MessageNotReadableException(NOT_READABLE);
-        if (this.pos + Bits.NUM_BYTES_IN_SHORT > this.buf.length)
+        if (this.pos + Bits.NUM_BYTES_IN_SHORT > this.limit)
             throw new MessageEOFException(MSG_EOF);
         short s = Bits.getShort(this.buf, this.pos);
         this.pos += Bits.NUM_BYTES_IN_SHORT;
@@ -117,7 +156,7 @@ public class RMQBytesMessage extends RMQMessage implements BytesMessage {
     public int readUnsignedShort() throws JMSException {
         if (!this.reading)
             throw new MessageNotReadableException(NOT_READABLE);
-        if (this.pos + Bits.NUM_BYTES_IN_SHORT > this.buf.length)
+        if (this.pos + Bits.NUM_BYTES_IN_SHORT > this.limit)
             throw new MessageEOFException(MSG_EOF);
         short s = Bits.getShort(this.buf, this.pos);
         this.pos += Bits.NUM_BYTES_IN_SHORT;
@@ -131,7 +170,7 @@ public class RMQBytesMessage extends RMQMessage implements BytesMessage {
     public char readChar() throws JMSException {
         if (!this.reading)
             throw new MessageNotReadableException(NOT_READABLE);
-        if (this.pos + Bits.NUM_BYTES_IN_CHAR > this.buf.length)
+        if (this.pos + Bits.NUM_BYTES_IN_CHAR > this.limit)
             throw new MessageEOFException(MSG_EOF);
         char ch = Bits.getChar(this.buf, this.pos);
         this.pos += Bits.NUM_BYTES_IN_CHAR;
@@ -145,7 +184,7 @@ public class RMQBytesMessage extends RMQMessage implements BytesMessage {
     public int readInt() throws JMSException {
         if (!this.reading)
             throw new MessageNotReadableException(NOT_READABLE);
-        if (this.pos + Bits.NUM_BYTES_IN_INT > this.buf.length)
+        if (this.pos + Bits.NUM_BYTES_IN_INT > this.limit)
             throw new MessageEOFException(MSG_EOF);
         int i = Bits.getInt(this.buf, this.pos);
         this.pos += Bits.NUM_BYTES_IN_INT;
@@ -159,7 +198,7 @@ public class RMQBytesMessage extends RMQMessage implements BytesMessage {
     public long readLong() throws JMSException {
         if (!this.reading)
             throw new MessageNotReadableException(NOT_READABLE);
-        if (this.pos + Bits.NUM_BYTES_IN_LONG > this.buf.length)
+        if (this.pos + Bits.NUM_BYTES_IN_LONG > this.limit)
             throw new MessageEOFException(MSG_EOF);
         long l = Bits.getLong(this.buf, this.pos);
         this.pos += Bits.NUM_BYTES_IN_LONG;
@@ -173,7 +212,7 @@ public class RMQBytesMessage extends RMQMessage implements BytesMessage {
     public float readFloat() throws JMSException {
         if (!this.reading)
             throw new MessageNotReadableException(NOT_READABLE);
-        if (this.pos + Bits.NUM_BYTES_IN_FLOAT > this.buf.length)
+        if (this.pos + Bits.NUM_BYTES_IN_FLOAT > this.limit)
             throw new MessageEOFException(MSG_EOF);
         float flt = Bits.getFloat(this.buf, this.pos);
         this.pos += Bits.NUM_BYTES_IN_FLOAT;
@@ -187,7 +226,7 @@ public class RMQBytesMessage extends RMQMessage implements BytesMessage {
     public double readDouble() throws JMSException {
         if (!this.reading)
             throw new MessageNotReadableException(NOT_READABLE);
-        if (this.pos + Bits.NUM_BYTES_IN_DOUBLE > this.buf.length)
+        if (this.pos + Bits.NUM_BYTES_IN_DOUBLE > this.limit)
             throw new MessageEOFException(MSG_EOF);
         double dbl = Bits.getDouble(this.buf, this.pos);
         this.pos += Bits.NUM_BYTES_IN_DOUBLE;
@@ -206,7 +245,7 @@ public class RMQBytesMessage extends RMQMessage implements BytesMessage {
         this.pos = posOfUtfItem;               // reset in case of failure
 
         int utfItemLen = Bits.NUM_BYTES_IN_SHORT + lenUtfBytes;
-        if (posOfUtfItem + utfItemLen > this.buf.length) {
+        if (posOfUtfItem + utfItemLen > this.limit) {
             throw new MessageFormatException("Not enough bytes in message body for UTF object");
         }
         byte[] utfBuf = new byte[utfItemLen];
@@ -239,8 +278,8 @@ public class RMQBytesMessage extends RMQMessage implements BytesMessage {
         if (length<0 || length>value.length) {
             throw new IndexOutOfBoundsException();
         }
-        if (this.pos < this.buf.length) {
-            int readLen = Math.min(length, this.buf.length - this.pos);
+        if (this.pos < this.limit) {
+            int readLen = Math.min(length, this.limit - this.pos);
             System.arraycopy(this.buf, this.pos, value, 0, readLen);
             this.pos += readLen;
             return readLen;
@@ -385,15 +424,14 @@ public class RMQBytesMessage extends RMQMessage implements BytesMessage {
         if (this.reading) {
             //if we already are reading, all we want to do is reset to the
             //beginning of the stream
-            this.pos = 0;
+            this.pos = this.offset;
         } else {
             if (this.bout != null) {
-                this.buf = this.bout.toByteArray();
+                // read straight from what has been written: the stream is discarded
+                this.setPayload(this.bout.getBuffer(), 0, this.bout.size());
             } else {
-                this.buf = new byte[0];
+                this.setPayload(new byte[0], 0, 0);
             }
-            this.pos = 0;
-            this.reading = true;
             this.bout = null;
         }
     }
@@ -403,7 +441,7 @@ public class RMQBytesMessage extends RMQMessage implements BytesMessage {
      */
     @Override
     public long getBodyLength() throws JMSException {
-        return this.reading ? this.buf.length : this.bout.size();
+        return this.reading ? this.limit - this.offset : this.bout.size();
     }
 
     /**
@@ -413,13 +451,31 @@ public class RMQBytesMessage extends RMQMessage implements BytesMessage {
     public void clearBodyInternal() throws JMSException {
         this.bout = new RMQByteArrayOutputStream(DEFAULT_MESSAGE_BODY_SIZE);
         this.pos = 0;
+        this.offset = 0;
+        this.limit = 0;
         this.buf = null;
         this.reading = false;
     }
 
-    private byte[] getByteArray() {
-        if (reading) return this.buf;
-        else return this.bout.toByteArray();
+    private void setPayload(byte[] buf, int offset, int limit) {
+        this.buf = buf;
+        this.offset = offset;
+        this.limit = limit;
+        this.pos = offset;
+        this.reading = true;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The body of a {@link BytesMessage} is its payload: it is sliced from the message being written
+     * or read, without copying it.
+     * </p>
+     */
+    @Override
+    protected ByteBuffer rawBody() {
+        if (this.reading) return ByteBuffer.wrap(this.buf, this.offset, this.limit - this.offset);
+        else return this.bout.toByteBuffer();
     }
 
     /**
@@ -427,14 +483,17 @@ public class RMQBytesMessage extends RMQMessage implements BytesMessage {
      */
     @Override
     protected void writeBody(ObjectOutput oOut, ByteArrayOutputStream bout) throws IOException {
-        byte[] buf = getByteArray();
-        bout.write(buf);
+        writeRawBody(bout);
     }
 
     @Override
     protected void writeAmqpBody(ByteArrayOutputStream baos) throws IOException {
-        byte[] buf = getByteArray();
-        baos.write(buf);
+        writeRawBody(baos);
+    }
+
+    private void writeRawBody(ByteArrayOutputStream out) {
+        if (this.reading) out.write(this.buf, this.offset, this.limit - this.offset);
+        else out.write(this.bout.getBuffer(), 0, this.bout.size());
     }
 
     /**
@@ -444,17 +503,26 @@ public class RMQBytesMessage extends RMQMessage implements BytesMessage {
      */
     @Override
     protected void readBody(ObjectInput inputStream, ByteArrayInputStream bin) throws IOException, ClassNotFoundException {
-        this.buf = new byte[bin.available()];
-        bin.read(this.buf);
-        this.reading = true;
-        this.pos = 0;
+        byte[] payload = new byte[bin.available()];
+        bin.read(payload);
+        this.setPayload(payload, 0, payload.length);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The payload is read in place, in the received frame.
+     * </p>
+     */
+    @Override
+    protected boolean readRawBody(byte[] frame, int offset) {
+        this.setPayload(frame, offset, frame.length);
+        return true;
     }
 
     @Override
     protected void readAmqpBody(byte[] barr) {
-        this.buf = barr;
-        this.reading = true;
-        this.pos = 0;
+        this.setPayload(barr, 0, barr.length);
     }
 
     /**
@@ -5,15 +5,16 @@
 // Copyright (c) 2013-2020 VMware, Inc. or its affiliates. All rights reserved.
 package com.rabbitmq.jms.client.message;
 
+import static com.rabbitmq.jms.client.message.CompactValues.*;
+
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
 import java.util.Enumeration;
-import java.util.HashMap;
-import java.util.Map;
 
 import javax.jms.JMSException;
 import javax.jms.MapMessage;
@@ -21,229 +22,277 @@ import javax.jms.MessageFormatException;
 import javax.jms.MessageNotWriteableException;
 
 import com.rabbitmq.jms.client.RMQMessage;
-import com.rabbitmq.jms.util.DiscardingObjectOutput;
 import com.rabbitmq.jms.util.IteratorEnum;
-import com.rabbitmq.jms.util.RMQMessageFormatException;
+import com.rabbitmq.jms.util.RMQByteArrayOutputStream;
 
 /**
  * Implementation of {@link MapMessage} interface.
+ * <p>
+ * Entries are stored without boxing primitive values. Maps are written in a compact encoding (see
+ * {@link PrimitiveMap#writeTo(RMQByteArrayOutputStream)}), after a format byte; a received map is indexed on its
+ * names, and each value is only decoded when it is first read.
+ * </p>
+ * <p>
+ * Bodies are sent in the legacy encoding, an object stream, which older clients can read, unless the message is created
+ * for the compact encoding (see
+ * {@link com.rabbitmq.jms.admin.RMQConnectionFactory#setMapMessageCompactFormat(boolean)}). Bodies in either
+ * encoding are read.
+ * </p>
  */
 public class RMQMapMessage extends RMQMessage implements MapMessage {
 
-    private Map<String, Serializable> data = new HashMap<String, Serializable>();
+    /** First byte of a body in the compact encoding (a body in the legacy encoding starts with an object stream block marker) */
+    private static final byte COMPACT_FORMAT = 0x4D;
+
+    /** Whether the body is sent in the compact encoding */
+    private final boolean compactFormat;
+
+    private final PrimitiveMap data = new PrimitiveMap();
+
+    /** The received body the map is indexed on, from the format byte to the end */
+    private byte[] receivedFrame;
+    private int receivedOffset;
+
+    public RMQMapMessage() {
+        this(false);
+    }
+
+    /**
+     * @param compactFormat whether the body is sent in the compact encoding, which clients before 2.3.0 cannot read
+     * @since 2.3.0
+     */
+    public RMQMapMessage(boolean compactFormat) {
+        this.compactFormat = compactFormat;
+    }
 
     @Override
     public boolean getBoolean(String name) throws JMSException {
-        Object o = this.data.get(name);
-        if (o == null)
+        int slot = this.data.slot(name);
+        if (slot < 0)
             return false;
-        else if (o instanceof Boolean)
-            return (Boolean) o;
-        else if (o instanceof String)
-            return Boolean.parseBoolean((String) o);
-        else
-            throw new MessageFormatException(String.format(UNABLE_TO_CAST, o, "boolean"));
+        switch (this.data.tag(slot)) {
+        case NULL:
+            return false;
+        case BOOLEAN:
+            return this.data.bits(slot) != 0;
+        case STRING:
+            return Boolean.parseBoolean((String) this.data.ref(slot));
+        default:
+            throw cannotCast(slot, "boolean");
+        }
     }
 
     @Override
     public byte getByte(String name) throws JMSException {
-        Object o = this.data.get(name);
-        if (o == null)
-            throw new NumberFormatException(String.format(UNABLE_TO_CAST, o, "byte"));
-        else if (o instanceof Byte)
-            return (Byte) o;
-        else if (o instanceof String)
-            return Byte.parseByte((String) o);
-        else
-            throw new MessageFormatException(String.format(UNABLE_TO_CAST, o, "byte"));
+        int slot = this.existingSlot(name, "byte");
+        switch (this.data.tag(slot)) {
+        case BYTE:
+            return (byte) this.data.bits(slot);
+        case STRING:
+            return Byte.parseByte((String) this.data.ref(slot));
+        default:
+            throw cannotCast(slot, "byte");
+        }
     }
 
     @Override
     public short getShort(String name) throws JMSException {
-        Object o = this.data.get(name);
-        if (o == null)
-            throw new NumberFormatException(String.format(UNABLE_TO_CAST, o, "short"));
-        else if (o instanceof Byte)
-            return (Byte) o;
-        else if (o instanceof Short)
-            return (Short) o;
-        else if (o instanceof String)
-            return Short.parseShort((String) o);
-        else
-            throw new MessageFormatException(String.format(UNABLE_TO_CAST, o, "short"));
+        int slot = this.existingSlot(name, "short");
+        switch (this.data.tag(slot)) {
+        case BYTE:
+        case SHORT:
+            return (short) this.data.bits(slot);
+        case STRING:
+            return Short.parseShort((String) this.data.ref(slot));
+        default:
+            throw cannotCast(slot, "short");
+        }
     }
 
     @Override
     public char getChar(String name) throws JMSException {
-        Object o = this.data.get(name);
-        if (o == null)
-            throw new NumberFormatException(String.format(UNABLE_TO_CAST, o, "char"));
-        else if (o instanceof Character)
-            return (Character) o;
+        int slot = this.existingSlot(name, "char");
+        if (this.data.tag(slot) == CHAR)
+            return (char) this.data.bits(slot);
         else
-            throw new MessageFormatException(String.format(UNABLE_TO_CAST, o, "char"));
+            throw cannotCast(slot, "char");
     }
 
     @Override
     public int getInt(String name) throws JMSException {
-        Object o = this.data.get(name);
-        if (o == null)
-            throw new NumberFormatException(String.format(UNABLE_TO_CAST, o, "int"));
-        else if (o instanceof Byte)
-            return (Byte) o;
-        else if (o instanceof Short)
-            return (Short) o;
-        else if (o instanceof Integer)
-            return (Integer) o;
-        else if (o instanceof String)
-            return Integer.parseInt((String) o);
-        else
-            throw new MessageFormatException(String.format(UNABLE_TO_CAST, o, "int"));
+        int slot = this.existingSlot(name, "int");
+        switch (this.data.tag(slot)) {
+        case BYTE:
+        case SHORT:
+        case INT:
+            return (int) this.data.bits(slot);
+        case STRING:
+            return Integer.parseInt((String) this.data.ref(slot));
+        default:
+            throw cannotCast(slot, "int");
+        }
     }
 
     @Override
     public long getLong(String name) throws JMSException {
-        Object o = this.data.get(name);
-        if (o == null)
-            throw new NumberFormatException(String.format(UNABLE_TO_CAST, o, "long"));
-        else if (o instanceof Byte)
-            return (Byte) o;
-        else if (o instanceof Short)
-            return (Short) o;
-        else if (o instanceof Integer)
-            return (Integer) o;
-        else if (o instanceof Long)
-            return (Long) o;
-        else if (o instanceof String)
-            return Long.parseLong((String) o);
-        else
-            throw new MessageFormatException(String.format(UNABLE_TO_CAST, o, "long"));
+        int slot = this.existingSlot(name, "long");
+        switch (this.data.tag(slot)) {
+        case BYTE:
+        case SHORT:
+        case INT:
+        case LONG:
+            return this.data.bits(slot);
+        case STRING:
+            return Long.parseLong((String) this.data.ref(slot));
+        default:
+            throw cannotCast(slot, "long");
+        }
     }
 
     @Override
     public float getFloat(String name) throws JMSException {
-        Object o = this.data.get(name);
-        if (o == null)
-            throw new NumberFormatException(String.format(UNABLE_TO_CAST, o, "float"));
-        else if (o instanceof Float) {
-            return (Float) o;
-        } else if (o instanceof String)
-            return Float.parseFloat((String) o);
-        else
-            throw new MessageFormatException(String.format(UNABLE_TO_CAST, o, "float"));
+        int slot = this.existingSlot(name, "float");
+        switch (this.data.tag(slot)) {
+        case FLOAT:
+            return Float.intBitsToFloat((int) this.data.bits(slot));
+        case STRING:
+            return Float.parseFloat((String) this.data.ref(slot));
+        default:
+            throw cannotCast(slot, "float");
+        }
     }
 
     @Override
     public double getDouble(String name) throws JMSException {
-        Object o = this.data.get(name);
-        if (o == null)
-            throw new NumberFormatException(String.format(UNABLE_TO_CAST, o, "double"));
-        else if (o instanceof Float)
-            return (Float) o;
-        else if (o instanceof Double) {
-            return (Double) o;
-        } else if (o instanceof String)
-            return Double.parseDouble((String) o);
-        else
-            throw new MessageFormatException(String.format(UNABLE_TO_CAST, o, "double"));
+        int slot = this.existingSlot(name, "double");
+        switch (this.data.tag(slot)) {
+        case FLOAT:
+            return Float.intBitsToFloat((int) this.data.bits(slot));
+        case DOUBLE:
+            return Double.longBitsToDouble(this.data.bits(slot));
+        case STRING:
+            return Double.parseDouble((String) this.data.ref(slot));
+        default:
+            throw cannotCast(slot, "double");
+        }
     }
 
     @Override
     public String getString(String name) throws JMSException {
-        Object o = this.data.get(name);
-        if (o == null)
+        int slot = this.data.slot(name);
+        if (slot < 0)
             return null;
-        else if (o instanceof String)
-            return ((String) o);
-        else if (o instanceof byte[])
-            throw new MessageFormatException(String.format(UNABLE_TO_CAST, o, "String"));
-        else
-            return o.toString();
+        switch (this.data.tag(slot)) {
+        case NULL:
+            return null;
+        case STRING:
+            return (String) this.data.ref(slot);
+        case BYTES:
+            throw cannotCast(slot, "String");
+        default:
+            return this.data.get(slot).toString();
+        }
     }
 
     @Override
     public byte[] getBytes(String name) throws JMSException {
-        Object o = this.data.get(name);
-        if (o == null) {
+        int slot = this.data.slot(name);
+        if (slot < 0)
             return null;
-        } else if (o instanceof byte[]) {
-            byte[] b1 = ((byte[]) o);
-            byte[] b2 = new byte[b1.length];
-            System.arraycopy(b1, 0, b2, 0, b1.length);
-            return b2;
-        } else
-            throw new MessageFormatException(String.format(UNABLE_TO_CAST, o, "byte[]"));
+        switch (this.data.tag(slot)) {
+        case NULL:
+            return null;
+        case BYTES:
+            return ((byte[]) this.data.ref(slot)).clone();
+        default:
+            throw cannotCast(slot, "byte[]");
+        }
     }
 
     @Override
     public Object getObject(String name) throws JMSException {
-        Object o = this.data.get(name);
-        if (o == null) {
+        int slot = this.data.slot(name);
+        if (slot < 0) {
             return null;
-        } else if (o instanceof byte[]) {
-            return getBytes(name);
+        } else if (this.data.tag(slot) == BYTES) {
+            return ((byte[]) this.data.ref(slot)).clone();
         } else {
-            return o;
+            return this.data.get(slot);
         }
     }
 
+    /**
+     * @return the slot of a name with a non-<code>null</code> value
+     * @throws NumberFormatException if there is no such value, as for a <code>null</code> value
+     */
+    private int existingSlot(String name, String type) {
+        int slot = this.data.slot(name);
+        if (slot < 0 || this.data.tag(slot) == NULL)
+            throw new NumberFormatException(String.format(UNABLE_TO_CAST, null, type));
+        return slot;
+    }
+
+    private MessageFormatException cannotCast(int slot, String type) {
+        return new MessageFormatException(String.format(UNABLE_TO_CAST, this.data.get(slot), type));
+    }
+
     @Override
     public Enumeration<String> getMapNames() throws JMSException {
-        return new IteratorEnum<String>(this.data.keySet().iterator());
+        return new IteratorEnum<String>(this.data.names().iterator());
     }
 
     @Override
     public void setBoolean(String name, boolean value) throws JMSException {
         checkNotReadonlyBody();
-        this.data.put(name, value);
+        this.data.putBits(name, BOOLEAN, value ? 1 : 0);
     }
 
     @Override
     public void setByte(String name, byte value) throws JMSException {
         checkNotReadonlyBody();
-        this.data.put(name, value);
+        this.data.putBits(name, BYTE, value);
     }
 
     @Override
     public void setShort(String name, short value) throws JMSException {
         checkNotReadonlyBody();
-        this.data.put(name, value);
+        this.data.putBits(name, SHORT, value);
     }
 
     @Override
     public void setChar(String name, char value) throws JMSException {
         checkNotReadonlyBody();
-        this.data.put(name, value);
+        this.data.putBits(name, CHAR, value);
     }
 
     @Override
     public void setInt(String name, int value) throws JMSException {
         checkNotReadonlyBody();
-        this.data.put(name, value);
+        this.data.putBits(name, INT, value);
     }
 
     @Override
     public void setLong(String name, long value) throws JMSException {
         checkNotReadonlyBody();
-        this.data.put(name, value);
+        this.data.putBits(name, LONG, value);
     }
 
     @Override
     public void setFloat(String name, float value) throws JMSException {
         checkNotReadonlyBody();
-        this.data.put(name, value);
+        this.data.putBits(name, FLOAT, Float.floatToRawIntBits(value));
     }
 
     @Override
     public void setDouble(String name, double value) throws JMSException {
         checkNotReadonlyBody();
-        this.data.put(name, value);
+        this.data.putBits(name, DOUBLE, Double.doubleToRawLongBits(value));
     }
 
     @Override
     public void setString(String name, String value) throws JMSException {
         checkNotReadonlyBody();
-        this.data.put(name, value);
+        this.data.putString(name, value);
     }
 
     @Override
@@ -261,7 +310,7 @@ public class RMQMapMessage extends RMQMessage implements MapMessage {
         }
         byte[] buf = new byte[length];
         System.arraycopy(value, offset, buf, 0, length);
-        this.data.put(name, buf);
+        this.data.putBytes(name, buf);
     }
 
     @Override
@@ -269,43 +318,90 @@ public class RMQMapMessage extends RMQMessage implements MapMessage {
         checkNotReadonlyBody();
         if (name == null && value == null) {
         } else if (value == null) {
-            this.data.remove(name);
+            this.data.putString(name, null);
         } else if (!(value instanceof Serializable)) {
             throw new MessageFormatException(String.format(UNABLE_TO_CAST, value, Serializable.class.getName()));
-        } else {
-            try {
-                /* Make sure we can write this type of object */
-                writePrimitiveData(value, new DiscardingObjectOutput(), false);
-            } catch (IOException x) {
-                throw new RMQMessageFormatException(x);
-            }
-        }
-
-        if (value instanceof byte[]) {
+        } else if (value instanceof byte[]) {
             setBytes(name, (byte[])value);
         } else {
-            this.data.put(name, (Serializable) value);
+            this.put(name, value);
         }
     }
 
+    /**
+     * Stores a value of a primitive type, boxed.
+     * @throws MessageFormatException if the value is not of a primitive type
+     */
+    private void put(String name, Object value) throws MessageFormatException {
+        if (value == null) {
+            this.data.putString(name, null);
+        } else if (value instanceof Boolean) {
+            this.data.putBits(name, BOOLEAN, (Boolean) value ? 1 : 0);
+        } else if (value instanceof Byte) {
+            this.data.putBits(name, BYTE, (Byte) value);
+        } else if (value instanceof Short) {
+            this.data.putBits(name, SHORT, (Short) value);
+        } else if (value instanceof Integer) {
+            this.data.putBits(name, INT, (Integer) value);
+        } else if (value instanceof Long) {
+            this.data.putBits(name, LONG, (Long) value);
+        } else if (value instanceof Float) {
+            this.data.putBits(name, FLOAT, Float.floatToRawIntBits((Float) value));
+        } else if (value instanceof Double) {
+            this.data.putBits(name, DOUBLE, Double.doubleToRawLongBits((Double) value));
+        } else if (value instanceof String) {
+            this.data.putString(name, (String) value);
+        } else if (value instanceof Character) {
+            this.data.putBits(name, CHAR, (Character) value);
+        } else if (value instanceof byte[]) {
+            this.data.putBytes(name, (byte[]) value);
+        } else
+            throw new MessageFormatException(value + " is not a recognized primitive type.");
+    }
+
     @Override
     public boolean itemExists(String name) throws JMSException {
-        return this.data.containsKey(name);
+        return this.data.contains(name);
     }
 
     @Override
     public void clearBodyInternal() throws JMSException {
         this.data.clear();
+        this.receivedFrame = null;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The map is sent in the compact encoding if the message is sent in the compact encoding; a received map is then
+     * sent as it was received.
+     * </p>
+     */
+    @Override
+    protected ByteBuffer rawBody() {
+        if (!this.compactFormat) return null;
+        if (this.receivedFrame != null && this.data.isIndexed()) {
+            return ByteBuffer.wrap(this.receivedFrame, this.receivedOffset, this.receivedFrame.length - this.receivedOffset);
+        }
+        RMQByteArrayOutputStream out = new RMQByteArrayOutputStream(RMQMessage.DEFAULT_MESSAGE_BODY_SIZE);
+        out.write(COMPACT_FORMAT);
+        this.data.writeTo(out);
+        return out.toByteBuffer();
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The body is written in the legacy encoding.
+     * </p>
+     */
     @Override
     protected void writeBody(ObjectOutput out, ByteArrayOutputStream bout) throws IOException {
-        int size = this.data.size();
-        out.writeInt(size);
-        for (Map.Entry<String, Serializable> entry : this.data.entrySet()) {
-            out.writeUTF(entry.getKey());
+        out.writeInt(this.data.size());
+        for (String name : this.data.names()) {
+            out.writeUTF(name);
             try {
-                RMQMessage.writePrimitive(entry.getValue(), out);
+                RMQMessage.writePrimitive(this.data.get(this.data.slot(name)), out);
             } catch (MessageFormatException x) {
                 throw new IOException(x);
             }
@@ -318,8 +414,29 @@ public class RMQMapMessage extends RMQMessage implements MapMessage {
         for (int i = 0; i < size; i++) {
             String name = inputStream.readUTF();
             Object value = RMQMessage.readPrimitive(inputStream);
-            this.data.put(name, (Serializable) value);
+            try {
+                this.put(name, value);
+            } catch (MessageFormatException x) {
+                throw new IOException(x);
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * A body in the compact encoding is indexed in place, in the received frame: values are decoded when they are read.
+     * </p>
+     */
+    @Override
+    protected boolean readRawBody(byte[] frame, int offset) throws IOException {
+        if (offset < frame.length && frame[offset] == COMPACT_FORMAT) {
+            this.data.index(frame, offset + 1, frame.length);
+            this.receivedFrame = frame;
+            this.receivedOffset = offset;
+            return true;
         }
+        return false;
     }
 
     @Override
@@ -327,43 +444,6 @@ public class RMQMapMessage extends RMQMessage implements MapMessage {
         throw new UnsupportedOperationException();
     }
 
-    /**
-     * Utility method to write an object as a primitive or as an object
-     * @param s the object to write
-     * @param out the stream to write it to
-     * @param allowSerializable true if we allow objects other than serializable
-     * @throws IOException
-     * @throws NullPointerException if s is null
-     */
-    private void writePrimitiveData(Object s, ObjectOutput out, boolean allowSerializable) throws IOException, MessageFormatException {
-        if(s==null) {
-            throw new NullPointerException();
-        } else if (s instanceof Boolean) {
-            out.writeBoolean((Boolean) s);
-        } else if (s instanceof Byte) {
-            out.writeByte((Byte) s);
-        } else if (s instanceof Short) {
-            out.writeShort(((Short) s));
-        } else if (s instanceof Integer) {
-            out.writeInt((Integer) s);
-        } else if (s instanceof Long) {
-            out.writeLong((Long) s);
-        } else if (s instanceof Float) {
-            out.writeFloat((Float) s);
-        } else if (s instanceof Double) {
-            out.writeDouble((Double) s);
-        } else if (s instanceof String) {
-            out.writeUTF((String) s);
-        } else if (s instanceof Character) {
-            out.writeChar((Character) s);
-        } else if (allowSerializable && s instanceof Serializable) {
-            out.writeObject(s);
-        } else if (s instanceof byte[]) {
-            out.write((byte[])s);
-        } else
-            throw new MessageFormatException(s + " is not a recognized primitive type.");
-    }
-
     private void checkNotReadonlyBody() throws JMSException {
         if (isReadonlyBody())
             throw new MessageNotWriteableException("Message not writeable");
@@ -8,6 +8,7 @@ package com.rabbitmq.jms.client.message;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.NotSerializableException;
 import java.io.ObjectInput;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutput;
@@ -20,16 +21,27 @@ import javax.jms.JMSException;
 import javax.jms.MessageNotWriteableException;
 import javax.jms.ObjectMessage;
 
+import com.rabbitmq.jms.client.ObjectMessageSerializer;
 import com.rabbitmq.jms.client.RMQMessage;
 import com.rabbitmq.jms.util.RMQJMSException;
 import com.rabbitmq.jms.util.WhiteListObjectInputStream;
 
 /**
  * Implements {@link ObjectMessage} interface.
+ * <p>
+ * Objects are serialized with Java serialization, unless the message has an {@link ObjectMessageSerializer}: its name
+ * is then sent as an internal property of the message, and the consumer deserializes the object with the serializer
+ * of this name. Objects the serializer does not support are serialized with Java serialization.
+ * </p>
  */
 public class RMQObjectMessage extends RMQMessage implements ObjectMessage {
 
+    /** Name of the serializer of the object, when it is not Java serialization */
+    private static final String SERIALIZER_PROPERTY = "rmq.jms.object.serializer";
+
     private final List<String> trustedPackages;
+    /** Serializer of the objects set, <code>null</code> for Java serialization */
+    private final ObjectMessageSerializer serializer;
     /** Buffer to hold serialised object */
     private volatile byte[] buf = null;
 
@@ -38,7 +50,17 @@ public class RMQObjectMessage extends RMQMessage implements ObjectMessage {
     }
 
     public RMQObjectMessage(List<String> trustedPackages) {
+        this(trustedPackages, null);
+    }
+
+    /**
+     * @param trustedPackages prefixes of packages that are trusted to be safe to deserialize
+     * @param serializer serializer of the objects set, <code>null</code> for Java serialization
+     * @since 2.3.0
+     */
+    public RMQObjectMessage(List<String> trustedPackages, ObjectMessageSerializer serializer) {
         this.trustedPackages = trustedPackages;
+        this.serializer = serializer;
     }
 
     @Override
@@ -47,6 +69,9 @@ public class RMQObjectMessage extends RMQMessage implements ObjectMessage {
         try {
             if (object==null) {
                 buf = null;
+                this.setStringProperty(SERIALIZER_PROPERTY, null);
+            } else if (this.serializer != null && this.serializeWithSerializer(object)) {
+                this.setStringProperty(SERIALIZER_PROPERTY, this.serializer.getName());
             } else {
                 /*
                  * We have to serialise the object now
@@ -56,6 +81,7 @@ public class RMQObjectMessage extends RMQMessage implements ObjectMessage {
                 out.writeObject(object);
                 out.flush();
                 buf = bout.toByteArray();
+                this.setStringProperty(SERIALIZER_PROPERTY, null);
             }
         } catch (IOException x) {
             throw new RMQJMSException(x);
@@ -63,6 +89,20 @@ public class RMQObjectMessage extends RMQMessage implements ObjectMessage {
 
     }
 
+    /**
+     * @return <code>false</code> if the serializer does not support the object, which is then serialized with
+     * Java serialization
+     */
+    private boolean serializeWithSerializer(Serializable object) throws IOException {
+        try {
+            buf = this.serializer.serialize(object);
+            return true;
+        } catch (NotSerializableException x) {
+            logger.debug("Serializer {} does not support {}, using Java serialization", this.serializer.getName(), object.getClass().getName());
+            return false;
+        }
+    }
+
     @Override
     public Serializable getObject() throws JMSException {
         return this.getObject(this.trustedPackages);
@@ -73,8 +113,15 @@ public class RMQObjectMessage extends RMQMessage implements ObjectMessage {
             return null;
         } else {
             this.loggerDebugByteArray("Deserialising object from buffer {} for {}", this.buf, "RMQObjectMessage");
-            ByteArrayInputStream bin = new ByteArrayInputStream(buf);
+            String serializerName = this.getStringProperty(SERIALIZER_PROPERTY);
             try {
+                if (serializerName != null) {
+                    ObjectMessageSerializer deserializer = RMQMessage.objectMessageSerializer(serializerName);
+                    if (deserializer == null)
+                        throw new RMQJMSException(String.format("No ObjectMessage serializer [%s] available", serializerName), null);
+                    return deserializer.deserialize(buf, trustedPackages);
+                }
+                ByteArrayInputStream bin = new ByteArrayInputStream(buf);
                 WhiteListObjectInputStream in = new WhiteListObjectInputStream(bin, trustedPackages);
                 return (Serializable)in.readObject();
             } catch (ClassNotFoundException x) {
@@ -88,6 +135,7 @@ public class RMQObjectMessage extends RMQMessage implements ObjectMessage {
     @Override
     public void clearBodyInternal() throws JMSException {
         this.buf = null;
+        this.setStringProperty(SERIALIZER_PROPERTY, null);
     }
 
     @Override
@@ -5,6 +5,8 @@
 // Copyright (c) 2013-2020 VMware, Inc. or its affiliates. All rights reserved.
 package com.rabbitmq.jms.client.message;
 
+import static com.rabbitmq.jms.client.message.CompactValues.*;
+
 import com.rabbitmq.jms.util.WhiteListObjectInputStream;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
@@ -14,8 +16,12 @@ import java.io.ObjectInput;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutput;
 import java.io.ObjectOutputStream;
+import java.io.Serializable;
 import java.io.UTFDataFormatException;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.List;
 import javax.jms.JMSException;
 import javax.jms.MessageEOFException;
@@ -25,6 +31,7 @@ import javax.jms.MessageNotWriteableException;
 import javax.jms.StreamMessage;
 
 import com.rabbitmq.jms.client.RMQMessage;
+import com.rabbitmq.jms.util.RMQByteArrayOutputStream;
 import com.rabbitmq.jms.util.RMQJMSException;
 import com.rabbitmq.jms.util.RMQMessageFormatException;
 
@@ -35,54 +42,127 @@ import com.rabbitmq.jms.util.RMQMessageFormatException;
  */
 /**
  * Implements {@link StreamMessage} interface.
+ * <p>
+ * Bodies are sent in the legacy encoding, an object stream, which older clients can read, unless the message is created
+ * for the compact encoding (see
+ * {@link com.rabbitmq.jms.admin.RMQConnectionFactory#setStreamMessageCompactFormat(boolean)}). Bodies in either
+ * encoding are read.
+ * </p>
+ * <p>
+ * In the legacy encoding, values are written straight to the object stream. In the compact encoding, values are written
+ * to a growable buffer: a type tag (the same as {@link RMQMessage#writePrimitive(Object, ObjectOutput)}) followed by
+ * the value in big-endian order, strings and byte arrays being prefixed with their length. Primitive values in the
+ * compact encoding are read straight from the buffer, without boxing.
+ * </p>
  */
 public class RMQStreamMessage extends RMQMessage implements StreamMessage {
 
     private static final byte[] EOF_ARRAY = new byte[0];
 
+    /** First byte of a body in the compact encoding (a body in the legacy encoding starts with an object stream block marker) */
+    private static final byte COMPACT_FORMAT = 0x53;
+
+    /** Whether the body is sent in the compact encoding */
+    private final boolean compactFormat;
+
     private volatile boolean reading;
 
+    /** The values written, in the compact encoding, after the format byte */
+    private transient RMQByteArrayOutputStream bout;
+
+    /** The values written, in the legacy encoding */
+    private transient ObjectOutputStream legacyOut;
+    private transient ByteArrayOutputStream legacyBout;
+
+    /** The values read, in the compact encoding, from <code>start</code> to <code>limit</code> in <code>buf</code> */
+    private volatile transient byte[] buf;
+    private volatile transient int start;
+    private volatile transient int limit;
+    /** The position of our read in <code>buf</code> */
+    private volatile transient int pos;
+
+    /** The values read, in the legacy encoding */
+    private volatile transient byte[] legacyBuf;
     private transient ObjectInputStream in;
     private transient ByteArrayInputStream bin;
-    private transient ObjectOutputStream out;
-    private transient ByteArrayOutputStream bout;
-    private volatile transient byte[] buf;
+
     private volatile transient byte[] readbuf = null;
 
     private final List<String> trustedPackages;
 
     public RMQStreamMessage(List<String> trustedPackages) {
-        this(false, trustedPackages);
+        this(false, trustedPackages, false);
     }
 
     public RMQStreamMessage() {
-        this(false, WhiteListObjectInputStream.DEFAULT_TRUSTED_PACKAGES);
+        this(false, WhiteListObjectInputStream.DEFAULT_TRUSTED_PACKAGES, false);
     }
 
-    private RMQStreamMessage(boolean reading, List<String> trustedPackages) {
+    /**
+     * @param trustedPackages prefixes of packages that are trusted to be safe to deserialize
+     * @param compactFormat whether the body is sent in the compact encoding, which clients before 2.3.0 cannot read
+     * @since 2.3.0
+     */
+    public RMQStreamMessage(List<String> trustedPackages, boolean compactFormat) {
+        this(false, trustedPackages, compactFormat);
+    }
+
+    private RMQStreamMessage(boolean reading, List<String> trustedPackages, boolean compactFormat) {
         this.reading = reading;
         this.trustedPackages = trustedPackages;
+        this.compactFormat = compactFormat;
         if (!reading) {
-            this.bout = new ByteArrayOutputStream(RMQMessage.DEFAULT_MESSAGE_BODY_SIZE);
+            this.newWriteStream();
+        }
+    }
+
+    private void newWriteStream() {
+        if (this.compactFormat) {
+            this.bout = new RMQByteArrayOutputStream(RMQMessage.DEFAULT_MESSAGE_BODY_SIZE);
+            this.bout.write(COMPACT_FORMAT);
+        } else {
+            this.legacyBout = new ByteArrayOutputStream(RMQMessage.DEFAULT_MESSAGE_BODY_SIZE);
             try {
-                this.out = new ObjectOutputStream(this.bout);
+                this.legacyOut = new ObjectOutputStream(this.legacyBout);
             } catch (IOException x) {
                 throw new RuntimeException(x);
             }
         }
     }
 
-    private void writePrimitive(Object value) throws JMSException {
+    private void writeLegacy(Object value, boolean allowSerializable) throws JMSException {
         if (this.reading || isReadonlyBody())
             throw new MessageNotWriteableException(NOT_WRITEABLE);
         try {
-            RMQMessage.writePrimitive(value, this.out);
+            RMQMessage.writePrimitive(value, this.legacyOut, allowSerializable);
         } catch (IOException x) {
             throw new RMQJMSException(x);
         }
     }
 
-    private Object readPrimitiveType(Class<?> type) throws JMSException {
+    private RMQByteArrayOutputStream writableStream() throws JMSException {
+        if (this.reading || isReadonlyBody())
+            throw new MessageNotWriteableException(NOT_WRITEABLE);
+        return this.bout;
+    }
+
+    /**
+     * @return the position of the next value to read in the compact encoding
+     */
+    private int readPosition() throws JMSException {
+        if (!this.reading)
+            throw new MessageNotReadableException(NOT_READABLE);
+        if (this.readbuf!=null) {
+            throw new MessageFormatException("You must call 'int readBytes(byte[])' since the buffer is not empty");
+        }
+        return this.pos;
+    }
+
+    private MessageFormatException cannotCast(int p, int end, String type) throws JMSException {
+        return new MessageFormatException(String.format(UNABLE_TO_CAST, valueAt(this.buf, p, end, this.trustedPackages), type));
+    }
+
+    private Object readLegacyPrimitiveType(Class<?> type) throws JMSException {
         if (!this.reading)
             throw new MessageNotReadableException(NOT_READABLE);
         if (this.readbuf!=null) {
@@ -228,7 +308,25 @@ public class RMQStreamMessage extends RMQMessage implements StreamMessage {
      */
     @Override
     public boolean readBoolean() throws JMSException {
-        return (Boolean)this.readPrimitiveType(Boolean.class);
+        if (this.legacyBuf != null) return (Boolean)this.readLegacyPrimitiveType(Boolean.class);
+        int p = this.readPosition();
+        int end = valueEnd(this.buf, p, this.limit);
+        boolean value;
+        switch (this.buf[p]) {
+        case NULL:
+            value = false;
+            break;
+        case BOOLEAN:
+            value = this.buf[p + 1] != 0;
+            break;
+        case STRING:
+            value = Boolean.parseBoolean(stringAt(this.buf, p, end));
+            break;
+        default:
+            throw cannotCast(p, end, "boolean");
+        }
+        this.pos = end;
+        return value;
     }
 
     /**
@@ -236,7 +334,22 @@ public class RMQStreamMessage extends RMQMessage implements StreamMessage {
      */
     @Override
     public byte readByte() throws JMSException {
-        return (Byte)this.readPrimitiveType(Byte.class);
+        if (this.legacyBuf != null) return (Byte)this.readLegacyPrimitiveType(Byte.class);
+        int p = this.readPosition();
+        int end = valueEnd(this.buf, p, this.limit);
+        byte value;
+        switch (this.buf[p]) {
+        case BYTE:
+            value = this.buf[p + 1];
+            break;
+        case STRING:
+            value = Byte.parseByte(stringAt(this.buf, p, end));
+            break;
+        default:
+            throw cannotCast(p, end, "byte");
+        }
+        this.pos = end;
+        return value;
     }
 
     /**
@@ -244,7 +357,25 @@ public class RMQStreamMessage extends RMQMessage implements StreamMessage {
      */
     @Override
     public short readShort() throws JMSException {
-        return (Short)this.readPrimitiveType(Short.class);
+        if (this.legacyBuf != null) return (Short)this.readLegacyPrimitiveType(Short.class);
+        int p = this.readPosition();
+        int end = valueEnd(this.buf, p, this.limit);
+        short value;
+        switch (this.buf[p]) {
+        case BYTE:
+            value = this.buf[p + 1];
+            break;
+        case SHORT:
+            value = getShort(this.buf, p + 1);
+            break;
+        case STRING:
+            value = Short.parseShort(stringAt(this.buf, p, end));
+            break;
+        default:
+            throw cannotCast(p, end, "short");
+        }
+        this.pos = end;
+        return value;
     }
 
     /**
@@ -252,7 +383,13 @@ public class RMQStreamMessage extends RMQMessage implements StreamMessage {
      */
     @Override
     public char readChar() throws JMSException {
-        return (Character)this.readPrimitiveType(Character.class);
+        if (this.legacyBuf != null) return (Character)this.readLegacyPrimitiveType(Character.class);
+        int p = this.readPosition();
+        int end = valueEnd(this.buf, p, this.limit);
+        if (this.buf[p] != CHAR)
+            throw cannotCast(p, end, "char");
+        this.pos = end;
+        return (char) getShort(this.buf, p + 1);
     }
 
     /**
@@ -260,8 +397,28 @@ public class RMQStreamMessage extends RMQMessage implements StreamMessage {
      */
     @Override
     public int readInt() throws JMSException {
-        return (Integer)this.readPrimitiveType(Integer.class);
-
+        if (this.legacyBuf != null) return (Integer)this.readLegacyPrimitiveType(Integer.class);
+        int p = this.readPosition();
+        int end = valueEnd(this.buf, p, this.limit);
+        int value;
+        switch (this.buf[p]) {
+        case BYTE:
+            value = this.buf[p + 1];
+            break;
+        case SHORT:
+            value = getShort(this.buf, p + 1);
+            break;
+        case INT:
+            value = getInt(this.buf, p + 1);
+            break;
+        case STRING:
+            value = Integer.parseInt(stringAt(this.buf, p, end));
+            break;
+        default:
+            throw cannotCast(p, end, "int");
+        }
+        this.pos = end;
+        return value;
     }
 
     /**
@@ -269,7 +426,31 @@ public class RMQStreamMessage extends RMQMessage implements StreamMessage {
      */
     @Override
     public long readLong() throws JMSException {
-        return (Long)this.readPrimitiveType(Long.class);
+        if (this.legacyBuf != null) return (Long)this.readLegacyPrimitiveType(Long.class);
+        int p = this.readPosition();
+        int end = valueEnd(this.buf, p, this.limit);
+        long value;
+        switch (this.buf[p]) {
+        case BYTE:
+            value = this.buf[p + 1];
+            break;
+        case SHORT:
+            value = getShort(this.buf, p + 1);
+            break;
+        case INT:
+            value = getInt(this.buf, p + 1);
+            break;
+        case LONG:
+            value = getLong(this.buf, p + 1);
+            break;
+        case STRING:
+            value = Long.parseLong(stringAt(this.buf, p, end));
+            break;
+        default:
+            throw cannotCast(p, end, "long");
+        }
+        this.pos = end;
+        return value;
     }
 
     /**
@@ -277,7 +458,22 @@ public class RMQStreamMessage extends RMQMessage implements StreamMessage {
      */
     @Override
     public float readFloat() throws JMSException {
-        return (Float)this.readPrimitiveType(Float.class);
+        if (this.legacyBuf != null) return (Float)this.readLegacyPrimitiveType(Float.class);
+        int p = this.readPosition();
+        int end = valueEnd(this.buf, p, this.limit);
+        float value;
+        switch (this.buf[p]) {
+        case FLOAT:
+            value = Float.intBitsToFloat(getInt(this.buf, p + 1));
+            break;
+        case STRING:
+            value = Float.parseFloat(stringAt(this.buf, p, end));
+            break;
+        default:
+            throw cannotCast(p, end, "float");
+        }
+        this.pos = end;
+        return value;
     }
 
     /**
@@ -285,7 +481,25 @@ public class RMQStreamMessage extends RMQMessage implements StreamMessage {
      */
     @Override
     public double readDouble() throws JMSException {
-        return (Double)this.readPrimitiveType(Double.class);
+        if (this.legacyBuf != null) return (Double)this.readLegacyPrimitiveType(Double.class);
+        int p = this.readPosition();
+        int end = valueEnd(this.buf, p, this.limit);
+        double value;
+        switch (this.buf[p]) {
+        case FLOAT:
+            value = Float.intBitsToFloat(getInt(this.buf, p + 1));
+            break;
+        case DOUBLE:
+            value = Double.longBitsToDouble(getLong(this.buf, p + 1));
+            break;
+        case STRING:
+            value = Double.parseDouble(stringAt(this.buf, p, end));
+            break;
+        default:
+            throw cannotCast(p, end, "double");
+        }
+        this.pos = end;
+        return value;
     }
 
     /**
@@ -293,9 +507,47 @@ public class RMQStreamMessage extends RMQMessage implements StreamMessage {
      */
     @Override
     public String readString() throws JMSException {
-        return (String)this.readPrimitiveType(String.class);
+        if (this.legacyBuf != null) return (String)this.readLegacyPrimitiveType(String.class);
+        int p = this.readPosition();
+        int end = valueEnd(this.buf, p, this.limit);
+        String value;
+        switch (this.buf[p]) {
+        case NULL:
+            value = null;
+            break;
+        case STRING:
+            value = stringAt(this.buf, p, end);
+            break;
+        case BYTES:
+            throw cannotCast(p, end, "String");
+        default:
+            value = valueAt(this.buf, p, end, this.trustedPackages).toString();
+        }
+        this.pos = end;
+        return value;
     }
 
+    /**
+     * @return the next value, if it is a byte array or <code>null</code>
+     */
+    private byte[] readByteArray() throws JMSException {
+        if (this.legacyBuf != null) return (byte[])this.readLegacyPrimitiveType(ByteArray.class);
+        int p = this.readPosition();
+        int end = valueEnd(this.buf, p, this.limit);
+        byte[] value;
+        switch (this.buf[p]) {
+        case NULL:
+            value = null;
+            break;
+        case BYTES:
+            value = Arrays.copyOfRange(this.buf, p + LENGTH_PREFIXED_HEADER_SIZE, end);
+            break;
+        default:
+            throw cannotCast(p, end, "byte[]");
+        }
+        this.pos = end;
+        return value;
+    }
 
     /**
      * {@inheritDoc}
@@ -303,7 +555,7 @@ public class RMQStreamMessage extends RMQMessage implements StreamMessage {
     @Override
     public int readBytes(byte[] value) throws JMSException {
         if (readbuf==null) {
-            readbuf = (byte[])this.readPrimitiveType(ByteArray.class);
+            readbuf = this.readByteArray();
             if (readbuf==null) return -1;
         }
         if (readbuf!=null) {
@@ -330,13 +582,16 @@ public class RMQStreamMessage extends RMQMessage implements StreamMessage {
     }
 
     /**
-     * reads an object from the stream that was used to serialize this message
-     * @return the object read
-     * @throws JMSException if a deserialization exception happens
+     * {@inheritDoc}
      */
     @Override
     public Object readObject() throws JMSException {
-        return this.readPrimitiveType(Object.class);
+        if (this.legacyBuf != null) return this.readLegacyPrimitiveType(Object.class);
+        int p = this.readPosition();
+        int end = valueEnd(this.buf, p, this.limit);
+        Object value = valueAt(this.buf, p, end, this.trustedPackages);
+        this.pos = end;
+        return value;
     }
 
     /**
@@ -344,7 +599,13 @@ public class RMQStreamMessage extends RMQMessage implements StreamMessage {
      */
     @Override
     public void writeBoolean(boolean value) throws JMSException {
-        writePrimitive(value);
+        if (!this.compactFormat) {
+            this.writeLegacy(value, false);
+            return;
+        }
+        RMQByteArrayOutputStream out = this.writableStream();
+        out.write(BOOLEAN);
+        out.writeBoolean(value);
     }
 
     /**
@@ -352,7 +613,13 @@ public class RMQStreamMessage extends RMQMessage implements StreamMessage {
      */
     @Override
     public void writeByte(byte value) throws JMSException {
-        writePrimitive(value);
+        if (!this.compactFormat) {
+            this.writeLegacy(value, false);
+            return;
+        }
+        RMQByteArrayOutputStream out = this.writableStream();
+        out.write(BYTE);
+        out.writeByte(value);
     }
 
     /**
@@ -360,7 +627,13 @@ public class RMQStreamMessage extends RMQMessage implements StreamMessage {
      */
     @Override
     public void writeShort(short value) throws JMSException {
-        writePrimitive(value);
+        if (!this.compactFormat) {
+            this.writeLegacy(value, false);
+            return;
+        }
+        RMQByteArrayOutputStream out = this.writableStream();
+        out.write(SHORT);
+        out.writeShort(value);
     }
 
     /**
@@ -368,7 +641,13 @@ public class RMQStreamMessage extends RMQMessage implements StreamMessage {
      */
     @Override
     public void writeChar(char value) throws JMSException {
-        writePrimitive(value);
+        if (!this.compactFormat) {
+            this.writeLegacy(value, false);
+            return;
+        }
+        RMQByteArrayOutputStream out = this.writableStream();
+        out.write(CHAR);
+        out.writeChar(value);
     }
 
     /**
@@ -376,7 +655,13 @@ public class RMQStreamMessage extends RMQMessage implements StreamMessage {
      */
     @Override
     public void writeInt(int value) throws JMSException {
-        writePrimitive(value);
+        if (!this.compactFormat) {
+            this.writeLegacy(value, false);
+            return;
+        }
+        RMQByteArrayOutputStream out = this.writableStream();
+        out.write(INT);
+        out.writeInt(value);
     }
 
     /**
@@ -384,7 +669,13 @@ public class RMQStreamMessage extends RMQMessage implements StreamMessage {
      */
     @Override
     public void writeLong(long value) throws JMSException {
-        writePrimitive(value);
+        if (!this.compactFormat) {
+            this.writeLegacy(value, false);
+            return;
+        }
+        RMQByteArrayOutputStream out = this.writableStream();
+        out.write(LONG);
+        out.writeLong(value);
     }
 
     /**
@@ -392,7 +683,13 @@ public class RMQStreamMessage extends RMQMessage implements StreamMessage {
      */
     @Override
     public void writeFloat(float value) throws JMSException {
-        writePrimitive(value);
+        if (!this.compactFormat) {
+            this.writeLegacy(value, false);
+            return;
+        }
+        RMQByteArrayOutputStream out = this.writableStream();
+        out.write(FLOAT);
+        out.writeFloat(value);
     }
 
     /**
@@ -400,7 +697,13 @@ public class RMQStreamMessage extends RMQMessage implements StreamMessage {
      */
     @Override
     public void writeDouble(double value) throws JMSException {
-        writePrimitive(value);
+        if (!this.compactFormat) {
+            this.writeLegacy(value, false);
+            return;
+        }
+        RMQByteArrayOutputStream out = this.writableStream();
+        out.write(DOUBLE);
+        out.writeDouble(value);
     }
 
     /**
@@ -408,7 +711,17 @@ public class RMQStreamMessage extends RMQMessage implements StreamMessage {
      */
     @Override
     public void writeString(String value) throws JMSException {
-        writePrimitive(value);
+        if (!this.compactFormat) {
+            this.writeLegacy(value, false);
+            return;
+        }
+        RMQByteArrayOutputStream out = this.writableStream();
+        if (value == null) {
+            out.write(NULL);
+        } else {
+            byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+            writeLengthPrefixed(out, STRING, utf8, 0, utf8.length);
+        }
     }
 
     /**
@@ -416,7 +729,13 @@ public class RMQStreamMessage extends RMQMessage implements StreamMessage {
      */
     @Override
     public void writeBytes(byte[] value) throws JMSException {
-        writePrimitive(value);
+        if (!this.compactFormat) {
+            this.writeLegacy(value, false);
+        } else if (value == null) {
+            this.writableStream().write(NULL);
+        } else {
+            this.writeBytes(value, 0, value.length);
+        }
     }
 
     /**
@@ -424,9 +743,16 @@ public class RMQStreamMessage extends RMQMessage implements StreamMessage {
      */
     @Override
     public void writeBytes(byte[] value, int offset, int length) throws JMSException {
-        byte[] buf = new byte[length];
-        System.arraycopy(value, offset, buf, 0, length);
-        writePrimitive(buf);
+        if (offset < 0 || length < 0 || offset > value.length - length)
+            throw new IndexOutOfBoundsException();
+        if (!this.compactFormat) {
+            byte[] buf = new byte[length];
+            System.arraycopy(value, offset, buf, 0, length);
+            this.writeLegacy(buf, false);
+            return;
+        }
+        RMQByteArrayOutputStream out = this.writableStream();
+        writeLengthPrefixed(out, BYTES, value, offset, length);
     }
 
     /**
@@ -438,12 +764,45 @@ public class RMQStreamMessage extends RMQMessage implements StreamMessage {
     }
 
     private void writeObject(Object value, boolean allowSerializable) throws JMSException {
-        if (this.reading || isReadonlyBody())
-            throw new MessageNotWriteableException(NOT_WRITEABLE);
-        try {
-            RMQMessage.writePrimitive(value, this.out, allowSerializable);
-        } catch (IOException x) {
-            throw new RMQJMSException(x);
+        if (!this.compactFormat) {
+            this.writeLegacy(value, allowSerializable);
+            return;
+        }
+        RMQByteArrayOutputStream out = this.writableStream();
+        if (value == null) {
+            out.write(NULL);
+        } else if (value instanceof Boolean) {
+            this.writeBoolean((Boolean) value);
+        } else if (value instanceof Byte) {
+            this.writeByte((Byte) value);
+        } else if (value instanceof Short) {
+            this.writeShort((Short) value);
+        } else if (value instanceof Integer) {
+            this.writeInt((Integer) value);
+        } else if (value instanceof Long) {
+            this.writeLong((Long) value);
+        } else if (value instanceof Float) {
+            this.writeFloat((Float) value);
+        } else if (value instanceof Double) {
+            this.writeDouble((Double) value);
+        } else if (value instanceof String) {
+            this.writeString((String) value);
+        } else if (value instanceof Character) {
+            this.writeChar((Character) value);
+        } else if (value instanceof byte[]) {
+            this.writeBytes((byte[]) value);
+        } else if (allowSerializable && value instanceof Serializable) {
+            try {
+                ByteArrayOutputStream serialized = new ByteArrayOutputStream();
+                ObjectOutputStream oos = new ObjectOutputStream(serialized);
+                oos.writeObject(value);
+                oos.flush();
+                writeLengthPrefixed(out, SERIALIZABLE, serialized.toByteArray(), 0, serialized.size());
+            } catch (IOException x) {
+                throw new RMQJMSException(x);
+            }
+        } else {
+            throw new MessageFormatException(value + " is not a recognized primitive type.");
         }
     }
 
@@ -457,30 +816,50 @@ public class RMQStreamMessage extends RMQMessage implements StreamMessage {
         if (this.reading) {
             //if we already are reading, all we want to do is reset to the
             //beginning of the stream
-            try {
-                this.bin = new ByteArrayInputStream(buf);
-                this.in = new ObjectInputStream(this.bin);
-            } catch (IOException x) {
-                throw new RMQJMSException(x);
+            if (this.legacyBuf != null) {
+                this.setLegacyBody(this.legacyBuf);
+            } else {
+                this.pos = this.start;
             }
+        } else if (this.compactFormat) {
+            // read straight from what has been written: the stream is discarded
+            this.setCompactBody(this.bout.getBuffer(), 1, this.bout.size());
+            this.bout = null;
         } else {
             try {
-                buf = null;
-                if (this.out != null) {
-                    this.out.flush();
-                    buf = this.bout.toByteArray();
-                } else {
-                    buf = new byte[0];
-                }
-                this.bin = new ByteArrayInputStream(buf);
-                this.in = new ObjectInputStream(this.bin);
+                this.legacyOut.flush();
             } catch (IOException x) {
                 throw new RMQJMSException(x);
             }
-            this.reading = true;
-            this.out = null;
-            this.bout = null;
+            this.setLegacyBody(this.legacyBout.toByteArray());
+        }
+    }
+
+    private void setCompactBody(byte[] buf, int start, int limit) {
+        this.buf = buf;
+        this.start = start;
+        this.limit = limit;
+        this.pos = start;
+        this.legacyBuf = null;
+        this.bin = null;
+        this.in = null;
+        this.legacyOut = null;
+        this.legacyBout = null;
+        this.reading = true;
+    }
+
+    private void setLegacyBody(byte[] legacyBuf) throws JMSException {
+        try {
+            this.bin = new ByteArrayInputStream(legacyBuf);
+            this.in = new WhiteListObjectInputStream(this.bin, this.trustedPackages);
+        } catch (IOException x) {
+            throw new RMQJMSException(x);
         }
+        this.legacyBuf = legacyBuf;
+        this.buf = null;
+        this.legacyOut = null;
+        this.legacyBout = null;
+        this.reading = true;
     }
 
     /**
@@ -488,41 +867,99 @@ public class RMQStreamMessage extends RMQMessage implements StreamMessage {
      */
     @Override
     public void clearBodyInternal() throws JMSException {
-        this.bout = new ByteArrayOutputStream(RMQMessage.DEFAULT_MESSAGE_BODY_SIZE);
-        try {
-            this.out = new ObjectOutputStream(this.bout);
-        } catch (IOException x) {
-            throw new RMQJMSException(x);
-        }
+        this.bout = null;
+        this.newWriteStream();
+        this.buf = null;
+        this.legacyBuf = null;
         this.bin = null;
         this.in = null;
-        this.buf = null;
         this.readbuf = null;
         this.reading = false;
     }
 
     /**
      * {@inheritDoc}
+     * <p>
+     * The body of a {@link StreamMessage} in the compact encoding is sent as it is, after the format byte,
+     * if the message is sent in the compact encoding.
+     * </p>
+     */
+    @Override
+    protected ByteBuffer rawBody() {
+        if (!this.compactFormat || this.legacyBuf != null) return null;
+        if (this.reading) return ByteBuffer.wrap(this.buf, this.start - 1, this.limit - this.start + 1);
+        return this.bout.toByteBuffer();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The body is written in the legacy encoding: values in the compact encoding, if any, are converted.
+     * </p>
      */
     @Override
     protected void writeBody(ObjectOutput out, ByteArrayOutputStream bout) throws IOException {
-        this.out.flush();
-        byte[] buf = this.bout.toByteArray();
+        byte[] buf;
+        if (this.legacyBuf != null) {
+            buf = this.legacyBuf;
+        } else if (this.legacyOut != null) {
+            this.legacyOut.flush();
+            buf = this.legacyBout.toByteArray();
+        } else {
+            buf = this.toLegacyFormat();
+        }
         out.writeInt(buf.length);
         out.write(buf);
     }
 
+    private byte[] toLegacyFormat() throws IOException {
+        byte[] b = this.reading ? this.buf : this.bout.getBuffer();
+        int p = this.reading ? this.start : 1;
+        int end = this.reading ? this.limit : this.bout.size();
+        ByteArrayOutputStream legacyOut = new ByteArrayOutputStream(RMQMessage.DEFAULT_MESSAGE_BODY_SIZE);
+        ObjectOutputStream legacyStream = new ObjectOutputStream(legacyOut);
+        try {
+            while (p < end) {
+                int valueEnd = valueEnd(b, p, end);
+                RMQMessage.writePrimitive(valueAt(b, p, valueEnd, this.trustedPackages), legacyStream, true);
+                p = valueEnd;
+            }
+        } catch (JMSException x) {
+            throw new IOException(x);
+        }
+        legacyStream.flush();
+        return legacyOut.toByteArray();
+    }
+
     /**
      * {@inheritDoc}
      */
     @Override
     protected void readBody(ObjectInput inputStream, ByteArrayInputStream bin) throws IOException, ClassNotFoundException {
         int len = inputStream.readInt();
-        buf = new byte[len];
+        byte[] buf = new byte[len];
         inputStream.read(buf);
-        this.reading = true;
         this.bin = new ByteArrayInputStream(buf);
         this.in = new WhiteListObjectInputStream(this.bin, this.trustedPackages);
+        this.legacyBuf = buf;
+        this.legacyOut = null;
+        this.legacyBout = null;
+        this.reading = true;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * A body in the compact encoding is read in place, in the received frame.
+     * </p>
+     */
+    @Override
+    protected boolean readRawBody(byte[] frame, int offset) {
+        if (offset < frame.length && frame[offset] == COMPACT_FORMAT) {
+            this.setCompactBody(frame, offset + 1, frame.length);
+            return true;
+        }
+        return false;
     }
 
     @Override
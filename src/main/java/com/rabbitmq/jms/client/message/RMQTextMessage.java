@@ -5,22 +5,30 @@
 // Copyright (c) 2013-2020 VMware, Inc. or its affiliates. All rights reserved.
 package com.rabbitmq.jms.client.message;
 
+import static com.rabbitmq.jms.client.message.CompactValues.getInt;
+
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
-import java.io.UnsupportedEncodingException;
+import java.io.ObjectStreamConstants;
+import java.nio.charset.StandardCharsets;
 
 import javax.jms.JMSException;
 import javax.jms.MessageNotWriteableException;
 import javax.jms.TextMessage;
 
 import com.rabbitmq.jms.client.RMQMessage;
+import com.rabbitmq.jms.util.RMQByteArrayOutputStream;
 
 
 /**
  * Implements {@link TextMessage} interface.
+ * <p>
+ * The text is encoded in UTF-8 straight into the message bytes, and decoded straight from the received bytes. The
+ * body is still framed as object stream block data, so that any client can read it.
+ * </p>
  */
 public class RMQTextMessage extends RMQMessage implements TextMessage {
 
@@ -57,14 +65,37 @@ public class RMQTextMessage extends RMQMessage implements TextMessage {
     @Override
     public void writeBody(ObjectOutput out, ByteArrayOutputStream bout) throws IOException {
         String text = this.text;
+        if (bout instanceof RMQByteArrayOutputStream) {
+            out.flush(); // the body is written after the block data of the stream
+            writeBlock(text, (RMQByteArrayOutputStream) bout);
+            return;
+        }
         out.writeBoolean(text == null);
         if (text!=null) {
-            byte[] ba = text.getBytes("UTF-8");
+            byte[] ba = text.getBytes(StandardCharsets.UTF_8);
             out.writeInt(ba.length);
             out.write(ba);
         }
     }
 
+    /**
+     * Writes the body as the object stream would, as a single block of data: whether the text is <code>null</code>,
+     * then the length of the UTF-8 encoding of the text and the encoding. The lengths are filled in once the text
+     * is encoded.
+     */
+    private static void writeBlock(String text, RMQByteArrayOutputStream out) {
+        int header = out.size();
+        out.write(ObjectStreamConstants.TC_BLOCKDATALONG);
+        out.writeInt(0);
+        out.writeBoolean(text == null);
+        if (text != null) {
+            int lengthPosition = out.size();
+            out.writeInt(0);
+            out.putInt(lengthPosition, out.writeUtf8(text));
+        }
+        out.putInt(header + 1, out.size() - header - 5);
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -75,22 +106,53 @@ public class RMQTextMessage extends RMQMessage implements TextMessage {
             int len = inputStream.readInt();
             byte[] ba = new byte[len];
             inputStream.readFully(ba, 0, len);
-            this.text = new String(ba, "UTF-8");
+            this.text = new String(ba, StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Decodes the text straight from the received bytes when the body is a single block of data, as written by
+     * {@link #writeBlock(String, RMQByteArrayOutputStream)} or by the object stream for shorter texts.
+     * {@inheritDoc}
+     */
+    @Override
+    protected boolean readRawBody(byte[] frame, int offset) throws IOException {
+        int end = frame.length;
+        int p;
+        if (end - offset >= 2 && frame[offset] == ObjectStreamConstants.TC_BLOCKDATA && (frame[offset + 1] & 0xFF) == end - offset - 2) {
+            p = offset + 2;
+        } else if (end - offset >= 5 && frame[offset] == ObjectStreamConstants.TC_BLOCKDATALONG && getInt(frame, offset + 1) == end - offset - 5) {
+            p = offset + 5;
+        } else {
+            return false;
         }
+        if (p == end) {
+            return false;
+        }
+        if (frame[p] != 0) {
+            this.text = null;
+            return true;
+        }
+        if (end - p < 5 || getInt(frame, p + 1) != end - p - 5) {
+            return false;
+        }
+        this.text = new String(frame, p + 5, end - p - 5, StandardCharsets.UTF_8);
+        return true;
     }
 
     @Override
     protected void readAmqpBody(byte[] barr) {
-        try {
-            this.text = new String(barr, "UTF-8");
-        } catch (UnsupportedEncodingException e) {
-            // Will not happen: UTF-8 is supported everywhere
-        }
+        this.text = new String(barr, StandardCharsets.UTF_8);
     }
 
     @Override
     protected void writeAmqpBody(ByteArrayOutputStream out) throws IOException {
-        out.write((this.text!=null ? this.text : "").getBytes("UTF-8"));
+        String text = (this.text!=null ? this.text : "");
+        if (out instanceof RMQByteArrayOutputStream) {
+            ((RMQByteArrayOutputStream) out).writeUtf8(text);
+        } else {
+            out.write(text.getBytes(StandardCharsets.UTF_8));
+        }
     }
 
     public static RMQMessage recreate(TextMessage msg) throws JMSException {
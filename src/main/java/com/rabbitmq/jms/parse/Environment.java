@@ -0,0 +1,33 @@
+/* Copyright (c) 2020 VMware, Inc. or its affiliates. All rights reserved. */
+package com.rabbitmq.jms.parse;
+
+import java.util.Map;
+
+/**
+ * The values of the variables (identifiers) used when an {@link Evaluator} evaluates an expression.
+ * <p>
+ * An evaluator only asks for the identifiers that appear in its expression, so implementations can look
+ * values up lazily in whatever storage already holds them, rather than copying them all into a {@link Map} first.
+ * </p>
+ */
+public interface Environment {
+
+    /**
+     * @param identifier - the name of a variable referenced in the expression
+     * @return the value of the variable, or <code>null</code> if it has no value
+     */
+    Object get(String identifier);
+
+    /**
+     * An environment in which no variable has a value.
+     */
+    Environment EMPTY = identifier -> null;
+
+    /**
+     * @param env - the values of the variables, may be <code>null</code>
+     * @return an environment which reads the values from the map given
+     */
+    static Environment of(Map<String, Object> env) {
+        return env == null ? EMPTY : env::get;
+    }
+}
@@ -19,6 +19,15 @@ public interface Evaluator {
      */
     boolean evaluate(Map<String, Object> env);
 
+    /**
+     * Evaluates the (given) expression with the <code>env</code>ironment given.
+     * Only the variables referenced in the expression are looked up.
+     * This call should not fail, provided {@link #evaluatorOk()} is <code>true</code>.
+     * @param env - the values of the variables used when evaluating the expression
+     * @return the evaluated result: true or false
+     */
+    boolean evaluate(Environment env);
+
     /**
      * This call is idempotent.
      * @return <code>true</code> if the evaluator can run cleanly; <code>false</code> otherwise
@@ -5,6 +5,7 @@ import static com.rabbitmq.jms.parse.ParseTreeTraverser.traverse;
 
 import java.util.Map;
 
+import com.rabbitmq.jms.parse.Environment;
 import com.rabbitmq.jms.parse.Evaluator;
 
 /**
@@ -40,8 +41,13 @@ public class SqlEvaluator implements Evaluator {
 
     @Override
     public boolean evaluate(Map<String, Object> env) {
+        return evaluate(Environment.of(env));
+    }
+
+    @Override
+    public boolean evaluate(Environment env) {
         if (this.evaluatorOk){
-            SqlEvaluatorVisitor eVisitor = new SqlEvaluatorVisitor(env);
+            SqlEvaluatorVisitor eVisitor = new SqlEvaluatorVisitor(env == null ? Environment.EMPTY : env);
             if (traverse(this.typedParseTree, eVisitor)) {
                 Object val = this.typedParseTree.getNode().getExpValue().getValue();
                 if (val != null && val instanceof Boolean)
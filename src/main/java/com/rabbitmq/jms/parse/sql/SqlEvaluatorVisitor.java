@@ -2,26 +2,26 @@
 package com.rabbitmq.jms.parse.sql;
 
 import java.util.List;
-import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import com.rabbitmq.jms.parse.Environment;
 import com.rabbitmq.jms.parse.Visitor;
 
 /**
  * This visitor evaluates an SQL expression in the form of an {@link SqlParseTree} by traversing the
  * nodes of the tree and building expression values of parent nodes from values of the children.
  * It is, in essence, an interpreter. It takes, as instantiation parameter, a context in which
- * the expression is evaluated (a map from identifiers to values).
+ * the expression is evaluated (an {@link Environment} giving the values of identifiers).
  * <p>
  * The <code>UNKNOWN</code> value is represented by <code><b>null</b></code>.
  * </p>
  */
 class SqlEvaluatorVisitor implements Visitor<SqlTreeNode> {
 
-    private final Map<String, Object> env;
+    private final Environment env;
 
-    SqlEvaluatorVisitor(Map<String, Object> env) {
+    SqlEvaluatorVisitor(Environment env) {
         this.env = env; // identifier values
     }
 
@@ -39,7 +39,7 @@ class SqlEvaluatorVisitor implements Visitor<SqlTreeNode> {
         return true;
     }
 
-    private static final Object valueOfParent(Map<String, Object> env, SqlTreeNode parent, Object[] vals) {
+    private static final Object valueOfParent(Environment env, SqlTreeNode parent, Object[] vals) {
         switch(parent.treeType()) {
         case CONJUNCTION:   return logicalAnd(vals[0], vals[1]);
         case DISJUNCTION:   return logicalOr(vals[0], vals[1]);
@@ -237,7 +237,7 @@ class SqlEvaluatorVisitor implements Visitor<SqlTreeNode> {
         return logicalOr(greaterThan(o2, o1), greaterThan(o1, o3));
     }
 
-    private static final Object leafValue(SqlToken value, Map<String, Object> env) {
+    private static final Object leafValue(SqlToken value, Environment env) {
         switch (value.type()) {
         case TRUE:   return true;
         case FALSE:  return false;
@@ -245,7 +245,7 @@ class SqlEvaluatorVisitor implements Visitor<SqlTreeNode> {
         case HEX:    return value.getHex();
         case INT:    return value.getLong();
         case LIST:   return value.getList();
-        case IDENT:  return env==null ? null : env.get(value.getIdent());
+        case IDENT:  return env.get(value.getIdent());
         case STRING: return value.getString();
         default:
             return null;
@@ -0,0 +1,141 @@
+/* Copyright (c) 2020 VMware, Inc. or its affiliates. All rights reserved. */
+package com.rabbitmq.jms.parse.sql;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Structural analysis of a type-checked JMS Sql selector expression.
+ * <p>
+ * The analyzer looks for equality tests of the form <code>ident = 'string'</code> (or
+ * <code>'string' = ident</code>) in the expression, so that callers can index selectors
+ * on the property values they require, rather than evaluating every selector against
+ * every message, or push the selection down to the broker as headers exchange bindings.
+ * </p>
+ */
+public class SqlSelectorAnalyzer {
+
+    private final Map<String, String> requiredEqualities;
+    private final List<Map<String, String>> equalityDisjuncts;
+
+    public SqlSelectorAnalyzer(SqlEvaluator eval) {
+        if (eval.evaluatorOk()) {
+            SqlParseTree tree = eval.typedParseTree();
+            Map<String, String> equalities = new LinkedHashMap<String, String>();
+            collectConjuncts(tree, equalities);
+            this.requiredEqualities = Collections.unmodifiableMap(equalities);
+            List<Map<String, String>> disjuncts = new ArrayList<Map<String, String>>();
+            this.equalityDisjuncts = collectDisjuncts(tree, disjuncts) ? Collections.unmodifiableList(disjuncts) : null;
+        } else {
+            this.requiredEqualities = Collections.emptyMap();
+            this.equalityDisjuncts = null;
+        }
+    }
+
+    /**
+     * The equality tests every message selected by the expression satisfies: these are
+     * the <code>ident = 'string'</code> tests which appear as top-level conjuncts
+     * (the expression is <code>test AND ...</code>). If an identifier is tested more than
+     * once, only the first test is reported.
+     * @return the required string value of each identifier, in the order they appear; empty if there are none,
+     * or if the expression could not be evaluated.
+     */
+    public Map<String, String> requiredEqualities() {
+        return this.requiredEqualities;
+    }
+
+    /**
+     * The expression as a disjunction (<code>OR</code>) of conjunctions (<code>AND</code>) of
+     * <code>ident = 'string'</code> tests, if it has this form. A single test, a conjunction of tests and a
+     * disjunction of tests are all of this form.
+     * <p>
+     * Each conjunction is represented by the required value of each identifier it tests. A conjunction which
+     * requires two different values of the same identifier can select no message, and is omitted.
+     * </p>
+     * @return the conjunctions, in the order they appear (may be empty if none can be satisfied);
+     * <code>null</code> if the expression is not of this form, or could not be evaluated.
+     */
+    public List<Map<String, String>> equalityDisjuncts() {
+        return this.equalityDisjuncts;
+    }
+
+    private static boolean collectDisjuncts(SqlParseTree tree, List<Map<String, String>> disjuncts) {
+        if (tree.getNode().treeType() == SqlTreeType.DISJUNCTION) {
+            for (SqlParseTree child : tree.getChildren()) {
+                if (!collectDisjuncts(child, disjuncts)) return false;
+            }
+            return true;
+        }
+        Map<String, String> conjunction = new LinkedHashMap<String, String>();
+        Boolean satisfiable = collectEqualityConjunction(tree, conjunction);
+        if (satisfiable == null) return false;
+        if (satisfiable) disjuncts.add(Collections.unmodifiableMap(conjunction));
+        return true;
+    }
+
+    /**
+     * @return <code>null</code> if the tree is not a conjunction of <code>ident = 'string'</code> tests,
+     * otherwise whether the tests can all be true.
+     */
+    private static Boolean collectEqualityConjunction(SqlParseTree tree, Map<String, String> conjunction) {
+        if (tree.getNode().treeType() == SqlTreeType.CONJUNCTION) {
+            boolean satisfiable = true;
+            for (SqlParseTree child : tree.getChildren()) {
+                Boolean childSatisfiable = collectEqualityConjunction(child, conjunction);
+                if (childSatisfiable == null) return null;
+                satisfiable &= childSatisfiable;
+            }
+            return satisfiable;
+        }
+        SqlToken ident = equalityIdent(tree);
+        if (ident == null) return null;
+        String value = equalityString(tree).getString();
+        String previous = conjunction.put(ident.getIdent(), value);
+        return previous == null || previous.equals(value);
+    }
+
+    private static void collectConjuncts(SqlParseTree tree, Map<String, String> equalities) {
+        if (tree.getNode().treeType() == SqlTreeType.CONJUNCTION) {
+            for (SqlParseTree child : tree.getChildren()) {
+                collectConjuncts(child, equalities);
+            }
+        } else {
+            SqlToken ident = equalityIdent(tree);
+            if (ident != null) {
+                String identifier = ident.getIdent();
+                if (!equalities.containsKey(identifier)) {
+                    equalities.put(identifier, equalityString(tree).getString());
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the identifier token if the tree is an <code>ident = 'string'</code> test, <code>null</code> otherwise.
+     */
+    static SqlToken equalityIdent(SqlParseTree tree) {
+        if (tree.getNode().treeType() != SqlTreeType.BINARYOP
+         || tree.getNode().value().type() != SqlTokenType.CMP_EQ) return null;
+        SqlToken left = leafToken(tree.getChildren()[0]);
+        SqlToken right = leafToken(tree.getChildren()[1]);
+        if (left == null || right == null) return null;
+        if (left.type() == SqlTokenType.IDENT && right.type() == SqlTokenType.STRING) return left;
+        if (left.type() == SqlTokenType.STRING && right.type() == SqlTokenType.IDENT) return right;
+        return null;
+    }
+
+    /**
+     * @return the string token of a tree for which {@link #equalityIdent} is not <code>null</code>.
+     */
+    static SqlToken equalityString(SqlParseTree tree) {
+        SqlToken left = leafToken(tree.getChildren()[0]);
+        return (left.type() == SqlTokenType.STRING) ? left : leafToken(tree.getChildren()[1]);
+    }
+
+    private static SqlToken leafToken(SqlParseTree tree) {
+        return (tree.getNode().treeType() == SqlTreeType.LEAF) ? tree.getNode().value() : null;
+    }
+}
@@ -0,0 +1,491 @@
+// This Source Code Form is subject to the terms of the Mozilla Public
+// License, v. 2.0. If a copy of the MPL was not distributed with this
+// file, You can obtain one at https://mozilla.org/MPL/2.0/.
+//
+// Copyright (c) 2020 VMware, Inc. or its affiliates. All rights reserved.
+package com.rabbitmq.jms.perf;
+
+import com.rabbitmq.jms.admin.RMQConnectionFactory;
+
+import javax.jms.BytesMessage;
+import javax.jms.Connection;
+import javax.jms.DeliveryMode;
+import javax.jms.Destination;
+import javax.jms.JMSException;
+import javax.jms.MapMessage;
+import javax.jms.Message;
+import javax.jms.MessageConsumer;
+import javax.jms.MessageProducer;
+import javax.jms.ObjectMessage;
+import javax.jms.Session;
+import javax.jms.TextMessage;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Load generator for the JMS client, in the spirit of RabbitMQ PerfTest: producers and consumers go through
+ * {@link RMQConnectionFactory} and the JMS API, so the measures include the client code paths (message creation and
+ * serialization, selectors, acknowledgement, transactions, publisher confirms).
+ * <p>
+ * Throughput is reported at each interval, and the end-to-end latency percentiles of the messages received (from
+ * {@link LatencyHistogram}s): the send time is carried by the messages, with nanosecond precision between the
+ * producers and consumers of a run, from {@link Message#getJMSTimestamp() JMSTimestamp} otherwise.
+ * Reports go to the standard output, and to a CSV or JSON Lines file if asked to.
+ * </p>
+ * <p>
+ * Run <code>java -cp rabbitmq-jms.jar:&lt;dependencies&gt; com.rabbitmq.jms.perf.JmsPerfTest --help</code> for the
+ * options.
+ * </p>
+ *
+ * @since 2.3.0
+ */
+public class JmsPerfTest {
+
+    /** Message property with the {@link System#nanoTime()} of the send */
+    static final String SENT_NANOS_PROPERTY = "rjms_perf_sent_nanos";
+    /** Message property with the identifier of the run, for the nanosecond send times to be comparable */
+    static final String RUN_PROPERTY = "rjms_perf_run";
+    private static final String MAP_PAYLOAD = "payload";
+    /** Without a run duration, the run stops when nothing has been received for this long after the producers are done */
+    private static final long IDLE_STOP_NANOS = TimeUnit.SECONDS.toNanos(2);
+
+    private final PerfTestOptions options;
+    private final RMQConnectionFactory connectionFactory;
+    private final PrintStream out;
+    private final String runId = UUID.randomUUID().toString();
+
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder received = new LongAdder();
+    private final LongAdder confirmed = new LongAdder();
+    private final LongAdder nacked = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final List<LatencyHistogram> consumerLatencies = new ArrayList<LatencyHistogram>(); // each guarded by itself
+    private final AtomicReference<Exception> firstError = new AtomicReference<Exception>();
+    private volatile boolean running = true;
+
+    private final byte[] bytesPayload;
+    private final String textPayload;
+
+    JmsPerfTest(PerfTestOptions options, RMQConnectionFactory connectionFactory, PrintStream out) {
+        this.options = options;
+        this.connectionFactory = connectionFactory;
+        this.out = out;
+        this.bytesPayload = new byte[options.size];
+        Arrays.fill(this.bytesPayload, (byte) 'x');
+        this.textPayload = new String(this.bytesPayload, StandardCharsets.US_ASCII);
+    }
+
+    public static void main(String[] args) {
+        PerfTestOptions options;
+        try {
+            options = PerfTestOptions.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.print(PerfTestOptions.USAGE);
+            System.exit(1);
+            return;
+        }
+        if (options.help) {
+            System.out.print(PerfTestOptions.USAGE);
+            return;
+        }
+        try {
+            RMQConnectionFactory connectionFactory = new RMQConnectionFactory();
+            connectionFactory.setUri(options.uri);
+            new JmsPerfTest(options, connectionFactory, System.out).run();
+            System.exit(0);
+        } catch (Exception e) {
+            e.printStackTrace();
+            System.exit(2);
+        }
+    }
+
+    /**
+     * Runs the test, reporting as it goes.
+     * @return the summary of the run
+     */
+    Sample run() throws JMSException, IOException, InterruptedException {
+        if (this.options.prefetch > 0) {
+            this.connectionFactory.setChannelsQos(this.options.prefetch);
+        }
+        if (this.options.confirm) {
+            this.connectionFactory.setConfirmListener(context -> (context.isAck() ? this.confirmed : this.nacked).increment());
+        }
+        PrintWriter output = this.options.outputFile == null ? null
+            : new PrintWriter(new OutputStreamWriter(new FileOutputStream(this.options.outputFile), StandardCharsets.UTF_8));
+        Connection consumerConnection = null;
+        Connection producerConnection = null;
+        List<Thread> threads = new ArrayList<Thread>();
+        try {
+            if (output != null && this.options.outputFormat == PerfTestOptions.OutputFormat.CSV) {
+                output.println(Sample.CSV_HEADER);
+            }
+            consumerConnection = this.connectionFactory.createConnection();
+            for (int i = 0; i < this.options.consumers; i++) {
+                this.startConsumer(consumerConnection, i, threads);
+            }
+            consumerConnection.start();
+            producerConnection = this.connectionFactory.createConnection();
+            CountDownLatch producersDone = new CountDownLatch(this.options.producers);
+            for (int i = 0; i < this.options.producers; i++) {
+                Session session = this.createSession(producerConnection, this.options.producerTxSize, Session.AUTO_ACKNOWLEDGE);
+                Thread producer = new Thread(() -> this.produce(session, producersDone), "jms-perf-producer-" + i);
+                threads.add(producer);
+                producer.start();
+            }
+            Sample summary = this.report(producersDone, output);
+            this.running = false;
+            for (Thread thread : threads) {
+                thread.join(TimeUnit.SECONDS.toMillis(10));
+            }
+            return summary;
+        } finally {
+            this.running = false;
+            if (producerConnection != null) producerConnection.close();
+            if (consumerConnection != null) consumerConnection.close();
+            if (output != null) output.close();
+        }
+    }
+
+    /**
+     * Reports at each interval until the end of the run, then reports the summary.
+     */
+    private Sample report(CountDownLatch producersDone, PrintWriter output) throws InterruptedException {
+        long intervalNanos = TimeUnit.SECONDS.toNanos(this.options.interval);
+        long start = System.nanoTime();
+        long lastReport = start;
+        long lastReceipt = start;
+        long[] last = new long[4];
+        LatencyHistogram intervalLatency = new LatencyHistogram();
+        LatencyHistogram totalLatency = new LatencyHistogram();
+        while (true) {
+            long now = System.nanoTime();
+            long nextReport = lastReport + intervalNanos;
+            boolean done = this.isDone(now - start, producersDone, now - lastReceipt);
+            if (!done && now < nextReport) {
+                Thread.sleep(Math.min(100, TimeUnit.NANOSECONDS.toMillis(nextReport - now) + 1));
+                continue;
+            }
+            long[] counts = {this.sent.sum(), this.received.sum(), this.confirmed.sum(), this.nacked.sum()};
+            if (counts[1] != last[1]) {
+                lastReceipt = now;
+            }
+            this.collectLatencies(intervalLatency);
+            if (now > lastReport) {
+                Sample sample = new Sample("interval", now - start, now - lastReport, diff(counts, last), intervalLatency);
+                this.out.println(sample);
+                sample.write(output, this.options.outputFormat);
+            }
+            totalLatency.addAndReset(intervalLatency);
+            last = counts;
+            lastReport = now;
+            if (done) {
+                Sample summary = new Sample("summary", now - start, now - start, counts, totalLatency);
+                this.out.println("summary: " + summary + ", errors: " + this.errors.sum());
+                summary.write(output, this.options.outputFormat);
+                Exception error = this.firstError.get();
+                if (error != null) {
+                    this.out.println("first error: " + error);
+                }
+                return summary;
+            }
+        }
+    }
+
+    private boolean isDone(long elapsedNanos, CountDownLatch producersDone, long sinceLastReceiptNanos) {
+        if (this.options.time > 0) {
+            return elapsedNanos >= TimeUnit.SECONDS.toNanos(this.options.time);
+        }
+        if (producersDone.getCount() > 0) {
+            return false;
+        }
+        long expected = this.options.producers * this.options.producerMessageCount
+            * (this.options.topic ? this.options.consumers : 1);
+        return this.options.consumers == 0 || this.received.sum() >= expected || sinceLastReceiptNanos >= IDLE_STOP_NANOS;
+    }
+
+    private void collectLatencies(LatencyHistogram into) {
+        synchronized (this.consumerLatencies) {
+            for (LatencyHistogram latency : this.consumerLatencies) {
+                synchronized (latency) {
+                    into.addAndReset(latency);
+                }
+            }
+        }
+    }
+
+    private static long[] diff(long[] counts, long[] last) {
+        long[] diff = new long[counts.length];
+        for (int i = 0; i < counts.length; i++) {
+            diff[i] = counts[i] - last[i];
+        }
+        return diff;
+    }
+
+    private Session createSession(Connection connection, int txSize, int ackMode) throws JMSException {
+        return txSize > 0 ? connection.createSession(true, Session.SESSION_TRANSACTED) : connection.createSession(false, ackMode);
+    }
+
+    private Destination destination(Session session) throws JMSException {
+        return this.options.topic ? session.createTopic(this.options.destination) : session.createQueue(this.options.destination);
+    }
+
+    private void produce(Session session, CountDownLatch producersDone) {
+        try {
+            MessageProducer producer = session.createProducer(this.destination(session));
+            producer.setDeliveryMode(this.options.persistent ? DeliveryMode.PERSISTENT : DeliveryMode.NON_PERSISTENT);
+            long periodNanos = this.options.rate > 0 ? TimeUnit.SECONDS.toNanos(1) / this.options.rate : 0;
+            long nextSend = System.nanoTime();
+            int txSize = this.options.producerTxSize;
+            long n = 0;
+            while (this.running && (this.options.producerMessageCount == 0 || n < this.options.producerMessageCount)) {
+                if (periodNanos > 0) {
+                    nextSend += periodNanos;
+                    long wait = nextSend - System.nanoTime();
+                    if (wait > 0) {
+                        LockSupport.parkNanos(wait);
+                    }
+                }
+                Message message = this.createMessage(session);
+                message.setStringProperty(RUN_PROPERTY, this.runId);
+                message.setLongProperty(SENT_NANOS_PROPERTY, System.nanoTime());
+                producer.send(message);
+                this.sent.increment();
+                n++;
+                if (txSize > 0 && n % txSize == 0) {
+                    session.commit();
+                }
+            }
+            if (txSize > 0 && n % txSize != 0) {
+                session.commit();
+            }
+        } catch (Exception e) {
+            this.error(e);
+        } finally {
+            producersDone.countDown();
+        }
+    }
+
+    private Message createMessage(Session session) throws JMSException {
+        Message message;
+        switch (this.options.type) {
+            case TEXT:
+                message = session.createTextMessage(this.textPayload);
+                break;
+            case MAP:
+                MapMessage mapMessage = session.createMapMessage();
+                mapMessage.setBytes(MAP_PAYLOAD, this.bytesPayload);
+                message = mapMessage;
+                break;
+            case OBJECT:
+                message = session.createObjectMessage(this.textPayload);
+                break;
+            default:
+                BytesMessage bytesMessage = session.createBytesMessage();
+                bytesMessage.writeBytes(this.bytesPayload);
+                message = bytesMessage;
+        }
+        for (Map.Entry<String, String> property : this.options.properties.entrySet()) {
+            message.setStringProperty(property.getKey(), property.getValue());
+        }
+        return message;
+    }
+
+    private void startConsumer(Connection connection, int index, List<Thread> threads) throws JMSException {
+        Session session = this.createSession(connection, this.options.consumerTxSize, this.options.ackMode);
+        MessageConsumer consumer = session.createConsumer(this.destination(session), this.options.selector);
+        LatencyHistogram latency = new LatencyHistogram();
+        synchronized (this.consumerLatencies) {
+            this.consumerLatencies.add(latency);
+        }
+        ConsumerState state = new ConsumerState(session, latency);
+        if (this.options.syncConsumers) {
+            Thread thread = new Thread(() -> {
+                try {
+                    while (this.running) {
+                        Message message = consumer.receive(100);
+                        if (message != null) {
+                            state.consume(message);
+                        }
+                    }
+                } catch (Exception e) {
+                    if (this.running) {
+                        this.error(e);
+                    }
+                }
+            }, "jms-perf-consumer-" + index);
+            threads.add(thread);
+            thread.start();
+        } else {
+            consumer.setMessageListener(message -> {
+                try {
+                    state.consume(message);
+                } catch (Exception e) {
+                    this.error(e);
+                }
+            });
+        }
+    }
+
+    private void error(Exception e) {
+        this.errors.increment();
+        this.firstError.compareAndSet(null, e);
+    }
+
+    /**
+     * A consumer: its session, and how many messages it received, to acknowledge or commit in batches.
+     */
+    private final class ConsumerState {
+        private final Session session;
+        private final LatencyHistogram latency;
+        private final byte[] buffer = new byte[JmsPerfTest.this.options.size];
+        private long count;
+
+        ConsumerState(Session session, LatencyHistogram latency) {
+            this.session = session;
+            this.latency = latency;
+        }
+
+        void consume(Message message) throws JMSException {
+            long latencyNanos = JmsPerfTest.this.runId.equals(message.getStringProperty(RUN_PROPERTY))
+                && message.propertyExists(SENT_NANOS_PROPERTY)
+                ? System.nanoTime() - message.getLongProperty(SENT_NANOS_PROPERTY)
+                : TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis() - message.getJMSTimestamp());
+            this.readBody(message);
+            synchronized (this.latency) {
+                this.latency.record(latencyNanos);
+            }
+            JmsPerfTest.this.received.increment();
+            this.count++;
+            PerfTestOptions options = JmsPerfTest.this.options;
+            if (options.consumerTxSize > 0) {
+                if (this.count % options.consumerTxSize == 0) {
+                    this.session.commit();
+                }
+            } else if (options.ackMode == Session.CLIENT_ACKNOWLEDGE && this.count % options.multiAckEvery == 0) {
+                message.acknowledge();
+            }
+        }
+
+        private void readBody(Message message) throws JMSException {
+            if (message instanceof TextMessage) {
+                ((TextMessage) message).getText();
+            } else if (message instanceof BytesMessage) {
+                ((BytesMessage) message).readBytes(this.buffer);
+            } else if (message instanceof MapMessage) {
+                ((MapMessage) message).getBytes(MAP_PAYLOAD);
+            } else if (message instanceof ObjectMessage) {
+                ((ObjectMessage) message).getObject();
+            }
+        }
+    }
+
+    /**
+     * Rates and latencies over an interval, or over the whole run.
+     */
+    static final class Sample {
+
+        static final String CSV_HEADER = "type,time_s,sent_msg_s,received_msg_s,confirmed_msg_s,nacked_msg_s,"
+            + "latency_count,latency_min_us,latency_median_us,latency_75th_us,latency_95th_us,latency_99th_us,"
+            + "latency_99.9th_us,latency_max_us";
+
+        final String type;
+        final double time;
+        final double sentRate;
+        final double receivedRate;
+        final double confirmedRate;
+        final double nackedRate;
+        final long latencyCount;
+        /** min, median, 75th, 95th, 99th, 99.9th percentiles and max, in microseconds */
+        final double[] latencies;
+
+        /**
+         * @param counts sent, received, confirmed and nack-ed messages during the period
+         */
+        Sample(String type, long elapsedNanos, long periodNanos, long[] counts, LatencyHistogram latency) {
+            this.type = type;
+            this.time = elapsedNanos / 1e9;
+            double seconds = periodNanos / 1e9;
+            this.sentRate = counts[0] / seconds;
+            this.receivedRate = counts[1] / seconds;
+            this.confirmedRate = counts[2] / seconds;
+            this.nackedRate = counts[3] / seconds;
+            this.latencyCount = latency.getCount();
+            this.latencies = new double[] {
+                latency.getMin() / 1e3, latency.getValueAtPercentile(50) / 1e3, latency.getValueAtPercentile(75) / 1e3,
+                latency.getValueAtPercentile(95) / 1e3, latency.getValueAtPercentile(99) / 1e3,
+                latency.getValueAtPercentile(99.9) / 1e3, latency.getMax() / 1e3
+            };
+        }
+
+        double getReceivedRate() {
+            return this.receivedRate;
+        }
+
+        long getLatencyCount() {
+            return this.latencyCount;
+        }
+
+        void write(PrintWriter output, PerfTestOptions.OutputFormat format) {
+            if (output == null) {
+                return;
+            }
+            if (format == PerfTestOptions.OutputFormat.JSON) {
+                output.println(this.toJson());
+            } else {
+                output.println(this.toCsv());
+            }
+            output.flush();
+        }
+
+        String toCsv() {
+            StringBuilder csv = new StringBuilder(this.type).append(',').append(format(this.time))
+                .append(',').append(format(this.sentRate)).append(',').append(format(this.receivedRate))
+                .append(',').append(format(this.confirmedRate)).append(',').append(format(this.nackedRate))
+                .append(',').append(this.latencyCount);
+            for (double latency : this.latencies) {
+                csv.append(',').append(format(latency));
+            }
+            return csv.toString();
+        }
+
+        String toJson() {
+            String[] columns = CSV_HEADER.split(",");
+            String[] values = this.toCsv().split(",");
+            StringBuilder json = new StringBuilder("{\"type\":\"").append(this.type).append('"');
+            for (int i = 1; i < columns.length; i++) {
+                json.append(",\"").append(columns[i]).append("\":").append(values[i]);
+            }
+            return json.append('}').toString();
+        }
+
+        private static String format(double value) {
+            return String.format(Locale.ROOT, "%.3f", value);
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT,
+                "time: %.3fs, sent: %.0f msg/s, received: %.0f msg/s, confirmed: %.0f msg/s, nacked: %.0f msg/s, "
+                    + "latency min/median/75th/95th/99th/99.9th/max: %.0f/%.0f/%.0f/%.0f/%.0f/%.0f/%.0f µs",
+                this.time, this.sentRate, this.receivedRate, this.confirmedRate, this.nackedRate,
+                this.latencies[0], this.latencies[1], this.latencies[2], this.latencies[3], this.latencies[4],
+                this.latencies[5], this.latencies[6]);
+        }
+    }
+}
@@ -0,0 +1,144 @@
+// This Source Code Form is subject to the terms of the Mozilla Public
+// License, v. 2.0. If a copy of the MPL was not distributed with this
+// file, You can obtain one at https://mozilla.org/MPL/2.0/.
+//
+// Copyright (c) 2020 VMware, Inc. or its affiliates. All rights reserved.
+package com.rabbitmq.jms.perf;
+
+import java.util.Arrays;
+
+/**
+ * Histogram of latencies with a relative precision better than 1%, in the manner of HdrHistogram: values up to
+ * <code>255</code> are counted exactly, larger values in 128 linear sub-buckets per power of two.
+ * <p>
+ * Recording does not allocate. Not thread-safe: {@link JmsPerfTest} gives each consumer its own histogram, and
+ * {@link #addAndReset(LatencyHistogram) merges} them under lock when reporting.
+ * </p>
+ *
+ * @since 2.3.0
+ */
+public final class LatencyHistogram {
+
+    private static final int LINEAR_BITS = 8;
+    private static final int LINEAR_COUNT = 1 << LINEAR_BITS;          // 256 exact values
+    private static final int SUB_BUCKETS = LINEAR_COUNT >> 1;           // 128 per power of two above
+    private static final int SIZE = LINEAR_COUNT + (Long.SIZE - 1 - LINEAR_BITS) * SUB_BUCKETS;
+
+    private final long[] counts = new long[SIZE];
+    private long count;
+    private long sum;
+    private long min = Long.MAX_VALUE;
+    private long max;
+
+    /**
+     * @param value the value, negative values are counted as <code>0</code>
+     */
+    public void record(long value) {
+        long v = Math.max(0, value);
+        this.counts[index(v)]++;
+        this.count++;
+        this.sum += v;
+        if (v < this.min) this.min = v;
+        if (v > this.max) this.max = v;
+    }
+
+    static int index(long value) {
+        if (value < LINEAR_COUNT) {
+            return (int) value;
+        }
+        int shift = (Long.SIZE - 1 - Long.numberOfLeadingZeros(value)) - (LINEAR_BITS - 1); // >= 1
+        int subBucket = (int) (value >>> shift) - SUB_BUCKETS;                              // 0 to 127
+        return LINEAR_COUNT + (shift - 1) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * @return the largest value counted at an index
+     */
+    static long highestEquivalentValue(int index) {
+        if (index < LINEAR_COUNT) {
+            return index;
+        }
+        int i = index - LINEAR_COUNT;
+        int shift = i / SUB_BUCKETS + 1;
+        long subBucket = i % SUB_BUCKETS + SUB_BUCKETS;
+        long next = (subBucket + 1) << shift;
+        return next < 0 ? Long.MAX_VALUE : next - 1;
+    }
+
+    /**
+     * Adds the values of another histogram to this one, and resets the other one.
+     */
+    public void addAndReset(LatencyHistogram other) {
+        this.add(other);
+        other.reset();
+    }
+
+    /**
+     * Adds the values of another histogram to this one.
+     */
+    public void add(LatencyHistogram other) {
+        if (other.count == 0) {
+            return;
+        }
+        for (int i = 0; i < SIZE; i++) {
+            this.counts[i] += other.counts[i];
+        }
+        this.count += other.count;
+        this.sum += other.sum;
+        this.min = Math.min(this.min, other.min);
+        this.max = Math.max(this.max, other.max);
+    }
+
+    public void reset() {
+        Arrays.fill(this.counts, 0);
+        this.count = 0;
+        this.sum = 0;
+        this.min = Long.MAX_VALUE;
+        this.max = 0;
+    }
+
+    public long getCount() {
+        return this.count;
+    }
+
+    /**
+     * @return the smallest value, <code>0</code> if there is none
+     */
+    public long getMin() {
+        return this.count == 0 ? 0 : this.min;
+    }
+
+    public long getMax() {
+        return this.max;
+    }
+
+    /**
+     * @return the mean value, <code>0</code> if there is none
+     */
+    public double getMean() {
+        return this.count == 0 ? 0 : (double) this.sum / this.count;
+    }
+
+    /**
+     * @param percentile between <code>0</code> and <code>100</code>
+     * @return the value below which that percentage of the values fall (within the precision of the histogram), capped
+     * by the largest value; <code>0</code> if there are no values
+     */
+    public long getValueAtPercentile(double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("Percentile must be between 0 and 100");
+        }
+        if (this.count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * this.count));
+        long seen = 0;
+        for (int i = 0; i < SIZE; i++) {
+            seen += this.counts[i];
+            if (seen >= rank) {
+                return Math.min(highestEquivalentValue(i), this.max);
+            }
+        }
+        return this.max;
+    }
+}
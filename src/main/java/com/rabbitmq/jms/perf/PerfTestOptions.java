@@ -0,0 +1,165 @@
+// This Source Code Form is subject to the terms of the Mozilla Public
+// License, v. 2.0. If a copy of the MPL was not distributed with this
+// file, You can obtain one at https://mozilla.org/MPL/2.0/.
+//
+// Copyright (c) 2020 VMware, Inc. or its affiliates. All rights reserved.
+package com.rabbitmq.jms.perf;
+
+import javax.jms.Session;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Options of {@link JmsPerfTest}, parsed from the command line.
+ *
+ * @since 2.3.0
+ */
+final class PerfTestOptions {
+
+    enum MessageType { TEXT, BYTES, MAP, OBJECT }
+
+    enum OutputFormat { CSV, JSON }
+
+    static final String USAGE =
+        "usage: JmsPerfTest [options]\n"
+        + "  -h, --uri <uri>                 AMQP URI of the broker (default amqp://localhost)\n"
+        + "  -x, --producers <n>             number of producers (default 1)\n"
+        + "  -y, --consumers <n>             number of consumers (default 1)\n"
+        + "  -u, --destination <name>        queue or topic name (default jms-perf-test)\n"
+        + "      --topic                     use a topic instead of a queue\n"
+        + "  -s, --size <bytes>              message body size (default 1000)\n"
+        + "  -t, --type <type>               text, bytes, map or object (default bytes)\n"
+        + "  -r, --rate <n>                  messages per second per producer, 0 for unlimited (default 0)\n"
+        + "  -z, --time <seconds>            run duration, 0 to stop on message count (default 10 without count)\n"
+        + "  -C, --pmessages <n>             messages per producer, 0 for unlimited (default 0)\n"
+        + "  -a, --ack-mode <mode>           auto, client or dups_ok (default auto)\n"
+        + "  -A, --multi-ack-every <n>       with client ack mode, acknowledge every n messages (default 1)\n"
+        + "      --producer-tx-size <n>      commit producer sessions every n messages, 0 for not transacted\n"
+        + "      --consumer-tx-size <n>      commit consumer sessions every n messages, 0 for not transacted\n"
+        + "      --selector <expression>     message selector of the consumers (topics only)\n"
+        + "      --property <key=value>      string property set on each message, repeatable\n"
+        + "  -c, --confirm                   use publisher confirms\n"
+        + "  -q, --prefetch <n>              prefetch (channel QoS) of the consumers, 0 for unlimited\n"
+        + "  -p, --persistent                send persistent messages\n"
+        + "      --sync-consumers            consume with receive() rather than message listeners\n"
+        + "  -i, --interval <seconds>        reporting interval (default 1)\n"
+        + "  -o, --output-file <path>        write the reports to a file\n"
+        + "  -f, --output-format <format>    csv or json (default from the file extension, csv otherwise)\n"
+        + "      --help                      print this message\n";
+
+    String uri = "amqp://localhost";
+    int producers = 1;
+    int consumers = 1;
+    String destination = "jms-perf-test";
+    boolean topic;
+    int size = 1000;
+    MessageType type = MessageType.BYTES;
+    int rate;
+    int time = -1;
+    long producerMessageCount;
+    int ackMode = Session.AUTO_ACKNOWLEDGE;
+    int multiAckEvery = 1;
+    int producerTxSize;
+    int consumerTxSize;
+    String selector;
+    final Map<String, String> properties = new LinkedHashMap<String, String>();
+    boolean confirm;
+    int prefetch;
+    boolean persistent;
+    boolean syncConsumers;
+    int interval = 1;
+    String outputFile;
+    OutputFormat outputFormat;
+    boolean help;
+
+    /**
+     * @throws IllegalArgumentException if an option is unknown, lacks its value, or has an invalid one
+     */
+    static PerfTestOptions parse(String... args) {
+        PerfTestOptions options = new PerfTestOptions();
+        for (int i = 0; i < args.length; i++) {
+            String option = args[i];
+            switch (option) {
+                case "--topic": options.topic = true; continue;
+                case "-c": case "--confirm": options.confirm = true; continue;
+                case "-p": case "--persistent": options.persistent = true; continue;
+                case "--sync-consumers": options.syncConsumers = true; continue;
+                case "--help": options.help = true; continue;
+                default:
+            }
+            if (i + 1 >= args.length) {
+                throw new IllegalArgumentException("Missing value of option " + option);
+            }
+            String value = args[++i];
+            switch (option) {
+                case "-h": case "--uri": options.uri = value; break;
+                case "-x": case "--producers": options.producers = nonNegative(option, value); break;
+                case "-y": case "--consumers": options.consumers = nonNegative(option, value); break;
+                case "-u": case "--destination": options.destination = value; break;
+                case "-s": case "--size": options.size = nonNegative(option, value); break;
+                case "-t": case "--type": options.type = MessageType.valueOf(upper(option, value, "text, bytes, map, object")); break;
+                case "-r": case "--rate": options.rate = nonNegative(option, value); break;
+                case "-z": case "--time": options.time = nonNegative(option, value); break;
+                case "-C": case "--pmessages": options.producerMessageCount = nonNegative(option, value); break;
+                case "-a": case "--ack-mode": options.ackMode = ackMode(value); break;
+                case "-A": case "--multi-ack-every": options.multiAckEvery = Math.max(1, nonNegative(option, value)); break;
+                case "--producer-tx-size": options.producerTxSize = nonNegative(option, value); break;
+                case "--consumer-tx-size": options.consumerTxSize = nonNegative(option, value); break;
+                case "--selector": options.selector = value; break;
+                case "--property": options.property(value); break;
+                case "-q": case "--prefetch": options.prefetch = nonNegative(option, value); break;
+                case "-i": case "--interval": options.interval = Math.max(1, nonNegative(option, value)); break;
+                case "-o": case "--output-file": options.outputFile = value; break;
+                case "-f": case "--output-format": options.outputFormat = OutputFormat.valueOf(upper(option, value, "csv, json")); break;
+                default: throw new IllegalArgumentException("Unknown option " + option);
+            }
+        }
+        if (options.time < 0) {
+            options.time = options.producerMessageCount > 0 ? 0 : 10;
+        }
+        if (options.outputFile != null && options.outputFormat == null) {
+            options.outputFormat = options.outputFile.toLowerCase(Locale.ROOT).endsWith(".json") ? OutputFormat.JSON : OutputFormat.CSV;
+        }
+        return options;
+    }
+
+    private void property(String keyValue) {
+        int equals = keyValue.indexOf('=');
+        if (equals <= 0) {
+            throw new IllegalArgumentException("Property must be key=value: " + keyValue);
+        }
+        this.properties.put(keyValue.substring(0, equals), keyValue.substring(equals + 1));
+    }
+
+    private static int nonNegative(String option, String value) {
+        try {
+            int n = Integer.parseInt(value);
+            if (n >= 0) {
+                return n;
+            }
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+        throw new IllegalArgumentException("Value of option " + option + " must be a non-negative integer: " + value);
+    }
+
+    private static String upper(String option, String value, String expected) {
+        String upper = value.toUpperCase(Locale.ROOT);
+        for (String candidate : expected.split(", ")) {
+            if (candidate.toUpperCase(Locale.ROOT).equals(upper)) {
+                return upper;
+            }
+        }
+        throw new IllegalArgumentException("Value of option " + option + " must be one of " + expected + ": " + value);
+    }
+
+    private static int ackMode(String value) {
+        switch (value.toLowerCase(Locale.ROOT)) {
+            case "auto": return Session.AUTO_ACKNOWLEDGE;
+            case "client": return Session.CLIENT_ACKNOWLEDGE;
+            case "dups_ok": return Session.DUPS_OK_ACKNOWLEDGE;
+            default: throw new IllegalArgumentException("Ack mode must be auto, client or dups_ok: " + value);
+        }
+    }
+}
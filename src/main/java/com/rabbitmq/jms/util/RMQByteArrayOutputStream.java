@@ -3,6 +3,8 @@ package com.rabbitmq.jms.util;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 
 import javax.jms.JMSException;
 import javax.jms.MessageFormatException;
@@ -13,6 +15,98 @@ public class RMQByteArrayOutputStream extends ByteArrayOutputStream {
         super(size);
     }
 
+    /**
+     * @return the internal buffer of this stream, which holds the bytes written up to {@link #size()}, without
+     * copying it; it must not be modified, and is no longer the buffer of this stream once more bytes are written.
+     */
+    public byte[] getBuffer() {
+        return this.buf;
+    }
+
+    /**
+     * @return a read-only view of the bytes written so far, without copying them
+     */
+    public ByteBuffer toByteBuffer() {
+        return ByteBuffer.wrap(this.buf, 0, this.count).asReadOnlyBuffer();
+    }
+
+    /**
+     * Overwrites 4 bytes already written with an <code>int</code>, as {@link #writeInt(int)} writes it, to fill in a
+     * length once what it measures has been written.
+     * @param position the position of the first byte to overwrite
+     * @param value the value to write
+     */
+    public void putInt(int position, int value) {
+        if (position < 0 || position > this.count - 4) {
+            throw new IndexOutOfBoundsException();
+        }
+        this.buf[position] = (byte) (value >>> 24);
+        this.buf[position + 1] = (byte) (value >>> 16);
+        this.buf[position + 2] = (byte) (value >>> 8);
+        this.buf[position + 3] = (byte) value;
+    }
+
+    /**
+     * Writes the UTF-8 encoding of a string, without a length, straight into this stream. As with
+     * {@link String#getBytes(java.nio.charset.Charset)}, an unpaired surrogate is encoded as <code>'?'</code>.
+     * @param value the string to encode
+     * @return the number of bytes written
+     */
+    public int writeUtf8(String value) {
+        int length = value.length();
+        int start = this.count;
+        this.reserve(length);
+        byte[] b = this.buf;
+        int p = start;
+        int i = 0;
+        // ASCII characters are encoded as themselves
+        for (char c; i < length && (c = value.charAt(i)) < 0x80; i++) {
+            b[p++] = (byte) c;
+        }
+        if (i < length) {
+            this.count = p;
+            this.reserve(3 * (length - i)); // each remaining char takes 3 bytes at most
+            b = this.buf;
+            for (; i < length; i++) {
+                char c = value.charAt(i);
+                if (c < 0x80) {
+                    b[p++] = (byte) c;
+                } else if (c < 0x800) {
+                    b[p++] = (byte) (0xC0 | (c >> 6));
+                    b[p++] = (byte) (0x80 | (c & 0x3F));
+                } else if (!Character.isSurrogate(c)) {
+                    b[p++] = (byte) (0xE0 | (c >> 12));
+                    b[p++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                    b[p++] = (byte) (0x80 | (c & 0x3F));
+                } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    int cp = Character.toCodePoint(c, value.charAt(++i));
+                    b[p++] = (byte) (0xF0 | (cp >> 18));
+                    b[p++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                    b[p++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                    b[p++] = (byte) (0x80 | (cp & 0x3F));
+                } else {
+                    b[p++] = (byte) '?';
+                }
+            }
+        }
+        this.count = p;
+        return p - start;
+    }
+
+    /**
+     * Makes room in the buffer for at least <code>length</code> more bytes.
+     */
+    private void reserve(int length) {
+        int required = this.count + length;
+        if (required < 0) {
+            throw new OutOfMemoryError("Message body too large");
+        }
+        if (required > this.buf.length) {
+            int capacity = this.buf.length << 1;
+            this.buf = Arrays.copyOf(this.buf, (capacity - required < 0 || capacity < 0) ? required : capacity);
+        }
+    }
+
     public void writeBoolean(boolean value) {
         this.write((byte) (value ? 1 : 0));
     }
@@ -2,6 +2,7 @@
 package com.rabbitmq.jms.util;
 
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
 
 /**
  * Simple class to track elapsed time.  Initialised with any time units, returns remaining time (in nanoseconds) on request.
@@ -98,6 +99,23 @@ public class TimeTracker {
         TimeUnit.NANOSECONDS.timedWait(lock, this.internalRemaining());
     }
 
+    /**
+     * A {@link Condition#awaitNanos} utility which uses the <code>TimeTracker</code> state.
+     * <p>
+     * Used with the {@link java.util.concurrent.locks.Lock} of the condition held. Unlike a wait in a
+     * <code><b>synchronized</b></code> block, it does not pin a virtual thread to its carrier thread.
+     * </p>
+     * @param condition - condition to await
+     * @throws InterruptedException if the thread is interrupted while waiting.
+     * @since 2.3.0
+     */
+    public void timedAwait(Condition condition) throws InterruptedException {
+        long remaining = this.internalRemaining();
+        if (remaining > 0) {
+            condition.awaitNanos(remaining);
+        }
+    }
+
     /**
      * @return <code>true</code> if time has run out, <code>false</code> otherwise
      */
@@ -1,6 +1,8 @@
 /* Copyright (c) 2013-2020 VMware, Inc. or its affiliates. All rights reserved. */
 package com.rabbitmq.jms.util;
 
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Hand-crafted gate for pausing multiple threads on entry to a region. Allows waiting threads to be aborted (return
@@ -35,7 +37,10 @@ abstract class WaiterGate {
     /** possible states of the gate */
     private enum GateState { OPENED, CLOSED, ABORTED };
 
-    private Object lock = new Object();
+    /** a {@link ReentrantLock} rather than a monitor, for waiting virtual threads not to pin their carrier thread */
+    private final ReentrantLock lock = new ReentrantLock();
+    /** signalled when the gate is opened or aborted */
+    private final Condition stateChanged = this.lock.newCondition();
       private GateState state; // @GuardedBy("lock")
       private long generation; // @GuardedBy("lock")
 
@@ -53,8 +58,11 @@ abstract class WaiterGate {
      * @return <code>true</code> if gate is open, <code>false</code> otherwise
      */
     public final boolean isOpen() {
-        synchronized(this.lock){
+        this.lock.lock();
+        try {
             return this.state == GateState.OPENED;
+        } finally {
+            this.lock.unlock();
         }
     }
 
@@ -63,12 +71,15 @@ abstract class WaiterGate {
      * @return <code>true</code> if gate {@link GateState.CLOSED CLOSED} by this call, <code>false</code> otherwise
      */
     public final boolean close() {
-        synchronized(this.lock) {
+        this.lock.lock();
+        try {
             if (this.state == GateState.OPENED) {
                 this.state = GateState.CLOSED;
                 this.generation++;
                 return true; // no need to notify queued threads.
             }
+        } finally {
+            this.lock.unlock();
         }
         return false;
     }
@@ -78,12 +89,15 @@ abstract class WaiterGate {
      * @return <code>true</code> if gate {@link GateState.OPENED OPENED} by this call, <code>false</code> otherwise
      */
     public final boolean open() {
-        synchronized(this.lock) {
+        this.lock.lock();
+        try {
             if (this.state == GateState.CLOSED) {
                 this.state = GateState.OPENED;
-                this.lock.notifyAll(); // allow current queued threads to pass.
+                this.stateChanged.signalAll(); // allow current queued threads to pass.
                 return true;
             }
+        } finally {
+            this.lock.unlock();
         }
         return false;
     }
@@ -111,10 +125,11 @@ abstract class WaiterGate {
      * @throws AbortedException if gate is {@link GateState.ABORTED ABORTED} now or within time limit.
      */
     public final boolean waitForOpen(TimeTracker tracker) throws InterruptedException, AbortedException {
-        synchronized(this.lock) {
+        this.lock.lock();
+        try {
             long arrivalGeneration = this.generation;
             while ((this.state == GateState.CLOSED) && (arrivalGeneration == this.generation) && (!tracker.timedOut())) {
-                tracker.timedWait(this.lock);
+                tracker.timedAwait(this.stateChanged);
             }
             // this.state == OPENED | ABORTED OR arrivalGeneration != generation OR timeout()
             GateState derivedState = this.state;
@@ -126,6 +141,8 @@ abstract class WaiterGate {
                 return true;
             } else
                 return false;  // we timed out
+        } finally {
+            this.lock.unlock();
         }
     }
 
@@ -134,10 +151,13 @@ abstract class WaiterGate {
      * @return <code>true</code> if gate is {@link GateState.ABORTED ABORTED} by this call; <code>false</code> otherwise
      */
     public final boolean abort() {
-        synchronized(this.lock){
+        this.lock.lock();
+        try {
             if (this.state != GateState.CLOSED) return false;
             this.state = GateState.ABORTED;
-            this.lock.notifyAll(); // allow current queued threads to see abort.
+            this.stateChanged.signalAll(); // allow current queued threads to see abort.
+        } finally {
+            this.lock.unlock();
         }
         return true;
     }
@@ -5,9 +5,14 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectStreamClass;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
 import java.lang.reflect.Proxy;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * <p>
@@ -34,6 +39,28 @@ public class WhiteListObjectInputStream extends ObjectInputStream {
         DEFAULT_TRUSTED_PACKAGES = Arrays.asList(viaProperty.split(","));
     }
 
+    /**
+     * Classes resolved by name, by thread context class loader (but the bootstrap class loader). Loaders are weakly
+     * referenced, and so are the classes, which refer to their loaders: a redeployed application does not leak its
+     * class loader. Lookups do not lock.
+     */
+    private static final ConcurrentMap<LoaderKey, ConcurrentMap<String, WeakReference<Class<?>>>> RESOLVED_CLASSES =
+            new ConcurrentHashMap<LoaderKey, ConcurrentMap<String, WeakReference<Class<?>>>>();
+    /** Keys of {@link #RESOLVED_CLASSES} whose loader has been garbage collected */
+    private static final ReferenceQueue<ClassLoader> COLLECTED_LOADERS = new ReferenceQueue<ClassLoader>();
+    /** Classes resolved by name when the thread context class loader is the bootstrap class loader */
+    private static final ConcurrentMap<String, WeakReference<Class<?>>> BOOTSTRAP_RESOLVED_CLASSES =
+            new ConcurrentHashMap<String, WeakReference<Class<?>>>();
+
+    /** Largest number of lists of trusted packages with cached verdicts */
+    private static final int MAX_CACHED_TRUSTED_LISTS = 64;
+
+    /**
+     * Whether a package is trusted, by package name, by list of trusted packages. Lists are compared by identity,
+     * so a lookup does not hash the list. The verdicts only depend on names, so they hold no class or class loader.
+     */
+    private static final ConcurrentMap<IdentityKey, Verdicts> VERDICTS = new ConcurrentHashMap<IdentityKey, Verdicts>();
+
     private final ClassLoader inputStreamLoader;
     private List<String> trustedPackages = WhiteListObjectInputStream.DEFAULT_TRUSTED_PACKAGES;
 
@@ -135,7 +162,7 @@ public class WhiteListObjectInputStream extends ObjectInputStream {
     @Override
     protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
         ClassLoader threadLoader = Thread.currentThread().getContextClassLoader();
-        Class clazz = load(desc.getName(), threadLoader, inputStreamLoader);
+        Class clazz = resolve(desc.getName(), threadLoader);
         checkWhiteList(clazz);
         return clazz;
     }
@@ -201,24 +228,32 @@ public class WhiteListObjectInputStream extends ObjectInputStream {
      * be trusted, false otherwise
      */
     public boolean shouldTrustAllPackages() {
-        return (this.trustedPackages != null) && (trustedPackages.size() == 1 && trustedPackages.get(0).equals("*"));
+        return trustsAllPackages(this.trustedPackages);
     }
 
     private void checkWhiteList(Class clazz) throws ClassNotFoundException {
+        checkTrusted(clazz, this.trustedPackages);
+    }
+
+    /**
+     * Checks a class against a list of trusted packages or package prefixes, as this stream does for the classes
+     * it loads.
+     * @param clazz the class to check
+     * @param trustedPackages prefixes of packages that are trusted to be safe to deserialize
+     * @throws ClassNotFoundException if the class is not trusted
+     */
+    public static void checkTrusted(Class<?> clazz, List<String> trustedPackages) throws ClassNotFoundException {
         if (clazz.isPrimitive()) {
             return;
         }
 
-        if (clazz.getPackage() != null && !shouldTrustAllPackages()) {
-            boolean result = false;
+        if (clazz.getPackage() != null && !trustsAllPackages(trustedPackages)) {
             String p = clazz.getPackage().getName();
-            for (String pkg : this.trustedPackages) {
-                // Note: this means that an empty string works the same way as "*"
-                //       but making it mean "trust no package" makes even less sense
-                if (p.equals(pkg) || p.startsWith(pkg)) {
-                    result = true;
-                    break;
-                }
+            ConcurrentMap<String, Boolean> verdicts = verdicts(trustedPackages);
+            Boolean result = verdicts.get(p);
+            if (result == null) {
+                result = isTrusted(p, trustedPackages);
+                verdicts.put(p, result);
             }
 
             if (!result) {
@@ -229,6 +264,77 @@ public class WhiteListObjectInputStream extends ObjectInputStream {
         }
     }
 
+    private static boolean trustsAllPackages(List<String> trustedPackages) {
+        return (trustedPackages != null) && (trustedPackages.size() == 1 && trustedPackages.get(0).equals("*"));
+    }
+
+    private static boolean isTrusted(String p, List<String> trustedPackages) {
+        for (String pkg : trustedPackages) {
+            // Note: this means that an empty string works the same way as "*"
+            //       but making it mean "trust no package" makes even less sense
+            if (p.equals(pkg) || p.startsWith(pkg)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the cached verdicts for a list of trusted packages; a list which is changed after its verdicts are
+     * cached (see {@link #addTrustedPackage(String)}) gets new verdicts
+     */
+    private static ConcurrentMap<String, Boolean> verdicts(List<String> trustedPackages) {
+        IdentityKey key = new IdentityKey(trustedPackages);
+        Verdicts verdicts = VERDICTS.get(key);
+        if (verdicts == null || !verdicts.isFor(trustedPackages)) {
+            if (VERDICTS.size() >= MAX_CACHED_TRUSTED_LISTS) {
+                VERDICTS.clear();
+            }
+            verdicts = new Verdicts(trustedPackages);
+            VERDICTS.put(key, verdicts);
+        }
+        return verdicts.byPackage;
+    }
+
+    /**
+     * Loads a class as {@link #load(String, ClassLoader...)} does with the thread context class loader then the
+     * loader of the input stream. Classes are cached by context class loader when the input stream was loaded by the
+     * bootstrap class loader, as the JDK streams messages are read from are: then the result only depends on the
+     * context class loader.
+     */
+    private Class<?> resolve(String className, ClassLoader threadLoader) throws ClassNotFoundException {
+        if (this.inputStreamLoader != null) {
+            return load(className, threadLoader, this.inputStreamLoader);
+        }
+        ConcurrentMap<String, WeakReference<Class<?>>> classes = resolvedClasses(threadLoader);
+        WeakReference<Class<?>> cached = classes.get(className);
+        Class<?> clazz = (cached == null) ? null : cached.get();
+        if (clazz == null) {
+            clazz = load(className, threadLoader, null);
+            classes.put(className, new WeakReference<Class<?>>(clazz));
+        }
+        return clazz;
+    }
+
+    private static ConcurrentMap<String, WeakReference<Class<?>>> resolvedClasses(ClassLoader loader) {
+        if (loader == null) {
+            return BOOTSTRAP_RESOLVED_CLASSES;
+        }
+        ConcurrentMap<String, WeakReference<Class<?>>> classes = RESOLVED_CLASSES.get(new LoaderKey(loader, null));
+        if (classes == null) {
+            for (Reference<? extends ClassLoader> collected; (collected = COLLECTED_LOADERS.poll()) != null; ) {
+                RESOLVED_CLASSES.remove(collected);
+            }
+            classes = new ConcurrentHashMap<String, WeakReference<Class<?>>>();
+            ConcurrentMap<String, WeakReference<Class<?>>> existing =
+                    RESOLVED_CLASSES.putIfAbsent(new LoaderKey(loader, COLLECTED_LOADERS), classes);
+            if (existing != null) {
+                classes = existing;
+            }
+        }
+        return classes;
+    }
+
     private Class<?> load(String className, ClassLoader... cls) throws ClassNotFoundException {
         for (ClassLoader cl : cls) {
             try {
@@ -240,4 +346,81 @@ public class WhiteListObjectInputStream extends ObjectInputStream {
 
         return Class.forName(className, false, FALLBACK_CLASS_LOADER);
     }
+
+    /**
+     * Weak reference to a class loader, equal to the references to the same loader.
+     */
+    private static final class LoaderKey extends WeakReference<ClassLoader> {
+
+        private final int hash;
+
+        LoaderKey(ClassLoader loader, ReferenceQueue<ClassLoader> queue) {
+            super(loader, queue);
+            this.hash = System.identityHashCode(loader);
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof LoaderKey)) return false;
+            ClassLoader loader = this.get();
+            return loader != null && loader == ((LoaderKey) o).get();
+        }
+    }
+
+    /**
+     * Key equal to the keys of the same object.
+     */
+    private static final class IdentityKey {
+
+        private final Object object;
+
+        IdentityKey(Object object) {
+            this.object = object;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(this.object);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof IdentityKey && ((IdentityKey) o).object == this.object;
+        }
+    }
+
+    /**
+     * Verdicts of a list of trusted packages, with the packages the list had when they were cached.
+     */
+    private static final class Verdicts {
+
+        private final String[] trustedPackages;
+        private final ConcurrentMap<String, Boolean> byPackage = new ConcurrentHashMap<String, Boolean>();
+
+        Verdicts(List<String> trustedPackages) {
+            this.trustedPackages = trustedPackages.toArray(new String[0]);
+        }
+
+        /**
+         * @return whether the list still has the same packages, compared by reference: the strings of an
+         * unchanged list are the very ones copied
+         */
+        boolean isFor(List<String> trustedPackages) {
+            if (trustedPackages.size() != this.trustedPackages.length) {
+                return false;
+            }
+            for (int i = 0; i < this.trustedPackages.length; i++) {
+                if (trustedPackages.get(i) != this.trustedPackages[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
 }
@@ -0,0 +1,156 @@
+// This Source Code Form is subject to the terms of the Mozilla Public
+// License, v. 2.0. If a copy of the MPL was not distributed with this
+// file, You can obtain one at https://mozilla.org/MPL/2.0/.
+//
+// Copyright (c) 2020 VMware, Inc. or its affiliates. All rights reserved.
+package com.rabbitmq.jms.client;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Envelope;
+import com.rabbitmq.client.GetResponse;
+import com.rabbitmq.jms.admin.RMQDestination;
+import com.rabbitmq.jms.client.message.RMQTextMessage;
+import com.rabbitmq.jms.util.WhiteListObjectInputStream;
+import org.junit.jupiter.api.Test;
+
+import javax.jms.BytesMessage;
+import javax.jms.DeliveryMode;
+import javax.jms.JMSException;
+import javax.jms.TextMessage;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class BodyCompressionTest {
+
+    @Test
+    public void bodiesFromThresholdAreCompressed() throws Exception {
+        BodyCompression compression = compression(null, 100);
+        byte[] small = json(1);
+        AMQP.BasicProperties.Builder properties = new AMQP.BasicProperties.Builder();
+        assertThat(compression.encode(small, properties)).isSameAs(small);
+        assertThat(properties.build().getContentEncoding()).isNull();
+
+        byte[] large = json(100);
+        byte[] encoded = compression.encode(large, properties);
+        assertThat(encoded.length).isLessThan(large.length / 4);
+        assertThat(properties.build().getContentEncoding()).isEqualTo(DeflateBodyCodec.CONTENT_ENCODING);
+        assertThat(compression.decode(DeflateBodyCodec.CONTENT_ENCODING, encoded)).isEqualTo(large);
+    }
+
+    @Test
+    public void incompressibleBodiesAreSentAsIs() throws Exception {
+        BodyCompression compression = compression(new DeflateBodyCodec(), 0);
+        byte[] random = new byte[1000];
+        new java.util.Random(42).nextBytes(random);
+        AMQP.BasicProperties.Builder properties = new AMQP.BasicProperties.Builder();
+        assertThat(compression.encode(random, properties)).isSameAs(random);
+        assertThat(properties.build().getContentEncoding()).isNull();
+    }
+
+    @Test
+    public void noCompressionWithNegativeThreshold() throws Exception {
+        byte[] large = json(100);
+        assertThat(BodyCompression.NONE.encode(large, new AMQP.BasicProperties.Builder())).isSameAs(large);
+    }
+
+    @Test
+    public void unknownEncodingsAreNotDecoded() throws Exception {
+        byte[] body = json(1);
+        assertThat(BodyCompression.NONE.decode(null, body)).isSameAs(body);
+        assertThat(BodyCompression.NONE.decode("utf-8", body)).isSameAs(body);
+    }
+
+    @Test
+    public void customCodecIsUsedBothWays() throws Exception {
+        BodyCodec reversing = new BodyCodec() {
+            @Override public String getContentEncoding() { return "x-reversed"; }
+            @Override public byte[] encode(byte[] body) { return new byte[] { 1 }; }
+            @Override public byte[] decode(byte[] encoded) { return new byte[] { 2 }; }
+        };
+        BodyCompression compression = compression(reversing, 0);
+        AMQP.BasicProperties.Builder properties = new AMQP.BasicProperties.Builder();
+        assertThat(compression.encode(json(1), properties)).containsExactly(1);
+        assertThat(properties.build().getContentEncoding()).isEqualTo("x-reversed");
+        assertThat(compression.decode("x-reversed", new byte[] { 1 })).containsExactly(2);
+        assertThat(BodyCompression.NONE.decode("x-reversed", new byte[] { 1 })).containsExactly(1);
+    }
+
+    @Test
+    public void corruptBodyCannotBeDecoded() {
+        assertThatThrownBy(() -> compression(null, 0).decode(DeflateBodyCodec.CONTENT_ENCODING, json(1)))
+            .isInstanceOf(IOException.class);
+    }
+
+    @Test
+    public void inboundBodiesAreOnlyDecodedIfCompressionIsConfigured() throws Exception {
+        byte[] encoded = new DeflateBodyCodec().encode(json(100));
+        assertThat(BodyCompression.NONE.decode(DeflateBodyCodec.CONTENT_ENCODING, encoded)).isSameAs(encoded);
+        assertThat(new BodyCompression(new DeflateBodyCodec(), -1, BodyCodec.DEFAULT_MAX_DECODED_SIZE)
+            .decode(DeflateBodyCodec.CONTENT_ENCODING, encoded)).isEqualTo(json(100));
+    }
+
+    @Test
+    public void decodedSizeIsBounded() throws Exception {
+        byte[] bomb = new DeflateBodyCodec().encode(new byte[1024 * 1024]);
+        assertThat(bomb.length).isLessThan(2048);
+        assertThat(new BodyCompression(null, 0, 1024 * 1024).decode(DeflateBodyCodec.CONTENT_ENCODING, bomb)).hasSize(1024 * 1024);
+        assertThatThrownBy(() -> new BodyCompression(null, 0, 1024 * 1024 - 1).decode(DeflateBodyCodec.CONTENT_ENCODING, bomb))
+            .isInstanceOf(IOException.class).hasMessageContaining("larger than");
+    }
+
+    @Test
+    public void compressedJmsMessageIsReceived() throws Exception {
+        RMQTextMessage message = new RMQTextMessage();
+        message.setText(new String(json(100), StandardCharsets.UTF_8));
+        message.setJMSDeliveryMode(DeliveryMode.NON_PERSISTENT);
+        message.setJMSPriority(4);
+        RMQMessage sent = message;
+        sent.generateInternalID();
+        AMQP.BasicProperties.Builder properties = new AMQP.BasicProperties.Builder();
+        byte[] body = compression(null, 0).encode(sent.toByteArray(), properties);
+
+        RMQSession session = mock(RMQSession.class);
+        when(session.getTrustedPackages()).thenReturn(WhiteListObjectInputStream.DEFAULT_TRUSTED_PACKAGES);
+        when(session.getBodyCompression()).thenReturn(compression(null, -1 /* does not compress */));
+        GetResponse response = new GetResponse(new Envelope(1, false, "", "q"), properties.build(), body, 0);
+        assertThatThrownBy(() -> RMQMessage.convertMessage(session, new RMQDestination("q", true, false), response,
+            ReceivingContextConsumer.NO_OP)).isInstanceOf(JMSException.class);
+
+        when(session.getBodyCompression()).thenReturn(new BodyCompression(new DeflateBodyCodec(), -1, BodyCodec.DEFAULT_MAX_DECODED_SIZE));
+        RMQMessage received = RMQMessage.convertMessage(session, new RMQDestination("q", true, false), response,
+            ReceivingContextConsumer.NO_OP);
+        assertThat(((TextMessage) received).getText()).isEqualTo(message.getText());
+    }
+
+    @Test
+    public void messagesFromAmqpDestinationsAreNotDecoded() throws Exception {
+        byte[] body = new DeflateBodyCodec().encode(json(100));
+        RMQSession session = mock(RMQSession.class);
+        when(session.getBodyCompression()).thenReturn(compression(null, 0));
+        AMQP.BasicProperties properties = new AMQP.BasicProperties.Builder()
+            .contentEncoding(DeflateBodyCodec.CONTENT_ENCODING).deliveryMode(1).priority(4).build();
+        GetResponse response = new GetResponse(new Envelope(1, false, "", "q"), properties, body, 0);
+        RMQMessage received = RMQMessage.convertMessage(session, new RMQDestination("q", "", "q", "q"), response,
+            ReceivingContextConsumer.NO_OP);
+        byte[] bytes = new byte[body.length];
+        assertThat(((BytesMessage) received).readBytes(bytes)).isEqualTo(body.length);
+        assertThat(bytes).isEqualTo(body);
+    }
+
+    private static BodyCompression compression(BodyCodec codec, int threshold) {
+        return new BodyCompression(codec, threshold, BodyCodec.DEFAULT_MAX_DECODED_SIZE);
+    }
+
+    private static byte[] json(int records) {
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < records; i++) {
+            json.append("{\"id\":").append(i).append(",\"name\":\"record\",\"status\":\"active\"},");
+        }
+        return json.append("]").toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,117 @@
+// This Source Code Form is subject to the terms of the Mozilla Public
+// License, v. 2.0. If a copy of the MPL was not distributed with this
+// file, You can obtain one at https://mozilla.org/MPL/2.0/.
+//
+// Copyright (c) 2020 VMware, Inc. or its affiliates. All rights reserved.
+package com.rabbitmq.jms.client;
+
+import com.rabbitmq.client.Channel;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class BrowsingChannelPoolTest {
+
+    RMQConnection connection;
+
+    @BeforeEach
+    public void init() throws Exception {
+        connection = mock(RMQConnection.class);
+        when(connection.createRabbitChannel(anyBoolean())).thenAnswer(invocation -> openChannel());
+    }
+
+    @Test
+    public void releasedChannelIsResetAndReused() throws Exception {
+        BrowsingChannelPool pool = new BrowsingChannelPool(connection, 2);
+        Channel first = pool.borrow();
+        pool.release(first);
+        verify(first, times(1)).basicRecover(true);
+        verify(first, never()).close();
+
+        assertThat(pool.borrow()).isSameAs(first);
+        verify(connection, times(1)).createRabbitChannel(false);
+        BrowsingChannelPoolStatistics statistics = pool.statistics();
+        assertThat(statistics.getCreated()).isEqualTo(1);
+        assertThat(statistics.getReused()).isEqualTo(1);
+        assertThat(statistics.getInUse()).isEqualTo(1);
+        assertThat(statistics.getIdle()).isZero();
+    }
+
+    @Test
+    public void channelWhichCannotBeResetIsRecycled() throws Exception {
+        BrowsingChannelPool pool = new BrowsingChannelPool(connection, 2);
+        Channel broken = pool.borrow();
+        doThrow(new IOException()).when(broken).basicRecover(true);
+        pool.release(broken);
+        verify(broken, times(1)).close();
+
+        assertThat(pool.borrow()).isNotSameAs(broken);
+        assertThat(pool.statistics().getRecycled()).isEqualTo(1);
+        assertThat(pool.statistics().getCreated()).isEqualTo(2);
+    }
+
+    @Test
+    public void closedIdleChannelIsNotReused() throws Exception {
+        BrowsingChannelPool pool = new BrowsingChannelPool(connection, 2);
+        Channel chan = pool.borrow();
+        pool.release(chan);
+        when(chan.isOpen()).thenReturn(false);
+
+        assertThat(pool.borrow()).isNotSameAs(chan);
+        assertThat(pool.statistics().getRecycled()).isEqualTo(1);
+    }
+
+    @Test
+    public void channelsOverTheLimitAreClosed() throws Exception {
+        BrowsingChannelPool pool = new BrowsingChannelPool(connection, 1);
+        Channel first = pool.borrow();
+        Channel second = pool.borrow();
+        pool.release(first);
+        pool.release(second);
+        verify(first, never()).close();
+        verify(second, times(1)).close();
+
+        BrowsingChannelPoolStatistics statistics = pool.statistics();
+        assertThat(statistics.getIdle()).isEqualTo(1);
+        assertThat(statistics.getDiscarded()).isEqualTo(1);
+        assertThat(statistics.getInUse()).isZero();
+    }
+
+    @Test
+    public void noPoolingWhenSizeIsZero() throws Exception {
+        BrowsingChannelPool pool = new BrowsingChannelPool(connection, 0);
+        Channel chan = pool.borrow();
+        pool.release(chan);
+        verify(chan, never()).basicRecover(anyBoolean());
+        verify(chan, times(1)).close();
+        assertThat(pool.borrow()).isNotSameAs(chan);
+    }
+
+    @Test
+    public void closeClosesIdleAndLaterReleasedChannels() throws Exception {
+        BrowsingChannelPool pool = new BrowsingChannelPool(connection, 2);
+        Channel idle = pool.borrow();
+        Channel inUse = pool.borrow();
+        pool.release(idle);
+        pool.close();
+        verify(idle, times(1)).close();
+        pool.release(inUse);
+        verify(inUse, times(1)).close();
+    }
+
+    private static Channel openChannel() {
+        Channel chan = mock(Channel.class);
+        when(chan.isOpen()).thenReturn(true);
+        return chan;
+    }
+}
@@ -0,0 +1,171 @@
+// This Source Code Form is subject to the terms of the Mozilla Public
+// License, v. 2.0. If a copy of the MPL was not distributed with this
+// file, You can obtain one at https://mozilla.org/MPL/2.0/.
+//
+// Copyright (c) 2020 VMware, Inc. or its affiliates. All rights reserved.
+package com.rabbitmq.jms.client;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Consumer;
+import com.rabbitmq.client.Envelope;
+import com.rabbitmq.jms.admin.RMQDestination;
+import com.rabbitmq.jms.client.message.RMQTextMessage;
+import com.rabbitmq.jms.parse.sql.SqlEvaluator;
+import com.rabbitmq.jms.parse.sql.SqlParser;
+import com.rabbitmq.jms.parse.sql.SqlTokenStream;
+import com.rabbitmq.jms.util.WhiteListObjectInputStream;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+
+import javax.jms.DeliveryMode;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class BrowsingMessageEnumerationTest {
+
+    static final int WINDOW = BrowsingMessageEnumeration.BROWSING_WINDOW_SIZE;
+
+    RMQSession session;
+    Channel channel;
+    RMQDestination queue = new RMQDestination("browsed", true, false);
+    AtomicLong deliveryTag = new AtomicLong();
+    AtomicInteger ended = new AtomicInteger();
+
+    @BeforeEach
+    public void init() throws Exception {
+        session = mock(RMQSession.class);
+        when(session.getTrustedPackages()).thenReturn(WhiteListObjectInputStream.DEFAULT_TRUSTED_PACKAGES);
+        when(session.getJmsMetricsCollector()).thenReturn(JmsMetricsCollector.NO_OP);
+        channel = mock(Channel.class);
+        // each consumer receives as many messages as it is allowed to by basicQos
+        AtomicInteger qos = new AtomicInteger();
+        AtomicReference<Consumer> consumer = new AtomicReference<>();
+        doAnswer(invocation -> {
+            qos.set(invocation.getArgument(0));
+            return null;
+        }).when(channel).basicQos(anyInt());
+        when(channel.basicConsume(anyString(), any(Consumer.class))).thenAnswer(invocation -> {
+            consumer.set(invocation.getArgument(1));
+            for (int i = 0; i < qos.get(); i++) {
+                long tag = deliveryTag.incrementAndGet();
+                RMQTextMessage message = new RMQTextMessage();
+                message.setText("message " + tag);
+                message.setJMSDeliveryMode(DeliveryMode.NON_PERSISTENT);
+                message.setJMSPriority(4);
+                message.setStringProperty("parity", tag % 2 == 0 ? "even" : "odd");
+                RMQMessage sent = message;
+                sent.generateInternalID();
+                consumer.get().handleDelivery("tag", new Envelope(tag, false, "", "browsed"),
+                    new AMQP.BasicProperties.Builder().headers(sent.toHeaders()).build(), sent.toByteArray());
+            }
+            return "tag";
+        });
+        doAnswer(invocation -> {
+            consumer.get().handleCancelOk("tag");
+            return null;
+        }).when(channel).basicCancel("tag");
+    }
+
+    @Test
+    public void messagesAreConsumedOneWindowAtATime() throws Exception {
+        messageCount(WINDOW * 2 + 3);
+        BrowsingMessageEnumeration enumeration = enumeration(null, 0);
+        verify(channel, never()).basicConsume(anyString(), any(Consumer.class));
+
+        assertThat(enumeration.hasMoreElements()).isTrue();
+        assertThat(deliveryTag.get()).isEqualTo(WINDOW);
+
+        List<String> texts = texts(enumeration);
+        assertThat(texts).hasSize(WINDOW * 2 + 3);
+        assertThat(texts.get(0)).isEqualTo("message 1");
+        assertThat(enumeration.hasMoreElements()).isFalse();
+        assertThat(ended.get()).isEqualTo(1);
+        InOrder inOrder = inOrder(channel);
+        inOrder.verify(channel).basicQos(WINDOW);
+        inOrder.verify(channel).basicQos(WINDOW);
+        inOrder.verify(channel).basicQos(3);
+    }
+
+    @Test
+    public void readMaxAndSelectorAreApplied() throws Exception {
+        messageCount(1000);
+        BrowsingMessageEnumeration enumeration = enumeration("parity = 'even'", 10);
+        assertThat(texts(enumeration)).containsExactly("message 2", "message 4", "message 6", "message 8", "message 10");
+        verify(channel).basicQos(10);
+    }
+
+    @Test
+    public void emptyQueueEndsImmediately() throws Exception {
+        messageCount(0);
+        BrowsingMessageEnumeration enumeration = enumeration(null, 0);
+        assertThat(ended.get()).isEqualTo(1);
+        assertThat(enumeration.hasMoreElements()).isFalse();
+        verify(channel, never()).basicConsume(anyString(), any(Consumer.class));
+    }
+
+    @Test
+    public void closeEndsEnumeration() throws Exception {
+        messageCount(WINDOW * 3);
+        BrowsingMessageEnumeration enumeration = enumeration(null, 0);
+        enumeration.nextElement();
+        enumeration.close();
+        assertThat(enumeration.hasMoreElements()).isFalse();
+        assertThat(ended.get()).isEqualTo(1);
+        verify(channel, times(1)).basicConsume(anyString(), any(Consumer.class));
+    }
+
+    @Test
+    public void abandonedEnumerationIsClosedAfterTheIdleTimeout() throws Exception {
+        messageCount(WINDOW * 3);
+        BrowsingMessageEnumeration enumeration = new BrowsingMessageEnumeration(session, queue, channel, null, 0, ctx -> { },
+            e -> ended.incrementAndGet(), 200);
+        enumeration.nextElement();
+        Thread.sleep(100);
+        enumeration.nextElement(); // still read
+        assertThat(ended.get()).isZero();
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (ended.get() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(ended.get()).isEqualTo(1);
+        assertThat(enumeration.isEnded()).isTrue();
+        verify(channel, times(1)).basicCancel("tag");
+    }
+
+    private void messageCount(int count) throws Exception {
+        when(channel.queueDeclarePassive("browsed")).thenReturn(new AMQP.Queue.DeclareOk.Builder().queue("browsed").messageCount(count).build());
+    }
+
+    private BrowsingMessageEnumeration enumeration(String selector, int readMax) throws Exception {
+        SqlEvaluator evaluator = selector == null ? null :
+            new SqlEvaluator(new SqlParser(new SqlTokenStream(selector)), RMQSession.JMS_TYPE_IDENTS);
+        return new BrowsingMessageEnumeration(session, queue, channel, evaluator, readMax, ctx -> { },
+            e -> ended.incrementAndGet());
+    }
+
+    private static List<String> texts(BrowsingMessageEnumeration enumeration) throws Exception {
+        List<String> texts = new ArrayList<>();
+        while (enumeration.hasMoreElements()) {
+            texts.add(((RMQTextMessage) enumeration.nextElement()).getText());
+        }
+        return texts;
+    }
+}
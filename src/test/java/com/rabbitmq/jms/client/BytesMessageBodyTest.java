@@ -0,0 +1,142 @@
+// This Source Code Form is subject to the terms of the Mozilla Public
+// License, v. 2.0. If a copy of the MPL was not distributed with this
+// file, You can obtain one at https://mozilla.org/MPL/2.0/.
+//
+// Copyright (c) 2020 VMware, Inc. or its affiliates. All rights reserved.
+package com.rabbitmq.jms.client;
+
+import com.rabbitmq.jms.client.message.RMQBytesMessage;
+import com.rabbitmq.jms.util.WhiteListObjectInputStream;
+import org.junit.jupiter.api.Test;
+
+import javax.jms.BytesMessage;
+import javax.jms.DeliveryMode;
+import javax.jms.MessageEOFException;
+import javax.jms.MessageNotWriteableException;
+import java.nio.ByteBuffer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class BytesMessageBodyTest {
+
+    @Test
+    public void jmsFrameRoundTrip() throws Exception {
+        RMQMessage sent = bytesMessage(payload(10000));
+        sent.setStringProperty("colour", "blue");
+        byte[] frame = sent.toByteArray();
+
+        RMQMessage received = RMQMessage.fromMessage(frame, WhiteListObjectInputStream.DEFAULT_TRUSTED_PACKAGES);
+        BytesMessage message = (BytesMessage) received;
+        assertThat(message.getStringProperty("colour")).isEqualTo("blue");
+        assertThat(message.getBodyLength()).isEqualTo(10000);
+        byte[] read = new byte[20000];
+        assertThat(message.readBytes(read)).isEqualTo(10000);
+        assertThat(java.util.Arrays.copyOf(read, 10000)).isEqualTo(payload(10000));
+        assertThat(message.readBytes(read)).isEqualTo(-1);
+
+        message.reset();
+        assertThat(message.readInt()).isEqualTo(0x00010203);
+    }
+
+    @Test
+    public void receivedBodyCanBeSentAgain() throws Exception {
+        RMQMessage received = RMQMessage.fromMessage(bytesMessage(payload(100)).toByteArray(),
+            WhiteListObjectInputStream.DEFAULT_TRUSTED_PACKAGES);
+        assertThat(received.toAmqpByteArray()).isEqualTo(payload(100));
+        RMQMessage again = RMQMessage.fromMessage(received.toByteArray(), WhiteListObjectInputStream.DEFAULT_TRUSTED_PACKAGES);
+        assertThat(((BytesMessage) again).getBodyLength()).isEqualTo(100);
+    }
+
+    @Test
+    public void amqpBody() throws Exception {
+        RMQBytesMessage message = new RMQBytesMessage();
+        message.writeBytes(payload(64));
+        RMQMessage writing = message;
+        assertThat(writing.toAmqpByteArray()).isEqualTo(payload(64));
+        message.reset();
+        assertThat(writing.toAmqpByteArray()).isEqualTo(payload(64));
+
+        RMQMessage received = new RMQBytesMessage();
+        byte[] body = payload(64);
+        received.readAmqpBody(body);
+        assertThat(received.toAmqpByteArray()).isSameAs(body);
+    }
+
+    @Test
+    public void emptyBody() throws Exception {
+        RMQMessage received = RMQMessage.fromMessage(bytesMessage(new byte[0]).toByteArray(),
+            WhiteListObjectInputStream.DEFAULT_TRUSTED_PACKAGES);
+        assertThat(((BytesMessage) received).getBodyLength()).isZero();
+        assertThatThrownBy(() -> ((BytesMessage) received).readByte()).isInstanceOf(MessageEOFException.class);
+    }
+
+    @Test
+    public void wrappedArrayIsPublishedInPlace() throws Exception {
+        byte[] payload = payload(256);
+        RMQBytesMessage message = RMQBytesMessage.wrap(payload, 0, payload.length);
+        RMQMessage rmqMessage = message;
+        assertThat(rmqMessage.toAmqpByteArray()).isSameAs(payload);
+        assertThat(message.getBodyLength()).isEqualTo(256);
+        assertThatThrownBy(() -> message.writeByte((byte) 1)).isInstanceOf(MessageNotWriteableException.class);
+
+        message.clearBody();
+        message.writeByte((byte) 1);
+        assertThat(payload[0]).isZero();
+    }
+
+    @Test
+    public void wrappedRangeIsSentAndReceived() throws Exception {
+        byte[] payload = payload(256);
+        RMQBytesMessage message = RMQBytesMessage.wrap(payload, 16, 32);
+        message.setJMSDeliveryMode(DeliveryMode.NON_PERSISTENT);
+        message.setJMSPriority(4);
+        RMQMessage sent = message;
+        sent.generateInternalID();
+        assertThat(message.readByte()).isEqualTo((byte) 16);
+        assertThat(sent.toAmqpByteArray()).isEqualTo(java.util.Arrays.copyOfRange(payload, 16, 48));
+
+        BytesMessage received = (BytesMessage) RMQMessage.fromMessage(sent.toByteArray(), WhiteListObjectInputStream.DEFAULT_TRUSTED_PACKAGES);
+        byte[] read = new byte[64];
+        assertThat(received.readBytes(read)).isEqualTo(32);
+        assertThat(read[0]).isEqualTo((byte) 16);
+    }
+
+    @Test
+    public void wrappedBuffer() throws Exception {
+        ByteBuffer heap = ByteBuffer.wrap(payload(100));
+        heap.position(10);
+        RMQMessage fromHeap = RMQBytesMessage.wrap(heap);
+        assertThat(heap.position()).isEqualTo(10);
+        assertThat(fromHeap.toAmqpByteArray()).isEqualTo(java.util.Arrays.copyOfRange(payload(100), 10, 100));
+
+        ByteBuffer direct = ByteBuffer.allocateDirect(100);
+        direct.put(payload(100)).flip();
+        RMQMessage fromDirect = RMQBytesMessage.wrap(direct);
+        assertThat(fromDirect.toAmqpByteArray()).isEqualTo(payload(100));
+    }
+
+    @Test
+    public void wrappedRangeMustBeWithinArray() {
+        assertThatThrownBy(() -> RMQBytesMessage.wrap(new byte[10], 5, 6)).isInstanceOf(IndexOutOfBoundsException.class);
+        assertThatThrownBy(() -> RMQBytesMessage.wrap(new byte[10], -1, 2)).isInstanceOf(IndexOutOfBoundsException.class);
+    }
+
+    private static RMQMessage bytesMessage(byte[] payload) throws Exception {
+        RMQBytesMessage message = new RMQBytesMessage();
+        message.writeBytes(payload);
+        message.setJMSDeliveryMode(DeliveryMode.NON_PERSISTENT);
+        message.setJMSPriority(4);
+        RMQMessage rmqMessage = message;
+        rmqMessage.generateInternalID();
+        return rmqMessage;
+    }
+
+    private static byte[] payload(int length) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = (byte) i;
+        }
+        return bytes;
+    }
+}
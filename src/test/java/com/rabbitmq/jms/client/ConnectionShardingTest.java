@@ -0,0 +1,241 @@
+// This Source Code Form is subject to the terms of the Mozilla Public
+// License, v. 2.0. If a copy of the MPL was not distributed with this
+// file, You can obtain one at https://mozilla.org/MPL/2.0/.
+//
+// Copyright (c) 2020 VMware, Inc. or its affiliates. All rights reserved.
+package com.rabbitmq.jms.client;
+
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.jms.admin.RMQConnectionFactory;
+import com.rabbitmq.jms.admin.RMQDestination;
+import com.rabbitmq.jms.client.inmemory.InMemoryBroker;
+import com.rabbitmq.jms.client.inmemory.InMemoryConnection;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.invocation.Invocation;
+
+import javax.jms.Connection;
+import javax.jms.JMSException;
+import javax.jms.MessageConsumer;
+import javax.jms.Queue;
+import javax.jms.QueueBrowser;
+import javax.jms.Session;
+import javax.jms.TemporaryQueue;
+import javax.jms.TextMessage;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.AdditionalAnswers.delegatesTo;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.mockingDetails;
+
+public class ConnectionShardingTest {
+
+    private final InMemoryBroker broker = new InMemoryBroker();
+    private final List<Channel> channels = new CopyOnWriteArrayList<Channel>();
+    private RMQConnection connection;
+
+    @AfterEach
+    void tearDown() throws JMSException {
+        if (this.connection != null) {
+            this.connection.close();
+        }
+    }
+
+    @Test
+    void factoryCreatesShardsAndSessionsGoRoundRobin() throws JMSException {
+        RMQConnectionFactory factory = this.broker.jmsConnectionFactory();
+        factory.setConnectionShards(3);
+        this.connection = (RMQConnection) factory.createConnection();
+
+        assertThat(this.connection.getConnectionShardCount()).isEqualTo(3);
+        assertThat(this.broker.getConnectionCount()).isEqualTo(3);
+        Session[] sessions = new Session[6];
+        for (int i = 0; i < sessions.length; i++) {
+            sessions[i] = this.connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        }
+        assertThat(shardOf(sessions[0])).isEqualTo(0);
+        assertThat(shardOf(sessions[1])).isEqualTo(1);
+        assertThat(shardOf(sessions[2])).isEqualTo(2);
+        assertThat(shardOf(sessions[3])).isEqualTo(0);
+        for (int shard = 0; shard < 3; shard++) {
+            assertThat(this.connection.getSessionCount(shard)).isEqualTo(2);
+        }
+
+        sessions[0].close();
+        assertThat(this.connection.getSessionCount(0)).isEqualTo(1);
+
+        this.connection.close();
+        assertThat(this.broker.getConnectionCount()).isZero();
+    }
+
+    @Test
+    void messagesFlowBetweenSessionsOnDifferentShards() throws JMSException {
+        RMQConnectionFactory factory = this.broker.jmsConnectionFactory();
+        factory.setConnectionShards(2);
+        this.connection = (RMQConnection) factory.createConnection();
+        Session producerSession = this.connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        Session consumerSession = this.connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        assertThat(shardOf(producerSession)).isNotEqualTo(shardOf(consumerSession));
+
+        Queue queue = producerSession.createQueue("sharded");
+        MessageConsumer consumer = consumerSession.createConsumer(queue);
+        this.connection.start();
+        producerSession.createProducer(queue).send(producerSession.createTextMessage("hello"));
+
+        assertThat(((TextMessage) consumer.receive(5000)).getText()).isEqualTo("hello");
+        this.connection.stop();
+        producerSession.createProducer(queue).send(producerSession.createTextMessage("stopped"));
+        assertThat(consumer.receive(100)).as("connection stop applies to all shards").isNull();
+        this.connection.start();
+        assertThat(((TextMessage) consumer.receive(5000)).getText()).isEqualTo("stopped");
+    }
+
+    @Test
+    void temporaryQueueIsUsableFromSessionsOnOtherShards() throws JMSException {
+        this.connection = this.newConnection(ConnectionShardAssignment.ROUND_ROBIN, 2);
+        Session declaringSession = this.connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        Session otherSession = this.connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        assertThat(shardOf(declaringSession)).isNotEqualTo(shardOf(otherSession));
+
+        TemporaryQueue temporaryQueue = declaringSession.createTemporaryQueue();
+        String queueName = ((RMQDestination) temporaryQueue).getQueueName();
+        declaringSession.createProducer(temporaryQueue).send(declaringSession.createTextMessage("reply"));
+        QueueBrowser browser = otherSession.createBrowser(temporaryQueue);
+        Enumeration<?> browsed = browser.getEnumeration();
+        assertThat(((TextMessage) browsed.nextElement()).getText()).isEqualTo("reply");
+        browser.close();
+        MessageConsumer consumer = otherSession.createConsumer(temporaryQueue);
+        this.connection.start();
+        assertThat(((TextMessage) consumer.receive(5000)).getText()).isEqualTo("reply");
+
+        this.connection.close();
+        assertThat(this.broker.getReadyCount(queueName)).as("temporary queue deleted with the connection").isEqualTo(-1);
+    }
+
+    @Test
+    void leastLoadedPicksTheShardWithFewestSessions() throws JMSException {
+        this.connection = this.newConnection(ConnectionShardAssignment.LEAST_LOADED, 3);
+        Session first = this.connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        Session second = this.connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        this.connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        assertThat(Arrays.asList(shardOf(first), shardOf(second))).containsExactly(0, 1);
+
+        second.close();
+        assertThat(shardOf(this.connection.createSession(false, Session.AUTO_ACKNOWLEDGE))).isEqualTo(1);
+        assertThat(shardOf(this.connection.createSession(false, Session.AUTO_ACKNOWLEDGE))).isEqualTo(0);
+    }
+
+    @Test
+    void lostShardIsReportedAndSkipped() throws JMSException {
+        List<InMemoryConnection> shards = Arrays.asList(this.broker.newConnection(), this.broker.newConnection());
+        this.connection = new RMQConnection(new ConnectionParams()
+            .setRabbitConnections(Arrays.<com.rabbitmq.client.Connection>asList(shards.get(0), shards.get(1))));
+        AtomicReference<JMSException> reported = new AtomicReference<JMSException>();
+        this.connection.setExceptionListener(reported::set);
+
+        shards.get(1).closeByBroker("test");
+
+        assertThat(reported.get()).isNotNull();
+        for (int i = 0; i < 3; i++) {
+            assertThat(shardOf(this.connection.createSession(false, Session.AUTO_ACKNOWLEDGE))).isZero();
+        }
+        shards.get(0).closeByBroker("test");
+        Session session = this.connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        assertThatThrownBy(() -> session.createQueue("unreachable")).isInstanceOf(JMSException.class);
+        session.close();
+        assertThat(this.connection.getSessionCount(0) + this.connection.getSessionCount(1)).isEqualTo(3);
+    }
+
+    @Test
+    void shardQueuesExpireAndAreNotDeletedTwice() throws Exception {
+        this.connection = new RMQConnection(new ConnectionParams()
+            .setRabbitConnections(Arrays.asList(this.recordingConnection(), this.recordingConnection()))
+            .setConnectionShardQueueExpiry(5000)
+            .setCleanUpServerNamedQueuesForNonDurableTopicsOnSessionClose(true));
+        Session session = this.connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        TemporaryQueue temporaryQueue = session.createTemporaryQueue();
+        session.createConsumer(temporaryQueue);
+        String temporaryQueueName = ((RMQDestination) temporaryQueue).getQueueName();
+        MessageConsumer subscriber = session.createConsumer(session.createTopic("sharded-topic"));
+        String subscriberQueueName = ((RMQMessageConsumer) subscriber).rmqQueueName();
+
+        assertThat(this.calls("queueDeclare")).hasSize(2);
+        for (Object[] declare : this.calls("queueDeclare")) {
+            assertThat(declare[2]).as("exclusive").isEqualTo(false);
+            assertThat(((Map<?, ?>) declare[4]).get("x-expires")).isEqualTo(5000L);
+        }
+        subscriber.close(); // the broker deletes the auto-delete queue of the subscriber
+        this.connection.close();
+
+        List<Object> deleted = new ArrayList<Object>();
+        for (Object[] delete : this.calls("queueDelete")) {
+            deleted.add(delete[0]);
+        }
+        assertThat(deleted).contains(temporaryQueueName).doesNotContain(subscriberQueueName);
+    }
+
+    @Test
+    void factorySetsTheShardQueueExpiry() throws JMSException {
+        RMQConnectionFactory factory = this.broker.jmsConnectionFactory();
+        assertThat(factory.getConnectionShardQueueExpiry()).isEqualTo(RMQConnection.DEFAULT_CONNECTION_SHARD_QUEUE_EXPIRY_MS);
+        factory.setConnectionShardQueueExpiry(5000);
+        this.connection = (RMQConnection) factory.createConnection();
+        assertThat(this.connection.getConnectionShardQueueExpiry()).isEqualTo(5000);
+        assertThatThrownBy(() -> factory.setConnectionShardQueueExpiry(0)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void shardsMustBePositive() {
+        assertThatThrownBy(() -> new RMQConnectionFactory().setConnectionShards(0)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    /**
+     * @return a connection to the broker which records the calls on its channels
+     */
+    private com.rabbitmq.client.Connection recordingConnection() throws IOException {
+        InMemoryConnection delegate = this.broker.newConnection();
+        com.rabbitmq.client.Connection connection = mock(com.rabbitmq.client.Connection.class, delegatesTo(delegate));
+        doAnswer(invocation -> {
+            Channel channel = mock(Channel.class, delegatesTo(delegate.createChannel()));
+            this.channels.add(channel);
+            return channel;
+        }).when(connection).createChannel();
+        return connection;
+    }
+
+    private List<Object[]> calls(String method) {
+        List<Object[]> calls = new ArrayList<Object[]>();
+        for (Channel channel : this.channels) {
+            for (Invocation invocation : mockingDetails(channel).getInvocations()) {
+                if (invocation.getMethod().getName().equals(method)) {
+                    calls.add(invocation.getArguments());
+                }
+            }
+        }
+        return calls;
+    }
+
+    private RMQConnection newConnection(ConnectionShardAssignment assignment, int shards) {
+        InMemoryConnection[] connections = new InMemoryConnection[shards];
+        for (int i = 0; i < shards; i++) {
+            connections[i] = this.broker.newConnection();
+        }
+        return new RMQConnection(new ConnectionParams()
+            .setRabbitConnections(Arrays.<com.rabbitmq.client.Connection>asList(connections))
+            .setConnectionShardAssignment(assignment));
+    }
+
+    private static int shardOf(Session session) {
+        return ((RMQSession) session).getConnectionShard();
+    }
+}
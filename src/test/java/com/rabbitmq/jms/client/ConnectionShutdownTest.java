@@ -0,0 +1,119 @@
+// This Source Code Form is subject to the terms of the Mozilla Public
+// License, v. 2.0. If a copy of the MPL was not distributed with this
+// file, You can obtain one at https://mozilla.org/MPL/2.0/.
+//
+// Copyright (c) 2020 VMware, Inc. or its affiliates. All rights reserved.
+package com.rabbitmq.jms.client;
+
+import com.rabbitmq.jms.client.inmemory.InMemoryBroker;
+import com.rabbitmq.jms.client.inmemory.InMemoryConnection;
+import com.rabbitmq.jms.util.TimeTracker;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import javax.jms.JMSException;
+import javax.jms.MessageProducer;
+import javax.jms.Queue;
+import javax.jms.Session;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class ConnectionShutdownTest {
+
+    private final InMemoryBroker broker = new InMemoryBroker();
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @AfterEach
+    void tearDown() {
+        this.release.countDown();
+    }
+
+    @Test
+    void reportOfRegularClose() throws JMSException {
+        RMQConnection connection = this.connection(15000);
+        for (int i = 0; i < 3; i++) {
+            Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            session.createConsumer(session.createQueue("shutdown-" + i));
+        }
+        connection.start();
+        assertThat(connection.getShutdownReport()).isNull();
+
+        connection.close();
+
+        ConnectionShutdownReport report = connection.getShutdownReport();
+        assertThat(report.getSessions()).isEqualTo(3);
+        assertThat(report.getClosedSessions()).isEqualTo(3);
+        assertThat(report.getFailedSessions()).isZero();
+        assertThat(report.getUnfinishedSessions()).isZero();
+        assertThat(this.broker.getConnectionCount()).isZero();
+    }
+
+    @Test
+    void busyListenersAreDrainedInParallelWithinTheTerminationTimeout() throws Exception {
+        int sessions = 20;
+        RMQConnection connection = this.connection(500);
+        CountDownLatch delivered = new CountDownLatch(sessions);
+        for (int i = 0; i < sessions; i++) {
+            Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            Queue queue = session.createQueue("busy-" + i);
+            session.createConsumer(queue).setMessageListener(message -> {
+                delivered.countDown();
+                try {
+                    this.release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            MessageProducer producer = session.createProducer(queue);
+            producer.send(session.createTextMessage("busy"));
+        }
+        connection.start();
+        assertThat(delivered.await(10, TimeUnit.SECONDS)).isTrue();
+
+        long start = System.nanoTime();
+        connection.close();
+        long closeMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        ConnectionShutdownReport report = connection.getShutdownReport();
+        assertThat(report.getSessions()).isEqualTo(sessions);
+        assertThat(report.getClosedSessions() + report.getFailedSessions() + report.getUnfinishedSessions()).isEqualTo(sessions);
+        assertThat(closeMillis).as("sessions closed one after the other would take %d ms", sessions * 500)
+            .isLessThan(sessions * 500 / 2);
+        assertThat(this.broker.getConnectionCount()).isZero();
+    }
+
+    @Test
+    void abandonedSessionsLeaveTheirChannelsToTheConnection() throws Exception {
+        InMemoryConnection rabbitConnection = this.broker.newConnection();
+        RMQConnection connection = new RMQConnection(new ConnectionParams()
+            .setRabbitConnection(rabbitConnection)
+            .setTerminationTimeout(500)
+            .setOnMessageTimeoutMs(2000));
+        RMQSession abandoned = (RMQSession) connection.createSession(true, Session.SESSION_TRANSACTED);
+        abandoned.createProducer(abandoned.createQueue("abandoned")).send(abandoned.createTextMessage("uncommitted"));
+        RMQSession closed = (RMQSession) connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        closed.createProducer(closed.createQueue("closed")).send(closed.createTextMessage("sent"));
+        assertThat(rabbitConnection.getChannelCount()).isEqualTo(2);
+
+        abandoned.internalClose(TimeTracker.ZERO); // as if the termination timeout had passed
+        assertThat(rabbitConnection.getChannelCount()).isEqualTo(2);
+        assertThatThrownBy(abandoned::commit).isInstanceOf(javax.jms.IllegalStateException.class);
+
+        closed.internalClose(new TimeTracker());
+        assertThat(rabbitConnection.getChannelCount()).isEqualTo(1);
+
+        connection.close();
+        assertThat(this.broker.getConnectionCount()).isZero();
+        assertThat(this.broker.getReadyCount("abandoned")).isZero();
+    }
+
+    private RMQConnection connection(long terminationTimeout) {
+        return new RMQConnection(new ConnectionParams()
+            .setRabbitConnection(this.broker.newConnection())
+            .setTerminationTimeout(terminationTimeout)
+            .setOnMessageTimeoutMs(2000));
+    }
+}
@@ -0,0 +1,75 @@
+// This Source Code Form is subject to the terms of the Mozilla Public
+// License, v. 2.0. If a copy of the MPL was not distributed with this
+// file, You can obtain one at https://mozilla.org/MPL/2.0/.
+//
+// Copyright (c) 2020 VMware, Inc. or its affiliates. All rights reserved.
+package com.rabbitmq.jms.client;
+
+import com.rabbitmq.jms.admin.RMQDestination;
+import com.rabbitmq.jms.client.message.RMQTextMessage;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class FlightRecorderEventsTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void eventsAreAvailableWithJfr() {
+        assertThat(FlightRecorderEvents.INSTANCE.isAvailable()).isTrue();
+    }
+
+    @Test
+    public void disabledEventsAreNotBegun() {
+        assertThat(FlightRecorderEvents.INSTANCE.beginSend()).isNull();
+        assertThat(FlightRecorderEvents.INSTANCE.beginCommit()).isNull();
+        FlightRecorderEvents.INSTANCE.serializedSend(null, 10, 10);
+        FlightRecorderEvents.INSTANCE.endSend(null, "queue");
+        FlightRecorderEvents.INSTANCE.end(null);
+    }
+
+    @Test
+    public void enabledEventsAreRecorded() throws Exception {
+        Path file = this.directory.resolve("events.jfr");
+        DeliveryExecutor executor = new DeliveryExecutor(1000);
+        RMQTextMessage message = new RMQTextMessage();
+        message.setJMSDestination(new RMQDestination("orders", true, false));
+        try (Recording recording = new Recording()) {
+            recording.enable("com.rabbitmq.jms.Delivery");
+            recording.enable("com.rabbitmq.jms.Send");
+            recording.start();
+            executor.deliverMessageWithProtection(message, m -> { });
+            FlightRecorderEvents events = FlightRecorderEvents.INSTANCE;
+            Object send = events.beginSend();
+            events.serializedSend(send, 42, 1000);
+            events.endSend(send, "orders");
+            events.end(events.beginCommit()); // not enabled
+            recording.stop();
+            recording.dump(file);
+        } finally {
+            executor.close();
+        }
+
+        List<RecordedEvent> recorded = RecordingFile.readAllEvents(file).stream()
+            .filter(e -> e.getEventType().getName().startsWith("com.rabbitmq.jms."))
+            .collect(Collectors.toList());
+        assertThat(recorded).extracting(e -> e.getEventType().getName())
+            .containsExactlyInAnyOrder("com.rabbitmq.jms.Delivery", "com.rabbitmq.jms.Send");
+        RecordedEvent delivery = recorded.stream().filter(e -> e.getEventType().getName().endsWith("Delivery")).findFirst().get();
+        assertThat(delivery.getString("destination")).isEqualTo("orders");
+        assertThat(delivery.getBoolean("timedOut")).isFalse();
+        RecordedEvent send = recorded.stream().filter(e -> e.getEventType().getName().endsWith("Send")).findFirst().get();
+        assertThat(send.getInt("size")).isEqualTo(42);
+        assertThat(send.getDuration("serializationTime").toNanos()).isEqualTo(1000);
+    }
+}
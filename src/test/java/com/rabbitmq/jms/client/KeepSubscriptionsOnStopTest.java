@@ -0,0 +1,198 @@
+// This Source Code Form is subject to the terms of the Mozilla Public
+// License, v. 2.0. If a copy of the MPL was not distributed with this
+// file, You can obtain one at https://mozilla.org/MPL/2.0/.
+//
+// Copyright (c) 2020 VMware, Inc. or its affiliates. All rights reserved.
+package com.rabbitmq.jms.client;
+
+import com.rabbitmq.jms.client.inmemory.InMemoryBroker;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageConsumer;
+import javax.jms.MessageProducer;
+import javax.jms.Queue;
+import javax.jms.Session;
+import javax.jms.TextMessage;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class KeepSubscriptionsOnStopTest {
+
+    private static final String QUEUE = "keep-subscriptions";
+
+    private final InMemoryBroker broker = new InMemoryBroker();
+    private final List<Message> received = new CopyOnWriteArrayList<Message>();
+    private RMQConnection connection;
+    private Session session;
+    private MessageProducer producer;
+    private Queue queue;
+
+    @BeforeEach
+    void init() throws JMSException {
+        this.connection = new RMQConnection(new ConnectionParams()
+            .setRabbitConnection(this.broker.newConnection())
+            .setOnMessageTimeoutMs(2000)
+            .setTerminationTimeout(5000)
+            .setKeepSubscriptionsOnStop(true)
+            .setChannelsQos(10));
+        this.session = this.connection.createSession(false, Session.CLIENT_ACKNOWLEDGE);
+        this.queue = this.session.createQueue(QUEUE);
+        this.producer = this.session.createProducer(this.queue);
+    }
+
+    @AfterEach
+    void tearDown() throws JMSException {
+        this.connection.close();
+    }
+
+    @Test
+    void deliveriesAreHeldWhileStoppedAndPassedOnInOrderOnStart() throws Exception {
+        CountDownLatch latch = new CountDownLatch(5);
+        MessageConsumer consumer = this.session.createConsumer(this.queue);
+        consumer.setMessageListener(message -> {
+            this.received.add(message);
+            latch.countDown();
+        });
+        this.connection.start();
+        this.send(0, 1);
+        waitFor(() -> this.received.size() == 1);
+
+        this.connection.stop();
+        this.send(1, 5);
+        waitFor(() -> this.broker.getReadyCount(QUEUE) == 0);
+        Thread.sleep(100);
+        assertThat(this.received).hasSize(1);
+
+        this.connection.start();
+        assertThat(latch.await(5, TimeUnit.SECONDS)).isTrue();
+        for (int i = 0; i < 5; i++) {
+            assertThat(((TextMessage) this.received.get(i)).getText()).isEqualTo("message " + i);
+            assertThat(this.received.get(i).getJMSRedelivered()).isFalse();
+        }
+    }
+
+    @Test
+    void heldDeliveriesAreRequeuedWhenTheConsumerIsClosed() throws Exception {
+        MessageConsumer consumer = this.session.createConsumer(this.queue);
+        consumer.setMessageListener(this.received::add);
+        this.connection.start();
+        this.connection.stop();
+        this.send(0, 3);
+        waitFor(() -> this.broker.getUnackedCount(QUEUE) == 3);
+
+        consumer.close();
+        waitFor(() -> this.broker.getReadyCount(QUEUE) == 3);
+        assertThat(this.received).isEmpty();
+    }
+
+    @Test
+    void heldDeliveriesAreDiscardedOnRecover() throws Exception {
+        CountDownLatch latch = new CountDownLatch(4);
+        MessageConsumer consumer = this.session.createConsumer(this.queue);
+        consumer.setMessageListener(message -> {
+            this.received.add(message);
+            latch.countDown();
+        });
+        this.connection.start();
+        this.send(0, 1);
+        waitFor(() -> this.received.size() == 1); // not acknowledged
+        this.connection.stop();
+        this.send(1, 3);
+        waitFor(() -> this.broker.getUnackedCount(QUEUE) == 3);
+
+        this.session.recover();
+        this.connection.start();
+        assertThat(latch.await(5, TimeUnit.SECONDS)).isTrue();
+        Thread.sleep(100);
+        assertThat(this.received).hasSize(4);
+        for (Message message : this.received.subList(1, 4)) {
+            assertThat(message.getJMSRedelivered()).isTrue();
+        }
+    }
+
+    @Test
+    void heldDeliveriesAreBoundedWhenNoQosIsSet() throws Exception {
+        RMQConnection unboundedConnection = new RMQConnection(new ConnectionParams()
+            .setRabbitConnection(this.broker.newConnection())
+            .setOnMessageTimeoutMs(2000)
+            .setTerminationTimeout(5000)
+            .setKeepSubscriptionsOnStop(true));
+        try {
+            Session unboundedSession = unboundedConnection.createSession(false, Session.CLIENT_ACKNOWLEDGE);
+            unboundedSession.createConsumer(this.queue).setMessageListener(this.received::add);
+            unboundedConnection.start();
+            unboundedConnection.stop();
+            int held = RMQConnection.KEEP_SUBSCRIPTIONS_ON_STOP_DEFAULT_QOS;
+            this.send(0, held + 10);
+            waitFor(() -> this.broker.getUnackedCount(QUEUE) == held);
+            Thread.sleep(100);
+            assertThat(this.broker.getUnackedCount(QUEUE)).isEqualTo(held);
+            assertThat(this.broker.getReadyCount(QUEUE)).isEqualTo(10);
+            assertThat(this.received).isEmpty();
+        } finally {
+            unboundedConnection.close();
+        }
+    }
+
+    @Test
+    void stopWaitsForTheDeliveriesInProgressWithinASingleDeadline() throws Exception {
+        this.connection.close();
+        this.connection = new RMQConnection(new ConnectionParams()
+            .setRabbitConnection(this.broker.newConnection())
+            .setOnMessageTimeoutMs(5000)
+            .setTerminationTimeout(500)
+            .setKeepSubscriptionsOnStop(true)
+            .setChannelsQos(10));
+        CountDownLatch inListeners = new CountDownLatch(3);
+        CountDownLatch release = new CountDownLatch(1);
+        for (int i = 0; i < 3; i++) {
+            Session listenerSession = this.connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            listenerSession.createConsumer(listenerSession.createQueue(QUEUE + "-" + i)).setMessageListener(message -> {
+                inListeners.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            MessageProducer listenerProducer = listenerSession.createProducer(listenerSession.createQueue(QUEUE + "-" + i));
+            listenerProducer.send(listenerSession.createTextMessage("blocking"));
+        }
+        this.connection.start();
+        try {
+            assertThat(inListeners.await(5, TimeUnit.SECONDS)).isTrue();
+            long start = System.nanoTime();
+            this.connection.stop();
+            assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isBetween(400L, 1200L);
+        } finally {
+            release.countDown();
+        }
+    }
+
+    private void send(int from, int to) throws JMSException {
+        for (int i = from; i < to; i++) {
+            this.producer.send(this.session.createTextMessage("message " + i));
+        }
+    }
+
+    private static void waitFor(Condition condition) throws Exception {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.isTrue()) {
+            assertThat(System.currentTimeMillis()).isLessThan(deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    @FunctionalInterface
+    private interface Condition {
+        boolean isTrue() throws Exception;
+    }
+}
@@ -0,0 +1,135 @@
+// This Source Code Form is subject to the terms of the Mozilla Public
+// License, v. 2.0. If a copy of the MPL was not distributed with this
+// file, You can obtain one at https://mozilla.org/MPL/2.0/.
+//
+// Copyright (c) 2020 VMware, Inc. or its affiliates. All rights reserved.
+package com.rabbitmq.jms.client;
+
+import com.rabbitmq.client.AlreadyClosedException;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Connection;
+import com.rabbitmq.client.ConfirmListener;
+import com.rabbitmq.jms.client.inmemory.InMemoryBroker;
+import com.rabbitmq.jms.client.inmemory.InMemoryConnection;
+import com.rabbitmq.jms.util.RMQJMSException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import javax.jms.JMSException;
+import javax.jms.MessageConsumer;
+import javax.jms.MessageProducer;
+import javax.jms.Queue;
+import javax.jms.Session;
+import javax.jms.TextMessage;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class LazySessionChannelTest {
+
+    private final InMemoryBroker broker = new InMemoryBroker();
+    private final InMemoryConnection amqpConnection = this.broker.newConnection();
+    private RMQConnection connection;
+
+    @AfterEach
+    void tearDown() throws JMSException {
+        if (this.connection != null) {
+            this.connection.close();
+        }
+    }
+
+    @Test
+    void sessionOpensItsChannelOnFirstUse() throws JMSException {
+        this.connection = new RMQConnection(new ConnectionParams().setRabbitConnection(this.amqpConnection));
+        Session session = this.connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        TextMessage message = session.createTextMessage("hello");
+        MessageProducer producer = session.createProducer(null);
+        assertThat(this.amqpConnection.getChannelCount()).isZero();
+
+        Queue queue = session.createQueue("lazy"); // declares the queue
+        assertThat(this.amqpConnection.getChannelCount()).isEqualTo(1);
+        producer.send(queue, message);
+
+        MessageConsumer consumer = session.createConsumer(queue);
+        this.connection.start();
+        assertThat(((TextMessage) consumer.receive(5000)).getText()).isEqualTo("hello");
+        assertThat(this.amqpConnection.getChannelCount()).isEqualTo(1);
+
+        session.close();
+        assertThat(this.amqpConnection.getChannelCount()).isZero();
+    }
+
+    @Test
+    void unusedSessionsDoNotOpenChannels() throws JMSException {
+        this.connection = new RMQConnection(new ConnectionParams().setRabbitConnection(this.amqpConnection));
+        Session transacted = this.connection.createSession(true, Session.SESSION_TRANSACTED);
+        transacted.createBytesMessage();
+        transacted.commit();
+        transacted.rollback();
+        transacted.close();
+        this.connection.createSession(false, Session.CLIENT_ACKNOWLEDGE).close();
+
+        assertThat(this.amqpConnection.getChannelCount()).isZero();
+        assertThatThrownBy(() -> ((RMQSession) transacted).getChannel()).hasMessageContaining("closed");
+        assertThat(this.amqpConnection.getChannelCount()).isZero();
+    }
+
+    @Test
+    void channelOpeningFailuresAreJmsExceptions() throws JMSException {
+        this.connection = new RMQConnection(new ConnectionParams().setRabbitConnection(this.amqpConnection));
+        Session session = this.connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        this.amqpConnection.closeByBroker("node stopped");
+
+        assertThatThrownBy(() -> session.createQueue("lazy-closed"))
+            .isInstanceOf(RMQJMSException.class)
+            .hasRootCauseInstanceOf(AlreadyClosedException.class);
+        this.connection = null; // the AMQP connection is already closed
+    }
+
+    @Test
+    void channelIsAbortedWhenItsSetupFails() throws Exception {
+        Connection amqpConnection = mock(Connection.class);
+        Channel qosFailure = mock(Channel.class);
+        Channel confirmsFailure = mock(Channel.class);
+        when(amqpConnection.createChannel()).thenReturn(qosFailure, confirmsFailure);
+        doThrow(new IOException("qos timed out")).when(qosFailure).basicQos(10);
+        doThrow(new IllegalStateException("no confirms")).when(confirmsFailure).addConfirmListener(any(ConfirmListener.class));
+        this.connection = new RMQConnection(new ConnectionParams()
+            .setRabbitConnection(amqpConnection)
+            .setChannelsQos(10)
+            .setConfirmListener(context -> { }));
+        RMQSession session = (RMQSession) this.connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+
+        assertThatThrownBy(session::getChannel).isInstanceOf(RMQJMSException.class).hasRootCauseMessage("qos timed out");
+        verify(qosFailure).abort();
+        assertThatThrownBy(session::getChannel).isInstanceOf(RMQJMSException.class).hasRootCauseMessage("no confirms");
+        verify(confirmsFailure).abort();
+    }
+
+    @Test
+    void publisherConfirmsOnLazyChannel() throws Exception {
+        CountDownLatch confirmed = new CountDownLatch(2);
+        this.connection = new RMQConnection(new ConnectionParams()
+            .setRabbitConnection(this.amqpConnection)
+            .setConfirmListener(context -> {
+                if (context.isAck()) {
+                    confirmed.countDown();
+                }
+            }));
+        Session session = this.connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        MessageProducer producer = session.createProducer(session.createQueue("lazy-confirms"));
+        producer.send(session.createTextMessage("one"));
+        producer.send(session.createTextMessage("two"));
+
+        assertThat(confirmed.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(this.broker.getReadyCount("lazy-confirms")).isEqualTo(2);
+    }
+}
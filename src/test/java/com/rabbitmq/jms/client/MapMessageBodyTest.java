@@ -0,0 +1,139 @@
+// This Source Code Form is subject to the terms of the Mozilla Public
+// License, v. 2.0. If a copy of the MPL was not distributed with this
+// file, You can obtain one at https://mozilla.org/MPL/2.0/.
+//
+// Copyright (c) 2020 VMware, Inc. or its affiliates. All rights reserved.
+package com.rabbitmq.jms.client;
+
+import com.rabbitmq.jms.client.message.RMQMapMessage;
+import com.rabbitmq.jms.util.WhiteListObjectInputStream;
+import org.junit.jupiter.api.Test;
+
+import javax.jms.DeliveryMode;
+import javax.jms.JMSException;
+import javax.jms.MapMessage;
+import javax.jms.MessageFormatException;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class MapMessageBodyTest {
+
+    @Test
+    public void jmsFrameRoundTrip() throws Exception {
+        MapMessage received = (MapMessage) RMQMessage.fromMessage(writeEntries(new RMQMapMessage(true)).toByteArray(),
+            WhiteListObjectInputStream.DEFAULT_TRUSTED_PACKAGES);
+        assertEntries(received);
+    }
+
+    @Test
+    public void legacyEncodingIsSentByDefault() throws Exception {
+        RMQMessage sent = writeEntries(new RMQMapMessage());
+        assertThat(sent.rawBody()).isNull();
+        MapMessage received = (MapMessage) RMQMessage.fromMessage(sent.toByteArray(),
+            WhiteListObjectInputStream.DEFAULT_TRUSTED_PACKAGES);
+        assertEntries(received);
+    }
+
+    @Test
+    public void legacyEncodingIsRead() throws Exception {
+        MapMessage received = (MapMessage) RMQMessage.fromMessage(writeEntries(new LegacyMapMessage()).toByteArray(),
+            WhiteListObjectInputStream.DEFAULT_TRUSTED_PACKAGES);
+        assertEntries(received);
+    }
+
+    @Test
+    public void receivedBodyCanBeSentAgain() throws Exception {
+        RMQMessage received = RMQMessage.fromMessage(writeEntries(new RMQMapMessage(true)).toByteArray(),
+            WhiteListObjectInputStream.DEFAULT_TRUSTED_PACKAGES);
+        assertThat(((MapMessage) received).getInt("int")).isEqualTo(123456);
+        MapMessage again = (MapMessage) RMQMessage.fromMessage(received.toByteArray(), WhiteListObjectInputStream.DEFAULT_TRUSTED_PACKAGES);
+        assertEntries(again);
+        assertEntries((MapMessage) RMQMessage.fromMessage(
+            ((RMQMessage) again).toByteArray(), WhiteListObjectInputStream.DEFAULT_TRUSTED_PACKAGES));
+    }
+
+    @Test
+    public void clearedMapCanBeRewritten() throws Exception {
+        MapMessage received = (MapMessage) RMQMessage.fromMessage(writeEntries(new RMQMapMessage(true)).toByteArray(),
+            WhiteListObjectInputStream.DEFAULT_TRUSTED_PACKAGES);
+        received.clearBody();
+        received.setLong("only", 5L);
+        MapMessage again = (MapMessage) RMQMessage.fromMessage(((RMQMessage) received).toByteArray(),
+            WhiteListObjectInputStream.DEFAULT_TRUSTED_PACKAGES);
+        assertThat(Collections.list(again.getMapNames())).containsExactly("only");
+        assertThat(again.getLong("only")).isEqualTo(5L);
+    }
+
+    @Test
+    public void conversions() throws Exception {
+        RMQMapMessage message = new RMQMapMessage();
+        message.setByte("byte", (byte) 7);
+        message.setString("number", "42");
+        message.setFloat("float", 1.5f);
+        message.setString("null", null);
+        message.setObject("null object", null);
+
+        assertThat(message.getLong("byte")).isEqualTo(7L);
+        assertThat(message.getString("byte")).isEqualTo("7");
+        assertThat(message.getInt("number")).isEqualTo(42);
+        assertThat(message.getDouble("float")).isEqualTo(1.5d);
+        assertThat(message.itemExists("null")).isTrue();
+        assertThat(message.itemExists("null object")).isTrue();
+        assertThat(message.getObject("null object")).isNull();
+        assertThat(message.getString("null")).isNull();
+        assertThat(message.getBoolean("absent")).isFalse();
+        assertThatThrownBy(() -> message.getInt("null")).isInstanceOf(NumberFormatException.class);
+        assertThatThrownBy(() -> message.getInt("absent")).isInstanceOf(NumberFormatException.class);
+        assertThatThrownBy(() -> message.getChar("byte")).isInstanceOf(MessageFormatException.class);
+        assertThatThrownBy(() -> message.setObject("object", new StringBuilder())).isInstanceOf(MessageFormatException.class);
+    }
+
+    private static RMQMessage writeEntries(RMQMapMessage message) throws JMSException {
+        message.setBoolean("boolean", true);
+        message.setByte("byte", (byte) -3);
+        message.setShort("short", (short) 1000);
+        message.setChar("char", 'x');
+        message.setInt("int", 123456);
+        message.setLong("long", Long.MIN_VALUE);
+        message.setFloat("float", 0.25f);
+        message.setDouble("double", Math.PI);
+        message.setString("string", "héllo ☺");
+        message.setBytes("bytes", new byte[] { 9, 8, 7 });
+        for (int i = 0; i < 300; i++) {
+            message.setInt("entry" + i, i);
+        }
+        message.setJMSDeliveryMode(DeliveryMode.NON_PERSISTENT);
+        message.setJMSPriority(4);
+        RMQMessage rmqMessage = message;
+        rmqMessage.generateInternalID();
+        return rmqMessage;
+    }
+
+    private static void assertEntries(MapMessage message) throws JMSException {
+        assertThat(message.getBoolean("boolean")).isTrue();
+        assertThat(message.getByte("byte")).isEqualTo((byte) -3);
+        assertThat(message.getShort("short")).isEqualTo((short) 1000);
+        assertThat(message.getChar("char")).isEqualTo('x');
+        assertThat(message.getInt("int")).isEqualTo(123456);
+        assertThat(message.getLong("long")).isEqualTo(Long.MIN_VALUE);
+        assertThat(message.getFloat("float")).isEqualTo(0.25f);
+        assertThat(message.getDouble("double")).isEqualTo(Math.PI);
+        assertThat(message.getString("string")).isEqualTo("héllo ☺");
+        assertThat(message.getBytes("bytes")).isEqualTo(new byte[] { 9, 8, 7 });
+        assertThat(message.getObject("entry299")).isEqualTo(299);
+        assertThat(Collections.list(message.getMapNames())).hasSize(310);
+    }
+
+    /**
+     * Sends its body in the legacy encoding, as older clients do.
+     */
+    public static class LegacyMapMessage extends RMQMapMessage {
+        @Override
+        protected ByteBuffer rawBody() {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,146 @@
+// This Source Code Form is subject to the terms of the Mozilla Public
+// License, v. 2.0. If a copy of the MPL was not distributed with this
+// file, You can obtain one at https://mozilla.org/MPL/2.0/.
+//
+// Copyright (c) 2020 VMware, Inc. or its affiliates. All rights reserved.
+package com.rabbitmq.jms.client;
+
+import com.rabbitmq.jms.client.message.RMQObjectMessage;
+import com.rabbitmq.jms.util.RMQJMSException;
+import com.rabbitmq.jms.util.WhiteListObjectInputStream;
+import org.junit.jupiter.api.Test;
+
+import javax.jms.DeliveryMode;
+import javax.jms.ObjectMessage;
+import java.io.NotSerializableException;
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class ObjectMessageSerializerTest {
+
+    private final CompactObjectMessageSerializer compact = new CompactObjectMessageSerializer();
+
+    @Test
+    public void compactRoundTrip() throws Exception {
+        Map<String, Object> map = new LinkedHashMap<String, Object>();
+        map.put("string", "värde");
+        map.put("int", 42);
+        map.put("long", Long.MAX_VALUE);
+        map.put("double", 0.5d);
+        map.put("char", 'c');
+        map.put("bytes", new byte[] { 1, 2, 3 });
+        map.put("decimal", new BigDecimal("-12345.6789"));
+        map.put("integer", new BigInteger("123456789012345678901234567890"));
+        map.put("date", new Date(1234567L));
+        map.put("uuid", UUID.randomUUID());
+        map.put("list", new ArrayList<Object>(Arrays.asList(1, "two", null)));
+        map.put("set", new HashSet<Object>(Arrays.asList(true, (short) 3)));
+
+        @SuppressWarnings("unchecked")
+        Map<String, Object> copy = (Map<String, Object>) compact.deserialize(compact.serialize((Serializable) map),
+            WhiteListObjectInputStream.DEFAULT_TRUSTED_PACKAGES);
+        assertThat(copy.keySet()).containsExactlyElementsOf(map.keySet());
+        for (Map.Entry<String, Object> entry : map.entrySet()) {
+            assertThat(copy.get(entry.getKey())).isEqualTo(entry.getValue());
+        }
+    }
+
+    @Test
+    public void compactIsSmallerThanJavaSerialization() throws Exception {
+        List<Integer> list = new ArrayList<Integer>();
+        for (int i = 0; i < 100; i++) list.add(i);
+        RMQObjectMessage java = new RMQObjectMessage();
+        java.setObject((Serializable) list);
+        assertThat(compact.serialize((Serializable) list).length).isLessThan(javaBodyLength(java));
+    }
+
+    @Test
+    public void unsupportedTypesAreNotSerialized() {
+        assertThatThrownBy(() -> compact.serialize(new StringBuilder("x")))
+            .isInstanceOf(NotSerializableException.class);
+    }
+
+    @Test
+    public void trustedPackagesAreChecked() throws Exception {
+        byte[] serialized = compact.serialize(new ArrayList<Object>(Collections.singletonList(new BigDecimal("1.5"))));
+        assertThat(compact.deserialize(serialized, Arrays.asList("java.util", "java.math"))).isNotNull();
+        assertThatThrownBy(() -> compact.deserialize(serialized, Collections.singletonList("java.util")))
+            .isInstanceOf(ClassNotFoundException.class);
+    }
+
+    @Test
+    public void messageIsDeserializedWithTheSerializerOfTheProducer() throws Exception {
+        RMQObjectMessage sent = new RMQObjectMessage(WhiteListObjectInputStream.DEFAULT_TRUSTED_PACKAGES, compact);
+        sent.setObject(new ArrayList<Object>(Arrays.asList("a", 1L)));
+        ObjectMessage received = (ObjectMessage) RMQMessage.fromMessage(frame(sent), WhiteListObjectInputStream.DEFAULT_TRUSTED_PACKAGES);
+        assertThat(received.getObject()).isEqualTo(Arrays.asList("a", 1L));
+        assertThat(Collections.list(received.getPropertyNames())).isEmpty();
+
+        RMQObjectMessage javaSent = new RMQObjectMessage();
+        javaSent.setObject(new ArrayList<Object>(Arrays.asList("b", 2L)));
+        ObjectMessage javaReceived = (ObjectMessage) RMQMessage.fromMessage(frame(javaSent), WhiteListObjectInputStream.DEFAULT_TRUSTED_PACKAGES);
+        assertThat(javaReceived.getObject()).isEqualTo(Arrays.asList("b", 2L));
+    }
+
+    @Test
+    public void unsupportedTypesFallBackToJavaSerialization() throws Exception {
+        RMQObjectMessage sent = new RMQObjectMessage(WhiteListObjectInputStream.DEFAULT_TRUSTED_PACKAGES, compact);
+        sent.setObject(new Order("42"));
+        assertThat(sent.getStringProperty("rmq.jms.object.serializer")).isNull();
+        ObjectMessage received = (ObjectMessage) RMQMessage.fromMessage(frame(sent), WhiteListObjectInputStream.DEFAULT_TRUSTED_PACKAGES);
+        assertThat(((Order) received.getObject()).id).isEqualTo("42");
+
+        sent.setObject("text"); // supported again
+        assertThat(sent.getStringProperty("rmq.jms.object.serializer")).isEqualTo(compact.getName());
+    }
+
+    @Test
+    public void unknownSerializerIsReported() throws Exception {
+        RMQObjectMessage sent = new RMQObjectMessage(WhiteListObjectInputStream.DEFAULT_TRUSTED_PACKAGES, new CompactObjectMessageSerializer() {
+            @Override
+            public String getName() {
+                return "unknown";
+            }
+        });
+        sent.setObject("text");
+        ObjectMessage received = (ObjectMessage) RMQMessage.fromMessage(frame(sent), WhiteListObjectInputStream.DEFAULT_TRUSTED_PACKAGES);
+        assertThatThrownBy(received::getObject).isInstanceOf(RMQJMSException.class);
+    }
+
+    private static class Order implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String id;
+
+        private Order(String id) {
+            this.id = id;
+        }
+    }
+
+    private static byte[] frame(RMQObjectMessage message) throws Exception {
+        message.setJMSDeliveryMode(DeliveryMode.NON_PERSISTENT);
+        message.setJMSPriority(4);
+        RMQMessage rmqMessage = message;
+        rmqMessage.generateInternalID();
+        return rmqMessage.toByteArray();
+    }
+
+    private static int javaBodyLength(RMQObjectMessage message) throws Exception {
+        RMQObjectMessage empty = new RMQObjectMessage();
+        return frame(message).length - frame(empty).length;
+    }
+}
@@ -0,0 +1,120 @@
+// This Source Code Form is subject to the terms of the Mozilla Public
+// License, v. 2.0. If a copy of the MPL was not distributed with this
+// file, You can obtain one at https://mozilla.org/MPL/2.0/.
+//
+// Copyright (c) 2020 VMware, Inc. or its affiliates. All rights reserved.
+package com.rabbitmq.jms.client;
+
+import com.rabbitmq.jms.client.message.RMQTextMessage;
+import com.rabbitmq.jms.util.WhiteListObjectInputStream;
+import org.junit.jupiter.api.Test;
+
+import javax.jms.DeliveryMode;
+import javax.jms.MessageFormatException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class PropertyMapTest {
+
+    @Test
+    public void putRemoveAcrossTheScanLimitAgainstLinkedHashMap() {
+        PropertyMap properties = new PropertyMap();
+        Map<String, Object> reference = new LinkedHashMap<String, Object>();
+        Random random = new Random(42);
+        for (int i = 0; i < 20000; i++) {
+            String name = "p" + random.nextInt(3 * PropertyMap.LINEAR_SCAN_LIMIT);
+            int operation = random.nextInt(4);
+            if (operation == 0) {
+                properties.remove(name);
+                reference.remove(name);
+            } else if (operation == 1) {
+                properties.put(name, "s" + i);
+                reference.put(name, "s" + i);
+            } else {
+                properties.putBits(name, PropertyMap.INT, i);
+                reference.put(name, i);
+            }
+        }
+        assertThat(properties.size()).isEqualTo(reference.size());
+        assertThat(properties.names()).containsExactlyElementsOf(reference.keySet());
+        for (Map.Entry<String, Object> entry : reference.entrySet()) {
+            assertThat(properties.get(entry.getKey())).isEqualTo(entry.getValue());
+        }
+        assertThat(properties.get("absent")).isNull();
+        properties.clear();
+        assertThat(properties.size()).isZero();
+        assertThat(properties.contains("p1")).isFalse();
+    }
+
+    @Test
+    public void removeKeepsInsertionOrder() {
+        PropertyMap properties = new PropertyMap();
+        properties.put("a", "1");
+        properties.put("b", "2");
+        properties.put("c", "3");
+        properties.remove("b");
+        assertThat(properties.names()).containsExactly("a", "c");
+        assertThat(properties.get("c")).isEqualTo("3");
+
+        for (int i = 0; i < 3 * PropertyMap.LINEAR_SCAN_LIMIT; i++) {
+            properties.putBits("p" + i, PropertyMap.INT, i);
+        }
+        properties.remove("p5");
+        properties.remove("a");
+        assertThat(properties.names()).startsWith("c", "p0", "p1", "p2", "p3", "p4", "p6", "p7");
+        assertThat(properties.get("p6")).isEqualTo(6);
+        assertThat(properties.contains("p5")).isFalse();
+        for (int i = 0; i < 3 * PropertyMap.LINEAR_SCAN_LIMIT - 1; i++) {
+            properties.remove("p" + i);
+        }
+        assertThat(properties.names()).isEqualTo(Arrays.asList("c", "p" + (3 * PropertyMap.LINEAR_SCAN_LIMIT - 1)));
+        assertThat(properties.get("c")).isEqualTo("3");
+    }
+
+    @Test
+    public void putStoresBoxedPrimitivesUnboxed() {
+        PropertyMap properties = new PropertyMap();
+        properties.put("double", 2.5d);
+        properties.put("boolean", Boolean.TRUE);
+        int position = properties.position("double");
+        assertThat(properties.tag(position)).isEqualTo(PropertyMap.DOUBLE);
+        assertThat(Double.longBitsToDouble(properties.bits(position))).isEqualTo(2.5d);
+        assertThat(properties.get("boolean")).isEqualTo(Boolean.TRUE);
+        properties.put("double", null);
+        assertThat(properties.contains("double")).isFalse();
+    }
+
+    @Test
+    public void messagePropertiesRoundTrip() throws Exception {
+        RMQTextMessage message = new RMQTextMessage();
+        message.setText("text");
+        message.setJMSDeliveryMode(DeliveryMode.PERSISTENT);
+        message.setJMSPriority(7);
+        message.setJMSTimestamp(12345L);
+        message.setShortProperty("short", (short) 3);
+        message.setFloatProperty("float", 0.5f);
+        message.setStringProperty("number", "17");
+        for (int i = 0; i < 20; i++) {
+            message.setLongProperty("long" + i, i);
+        }
+        RMQMessage rmqMessage = message;
+        rmqMessage.generateInternalID();
+
+        RMQMessage received = RMQMessage.fromMessage(rmqMessage.toByteArray(), WhiteListObjectInputStream.DEFAULT_TRUSTED_PACKAGES);
+        assertThat(received.getJMSPriority()).isEqualTo(7);
+        assertThat(received.getJMSTimestamp()).isEqualTo(12345L);
+        assertThat(received.getIntProperty("short")).isEqualTo(3);
+        assertThat(received.getDoubleProperty("float")).isEqualTo(0.5d);
+        assertThat(received.getLongProperty("number")).isEqualTo(17L);
+        assertThat(received.getLongProperty("long19")).isEqualTo(19L);
+        assertThat(received.getObjectProperty("short")).isEqualTo((short) 3);
+        assertThatThrownBy(() -> received.getIntProperty("float")).isInstanceOf(MessageFormatException.class);
+        assertThatThrownBy(() -> received.getIntProperty("absent")).isInstanceOf(NumberFormatException.class);
+        assertThat(received.toHeaders()).containsEntry("short", (short) 3).containsEntry("JMSPriority", 7);
+    }
+}
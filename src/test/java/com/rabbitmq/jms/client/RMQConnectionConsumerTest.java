@@ -0,0 +1,255 @@
+// This Source Code Form is subject to the terms of the Mozilla Public
+// License, v. 2.0. If a copy of the MPL was not distributed with this
+// file, You can obtain one at https://mozilla.org/MPL/2.0/.
+//
+// Copyright (c) 2020 VMware, Inc. or its affiliates. All rights reserved.
+package com.rabbitmq.jms.client;
+
+import com.rabbitmq.jms.client.inmemory.InMemoryBroker;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import javax.jms.ConnectionConsumer;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageListener;
+import javax.jms.MessageProducer;
+import javax.jms.Queue;
+import javax.jms.ServerSession;
+import javax.jms.ServerSessionPool;
+import javax.jms.Session;
+import javax.jms.TextMessage;
+import javax.jms.Topic;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class RMQConnectionConsumerTest {
+
+    private final InMemoryBroker broker = new InMemoryBroker();
+    private RMQConnection connection;
+    private RMQServerSessionPool pool;
+
+    @AfterEach
+    void tearDown() throws JMSException {
+        if (this.connection != null) {
+            this.connection.close();
+        }
+        if (this.pool != null) {
+            this.pool.close();
+        }
+    }
+
+    @Test
+    void messagesAreProcessedInParallelByTheServerSessions() throws Exception {
+        this.connection = this.connection(false);
+        Set<String> threads = ConcurrentHashMap.newKeySet();
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        CountDownLatch latch = new CountDownLatch(40);
+        this.pool = new RMQServerSessionPool(this.connection, 4, message -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            threads.add(Thread.currentThread().getName());
+            sleep(10);
+            running.decrementAndGet();
+            latch.countDown();
+        });
+        Queue queue = this.send("connection-consumer", 40);
+
+        ConnectionConsumer connectionConsumer = this.connection.createConnectionConsumer(queue, null, this.pool, 5);
+        assertThat(connectionConsumer.getServerSessionPool()).isSameAs(this.pool);
+        this.connection.start();
+
+        assertThat(latch.await(10, TimeUnit.SECONDS)).isTrue();
+        assertThat(threads).hasSizeGreaterThan(1);
+        assertThat(maxRunning.get()).isGreaterThan(1).isLessThanOrEqualTo(4);
+        waitFor(() -> this.broker.getUnackedCount("connection-consumer") == 0);
+        assertThat(this.broker.getReadyCount("connection-consumer")).isZero();
+    }
+
+    @Test
+    void batchesAreLimitedToMaxMessages() throws Exception {
+        this.connection = this.connection(false);
+        Queue queue = this.send("batches", 7);
+        RecordingServerSessionPool recordingPool = new RecordingServerSessionPool(this.connection);
+
+        this.connection.createConnectionConsumer(queue, null, recordingPool, 3);
+        this.connection.start();
+
+        waitFor(() -> recordingPool.count.get() == 7);
+        assertThat(recordingPool.maxBatch.get()).isBetween(1, 3);
+        assertThat(this.broker.getUnackedCount("batches")).isZero();
+    }
+
+    @Test
+    void messageIsRequeuedWhenTheListenerThrows() throws Exception {
+        this.connection = this.connection(true);
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch redelivered = new CountDownLatch(1);
+        this.pool = new RMQServerSessionPool(this.connection, 1, message -> {
+            if (calls.incrementAndGet() == 1) {
+                throw new IllegalStateException("boom");
+            }
+            if (redelivered(message)) {
+                acknowledge(message);
+                redelivered.countDown();
+            }
+        });
+        Queue queue = this.send("listener-exception", 1);
+
+        this.connection.createConnectionConsumer(queue, null, this.pool, 1);
+        this.connection.start();
+
+        assertThat(redelivered.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(calls.get()).isEqualTo(2);
+        assertThat(this.broker.getUnackedCount("listener-exception")).isZero();
+        assertThat(this.broker.getReadyCount("listener-exception")).isZero();
+    }
+
+    @Test
+    void closingTheConnectionConsumerStopsTheDeliveries() throws Exception {
+        this.connection = this.connection(false);
+        AtomicInteger received = new AtomicInteger();
+        this.pool = new RMQServerSessionPool(this.connection, 2, message -> received.incrementAndGet());
+        Queue queue = this.send("closed-connection-consumer", 1);
+        ConnectionConsumer connectionConsumer = this.connection.createConnectionConsumer(queue, null, this.pool, 1);
+        this.connection.start();
+        waitFor(() -> received.get() == 1);
+
+        connectionConsumer.close();
+        this.send("closed-connection-consumer", 2);
+        Thread.sleep(100);
+
+        assertThat(received.get()).isEqualTo(1);
+        assertThat(this.broker.getReadyCount("closed-connection-consumer")).isEqualTo(2);
+        assertThatThrownBy(connectionConsumer::getServerSessionPool).isInstanceOf(javax.jms.IllegalStateException.class);
+    }
+
+    @Test
+    void durableConnectionConsumerOnTopic() throws Exception {
+        this.connection = this.connection(false);
+        this.connection.setClientID("durable-connection-consumer");
+        CountDownLatch latch = new CountDownLatch(3);
+        this.pool = new RMQServerSessionPool(this.connection, 2, message -> latch.countDown());
+        Session session = this.connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        Topic topic = session.createTopic("connection-consumer-topic");
+
+        this.connection.createDurableConnectionConsumer(topic, "subscription", null, this.pool, 2);
+        this.connection.start();
+        MessageProducer producer = session.createProducer(topic);
+        for (int i = 0; i < 3; i++) {
+            producer.send(session.createTextMessage("message " + i));
+        }
+
+        assertThat(latch.await(5, TimeUnit.SECONDS)).isTrue();
+    }
+
+    @Test
+    void maxMessagesMustBePositive() throws JMSException {
+        this.connection = this.connection(false);
+        this.pool = new RMQServerSessionPool(this.connection, 1, message -> { });
+        Queue queue = this.send("max-messages", 0);
+        assertThatThrownBy(() -> this.connection.createConnectionConsumer(queue, null, this.pool, 0))
+            .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private RMQConnection connection(boolean requeueOnMessageListenerException) {
+        return new RMQConnection(new ConnectionParams()
+            .setRabbitConnection(this.broker.newConnection())
+            .setOnMessageTimeoutMs(2000)
+            .setTerminationTimeout(5000)
+            .setRequeueOnMessageListenerException(requeueOnMessageListenerException)
+            .setChannelsQos(20));
+    }
+
+    private Queue send(String queueName, int count) throws JMSException {
+        Session session = this.connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        Queue queue = session.createQueue(queueName);
+        MessageProducer producer = session.createProducer(queue);
+        for (int i = 0; i < count; i++) {
+            TextMessage message = session.createTextMessage("message " + i);
+            producer.send(message);
+        }
+        session.close();
+        return queue;
+    }
+
+    private static boolean redelivered(Message message) {
+        try {
+            return message.getJMSRedelivered();
+        } catch (JMSException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void acknowledge(Message message) {
+        try {
+            message.acknowledge();
+        } catch (JMSException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void waitFor(Condition condition) throws Exception {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.isTrue()) {
+            assertThat(System.currentTimeMillis()).isLessThan(deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    @FunctionalInterface
+    private interface Condition {
+        boolean isTrue() throws Exception;
+    }
+
+    /** Runs the server session on the dispatching thread, recording the batch sizes */
+    private static final class RecordingServerSessionPool implements ServerSessionPool, ServerSession {
+
+        private final Session session;
+        private final AtomicInteger count = new AtomicInteger();
+        private final AtomicInteger maxBatch = new AtomicInteger();
+        private int batch;
+
+        private RecordingServerSessionPool(RMQConnection connection) throws JMSException {
+            this.session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            this.session.setMessageListener(new MessageListener() {
+                @Override
+                public void onMessage(Message message) {
+                    batch++;
+                    count.incrementAndGet();
+                }
+            });
+        }
+
+        @Override
+        public ServerSession getServerSession() {
+            return this;
+        }
+
+        @Override
+        public Session getSession() {
+            return this.session;
+        }
+
+        @Override
+        public void start() {
+            this.batch = 0;
+            this.session.run();
+            this.maxBatch.accumulateAndGet(this.batch, Math::max);
+        }
+    }
+}
@@ -30,6 +30,7 @@ public class RMQMessageProducerTest {
 
     @BeforeEach public void init() {
         session = Mockito.mock(RMQSession.class);
+        Mockito.when(session.getJmsMetricsCollector()).thenReturn(JmsMetricsCollector.NO_OP);
         destination = Mockito.mock(RMQDestination.class);
     }
 
@@ -109,7 +110,8 @@ public class RMQMessageProducerTest {
         }
 
         @Override
-        protected void sendJMSMessage(RMQDestination destination, RMQMessage msg, Message originalMessage, int deliveryMode, int priority, long timeToLive) throws JMSException {
+        protected void sendJMSMessage(RMQDestination destination, RMQMessage msg, Message originalMessage, int deliveryMode, int priority, long timeToLive,
+                                      Object sendEvent) throws JMSException {
             this.message = msg;
         }
     }
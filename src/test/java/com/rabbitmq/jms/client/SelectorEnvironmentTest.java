@@ -0,0 +1,69 @@
+// This Source Code Form is subject to the terms of the Mozilla Public
+// License, v. 2.0. If a copy of the MPL was not distributed with this
+// file, You can obtain one at https://mozilla.org/MPL/2.0/.
+//
+// Copyright (c) 2020 VMware, Inc. or its affiliates. All rights reserved.
+package com.rabbitmq.jms.client;
+
+import com.rabbitmq.client.impl.LongStringHelper;
+import com.rabbitmq.jms.client.message.RMQTextMessage;
+import com.rabbitmq.jms.parse.sql.SqlEvaluator;
+import com.rabbitmq.jms.parse.sql.SqlParser;
+import com.rabbitmq.jms.parse.sql.SqlTokenStream;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import javax.jms.DeliveryMode;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SelectorEnvironmentTest {
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+        "JMSDeliveryMode = 'PERSISTENT'",
+        "JMSDeliveryMode = 'NON_PERSISTENT'",
+        "JMSPriority > 3 AND JMSTimestamp = 42",
+        "JMSType = 'ticker' OR JMSCorrelationID IS NULL",
+        "JMSMessageID IS NULL",
+        "region IN ('EMEA', 'APAC') AND quantity BETWEEN 10 AND 20",
+        "price * 2 > 99.5 AND urgent",
+        "missing IS NULL AND NOT urgent = false",
+        "symbol LIKE 'RAB_%'"
+    })
+    public void environmentsAgreeWithHeaders(String selector) throws Exception {
+        RMQMessage message = message();
+        SqlEvaluator evaluator = new SqlEvaluator(new SqlParser(new SqlTokenStream(selector)), RMQSession.JMS_TYPE_IDENTS);
+        assertThat(evaluator.evaluatorOk()).isTrue();
+
+        boolean expected = evaluator.evaluate(message.toHeaders());
+        assertThat(evaluator.evaluate(message.toSelectorEnvironment())).isEqualTo(expected);
+        assertThat(evaluator.evaluate(RMQMessage.headersEnvironment(onTheWire(message.toHeaders())))).isEqualTo(expected);
+    }
+
+    private static RMQMessage message() throws Exception {
+        RMQTextMessage message = new RMQTextMessage();
+        message.setJMSDeliveryMode(DeliveryMode.PERSISTENT);
+        message.setJMSPriority(4);
+        message.setJMSTimestamp(42L);
+        message.setJMSType("ticker");
+        message.setStringProperty("region", "EMEA");
+        message.setIntProperty("quantity", 15);
+        message.setDoubleProperty("price", 50.0d);
+        message.setBooleanProperty("urgent", true);
+        message.setStringProperty("symbol", "RABBIT");
+        return message;
+    }
+
+    /** Strings are received as {@link com.rabbitmq.client.LongString}s in AMQP headers. */
+    private static Map<String, Object> onTheWire(Map<String, Object> headers) {
+        Map<String, Object> received = new HashMap<String, Object>();
+        for (Map.Entry<String, Object> e : headers.entrySet()) {
+            Object value = e.getValue();
+            received.put(e.getKey(), value instanceof String ? LongStringHelper.asLongString((String) value) : value);
+        }
+        return received;
+    }
+}
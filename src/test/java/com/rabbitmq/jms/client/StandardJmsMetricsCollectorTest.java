@@ -0,0 +1,166 @@
+// This Source Code Form is subject to the terms of the Mozilla Public
+// License, v. 2.0. If a copy of the MPL was not distributed with this
+// file, You can obtain one at https://mozilla.org/MPL/2.0/.
+//
+// Copyright (c) 2020 VMware, Inc. or its affiliates. All rights reserved.
+package com.rabbitmq.jms.client;
+
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.jms.admin.RMQDestination;
+import com.rabbitmq.jms.client.StandardJmsMetricsCollector.Histogram;
+import com.rabbitmq.jms.client.StandardJmsMetricsCollector.Metric;
+import com.rabbitmq.jms.client.message.RMQTextMessage;
+import org.junit.jupiter.api.Test;
+
+import javax.jms.JMSException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+public class StandardJmsMetricsCollectorTest {
+
+    @Test
+    public void histogramBuckets() {
+        assertThat(Histogram.getBucketUpperBound(0)).isEqualTo(0);
+        assertThat(Histogram.getBucketUpperBound(1)).isEqualTo(1);
+        assertThat(Histogram.getBucketUpperBound(2)).isEqualTo(3);
+        assertThat(Histogram.getBucketUpperBound(10)).isEqualTo(1023);
+        assertThat(Histogram.getBucketUpperBound(Histogram.BUCKETS - 1)).isEqualTo(Long.MAX_VALUE);
+
+        Histogram histogram = new Histogram();
+        for (long value : new long[] {0, 1, 2, 3, 4, 1023, 1024, Long.MAX_VALUE}) {
+            histogram.record(value);
+        }
+        assertThat(histogram.getBucketCount(0)).isEqualTo(1);
+        assertThat(histogram.getBucketCount(1)).isEqualTo(1);
+        assertThat(histogram.getBucketCount(2)).isEqualTo(2);
+        assertThat(histogram.getBucketCount(3)).isEqualTo(1);
+        assertThat(histogram.getBucketCount(10)).isEqualTo(1);
+        assertThat(histogram.getBucketCount(11)).isEqualTo(1);
+        assertThat(histogram.getBucketCount(Histogram.BUCKETS - 1)).isEqualTo(1);
+        assertThat(histogram.getCount()).isEqualTo(8);
+        assertThat(histogram.getMax()).isEqualTo(Long.MAX_VALUE);
+    }
+
+    @Test
+    public void histogramStatistics() {
+        Histogram histogram = new Histogram();
+        assertThat(histogram.getCount()).isZero();
+        assertThat(histogram.getMax()).isZero();
+        assertThat(histogram.getMean()).isZero();
+        assertThat(histogram.getQuantileUpperBound(0.99)).isZero();
+
+        IntStream.rangeClosed(1, 100).forEach(histogram::record);
+        assertThat(histogram.getCount()).isEqualTo(100);
+        assertThat(histogram.getSum()).isEqualTo(5050);
+        assertThat(histogram.getMean()).isEqualTo(50.5);
+        assertThat(histogram.getMax()).isEqualTo(100);
+        assertThat(histogram.getQuantileUpperBound(0.5)).isBetween(50L, 100L);
+        assertThat(histogram.getQuantileUpperBound(0.99)).isEqualTo(100); // bucket bound 127, capped by the maximum
+        assertThat(histogram.getQuantileUpperBound(0)).isEqualTo(1);
+        assertThatThrownBy(() -> histogram.getQuantileUpperBound(1.5)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void metricsAreTaggedByDestination() {
+        StandardJmsMetricsCollector collector = new StandardJmsMetricsCollector();
+        collector.messageSent("orders", 1000);
+        collector.messageSent("orders", 3000);
+        collector.messageSerialized("orders", 120);
+        collector.messageSent("invoices", 5000);
+        collector.messageConfirmed("orders", 200, true);
+        collector.messageConfirmed("orders", 300, false);
+        collector.transactionCommitted(4000);
+
+        assertThat(collector.getDestinations()).containsOnly("orders", "invoices", StandardJmsMetricsCollector.NO_DESTINATION);
+        assertThat(collector.getHistogram(Metric.SEND, "orders").getCount()).isEqualTo(2);
+        assertThat(collector.getHistogram(Metric.SEND, "orders").getMean()).isEqualTo(2000.0);
+        assertThat(collector.getHistogram(Metric.SEND, "invoices").getCount()).isEqualTo(1);
+        assertThat(collector.getHistogram(Metric.SERIALIZED_BYTES, "orders").getSum()).isEqualTo(120);
+        assertThat(collector.getHistogram(Metric.CONFIRM, "orders").getMax()).isEqualTo(200);
+        assertThat(collector.getHistogram(Metric.NACK, "orders").getMax()).isEqualTo(300);
+        assertThat(collector.getHistogram(Metric.COMMIT, null).getCount()).isEqualTo(1);
+        assertThat(collector.getHistogram(Metric.RECEIVE_WAIT, "orders")).isNull();
+        assertThat(collector.getHistogram(Metric.SEND, "unknown")).isNull();
+
+        collector.clear();
+        assertThat(collector.getDestinations()).isEmpty();
+    }
+
+    @Test
+    public void numberOfDestinationsIsBounded() {
+        StandardJmsMetricsCollector collector = new StandardJmsMetricsCollector(2);
+        for (int i = 0; i < 10; i++) {
+            collector.messageSent("queue-" + i, 1000);
+        }
+        collector.messageSent(RMQSession.metricsName(new RMQDestination("reply-1", true, true)), 1000);
+        collector.messageSent(RMQSession.metricsName(new RMQDestination("reply-2", true, true)), 1000);
+        collector.transactionCommitted(4000);
+        collector.messageSent("queue-0", 1000);
+
+        assertThat(collector.getDestinations()).containsOnly("queue-0", "queue-1",
+            StandardJmsMetricsCollector.OTHER_DESTINATIONS, JmsMetricsCollector.TEMPORARY_DESTINATIONS,
+            StandardJmsMetricsCollector.NO_DESTINATION);
+        assertThat(collector.getHistogram(Metric.SEND, "queue-0").getCount()).isEqualTo(2);
+        assertThat(collector.getHistogram(Metric.SEND, StandardJmsMetricsCollector.OTHER_DESTINATIONS).getCount()).isEqualTo(8);
+        assertThat(collector.getHistogram(Metric.SEND, JmsMetricsCollector.TEMPORARY_DESTINATIONS).getCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void listenerDurationsAndTimeoutsAreCollected() throws Exception {
+        StandardJmsMetricsCollector collector = new StandardJmsMetricsCollector();
+        DeliveryExecutor executor = new DeliveryExecutor(200, collector);
+        RMQTextMessage message = message("orders");
+        try {
+            executor.deliverMessageWithProtection(message, m -> { });
+            assertThatThrownBy(() -> executor.deliverMessageWithProtection(message, m -> {
+                throw new RuntimeException("listener failure");
+            })).isInstanceOf(RMQMessageListenerExecutionJMSException.class);
+            assertThatThrownBy(() -> executor.deliverMessageWithProtection(message, m -> {
+                try {
+                    Thread.sleep(5000);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            })).isInstanceOf(JMSException.class);
+        } finally {
+            executor.close();
+        }
+        assertThat(collector.getHistogram(Metric.LISTENER, "orders").getCount()).isEqualTo(2);
+        assertThat(collector.getHistogram(Metric.LISTENER_TIMEOUT, "orders").getCount()).isEqualTo(1);
+        assertThat(collector.getHistogram(Metric.LISTENER_TIMEOUT, "orders").getMax()).isGreaterThanOrEqualTo(200_000_000L);
+    }
+
+    @Test
+    public void confirmRoundTripsAreCollected() throws Exception {
+        Channel channel = mock(Channel.class);
+        AtomicReference<com.rabbitmq.client.ConfirmListener> amqpConfirmListener = new AtomicReference<>();
+        doAnswer(invocation -> {
+            amqpConfirmListener.set(invocation.getArgument(0, com.rabbitmq.client.ConfirmListener.class));
+            return null;
+        }).when(channel).addConfirmListener(any(com.rabbitmq.client.ConfirmListener.class));
+        StandardJmsMetricsCollector collector = new StandardJmsMetricsCollector();
+        PublishingListener publishingListener = PublisherConfirmsUtils.configurePublisherConfirmsSupport(
+            channel, context -> { }, collector);
+
+        for (long sequenceNumber = 1; sequenceNumber <= 3; sequenceNumber++) {
+            publishingListener.publish(message("orders"), sequenceNumber);
+        }
+        amqpConfirmListener.get().handleAck(2, true);
+        amqpConfirmListener.get().handleNack(3, false);
+
+        assertThat(collector.getHistogram(Metric.CONFIRM, "orders").getCount()).isEqualTo(2);
+        assertThat(collector.getHistogram(Metric.NACK, "orders").getCount()).isEqualTo(1);
+    }
+
+    private static RMQTextMessage message(String queue) throws JMSException {
+        RMQTextMessage message = new RMQTextMessage();
+        message.setJMSDestination(new RMQDestination(queue, true, false));
+        return message;
+    }
+}
@@ -0,0 +1,172 @@
+// This Source Code Form is subject to the terms of the Mozilla Public
+// License, v. 2.0. If a copy of the MPL was not distributed with this
+// file, You can obtain one at https://mozilla.org/MPL/2.0/.
+//
+// Copyright (c) 2020 VMware, Inc. or its affiliates. All rights reserved.
+package com.rabbitmq.jms.client;
+
+import com.rabbitmq.jms.client.message.RMQStreamMessage;
+import com.rabbitmq.jms.util.WhiteListObjectInputStream;
+import org.junit.jupiter.api.Test;
+
+import javax.jms.DeliveryMode;
+import javax.jms.JMSException;
+import javax.jms.MessageEOFException;
+import javax.jms.MessageFormatException;
+import javax.jms.MessageNotWriteableException;
+import javax.jms.StreamMessage;
+import java.nio.ByteBuffer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class StreamMessageBodyTest {
+
+    @Test
+    public void jmsFrameRoundTrip() throws Exception {
+        RMQMessage sent = writeValues(new RMQStreamMessage(WhiteListObjectInputStream.DEFAULT_TRUSTED_PACKAGES, true));
+        assertThat(sent.rawBody()).isNotNull();
+        sent.setStringProperty("colour", "blue");
+
+        StreamMessage received = (StreamMessage) RMQMessage.fromMessage(sent.toByteArray(),
+            WhiteListObjectInputStream.DEFAULT_TRUSTED_PACKAGES);
+        assertThat(received.getStringProperty("colour")).isEqualTo("blue");
+        assertValues(received);
+        assertThatThrownBy(received::readInt).isInstanceOf(MessageEOFException.class);
+        assertThatThrownBy(() -> received.writeInt(1)).isInstanceOf(MessageNotWriteableException.class);
+
+        received.reset();
+        assertValues(received);
+    }
+
+    @Test
+    public void legacyEncodingIsSentByDefault() throws Exception {
+        RMQMessage sent = writeValues(new RMQStreamMessage());
+        assertThat(sent.rawBody()).isNull();
+        StreamMessage received = (StreamMessage) RMQMessage.fromMessage(sent.toByteArray(),
+            WhiteListObjectInputStream.DEFAULT_TRUSTED_PACKAGES);
+        assertValues(received);
+    }
+
+    @Test
+    public void legacyEncodingIsRead() throws Exception {
+        RMQMessage sent = writeValues(new LegacyStreamMessage());
+        StreamMessage received = (StreamMessage) RMQMessage.fromMessage(sent.toByteArray(),
+            WhiteListObjectInputStream.DEFAULT_TRUSTED_PACKAGES);
+        assertValues(received);
+        received.reset();
+        assertValues(received);
+    }
+
+    @Test
+    public void receivedBodyCanBeSentAgain() throws Exception {
+        RMQMessage received = RMQMessage.fromMessage(writeValues(new RMQStreamMessage(WhiteListObjectInputStream.DEFAULT_TRUSTED_PACKAGES, true)).toByteArray(),
+            WhiteListObjectInputStream.DEFAULT_TRUSTED_PACKAGES);
+        ((StreamMessage) received).readBoolean();
+        RMQMessage again = RMQMessage.fromMessage(received.toByteArray(), WhiteListObjectInputStream.DEFAULT_TRUSTED_PACKAGES);
+        assertValues((StreamMessage) again);
+    }
+
+    @Test
+    public void conversions() throws Exception {
+        RMQStreamMessage message = new RMQStreamMessage(WhiteListObjectInputStream.DEFAULT_TRUSTED_PACKAGES, true);
+        message.writeByte((byte) 7);
+        message.writeString("42");
+        message.writeFloat(1.5f);
+        message.writeString(null);
+        message.reset();
+
+        assertThat(message.readLong()).isEqualTo(7L);
+        assertThat(message.readInt()).isEqualTo(42);
+        assertThat(message.readDouble()).isEqualTo(1.5d);
+        assertThat(message.readString()).isNull();
+
+        message.reset();
+        assertThat(message.readString()).isEqualTo("7");
+        assertThatThrownBy(message::readChar).isInstanceOf(MessageFormatException.class);
+        assertThat(message.readShort()).isEqualTo((short) 42);
+    }
+
+    @Test
+    public void legacyEncodingIsReadBackAfterReset() throws Exception {
+        RMQStreamMessage message = new RMQStreamMessage();
+        message.writeByte((byte) 7);
+        message.writeString("42");
+        message.reset();
+        assertThat(((RMQMessage) message).rawBody()).isNull();
+
+        assertThat(message.readLong()).isEqualTo(7L);
+        assertThat(message.readInt()).isEqualTo(42);
+        assertThatThrownBy(message::readInt).isInstanceOf(MessageEOFException.class);
+        assertThatThrownBy(() -> message.writeInt(1)).isInstanceOf(MessageNotWriteableException.class);
+
+        message.clearBody();
+        message.writeString("again");
+        message.reset();
+        assertThat(message.readString()).isEqualTo("again");
+    }
+
+    @Test
+    public void positionIsKeptWhenConversionFails() throws Exception {
+        RMQStreamMessage message = new RMQStreamMessage(WhiteListObjectInputStream.DEFAULT_TRUSTED_PACKAGES, true);
+        message.writeString("not a number");
+        message.reset();
+        assertThatThrownBy(message::readInt).isInstanceOf(NumberFormatException.class);
+        assertThat(message.readString()).isEqualTo("not a number");
+    }
+
+    @Test
+    public void writeBytesChecksBounds() throws Exception {
+        RMQStreamMessage message = new RMQStreamMessage();
+        assertThatThrownBy(() -> message.writeBytes(new byte[4], 2, 3)).isInstanceOf(IndexOutOfBoundsException.class);
+        message.writeBytes(new byte[] { 1, 2, 3, 4 }, 1, 2);
+        message.reset();
+        byte[] read = new byte[8];
+        assertThat(message.readBytes(read)).isEqualTo(2);
+        assertThat(read[0]).isEqualTo((byte) 2);
+        assertThat(read[1]).isEqualTo((byte) 3);
+    }
+
+    private static RMQMessage writeValues(RMQStreamMessage message) throws JMSException {
+        message.writeBoolean(true);
+        message.writeByte((byte) -3);
+        message.writeShort((short) 1000);
+        message.writeChar('x');
+        message.writeInt(123456);
+        message.writeLong(Long.MIN_VALUE);
+        message.writeFloat(0.25f);
+        message.writeDouble(Math.PI);
+        message.writeString("héllo ☺");
+        message.writeBytes(new byte[] { 9, 8, 7 });
+        message.writeObject(null);
+        message.setJMSDeliveryMode(DeliveryMode.NON_PERSISTENT);
+        message.setJMSPriority(4);
+        RMQMessage rmqMessage = message;
+        rmqMessage.generateInternalID();
+        return rmqMessage;
+    }
+
+    private static void assertValues(StreamMessage message) throws JMSException {
+        assertThat(message.readBoolean()).isTrue();
+        assertThat(message.readByte()).isEqualTo((byte) -3);
+        assertThat(message.readShort()).isEqualTo((short) 1000);
+        assertThat(message.readChar()).isEqualTo('x');
+        assertThat(message.readInt()).isEqualTo(123456);
+        assertThat(message.readLong()).isEqualTo(Long.MIN_VALUE);
+        assertThat(message.readFloat()).isEqualTo(0.25f);
+        assertThat(message.readDouble()).isEqualTo(Math.PI);
+        assertThat(message.readString()).isEqualTo("héllo ☺");
+        assertThat(message.readObject()).isEqualTo(new byte[] { 9, 8, 7 });
+        assertThat(message.readObject()).isNull();
+    }
+
+    /**
+     * Sends its body in the legacy encoding, as older clients do.
+     */
+    public static class LegacyStreamMessage extends RMQStreamMessage {
+        @Override
+        protected ByteBuffer rawBody() {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,124 @@
+// This Source Code Form is subject to the terms of the Mozilla Public
+// License, v. 2.0. If a copy of the MPL was not distributed with this
+// file, You can obtain one at https://mozilla.org/MPL/2.0/.
+//
+// Copyright (c) 2020 VMware, Inc. or its affiliates. All rights reserved.
+package com.rabbitmq.jms.client;
+
+import com.rabbitmq.jms.client.message.RMQTextMessage;
+import com.rabbitmq.jms.util.RMQByteArrayOutputStream;
+import com.rabbitmq.jms.util.WhiteListObjectInputStream;
+import org.junit.jupiter.api.Test;
+
+import javax.jms.DeliveryMode;
+import javax.jms.JMSException;
+import javax.jms.TextMessage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutput;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TextMessageBodyTest {
+
+    private static final List<String> TEXTS = Arrays.asList(
+        "", "hello", "café € 中文", "😀 emoji", "unpaired \ud83d and \ude00",
+        repeat("ascii-", 50), repeat("été ", 600), repeat("x", 5000));
+
+    @Test
+    public void jmsFrameRoundTrip() throws Exception {
+        for (String text : TEXTS) {
+            assertThat(received(new RMQTextMessage(), text).getText()).isEqualTo(expected(text));
+        }
+        assertThat(received(new RMQTextMessage(), null).getText()).isNull();
+    }
+
+    @Test
+    public void bodyIsReadableAsObjectStream() throws Exception {
+        for (String text : TEXTS) {
+            assertThat(received(new StreamReadTextMessage(), text).getText()).isEqualTo(expected(text));
+        }
+        assertThat(received(new StreamReadTextMessage(), null).getText()).isNull();
+    }
+
+    @Test
+    public void legacyEncodingIsRead() throws Exception {
+        for (String text : TEXTS) {
+            assertThat(received(new LegacyTextMessage(), text).getText()).isEqualTo(expected(text));
+        }
+        assertThat(received(new LegacyTextMessage(), null).getText()).isNull();
+    }
+
+    @Test
+    public void amqpBodyRoundTrip() throws Exception {
+        for (String text : TEXTS) {
+            RMQMessage sent = message(new RMQTextMessage(), text);
+            byte[] body = sent.toAmqpByteArray();
+            assertThat(body).isEqualTo(text.getBytes(StandardCharsets.UTF_8));
+        }
+        assertThat(message(new RMQTextMessage(), null).toAmqpByteArray()).isEmpty();
+    }
+
+    @Test
+    public void writeUtf8EncodesAsGetBytes() {
+        for (String text : TEXTS) {
+            RMQByteArrayOutputStream out = new RMQByteArrayOutputStream(1);
+            out.write(7);
+            int length = out.writeUtf8(text);
+            byte[] expected = text.getBytes(StandardCharsets.UTF_8);
+            assertThat(length).isEqualTo(expected.length);
+            assertThat(Arrays.copyOfRange(out.toByteArray(), 1, out.size())).isEqualTo(expected);
+        }
+    }
+
+    private static TextMessage received(RMQTextMessage message, String text) throws Exception {
+        return (TextMessage) RMQMessage.fromMessage(message(message, text).toByteArray(), WhiteListObjectInputStream.DEFAULT_TRUSTED_PACKAGES);
+    }
+
+    private static RMQMessage message(RMQTextMessage message, String text) throws JMSException {
+        message.setText(text);
+        message.setJMSDeliveryMode(DeliveryMode.NON_PERSISTENT);
+        message.setJMSPriority(4);
+        RMQMessage rmqMessage = message;
+        rmqMessage.generateInternalID();
+        return rmqMessage;
+    }
+
+    /**
+     * @return the text as decoded from its UTF-8 encoding, where unpaired surrogates become '?'
+     */
+    private static String expected(String text) {
+        return new String(text.getBytes(StandardCharsets.UTF_8), StandardCharsets.UTF_8);
+    }
+
+    private static String repeat(String s, int count) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            sb.append(s);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Reads the body through the object stream, as earlier versions do.
+     */
+    public static class StreamReadTextMessage extends RMQTextMessage {
+        @Override
+        protected boolean readRawBody(byte[] frame, int offset) {
+            return false;
+        }
+    }
+
+    /**
+     * Writes the body through the object stream, as earlier versions do.
+     */
+    public static class LegacyTextMessage extends RMQTextMessage {
+        @Override
+        public void writeBody(ObjectOutput out, ByteArrayOutputStream bout) throws IOException {
+            super.writeBody(out, new ByteArrayOutputStream());
+        }
+    }
+}
@@ -0,0 +1,128 @@
+// This Source Code Form is subject to the terms of the Mozilla Public
+// License, v. 2.0. If a copy of the MPL was not distributed with this
+// file, You can obtain one at https://mozilla.org/MPL/2.0/.
+//
+// Copyright (c) 2020 VMware, Inc. or its affiliates. All rights reserved.
+package com.rabbitmq.jms.client;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Consumer;
+import com.rabbitmq.client.Envelope;
+import com.rabbitmq.client.GetResponse;
+import com.rabbitmq.client.impl.LongStringHelper;
+import com.rabbitmq.jms.admin.RMQDestination;
+import com.rabbitmq.jms.parse.sql.SqlEvaluator;
+import com.rabbitmq.jms.parse.sql.SqlParser;
+import com.rabbitmq.jms.parse.sql.SqlTokenStream;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class TopicSelectorDemultiplexerTest {
+
+    RMQConnection connection;
+    Channel channel;
+    TopicSelectorDemultiplexer demultiplexer;
+
+    @BeforeEach
+    public void init() throws Exception {
+        connection = mock(RMQConnection.class);
+        channel = mock(Channel.class);
+        when(connection.createRabbitChannel(anyBoolean())).thenReturn(channel);
+        when(connection.getJmsMetricsCollector()).thenReturn(JmsMetricsCollector.NO_OP);
+        demultiplexer = new TopicSelectorDemultiplexer(connection, new RMQDestination("prices", false, false));
+    }
+
+    @Test
+    public void oneSharedSubscriptionForAllSubscribers() throws Exception {
+        TopicSelectorDemultiplexer.Subscription blue = demultiplexer.subscribe(evaluator("colour = 'blue'"));
+        TopicSelectorDemultiplexer.Subscription red = demultiplexer.subscribe(evaluator("colour = 'red' and size > 3"));
+        verify(connection, times(1)).createRabbitChannel(false);
+        verify(channel, times(1)).basicConsume(anyString(), eq(false), any(Consumer.class));
+        verify(channel, times(1)).basicQos(TopicSelectorDemultiplexer.DEFAULT_BUFFER_SIZE);
+
+        blue.close();
+        verify(channel, times(0)).close();
+        verify(connection, never()).removeTopicSelectorDemultiplexer(any(RMQDestination.class), any(TopicSelectorDemultiplexer.class));
+        red.close();
+        verify(channel, times(1)).close();
+        verify(connection, times(1)).removeTopicSelectorDemultiplexer(any(RMQDestination.class), eq(demultiplexer));
+        assertThat(demultiplexer.subscribe(evaluator("colour = 'blue'"))).isNull();
+    }
+
+    @Test
+    public void deliveriesAreAcknowledgedOnceDispatched() throws Exception {
+        TopicSelectorDemultiplexer.Subscription blue = demultiplexer.subscribe(evaluator("colour = 'blue'"));
+        ArgumentCaptor<Consumer> consumer = ArgumentCaptor.forClass(Consumer.class);
+        verify(channel).basicConsume(anyString(), eq(false), consumer.capture());
+
+        consumer.getValue().handleDelivery("dmx", new Envelope(7, false, "jms.durable.topic", "prices"),
+            properties("blue", 1), new byte[0]);
+
+        verify(channel, times(1)).basicAck(7, false);
+        assertThat(deliveryTags(blue)).containsExactly(7L);
+    }
+
+    @Test
+    public void fullBufferDropsMessagesForThatSubscriberOnly() throws Exception {
+        demultiplexer = new TopicSelectorDemultiplexer(connection, new RMQDestination("prices", false, false), 2);
+        TopicSelectorDemultiplexer.Subscription idle = demultiplexer.subscribe(evaluator("colour = 'blue'"));
+        TopicSelectorDemultiplexer.Subscription polling = demultiplexer.subscribe(evaluator("colour = 'blue'"));
+
+        List<Long> polled = new ArrayList<Long>();
+        for (long tag = 1; tag <= 5; tag++) {
+            dispatch(tag, "blue", 1); // returns even though the idle subscriber never polls
+            polled.addAll(deliveryTags(polling));
+        }
+
+        assertThat(polled).containsExactly(1L, 2L, 3L, 4L, 5L);
+        assertThat(polling.getDroppedCount()).isZero();
+        assertThat(idle.getDroppedCount()).isEqualTo(3);
+        assertThat(deliveryTags(idle)).containsExactly(1L, 2L);
+
+        dispatch(6, "blue", 1);
+        assertThat(deliveryTags(idle)).containsExactly(6L);
+    }
+
+    private void dispatch(long deliveryTag, String colour, int size) {
+        demultiplexer.dispatch(new Envelope(deliveryTag, false, "jms.durable.topic", "prices"),
+            properties(colour, size), new byte[0]);
+    }
+
+    private static AMQP.BasicProperties properties(String colour, int size) {
+        Map<String, Object> headers = new HashMap<String, Object>();
+        headers.put("colour", LongStringHelper.asLongString(colour));
+        headers.put("size", size);
+        return new AMQP.BasicProperties.Builder().headers(headers).build();
+    }
+
+    private static java.util.List<Long> deliveryTags(TopicSelectorDemultiplexer.Subscription subscription) {
+        java.util.List<Long> tags = new java.util.ArrayList<Long>();
+        GetResponse response;
+        while ((response = subscription.poll()) != null) {
+            tags.add(response.getEnvelope().getDeliveryTag());
+        }
+        return tags;
+    }
+
+    private static SqlEvaluator evaluator(String selector) {
+        return new SqlEvaluator(new SqlParser(new SqlTokenStream(selector)), RMQSession.JMS_TYPE_IDENTS);
+    }
+}
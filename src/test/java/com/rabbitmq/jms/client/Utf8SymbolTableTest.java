@@ -0,0 +1,79 @@
+// This Source Code Form is subject to the terms of the Mozilla Public
+// License, v. 2.0. If a copy of the MPL was not distributed with this
+// file, You can obtain one at https://mozilla.org/MPL/2.0/.
+//
+// Copyright (c) 2020 VMware, Inc. or its affiliates. All rights reserved.
+package com.rabbitmq.jms.client;
+
+import com.rabbitmq.jms.client.message.RMQTextMessage;
+import com.rabbitmq.jms.util.WhiteListObjectInputStream;
+import org.junit.jupiter.api.Test;
+
+import javax.jms.DeliveryMode;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class Utf8SymbolTableTest {
+
+    @Test
+    public void hitsReuseTheValue() throws Exception {
+        AtomicInteger resolutions = new AtomicInteger();
+        Utf8SymbolTable<String> table = new Utf8SymbolTable<String>(64, s -> { resolutions.incrementAndGet(); return s; });
+        DataInputStream in = input("colour", "colour", "size", "colour");
+        byte[] scratch = Utf8SymbolTable.newScratch();
+        String first = table.read(in, scratch);
+        assertThat(table.read(in, scratch)).isSameAs(first);
+        assertThat(table.read(in, scratch)).isEqualTo("size");
+        assertThat(table.read(in, scratch)).isSameAs(first);
+        assertThat(resolutions.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void modifiedUtf8AndLongStringsAreDecoded() throws Exception {
+        String nonAscii = "färg\u0000☺";
+        String longName = String.join("", Collections.nCopies(Utf8SymbolTable.MAX_SYMBOL_LENGTH + 1, "x"));
+        Utf8SymbolTable<String> table = Utf8SymbolTable.interner(4);
+        DataInputStream in = input(nonAscii, longName, "");
+        byte[] scratch = Utf8SymbolTable.newScratch();
+        assertThat(table.read(in, scratch)).isEqualTo(nonAscii);
+        assertThat(table.read(in, scratch)).isEqualTo(longName);
+        assertThat(table.read(in, scratch)).isEmpty();
+    }
+
+    @Test
+    public void receivedMessagesSharePropertyNames() throws Exception {
+        RMQMessage first = RMQMessage.fromMessage(textMessage().toByteArray(), WhiteListObjectInputStream.DEFAULT_TRUSTED_PACKAGES);
+        RMQMessage second = RMQMessage.fromMessage(textMessage().toByteArray(), WhiteListObjectInputStream.DEFAULT_TRUSTED_PACKAGES);
+        assertThat(first).isInstanceOf(RMQTextMessage.class);
+        assertThat(((RMQTextMessage) second).getText()).isEqualTo("text");
+        assertThat(second.getStringProperty("colour")).isEqualTo("blue");
+        assertThat(second.getPropertyNames().nextElement()).isSameAs(first.getPropertyNames().nextElement());
+    }
+
+    private static RMQMessage textMessage() throws Exception {
+        RMQTextMessage message = new RMQTextMessage();
+        message.setText("text");
+        message.setStringProperty("colour", "blue");
+        message.setJMSDeliveryMode(DeliveryMode.NON_PERSISTENT);
+        message.setJMSPriority(4);
+        RMQMessage rmqMessage = message;
+        rmqMessage.generateInternalID();
+        return rmqMessage;
+    }
+
+    private static DataInputStream input(String... strings) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        for (String s : strings) {
+            out.writeUTF(s);
+        }
+        return new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+    }
+}
@@ -0,0 +1,78 @@
+// This Source Code Form is subject to the terms of the Mozilla Public
+// License, v. 2.0. If a copy of the MPL was not distributed with this
+// file, You can obtain one at https://mozilla.org/MPL/2.0/.
+//
+// Copyright (c) 2020 VMware, Inc. or its affiliates. All rights reserved.
+package com.rabbitmq.jms.client;
+
+import com.rabbitmq.jms.client.inmemory.InMemoryBroker;
+import org.junit.jupiter.api.Test;
+
+import javax.jms.MessageConsumer;
+import javax.jms.MessageProducer;
+import javax.jms.Queue;
+import javax.jms.Session;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class VirtualThreadsTest {
+
+    private static final boolean JAVA_21_OR_MORE = javaVersion() >= 21;
+
+    @Test
+    void virtualThreadsAreSupportedFromJava21() throws Exception {
+        assertThat(VirtualThreads.isSupported()).isEqualTo(JAVA_21_OR_MORE);
+        ThreadFactory threadFactory = VirtualThreads.threadFactory("test-");
+        if (JAVA_21_OR_MORE) {
+            Thread thread = threadFactory.newThread(() -> { });
+            assertThat(thread.getName()).isEqualTo("test-0");
+            assertThat(isVirtual(thread)).isTrue();
+        } else {
+            assertThat(threadFactory).isNull();
+        }
+    }
+
+    @Test
+    void listenersAreCalledOnVirtualThreadsWhenSupported() throws Exception {
+        InMemoryBroker broker = new InMemoryBroker();
+        RMQConnection connection = new RMQConnection(new ConnectionParams()
+            .setRabbitConnection(broker.newConnection())
+            .setOnMessageTimeoutMs(2000)
+            .setDeliverOnVirtualThreads(true));
+        try {
+            Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            Queue queue = session.createQueue("virtual-threads");
+            BlockingQueue<Thread> listenerThreads = new ArrayBlockingQueue<Thread>(1);
+            MessageConsumer consumer = session.createConsumer(queue);
+            consumer.setMessageListener(message -> listenerThreads.add(Thread.currentThread()));
+            connection.start();
+            MessageProducer producer = session.createProducer(queue);
+            producer.send(session.createTextMessage("hello"));
+
+            Thread listenerThread = listenerThreads.poll(5, TimeUnit.SECONDS);
+            assertThat(listenerThread).isNotNull();
+            assertThat(isVirtual(listenerThread)).isEqualTo(JAVA_21_OR_MORE);
+            if (JAVA_21_OR_MORE) {
+                assertThat(listenerThread.getName()).startsWith("rabbitmq-jms-delivery-");
+            }
+        } finally {
+            connection.close();
+        }
+    }
+
+    private static boolean isVirtual(Thread thread) throws Exception {
+        if (!JAVA_21_OR_MORE) {
+            return false;
+        }
+        return (Boolean) Thread.class.getMethod("isVirtual").invoke(thread);
+    }
+
+    private static int javaVersion() {
+        String version = System.getProperty("java.specification.version");
+        return version.startsWith("1.") ? Integer.parseInt(version.substring(2)) : Integer.parseInt(version);
+    }
+}
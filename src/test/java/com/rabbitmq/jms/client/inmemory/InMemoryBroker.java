@@ -0,0 +1,260 @@
+// This Source Code Form is subject to the terms of the Mozilla Public
+// License, v. 2.0. If a copy of the MPL was not distributed with this
+// file, You can obtain one at https://mozilla.org/MPL/2.0/.
+//
+// Copyright (c) 2020 VMware, Inc. or its affiliates. All rights reserved.
+package com.rabbitmq.jms.client.inmemory;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Address;
+import com.rabbitmq.client.AddressResolver;
+import com.rabbitmq.client.ConnectionFactory;
+import com.rabbitmq.jms.admin.RMQConnectionFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory stand-in for a RabbitMQ node, so that the send and consume paths of the client can be exercised
+ * (for behaviour, throughput or latency) without a broker.
+ * <p>
+ * It supports direct, fanout, topic and headers exchanges, exchange-to-exchange bindings, the default exchange,
+ * queues (exclusive, auto-delete, <code>x-message-ttl</code>, <code>x-max-length</code> with
+ * <code>x-overflow</code>), per-message expiration, consumers with prefetch, <code>basicGet</code>, acks, nacks and
+ * rejects with requeueing, <code>basicRecover</code>, transactions, publisher confirms and mandatory returns.
+ * <code>x-jms-topic</code> exchanges route like topic exchanges, then ask a {@link TopicSelector} whether the
+ * selector of a binding matches the message: the selectors are compiled by the client for the broker plugin and
+ * are not evaluated here.
+ * </p>
+ * <p>
+ * Messages go through the AMQP encoding of their properties, so consumers get what they would get from a broker
+ * (e.g. {@link com.rabbitmq.client.LongString} header values). Deliveries, confirms, returns and consumer
+ * notifications are dispatched on a thread of the channel, in order, like the Java client does.
+ * </p>
+ * <p>
+ * Unsupported: durability (nothing survives the broker instance), dead-lettering, priorities, alternate exchanges,
+ * RPC methods and connection blocking.
+ * </p>
+ */
+public class InMemoryBroker {
+
+    /**
+     * Decides whether a message published to an <code>x-jms-topic</code> exchange goes through a binding.
+     */
+    public interface TopicSelector {
+
+        /** Routes all messages, whatever the selector. */
+        TopicSelector ACCEPT_ALL = (bindingArguments, routingKey, properties) -> true;
+
+        /**
+         * @param bindingArguments the arguments of the binding (e.g. <code>rjms_erlang_selector</code>)
+         * @param routingKey the routing key of the message
+         * @param properties the properties of the message, as decoded by a consumer
+         * @return <code>true</code> to route the message through the binding
+         */
+        boolean matches(Map<String, Object> bindingArguments, String routingKey, AMQP.BasicProperties properties);
+    }
+
+    static final String DEFAULT_EXCHANGE = "";
+
+    private final ConcurrentMap<String, InMemoryExchange> exchanges = new ConcurrentHashMap<String, InMemoryExchange>();
+    private final ConcurrentMap<String, InMemoryQueue> queues = new ConcurrentHashMap<String, InMemoryQueue>();
+    private final Set<InMemoryConnection> connections = Collections.newSetFromMap(new ConcurrentHashMap<InMemoryConnection, Boolean>());
+    private final AtomicLong ids = new AtomicLong();
+    private volatile TopicSelector topicSelector = TopicSelector.ACCEPT_ALL;
+
+    /** Guards topology changes (declarations, bindings, deletions); routing reads the topology without it. */
+    final Object topologyLock = new Object();
+
+    public InMemoryBroker() {
+        for (String type : new String[] {"direct", "fanout", "topic", "headers"}) {
+            this.exchanges.put("amq." + type, new InMemoryExchange(this, "amq." + type, type, true, false, null));
+        }
+        this.exchanges.put("amq.match", new InMemoryExchange(this, "amq.match", "headers", true, false, null));
+    }
+
+    /**
+     * @param topicSelector decides which messages go through the bindings of <code>x-jms-topic</code> exchanges,
+     * {@link TopicSelector#ACCEPT_ALL} by default
+     * @return this broker
+     */
+    public InMemoryBroker setTopicSelector(TopicSelector topicSelector) {
+        this.topicSelector = topicSelector == null ? TopicSelector.ACCEPT_ALL : topicSelector;
+        return this;
+    }
+
+    TopicSelector getTopicSelector() {
+        return this.topicSelector;
+    }
+
+    /**
+     * @return a new, open, connection to this broker
+     */
+    public InMemoryConnection newConnection() {
+        return this.newConnection(null);
+    }
+
+    /**
+     * @param clientProvidedName the name of the connection, may be <code>null</code>
+     * @return a new, open, connection to this broker
+     */
+    public InMemoryConnection newConnection(String clientProvidedName) {
+        InMemoryConnection connection = new InMemoryConnection(this, "in-memory-" + this.ids.incrementAndGet(), clientProvidedName);
+        this.connections.add(connection);
+        return connection;
+    }
+
+    /**
+     * @return a Java client connection factory whose connections are to this broker, whatever its settings
+     */
+    public ConnectionFactory amqpConnectionFactory() {
+        return new ConnectionFactory() {
+            @Override
+            public com.rabbitmq.client.Connection newConnection(ExecutorService executor, AddressResolver addressResolver,
+                                                                String clientProvidedName) {
+                return InMemoryBroker.this.newConnection(clientProvidedName);
+            }
+
+            @Override
+            public com.rabbitmq.client.Connection newConnection(ExecutorService executor, List<Address> addrs,
+                                                                String clientProvidedName) {
+                return InMemoryBroker.this.newConnection(clientProvidedName);
+            }
+        };
+    }
+
+    /**
+     * @return a JMS connection factory whose connections are to this broker
+     */
+    public RMQConnectionFactory jmsConnectionFactory() {
+        return new RMQConnectionFactory() {
+            @Override
+            protected ConnectionFactory createConnectionFactory() {
+                return InMemoryBroker.this.amqpConnectionFactory();
+            }
+        };
+    }
+
+    /**
+     * @return the names of the queues
+     */
+    public Set<String> getQueueNames() {
+        return new HashSet<String>(this.queues.keySet());
+    }
+
+    /**
+     * @return the names of the exchanges, the default exchange excepted
+     */
+    public Set<String> getExchangeNames() {
+        return new HashSet<String>(this.exchanges.keySet());
+    }
+
+    /**
+     * @return the number of messages ready for delivery in the queue, <code>-1</code> if it does not exist
+     */
+    public int getReadyCount(String queue) {
+        InMemoryQueue q = this.queues.get(queue);
+        return q == null ? -1 : q.readyCount();
+    }
+
+    /**
+     * @return the number of messages delivered and not yet acknowledged from the queue, <code>-1</code> if it does
+     * not exist
+     */
+    public int getUnackedCount(String queue) {
+        InMemoryQueue q = this.queues.get(queue);
+        return q == null ? -1 : q.unackedCount();
+    }
+
+    /**
+     * @return the number of connections open
+     */
+    public int getConnectionCount() {
+        return this.connections.size();
+    }
+
+    InMemoryExchange exchange(String name) {
+        return this.exchanges.get(name);
+    }
+
+    InMemoryQueue queue(String name) {
+        return this.queues.get(name);
+    }
+
+    String generateName(String prefix) {
+        return prefix + Long.toHexString(System.nanoTime()) + "-" + this.ids.incrementAndGet();
+    }
+
+    /** Caller holds {@link #topologyLock}. */
+    void putExchange(InMemoryExchange exchange) {
+        this.exchanges.put(exchange.getName(), exchange);
+    }
+
+    /** Caller holds {@link #topologyLock}. */
+    void putQueue(InMemoryQueue queue) {
+        this.queues.put(queue.getName(), queue);
+    }
+
+    /**
+     * Deletes an exchange, its bindings, and the bindings to it.
+     */
+    void deleteExchange(InMemoryExchange exchange) {
+        synchronized (this.topologyLock) {
+            if (this.exchanges.remove(exchange.getName(), exchange)) {
+                this.unbindAll(exchange);
+            }
+        }
+    }
+
+    /**
+     * Deletes a queue and the bindings to it. Its consumers are cancelled, its messages are lost.
+     */
+    void deleteQueue(InMemoryQueue queue) {
+        synchronized (this.topologyLock) {
+            if (this.queues.remove(queue.getName(), queue)) {
+                this.unbindAll(queue);
+            } else {
+                return;
+            }
+        }
+        queue.deleted();
+    }
+
+    /**
+     * Removes the bindings to a queue or an exchange, and the auto-delete exchanges left without bindings.
+     * Caller holds {@link #topologyLock}.
+     */
+    private void unbindAll(Object destination) {
+        for (InMemoryExchange exchange : new ArrayList<InMemoryExchange>(this.exchanges.values())) {
+            if (exchange.unbindAll(destination)) {
+                this.exchangeUnbound(exchange);
+            }
+        }
+    }
+
+    /**
+     * Deletes an auto-delete exchange if it has no bindings left. Caller holds {@link #topologyLock}.
+     */
+    void exchangeUnbound(InMemoryExchange exchange) {
+        if (exchange.isAutoDelete() && !exchange.hasBindings() && this.exchanges.remove(exchange.getName(), exchange)) {
+            this.unbindAll(exchange);
+        }
+    }
+
+    void connectionClosed(InMemoryConnection connection) {
+        this.connections.remove(connection);
+        for (InMemoryQueue queue : this.queues.values()) {
+            if (queue.getOwner() == connection) {
+                this.deleteQueue(queue);
+            }
+        }
+    }
+}
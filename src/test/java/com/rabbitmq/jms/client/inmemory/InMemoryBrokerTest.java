@@ -0,0 +1,366 @@
+// This Source Code Form is subject to the terms of the Mozilla Public
+// License, v. 2.0. If a copy of the MPL was not distributed with this
+// file, You can obtain one at https://mozilla.org/MPL/2.0/.
+//
+// Copyright (c) 2020 VMware, Inc. or its affiliates. All rights reserved.
+package com.rabbitmq.jms.client.inmemory;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.ConfirmListener;
+import com.rabbitmq.client.DefaultConsumer;
+import com.rabbitmq.client.Envelope;
+import com.rabbitmq.client.GetResponse;
+import com.rabbitmq.client.LongString;
+import com.rabbitmq.client.ShutdownSignalException;
+import com.rabbitmq.jms.admin.RMQConnectionFactory;
+import com.rabbitmq.jms.admin.RMQDestination;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.jms.Connection;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageConsumer;
+import javax.jms.MessageProducer;
+import javax.jms.Queue;
+import javax.jms.Session;
+import javax.jms.TextMessage;
+import javax.jms.Topic;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class InMemoryBrokerTest {
+
+    InMemoryBroker broker;
+    InMemoryConnection connection;
+    Channel channel;
+
+    @BeforeEach
+    public void init() throws IOException {
+        this.broker = new InMemoryBroker();
+        this.connection = this.broker.newConnection();
+        this.channel = this.connection.createChannel();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        this.connection.abort();
+    }
+
+    @Test
+    public void exchangesRouteLikeTheBroker() throws IOException {
+        for (String queue : new String[] {"direct", "topic", "fanout", "headers", "e2e"}) {
+            this.channel.queueDeclare(queue, false, false, false, null);
+        }
+        this.channel.exchangeDeclare("x.direct", "direct");
+        this.channel.exchangeDeclare("x.topic", "topic");
+        this.channel.exchangeDeclare("x.fanout", "fanout");
+        this.channel.exchangeDeclare("x.headers", "headers");
+        this.channel.queueBind("direct", "x.direct", "orders");
+        this.channel.queueBind("topic", "x.topic", "orders.#.eu");
+        this.channel.queueBind("fanout", "x.fanout", "ignored");
+        Map<String, Object> any = new HashMap<String, Object>();
+        any.put("x-match", "any");
+        any.put("region", "eu");
+        any.put("kind", "order");
+        this.channel.queueBind("headers", "x.headers", "", any);
+        this.channel.exchangeBind("x.fanout", "x.topic", "orders.*.us");
+        this.channel.queueBind("e2e", "x.fanout", "");
+
+        this.channel.basicPublish("x.direct", "orders", null, body("1"));
+        this.channel.basicPublish("x.direct", "invoices", null, body("2"));
+        this.channel.basicPublish("x.topic", "orders.eu", null, body("3"));
+        this.channel.basicPublish("x.topic", "orders.big.late.eu", null, body("4"));
+        this.channel.basicPublish("x.topic", "orders.big.us", null, body("5"));
+        this.channel.basicPublish("x.headers", "", headers("kind", "invoice", "region", "eu"), body("6"));
+        this.channel.basicPublish("x.headers", "", headers("kind", "invoice", "region", "us"), body("7"));
+        this.channel.basicPublish("", "direct", null, body("8"));
+
+        assertThat(this.broker.getReadyCount("direct")).isEqualTo(2);
+        assertThat(this.broker.getReadyCount("topic")).isEqualTo(2);
+        assertThat(this.broker.getReadyCount("fanout")).isEqualTo(1);
+        assertThat(this.broker.getReadyCount("e2e")).isEqualTo(1);
+        assertThat(this.broker.getReadyCount("headers")).isEqualTo(1);
+        assertThat(new String(this.channel.basicGet("headers", true).getBody())).isEqualTo("6");
+    }
+
+    @Test
+    public void topicPatterns() {
+        assertThat(matches("#", "")).isTrue();
+        assertThat(matches("#", "a.b")).isTrue();
+        assertThat(matches("a.*", "a.b")).isTrue();
+        assertThat(matches("a.*", "a")).isFalse();
+        assertThat(matches("a.#", "a")).isTrue();
+        assertThat(matches("a.#.c", "a.c")).isTrue();
+        assertThat(matches("a.#.c", "a.b.b.c")).isTrue();
+        assertThat(matches("a.#.c", "a.b.b.d")).isFalse();
+        assertThat(matches("*.b", "a.b.c")).isFalse();
+    }
+
+    @Test
+    public void headersAreDecodedAsByConsumers() throws IOException {
+        this.channel.queueDeclare("q", false, false, false, null);
+        this.channel.basicPublish("", "q", headers("kind", "order"), body("x"));
+        GetResponse response = this.channel.basicGet("q", true);
+        assertThat(response.getProps().getHeaders().get("kind")).isInstanceOf(LongString.class);
+        assertThat(response.getProps().getHeaders().get("kind").toString()).isEqualTo("order");
+        assertThat(response.getEnvelope().getRoutingKey()).isEqualTo("q");
+        assertThat(this.channel.basicGet("q", true)).isNull();
+    }
+
+    @Test
+    public void mandatoryUnroutableMessagesAreReturned() throws Exception {
+        CountDownLatch returned = new CountDownLatch(1);
+        this.channel.addReturnListener(r -> returned.countDown());
+        this.channel.basicPublish("", "nowhere", false, null, body("lost"));
+        this.channel.basicPublish("", "nowhere", true, null, body("returned"));
+        assertThat(returned.await(5, TimeUnit.SECONDS)).isTrue();
+    }
+
+    @Test
+    public void consumersGetAtMostTheirPrefetchAndNackedMessagesAreRedelivered() throws Exception {
+        this.channel.queueDeclare("q", false, false, false, null);
+        for (int i = 0; i < 5; i++) {
+            this.channel.basicPublish("", "q", null, body(String.valueOf(i)));
+        }
+        BlockingQueue<Envelope> deliveries = new LinkedBlockingQueue<Envelope>();
+        this.channel.basicQos(2);
+        this.channel.basicConsume("q", false, new DefaultConsumer(this.channel) {
+            @Override
+            public void handleDelivery(String consumerTag, Envelope envelope, AMQP.BasicProperties properties, byte[] body) {
+                deliveries.add(envelope);
+            }
+        });
+        Envelope first = deliveries.poll(5, TimeUnit.SECONDS);
+        Envelope second = deliveries.poll(5, TimeUnit.SECONDS);
+        assertThat(deliveries.poll(100, TimeUnit.MILLISECONDS)).isNull();
+        assertThat(this.broker.getUnackedCount("q")).isEqualTo(2);
+        assertThat(this.broker.getReadyCount("q")).isEqualTo(3);
+
+        this.channel.basicAck(first.getDeliveryTag(), false);
+        Envelope third = deliveries.poll(5, TimeUnit.SECONDS);
+        assertThat(third.isRedeliver()).isFalse();
+        this.channel.basicNack(third.getDeliveryTag(), true, true); // second and third
+        Envelope redelivered = deliveries.poll(5, TimeUnit.SECONDS);
+        assertThat(redelivered.isRedeliver()).isTrue();
+
+        assertThatThrownBy(() -> this.channel.basicAck(1000, false)).isInstanceOf(IOException.class)
+            .hasCauseInstanceOf(ShutdownSignalException.class);
+        assertThat(this.channel.isOpen()).isFalse();
+        assertThat(this.broker.getUnackedCount("q")).isZero();
+        assertThat(this.broker.getReadyCount("q")).isEqualTo(4);
+    }
+
+    @Test
+    public void transactionsApplyOnCommit() throws IOException {
+        this.channel.queueDeclare("q", false, false, false, null);
+        this.channel.basicPublish("", "q", null, body("acked"));
+        this.channel.txSelect();
+        GetResponse response = this.channel.basicGet("q", false);
+        this.channel.basicAck(response.getEnvelope().getDeliveryTag(), false);
+        this.channel.basicPublish("", "q", null, body("rolled back"));
+        this.channel.txRollback();
+        assertThat(this.broker.getUnackedCount("q")).isEqualTo(1);
+        assertThat(this.broker.getReadyCount("q")).isZero();
+
+        this.channel.basicAck(response.getEnvelope().getDeliveryTag(), false);
+        this.channel.basicPublish("", "q", null, body("committed"));
+        assertThat(this.broker.getReadyCount("q")).isZero();
+        this.channel.txCommit();
+        assertThat(this.broker.getUnackedCount("q")).isZero();
+        assertThat(new String(this.channel.basicGet("q", true).getBody())).isEqualTo("committed");
+
+        assertThatThrownBy(() -> this.channel.confirmSelect()).isInstanceOf(IOException.class);
+    }
+
+    @Test
+    public void publishesAreConfirmedAndNackedWhenQueuesReject() throws Exception {
+        Map<String, Object> arguments = new HashMap<String, Object>();
+        arguments.put("x-max-length", 1);
+        arguments.put("x-overflow", "reject-publish");
+        this.channel.queueDeclare("bounded", false, false, false, arguments);
+        this.channel.confirmSelect();
+        List<String> confirms = Collections.synchronizedList(new ArrayList<String>());
+        CountDownLatch latch = new CountDownLatch(2);
+        this.channel.addConfirmListener(new ConfirmListener() {
+            @Override
+            public void handleAck(long deliveryTag, boolean multiple) {
+                confirms.add("ack " + deliveryTag);
+                latch.countDown();
+            }
+
+            @Override
+            public void handleNack(long deliveryTag, boolean multiple) {
+                confirms.add("nack " + deliveryTag);
+                latch.countDown();
+            }
+        });
+        assertThat(this.channel.getNextPublishSeqNo()).isEqualTo(1);
+        this.channel.basicPublish("", "bounded", null, body("1"));
+        this.channel.basicPublish("", "bounded", null, body("2"));
+        assertThat(latch.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(confirms).containsExactly("ack 1", "nack 2");
+        assertThat(this.channel.waitForConfirms()).isFalse();
+        assertThat(this.channel.waitForConfirms()).isTrue();
+    }
+
+    @Test
+    public void exclusiveQueuesBelongToTheirConnection() throws IOException {
+        String queue = this.channel.queueDeclare().getQueue();
+        InMemoryConnection other = this.broker.newConnection();
+        Channel otherChannel = other.createChannel();
+        assertThatThrownBy(() -> otherChannel.basicGet(queue, true)).isInstanceOf(IOException.class);
+        assertThat(otherChannel.isOpen()).isFalse();
+        other.close();
+
+        this.connection.close();
+        assertThat(this.broker.getQueueNames()).doesNotContain(queue);
+        assertThat(this.broker.getConnectionCount()).isZero();
+        assertThat(this.channel.isOpen()).isFalse();
+    }
+
+    @Test
+    public void autoDeleteQueuesGoWithTheirLastConsumer() throws IOException {
+        this.channel.queueDeclare("q", false, false, true, null);
+        String tag = this.channel.basicConsume("q", true, new DefaultConsumer(this.channel));
+        assertThat(this.broker.getQueueNames()).contains("q");
+        this.channel.basicCancel(tag);
+        assertThat(this.broker.getQueueNames()).doesNotContain("q");
+    }
+
+    @Test
+    public void expiredMessagesAreNotDelivered() throws Exception {
+        this.channel.queueDeclare("q", false, false, false, null);
+        this.channel.basicPublish("", "q", new AMQP.BasicProperties.Builder().expiration("1").build(), body("expired"));
+        this.channel.basicPublish("", "q", null, body("kept"));
+        Thread.sleep(10);
+        assertThat(new String(this.channel.basicGet("q", true).getBody())).isEqualTo("kept");
+    }
+
+    @Test
+    public void jmsClientSendsAndReceivesThroughTheBroker() throws Exception {
+        RMQConnectionFactory connectionFactory = this.broker.jmsConnectionFactory();
+        Connection jmsConnection = connectionFactory.createConnection();
+        try {
+            jmsConnection.start();
+            Session session = jmsConnection.createSession(false, Session.CLIENT_ACKNOWLEDGE);
+            Queue queue = session.createQueue("orders");
+            MessageProducer producer = session.createProducer(queue);
+            MessageConsumer consumer = session.createConsumer(queue);
+            int count = 1000;
+            for (int i = 0; i < count; i++) {
+                producer.send(session.createTextMessage("order " + i));
+            }
+            Set<String> received = ConcurrentHashMap.newKeySet();
+            Message last = null;
+            for (int i = 0; i < count; i++) {
+                last = consumer.receive(5000);
+                assertThat(last).isNotNull();
+                received.add(((TextMessage) last).getText());
+            }
+            assertThat(received).hasSize(count);
+            assertThat(consumer.receiveNoWait()).isNull();
+            last.acknowledge();
+            assertThat(this.broker.getUnackedCount("orders")).isZero();
+            assertThat(this.broker.getReadyCount("orders")).isZero();
+        } finally {
+            jmsConnection.close();
+        }
+        assertThat(this.broker.getConnectionCount()).isEqualTo(1); // the one of the test
+    }
+
+    @Test
+    public void jmsTransactedListenerAndTopicSelectors() throws Exception {
+        this.broker.setTopicSelector((arguments, routingKey, properties) ->
+            arguments.containsKey("rjms_erlang_selector") && properties.getHeaders().containsKey("urgent"));
+        RMQConnectionFactory connectionFactory = this.broker.jmsConnectionFactory();
+        Connection jmsConnection = connectionFactory.createConnection();
+        try {
+            Session session = jmsConnection.createSession(true, Session.SESSION_TRANSACTED);
+            Topic topic = session.createTopic("alerts");
+            BlockingQueue<String> all = new LinkedBlockingQueue<String>();
+            BlockingQueue<String> eu = new LinkedBlockingQueue<String>();
+            BlockingQueue<String> urgent = new LinkedBlockingQueue<String>();
+            Session listening = jmsConnection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            listening.createConsumer(topic).setMessageListener(m -> all.add(text(m)));
+            listening.createConsumer(topic, "region = 'eu'").setMessageListener(m -> eu.add(text(m)));
+            listening.createConsumer(topic, "urgent > 1").setMessageListener(m -> urgent.add(text(m)));
+            jmsConnection.start();
+
+            MessageProducer producer = session.createProducer(topic);
+            TextMessage message = session.createTextMessage("eu");
+            message.setStringProperty("region", "eu");
+            producer.send(message);
+            message = session.createTextMessage("urgent");
+            message.setIntProperty("urgent", 2);
+            producer.send(message);
+            assertThat(all.poll(200, TimeUnit.MILLISECONDS)).isNull();
+            session.commit();
+
+            assertThat(all.poll(5, TimeUnit.SECONDS)).isEqualTo("eu");
+            assertThat(all.poll(5, TimeUnit.SECONDS)).isEqualTo("urgent");
+            assertThat(eu.poll(5, TimeUnit.SECONDS)).isEqualTo("eu");
+            assertThat(urgent.poll(5, TimeUnit.SECONDS)).isEqualTo("urgent");
+            assertThat(eu.poll(100, TimeUnit.MILLISECONDS)).isNull();
+            assertThat(urgent.poll(100, TimeUnit.MILLISECONDS)).isNull();
+        } finally {
+            jmsConnection.close();
+        }
+    }
+
+    @Test
+    public void amqpDestinationsAreConsumedWithBasicGetAndAcknowledged() throws Exception {
+        this.channel.queueDeclare("amqp-queue", false, false, false, null);
+        this.channel.basicPublish("", "amqp-queue", null, body("raw"));
+        Connection jmsConnection = this.broker.jmsConnectionFactory().createConnection();
+        try {
+            jmsConnection.start();
+            Session session = jmsConnection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            RMQDestination destination = new RMQDestination("amqp-queue", null, null, "amqp-queue");
+            Message message = session.createConsumer(destination).receive(5000);
+            assertThat(message).isNotNull();
+            assertThat(this.broker.getUnackedCount("amqp-queue")).isZero();
+        } finally {
+            jmsConnection.close();
+        }
+    }
+
+    private static String text(Message message) {
+        try {
+            return ((TextMessage) message).getText();
+        } catch (JMSException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static boolean matches(String pattern, String key) {
+        return InMemoryExchange.topicMatches(InMemoryExchange.words(pattern), 0, InMemoryExchange.words(key), 0);
+    }
+
+    private static AMQP.BasicProperties headers(String... keysAndValues) {
+        Map<String, Object> headers = new HashMap<String, Object>();
+        for (int i = 0; i < keysAndValues.length; i += 2) {
+            headers.put(keysAndValues[i], keysAndValues[i + 1]);
+        }
+        return new AMQP.BasicProperties.Builder().headers(headers).build();
+    }
+
+    private static byte[] body(String text) {
+        return text.getBytes();
+    }
+}
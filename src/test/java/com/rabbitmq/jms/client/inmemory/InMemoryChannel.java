@@ -0,0 +1,1210 @@
+// This Source Code Form is subject to the terms of the Mozilla Public
+// License, v. 2.0. If a copy of the MPL was not distributed with this
+// file, You can obtain one at https://mozilla.org/MPL/2.0/.
+//
+// Copyright (c) 2020 VMware, Inc. or its affiliates. All rights reserved.
+package com.rabbitmq.jms.client.inmemory;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.AlreadyClosedException;
+import com.rabbitmq.client.BuiltinExchangeType;
+import com.rabbitmq.client.CancelCallback;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Command;
+import com.rabbitmq.client.ConfirmCallback;
+import com.rabbitmq.client.ConfirmListener;
+import com.rabbitmq.client.Consumer;
+import com.rabbitmq.client.ConsumerShutdownSignalCallback;
+import com.rabbitmq.client.DeliverCallback;
+import com.rabbitmq.client.Delivery;
+import com.rabbitmq.client.Envelope;
+import com.rabbitmq.client.GetResponse;
+import com.rabbitmq.client.Method;
+import com.rabbitmq.client.ReturnCallback;
+import com.rabbitmq.client.ReturnListener;
+import com.rabbitmq.client.ShutdownListener;
+import com.rabbitmq.client.ShutdownSignalException;
+import com.rabbitmq.client.impl.AMQImpl;
+import com.rabbitmq.jms.client.inmemory.InMemoryQueue.Entry;
+import com.rabbitmq.jms.client.inmemory.InMemoryQueue.Subscription;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Channel to an {@link InMemoryBroker}.
+ * <p>
+ * Broker errors close the channel and are thrown as {@link IOException}s caused by the
+ * {@link ShutdownSignalException}, as with the Java client. Operations on a closed channel throw
+ * {@link AlreadyClosedException}.
+ * </p>
+ */
+public final class InMemoryChannel implements Channel {
+
+    private static final int REPLY_SUCCESS = 200;
+    private static final int NO_ROUTE = 312;
+    private static final int ACCESS_REFUSED = 403;
+    private static final int NOT_FOUND = 404;
+    private static final int RESOURCE_LOCKED = 405;
+    private static final int PRECONDITION_FAILED = 406;
+    private static final int COMMAND_INVALID = 503;
+    private static final int NOT_ALLOWED = 530;
+    private static final int NOT_IMPLEMENTED = 540;
+
+    private final InMemoryConnection connection;
+    private final InMemoryBroker broker;
+    private final int channelNumber;
+    private final ExecutorService dispatcher;
+
+    private final List<ShutdownListener> shutdownListeners = new CopyOnWriteArrayList<ShutdownListener>();
+    private final List<ReturnListener> returnListeners = new CopyOnWriteArrayList<ReturnListener>();
+    private final List<ConfirmListener> confirmListeners = new CopyOnWriteArrayList<ConfirmListener>();
+    private volatile Consumer defaultConsumer;
+
+    private final ConcurrentMap<String, Subscription> subscriptions = new ConcurrentHashMap<String, Subscription>();
+    private final AtomicLong deliveryTags = new AtomicLong();
+    private final ConcurrentSkipListMap<Long, Unacked> unacked = new ConcurrentSkipListMap<Long, Unacked>();
+    private volatile int prefetch;
+
+    /** Guards the close, against deliveries to the channel */
+    private final Object deliveryLock = new Object();
+    private volatile ShutdownSignalException closeReason;
+
+    private final Object publishLock = new Object();
+    private volatile boolean transactional;
+    private final List<TxAction> transaction = new ArrayList<TxAction>(); // @GuardedBy(publishLock)
+    private volatile boolean confirmMode;
+    private long nextPublishSeqNo; // @GuardedBy(publishLock)
+    private boolean nackedSinceWait; // @GuardedBy(publishLock)
+
+    InMemoryChannel(InMemoryConnection connection, InMemoryBroker broker, int channelNumber) {
+        this.connection = connection;
+        this.broker = broker;
+        this.channelNumber = channelNumber;
+        String threadName = "in-memory-amqp-" + connection.getId() + "-" + channelNumber;
+        this.dispatcher = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, threadName);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public int getChannelNumber() {
+        return this.channelNumber;
+    }
+
+    @Override
+    public InMemoryConnection getConnection() {
+        return this.connection;
+    }
+
+    // ---- lifecycle
+
+    @Override
+    public void close() throws IOException {
+        this.close(REPLY_SUCCESS, "OK");
+    }
+
+    @Override
+    public void close(int closeCode, String closeMessage) throws IOException {
+        this.ensureOpen();
+        this.shutdown(new ShutdownSignalException(false, true, channelClose(closeCode, closeMessage), this));
+    }
+
+    @Override
+    public void abort() {
+        this.abort(REPLY_SUCCESS, "OK");
+    }
+
+    @Override
+    public void abort(int closeCode, String closeMessage) {
+        this.shutdown(new ShutdownSignalException(false, true, channelClose(closeCode, closeMessage), this));
+    }
+
+    @Override
+    public void addShutdownListener(ShutdownListener listener) {
+        this.shutdownListeners.add(listener);
+        ShutdownSignalException reason = this.closeReason;
+        if (reason != null) {
+            listener.shutdownCompleted(reason);
+        }
+    }
+
+    @Override
+    public void removeShutdownListener(ShutdownListener listener) {
+        this.shutdownListeners.remove(listener);
+    }
+
+    @Override
+    public ShutdownSignalException getCloseReason() {
+        return this.closeReason;
+    }
+
+    @Override
+    public void notifyListeners() {
+        ShutdownSignalException reason = this.closeReason;
+        for (ShutdownListener listener : this.shutdownListeners) {
+            listener.shutdownCompleted(reason);
+        }
+    }
+
+    @Override
+    public boolean isOpen() {
+        return this.closeReason == null;
+    }
+
+    /**
+     * Closes the channel: its consumers are cancelled (and told so), its unacknowledged messages are requeued, its
+     * uncommitted transaction is lost.
+     * @return <code>false</code> if it was already closed
+     */
+    boolean shutdown(ShutdownSignalException reason) {
+        synchronized (this.deliveryLock) {
+            if (this.closeReason != null) {
+                return false;
+            }
+            this.closeReason = reason;
+        }
+        for (Subscription subscription : this.subscriptions.values()) {
+            this.removeSubscription(subscription);
+            this.dispatch(() -> subscription.consumer.handleShutdownSignal(subscription.consumerTag, reason));
+        }
+        this.requeue(this.unacked);
+        synchronized (this.publishLock) {
+            this.transaction.clear();
+        }
+        this.connection.channelClosed(this);
+        this.notifyListeners();
+        this.dispatcher.shutdown();
+        return true;
+    }
+
+    private void ensureOpen() {
+        ShutdownSignalException reason = this.closeReason;
+        if (reason != null) {
+            throw new AlreadyClosedException(reason);
+        }
+    }
+
+    /**
+     * The broker closes the channel because of an error.
+     * @return the exception to throw
+     */
+    private IOException error(int replyCode, String replyText) {
+        ShutdownSignalException reason = new ShutdownSignalException(false, false, channelClose(replyCode, replyText), this);
+        this.shutdown(reason);
+        return new IOException(reason);
+    }
+
+    private static AMQP.Channel.Close channelClose(int replyCode, String replyText) {
+        return new AMQP.Channel.Close.Builder().replyCode(replyCode).replyText(replyText).build();
+    }
+
+    /**
+     * Runs a callback on the dispatch thread of the channel, after the callbacks already dispatched.
+     */
+    private void dispatch(Runnable callback) {
+        try {
+            this.dispatcher.execute(callback);
+        } catch (RejectedExecutionException e) {
+            // closed
+        }
+    }
+
+    // ---- listeners
+
+    @Override
+    public void addReturnListener(ReturnListener listener) {
+        this.returnListeners.add(listener);
+    }
+
+    @Override
+    public ReturnListener addReturnListener(ReturnCallback returnCallback) {
+        ReturnListener listener = (replyCode, replyText, exchange, routingKey, properties, body) ->
+            returnCallback.handle(new com.rabbitmq.client.Return(replyCode, replyText, exchange, routingKey, properties, body));
+        this.addReturnListener(listener);
+        return listener;
+    }
+
+    @Override
+    public boolean removeReturnListener(ReturnListener listener) {
+        return this.returnListeners.remove(listener);
+    }
+
+    @Override
+    public void clearReturnListeners() {
+        this.returnListeners.clear();
+    }
+
+    @Override
+    public void addConfirmListener(ConfirmListener listener) {
+        this.confirmListeners.add(listener);
+    }
+
+    @Override
+    public ConfirmListener addConfirmListener(ConfirmCallback ackCallback, ConfirmCallback nackCallback) {
+        ConfirmListener listener = new ConfirmListener() {
+            @Override
+            public void handleAck(long deliveryTag, boolean multiple) throws IOException {
+                ackCallback.handle(deliveryTag, multiple);
+            }
+
+            @Override
+            public void handleNack(long deliveryTag, boolean multiple) throws IOException {
+                nackCallback.handle(deliveryTag, multiple);
+            }
+        };
+        this.addConfirmListener(listener);
+        return listener;
+    }
+
+    @Override
+    public boolean removeConfirmListener(ConfirmListener listener) {
+        return this.confirmListeners.remove(listener);
+    }
+
+    @Override
+    public void clearConfirmListeners() {
+        this.confirmListeners.clear();
+    }
+
+    @Override
+    public Consumer getDefaultConsumer() {
+        return this.defaultConsumer;
+    }
+
+    @Override
+    public void setDefaultConsumer(Consumer consumer) {
+        this.defaultConsumer = consumer;
+    }
+
+    // ---- publishing
+
+    @Override
+    public void basicPublish(String exchange, String routingKey, AMQP.BasicProperties props, byte[] body) throws IOException {
+        this.basicPublish(exchange, routingKey, false, false, props, body);
+    }
+
+    @Override
+    public void basicPublish(String exchange, String routingKey, boolean mandatory, AMQP.BasicProperties props, byte[] body)
+        throws IOException {
+        this.basicPublish(exchange, routingKey, mandatory, false, props, body);
+    }
+
+    @Override
+    public void basicPublish(String exchange, String routingKey, boolean mandatory, boolean immediate,
+                             AMQP.BasicProperties props, byte[] body) throws IOException {
+        this.ensureOpen();
+        if (immediate) {
+            throw this.error(NOT_IMPLEMENTED, "NOT_IMPLEMENTED - immediate=true");
+        }
+        InMemoryMessage message = InMemoryMessage.published(exchange, routingKey, props, body);
+        synchronized (this.publishLock) {
+            if (this.transactional) {
+                this.transaction.add(() -> this.route(message, mandatory, 0));
+                return;
+            }
+            this.route(message, mandatory, this.confirmMode ? this.nextPublishSeqNo++ : 0);
+        }
+    }
+
+    /**
+     * Routes a message to its queues, then returns it if it is mandatory and unroutable, then confirms it.
+     * Like the broker, a publish to a missing exchange closes the channel, but does not throw.
+     * @param publishSeqNo the sequence number to confirm, <code>0</code> if not in confirm mode
+     */
+    private void route(InMemoryMessage message, boolean mandatory, long publishSeqNo) {
+        Set<InMemoryQueue> queues = new LinkedHashSet<InMemoryQueue>();
+        if (InMemoryBroker.DEFAULT_EXCHANGE.equals(message.getExchange())) {
+            InMemoryQueue queue = this.broker.queue(message.getRoutingKey());
+            if (queue != null) {
+                queues.add(queue);
+            }
+        } else {
+            InMemoryExchange exchange = this.broker.exchange(message.getExchange());
+            if (exchange == null) {
+                this.error(NOT_FOUND, "NOT_FOUND - no exchange '" + message.getExchange() + "' in vhost '/'");
+                return;
+            }
+            exchange.route(message, queues, new HashSet<InMemoryExchange>());
+        }
+        boolean accepted = true;
+        for (InMemoryQueue queue : queues) {
+            accepted &= queue.enqueue(message);
+        }
+        if (queues.isEmpty() && mandatory) {
+            this.dispatch(() -> {
+                for (ReturnListener listener : this.returnListeners) {
+                    try {
+                        listener.handleReturn(NO_ROUTE, "NO_ROUTE", message.getExchange(), message.getRoutingKey(),
+                            message.getProperties(), message.getBody());
+                    } catch (Exception e) {
+                        this.connection.getExceptionHandler().handleReturnListenerException(this, e);
+                    }
+                }
+            });
+        }
+        if (publishSeqNo > 0) {
+            if (!accepted) {
+                this.nackedSinceWait = true;
+            }
+            boolean ack = accepted;
+            this.dispatch(() -> {
+                for (ConfirmListener listener : this.confirmListeners) {
+                    try {
+                        if (ack) {
+                            listener.handleAck(publishSeqNo, false);
+                        } else {
+                            listener.handleNack(publishSeqNo, false);
+                        }
+                    } catch (Exception e) {
+                        this.connection.getExceptionHandler().handleConfirmListenerException(this, e);
+                    }
+                }
+            });
+        }
+    }
+
+    // ---- consuming
+
+    @Override
+    public void basicQos(int prefetchSize, int prefetchCount, boolean global) throws IOException {
+        this.ensureOpen();
+        if (prefetchSize != 0) {
+            throw this.error(NOT_IMPLEMENTED, "NOT_IMPLEMENTED - prefetch_size!=0 (" + prefetchSize + ")");
+        }
+        this.prefetch = prefetchCount; // global or not, for the consumers to come
+    }
+
+    @Override
+    public void basicQos(int prefetchCount, boolean global) throws IOException {
+        this.basicQos(0, prefetchCount, global);
+    }
+
+    @Override
+    public void basicQos(int prefetchCount) throws IOException {
+        this.basicQos(0, prefetchCount, false);
+    }
+
+    @Override
+    public String basicConsume(String queue, Consumer callback) throws IOException {
+        return this.basicConsume(queue, false, callback);
+    }
+
+    @Override
+    public String basicConsume(String queue, DeliverCallback deliverCallback, CancelCallback cancelCallback) throws IOException {
+        return this.basicConsume(queue, false, deliverCallback, cancelCallback);
+    }
+
+    @Override
+    public String basicConsume(String queue, DeliverCallback deliverCallback, ConsumerShutdownSignalCallback shutdownSignalCallback)
+        throws IOException {
+        return this.basicConsume(queue, false, deliverCallback, shutdownSignalCallback);
+    }
+
+    @Override
+    public String basicConsume(String queue, DeliverCallback deliverCallback, CancelCallback cancelCallback,
+                               ConsumerShutdownSignalCallback shutdownSignalCallback) throws IOException {
+        return this.basicConsume(queue, false, deliverCallback, cancelCallback, shutdownSignalCallback);
+    }
+
+    @Override
+    public String basicConsume(String queue, boolean autoAck, Consumer callback) throws IOException {
+        return this.basicConsume(queue, autoAck, "", callback);
+    }
+
+    @Override
+    public String basicConsume(String queue, boolean autoAck, DeliverCallback deliverCallback, CancelCallback cancelCallback)
+        throws IOException {
+        return this.basicConsume(queue, autoAck, "", deliverCallback, cancelCallback);
+    }
+
+    @Override
+    public String basicConsume(String queue, boolean autoAck, DeliverCallback deliverCallback,
+                               ConsumerShutdownSignalCallback shutdownSignalCallback) throws IOException {
+        return this.basicConsume(queue, autoAck, "", deliverCallback, shutdownSignalCallback);
+    }
+
+    @Override
+    public String basicConsume(String queue, boolean autoAck, DeliverCallback deliverCallback, CancelCallback cancelCallback,
+                               ConsumerShutdownSignalCallback shutdownSignalCallback) throws IOException {
+        return this.basicConsume(queue, autoAck, "", deliverCallback, cancelCallback, shutdownSignalCallback);
+    }
+
+    @Override
+    public String basicConsume(String queue, boolean autoAck, Map<String, Object> arguments, Consumer callback)
+        throws IOException {
+        return this.basicConsume(queue, autoAck, "", false, false, arguments, callback);
+    }
+
+    @Override
+    public String basicConsume(String queue, boolean autoAck, Map<String, Object> arguments, DeliverCallback deliverCallback,
+                               CancelCallback cancelCallback) throws IOException {
+        return this.basicConsume(queue, autoAck, "", false, false, arguments, deliverCallback, cancelCallback);
+    }
+
+    @Override
+    public String basicConsume(String queue, boolean autoAck, Map<String, Object> arguments, DeliverCallback deliverCallback,
+                               ConsumerShutdownSignalCallback shutdownSignalCallback) throws IOException {
+        return this.basicConsume(queue, autoAck, "", false, false, arguments, deliverCallback, shutdownSignalCallback);
+    }
+
+    @Override
+    public String basicConsume(String queue, boolean autoAck, Map<String, Object> arguments, DeliverCallback deliverCallback,
+                               CancelCallback cancelCallback, ConsumerShutdownSignalCallback shutdownSignalCallback)
+        throws IOException {
+        return this.basicConsume(queue, autoAck, "", false, false, arguments, deliverCallback, cancelCallback,
+            shutdownSignalCallback);
+    }
+
+    @Override
+    public String basicConsume(String queue, boolean autoAck, String consumerTag, Consumer callback) throws IOException {
+        return this.basicConsume(queue, autoAck, consumerTag, false, false, null, callback);
+    }
+
+    @Override
+    public String basicConsume(String queue, boolean autoAck, String consumerTag, DeliverCallback deliverCallback,
+                               CancelCallback cancelCallback) throws IOException {
+        return this.basicConsume(queue, autoAck, consumerTag, false, false, null, deliverCallback, cancelCallback);
+    }
+
+    @Override
+    public String basicConsume(String queue, boolean autoAck, String consumerTag, DeliverCallback deliverCallback,
+                               ConsumerShutdownSignalCallback shutdownSignalCallback) throws IOException {
+        return this.basicConsume(queue, autoAck, consumerTag, false, false, null, deliverCallback, shutdownSignalCallback);
+    }
+
+    @Override
+    public String basicConsume(String queue, boolean autoAck, String consumerTag, DeliverCallback deliverCallback,
+                               CancelCallback cancelCallback, ConsumerShutdownSignalCallback shutdownSignalCallback)
+        throws IOException {
+        return this.basicConsume(queue, autoAck, consumerTag, false, false, null, deliverCallback, cancelCallback,
+            shutdownSignalCallback);
+    }
+
+    @Override
+    public String basicConsume(String queue, boolean autoAck, String consumerTag, boolean noLocal, boolean exclusive,
+                               Map<String, Object> arguments, DeliverCallback deliverCallback, CancelCallback cancelCallback)
+        throws IOException {
+        return this.basicConsume(queue, autoAck, consumerTag, noLocal, exclusive, arguments, deliverCallback,
+            cancelCallback, null);
+    }
+
+    @Override
+    public String basicConsume(String queue, boolean autoAck, String consumerTag, boolean noLocal, boolean exclusive,
+                               Map<String, Object> arguments, DeliverCallback deliverCallback,
+                               ConsumerShutdownSignalCallback shutdownSignalCallback) throws IOException {
+        return this.basicConsume(queue, autoAck, consumerTag, noLocal, exclusive, arguments, deliverCallback, null,
+            shutdownSignalCallback);
+    }
+
+    @Override
+    public String basicConsume(String queue, boolean autoAck, String consumerTag, boolean noLocal, boolean exclusive,
+                               Map<String, Object> arguments, DeliverCallback deliverCallback, CancelCallback cancelCallback,
+                               ConsumerShutdownSignalCallback shutdownSignalCallback) throws IOException {
+        return this.basicConsume(queue, autoAck, consumerTag, noLocal, exclusive, arguments,
+            new CallbackConsumer(deliverCallback, cancelCallback, shutdownSignalCallback));
+    }
+
+    @Override
+    public String basicConsume(String queue, boolean autoAck, String consumerTag, boolean noLocal, boolean exclusive,
+                               Map<String, Object> arguments, Consumer callback) throws IOException {
+        this.ensureOpen();
+        InMemoryQueue q = this.accessibleQueue(queue);
+        String tag = consumerTag == null || consumerTag.isEmpty() ? this.broker.generateName("amq.ctag-") : consumerTag;
+        Subscription subscription = new Subscription(this, q, tag, callback, autoAck, exclusive, this.prefetch);
+        if (this.subscriptions.putIfAbsent(tag, subscription) != null) {
+            throw this.error(NOT_ALLOWED, "NOT_ALLOWED - attempt to reuse consumer tag '" + tag + "'");
+        }
+        this.dispatch(() -> callback.handleConsumeOk(tag));
+        String refusal = q.subscribe(subscription);
+        if (refusal != null) {
+            this.subscriptions.remove(tag, subscription);
+            throw this.error(refusal.startsWith("NOT_FOUND") ? NOT_FOUND : ACCESS_REFUSED, refusal);
+        }
+        return tag;
+    }
+
+    @Override
+    public void basicCancel(String consumerTag) throws IOException {
+        this.ensureOpen();
+        Subscription subscription = this.subscriptions.get(consumerTag);
+        if (subscription == null) {
+            throw new IOException("Unknown consumerTag");
+        }
+        this.removeSubscription(subscription);
+        this.dispatch(() -> subscription.consumer.handleCancelOk(consumerTag));
+    }
+
+    private void removeSubscription(Subscription subscription) {
+        this.subscriptions.remove(subscription.consumerTag, subscription);
+        if (subscription.queue.cancel(subscription)) {
+            this.broker.deleteQueue(subscription.queue);
+        }
+    }
+
+    /**
+     * The queue of a consumer is deleted.
+     */
+    void cancelledByBroker(Subscription subscription) {
+        if (this.subscriptions.remove(subscription.consumerTag, subscription)) {
+            this.dispatch(() -> {
+                try {
+                    subscription.consumer.handleCancel(subscription.consumerTag);
+                } catch (Throwable e) {
+                    this.connection.getExceptionHandler().handleConsumerException(this, e, subscription.consumer,
+                        subscription.consumerTag, "handleCancel");
+                }
+            });
+        }
+    }
+
+    /**
+     * Called by a queue, under its lock, to deliver a message to a consumer on this channel.
+     * @return <code>false</code> if the channel is closed
+     */
+    boolean deliver(Subscription subscription, InMemoryQueue queue, Entry entry) {
+        synchronized (this.deliveryLock) {
+            if (this.closeReason != null) {
+                return false;
+            }
+            long deliveryTag = this.deliveryTags.incrementAndGet();
+            if (!subscription.autoAck) {
+                this.unacked.put(deliveryTag, new Unacked(queue, subscription, entry));
+            }
+            InMemoryMessage message = entry.message;
+            Envelope envelope = new Envelope(deliveryTag, entry.redelivered, message.getExchange(), message.getRoutingKey());
+            try {
+                this.dispatcher.execute(() -> {
+                    try {
+                        subscription.consumer.handleDelivery(subscription.consumerTag, envelope, message.getProperties(),
+                            message.getBody());
+                    } catch (Throwable e) {
+                        this.connection.getExceptionHandler().handleConsumerException(this, e, subscription.consumer,
+                            subscription.consumerTag, "handleDelivery");
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                this.unacked.remove(deliveryTag);
+                return false;
+            }
+            return true;
+        }
+    }
+
+    @Override
+    public GetResponse basicGet(String queue, boolean autoAck) throws IOException {
+        this.ensureOpen();
+        InMemoryQueue q = this.accessibleQueue(queue);
+        Entry entry = q.poll(autoAck);
+        if (entry == null) {
+            return null;
+        }
+        long deliveryTag = this.deliveryTags.incrementAndGet();
+        if (!autoAck) {
+            this.unacked.put(deliveryTag, new Unacked(q, null, entry));
+        }
+        InMemoryMessage message = entry.message;
+        return new GetResponse(new Envelope(deliveryTag, entry.redelivered, message.getExchange(), message.getRoutingKey()),
+            message.getProperties(), message.getBody(), q.readyCount());
+    }
+
+    @Override
+    public void basicAck(long deliveryTag, boolean multiple) throws IOException {
+        this.ensureOpen();
+        this.settleOrTransact(() -> this.settle(deliveryTag, multiple, false));
+    }
+
+    @Override
+    public void basicNack(long deliveryTag, boolean multiple, boolean requeue) throws IOException {
+        this.ensureOpen();
+        this.settleOrTransact(() -> this.settle(deliveryTag, multiple, requeue));
+    }
+
+    @Override
+    public void basicReject(long deliveryTag, boolean requeue) throws IOException {
+        this.ensureOpen();
+        this.settleOrTransact(() -> this.settle(deliveryTag, false, requeue));
+    }
+
+    private void settleOrTransact(TxAction settlement) throws IOException {
+        synchronized (this.publishLock) {
+            if (this.transactional) {
+                this.transaction.add(settlement);
+                return;
+            }
+        }
+        settlement.run();
+    }
+
+    /**
+     * Acknowledges, or rejects, delivered messages.
+     * @param multiple <code>true</code> for all the messages up to the delivery tag (all of them if it is
+     * <code>0</code>)
+     */
+    private void settle(long deliveryTag, boolean multiple, boolean requeue) throws IOException {
+        NavigableMap<Long, Unacked> settled;
+        if (multiple) {
+            settled = deliveryTag == 0 ? this.unacked : this.unacked.headMap(deliveryTag, true);
+        } else {
+            Unacked single = this.unacked.get(deliveryTag);
+            if (single == null) {
+                throw this.error(PRECONDITION_FAILED, "PRECONDITION_FAILED - unknown delivery tag " + deliveryTag);
+            }
+            settled = this.unacked.subMap(deliveryTag, true, deliveryTag, true);
+        }
+        if (requeue) {
+            this.requeue(settled);
+        } else {
+            for (Map.Entry<Long, Unacked> e : settled.entrySet()) {
+                if (this.unacked.remove(e.getKey(), e.getValue())) {
+                    e.getValue().queue.settled(e.getValue().subscription);
+                }
+            }
+        }
+    }
+
+    /**
+     * Requeues messages, the latest delivered first, so that they keep their order at the head of their queues.
+     */
+    private void requeue(NavigableMap<Long, Unacked> messages) {
+        for (Map.Entry<Long, Unacked> e : messages.descendingMap().entrySet()) {
+            if (this.unacked.remove(e.getKey(), e.getValue())) {
+                e.getValue().queue.requeue(e.getValue().subscription, e.getValue().entry);
+            }
+        }
+    }
+
+    /**
+     * Requeues all the unacknowledged messages (the broker does not redeliver to the same consumer, whatever
+     * <code>requeue</code>).
+     */
+    @Override
+    public AMQP.Basic.RecoverOk basicRecover() throws IOException {
+        return this.basicRecover(true);
+    }
+
+    @Override
+    public AMQP.Basic.RecoverOk basicRecover(boolean requeue) throws IOException {
+        this.ensureOpen();
+        // like RabbitMQ, recover-ok reaches the consumers after the deliveries of the messages it requeues,
+        // and before their redeliveries
+        synchronized (this.deliveryLock) {
+            for (Subscription subscription : this.subscriptions.values()) {
+                this.dispatch(() -> subscription.consumer.handleRecoverOk(subscription.consumerTag));
+            }
+        }
+        this.requeue(this.unacked);
+        return new AMQImpl.Basic.RecoverOk();
+    }
+
+    // ---- transactions and confirms
+
+    @Override
+    public AMQP.Tx.SelectOk txSelect() throws IOException {
+        this.ensureOpen();
+        if (this.confirmMode) {
+            throw this.error(PRECONDITION_FAILED, "PRECONDITION_FAILED - cannot switch from confirm to tx mode");
+        }
+        this.transactional = true;
+        return new AMQImpl.Tx.SelectOk();
+    }
+
+    @Override
+    public AMQP.Tx.CommitOk txCommit() throws IOException {
+        this.ensureOpen();
+        List<TxAction> actions;
+        synchronized (this.publishLock) {
+            if (!this.transactional) {
+                throw this.error(PRECONDITION_FAILED, "PRECONDITION_FAILED - channel is not transactional");
+            }
+            actions = new ArrayList<TxAction>(this.transaction);
+            this.transaction.clear();
+        }
+        for (TxAction action : actions) {
+            action.run();
+        }
+        return new AMQImpl.Tx.CommitOk();
+    }
+
+    @Override
+    public AMQP.Tx.RollbackOk txRollback() throws IOException {
+        this.ensureOpen();
+        synchronized (this.publishLock) {
+            if (!this.transactional) {
+                throw this.error(PRECONDITION_FAILED, "PRECONDITION_FAILED - channel is not transactional");
+            }
+            this.transaction.clear();
+        }
+        return new AMQImpl.Tx.RollbackOk();
+    }
+
+    @Override
+    public AMQP.Confirm.SelectOk confirmSelect() throws IOException {
+        this.ensureOpen();
+        if (this.transactional) {
+            throw this.error(PRECONDITION_FAILED, "PRECONDITION_FAILED - cannot switch from tx to confirm mode");
+        }
+        synchronized (this.publishLock) {
+            if (!this.confirmMode) {
+                this.confirmMode = true;
+                this.nextPublishSeqNo = 1;
+            }
+        }
+        return new AMQImpl.Confirm.SelectOk();
+    }
+
+    @Override
+    public long getNextPublishSeqNo() {
+        synchronized (this.publishLock) {
+            return this.nextPublishSeqNo;
+        }
+    }
+
+    /**
+     * Messages are confirmed as they are published: this only tells whether some were nack-ed since the last call.
+     */
+    @Override
+    public boolean waitForConfirms() {
+        if (!this.confirmMode) {
+            throw new IllegalStateException("Confirms not selected");
+        }
+        synchronized (this.publishLock) {
+            boolean allAcked = !this.nackedSinceWait;
+            this.nackedSinceWait = false;
+            return allAcked;
+        }
+    }
+
+    @Override
+    public boolean waitForConfirms(long timeout) {
+        return this.waitForConfirms();
+    }
+
+    @Override
+    public void waitForConfirmsOrDie() throws IOException {
+        if (!this.waitForConfirms()) {
+            this.abort(REPLY_SUCCESS, "NACKS RECEIVED");
+            throw new IOException("nacks received");
+        }
+    }
+
+    @Override
+    public void waitForConfirmsOrDie(long timeout) throws IOException {
+        this.waitForConfirmsOrDie();
+    }
+
+    // ---- topology
+
+    @Override
+    public AMQP.Exchange.DeclareOk exchangeDeclare(String exchange, String type) throws IOException {
+        return this.exchangeDeclare(exchange, type, false, false, false, null);
+    }
+
+    @Override
+    public AMQP.Exchange.DeclareOk exchangeDeclare(String exchange, BuiltinExchangeType type) throws IOException {
+        return this.exchangeDeclare(exchange, type.getType());
+    }
+
+    @Override
+    public AMQP.Exchange.DeclareOk exchangeDeclare(String exchange, String type, boolean durable) throws IOException {
+        return this.exchangeDeclare(exchange, type, durable, false, false, null);
+    }
+
+    @Override
+    public AMQP.Exchange.DeclareOk exchangeDeclare(String exchange, BuiltinExchangeType type, boolean durable) throws IOException {
+        return this.exchangeDeclare(exchange, type.getType(), durable);
+    }
+
+    @Override
+    public AMQP.Exchange.DeclareOk exchangeDeclare(String exchange, String type, boolean durable, boolean autoDelete,
+                                                   Map<String, Object> arguments) throws IOException {
+        return this.exchangeDeclare(exchange, type, durable, autoDelete, false, arguments);
+    }
+
+    @Override
+    public AMQP.Exchange.DeclareOk exchangeDeclare(String exchange, BuiltinExchangeType type, boolean durable,
+                                                   boolean autoDelete, Map<String, Object> arguments) throws IOException {
+        return this.exchangeDeclare(exchange, type.getType(), durable, autoDelete, arguments);
+    }
+
+    @Override
+    public AMQP.Exchange.DeclareOk exchangeDeclare(String exchange, BuiltinExchangeType type, boolean durable,
+                                                   boolean autoDelete, boolean internal, Map<String, Object> arguments)
+        throws IOException {
+        return this.exchangeDeclare(exchange, type.getType(), durable, autoDelete, internal, arguments);
+    }
+
+    @Override
+    public AMQP.Exchange.DeclareOk exchangeDeclare(String exchange, String type, boolean durable, boolean autoDelete,
+                                                   boolean internal, Map<String, Object> arguments) throws IOException {
+        this.ensureOpen();
+        if (!InMemoryExchange.isSupportedType(type)) {
+            throw this.error(COMMAND_INVALID, "COMMAND_INVALID - invalid exchange type '" + type + "'");
+        }
+        synchronized (this.broker.topologyLock) {
+            InMemoryExchange existing = this.broker.exchange(exchange);
+            if (existing == null) {
+                if (exchange.startsWith("amq.")) {
+                    throw this.error(ACCESS_REFUSED, "ACCESS_REFUSED - exchange name '" + exchange + "' contains reserved prefix 'amq.*'");
+                }
+                this.broker.putExchange(new InMemoryExchange(this.broker, exchange, type, durable, autoDelete, arguments));
+            } else if (!existing.getType().equals(type) || existing.isDurable() != durable
+                || existing.isAutoDelete() != autoDelete) {
+                throw this.error(PRECONDITION_FAILED, "PRECONDITION_FAILED - inequivalent arg for exchange '" + exchange + "'");
+            }
+        }
+        return new AMQImpl.Exchange.DeclareOk();
+    }
+
+    @Override
+    public void exchangeDeclareNoWait(String exchange, String type, boolean durable, boolean autoDelete, boolean internal,
+                                      Map<String, Object> arguments) throws IOException {
+        this.exchangeDeclare(exchange, type, durable, autoDelete, internal, arguments);
+    }
+
+    @Override
+    public void exchangeDeclareNoWait(String exchange, BuiltinExchangeType type, boolean durable, boolean autoDelete,
+                                      boolean internal, Map<String, Object> arguments) throws IOException {
+        this.exchangeDeclare(exchange, type, durable, autoDelete, internal, arguments);
+    }
+
+    @Override
+    public AMQP.Exchange.DeclareOk exchangeDeclarePassive(String name) throws IOException {
+        this.ensureOpen();
+        this.existingExchange(name);
+        return new AMQImpl.Exchange.DeclareOk();
+    }
+
+    @Override
+    public AMQP.Exchange.DeleteOk exchangeDelete(String exchange, boolean ifUnused) throws IOException {
+        this.ensureOpen();
+        InMemoryExchange existing = this.broker.exchange(exchange);
+        if (existing != null) {
+            if (ifUnused && existing.hasBindings()) {
+                throw this.error(PRECONDITION_FAILED, "PRECONDITION_FAILED - exchange '" + exchange + "' in use");
+            }
+            this.broker.deleteExchange(existing);
+        }
+        return new AMQImpl.Exchange.DeleteOk();
+    }
+
+    @Override
+    public void exchangeDeleteNoWait(String exchange, boolean ifUnused) throws IOException {
+        this.exchangeDelete(exchange, ifUnused);
+    }
+
+    @Override
+    public AMQP.Exchange.DeleteOk exchangeDelete(String exchange) throws IOException {
+        return this.exchangeDelete(exchange, false);
+    }
+
+    @Override
+    public AMQP.Exchange.BindOk exchangeBind(String destination, String source, String routingKey) throws IOException {
+        return this.exchangeBind(destination, source, routingKey, null);
+    }
+
+    @Override
+    public AMQP.Exchange.BindOk exchangeBind(String destination, String source, String routingKey,
+                                             Map<String, Object> arguments) throws IOException {
+        this.ensureOpen();
+        synchronized (this.broker.topologyLock) {
+            InMemoryExchange destinationExchange = this.existingExchange(destination);
+            this.existingExchange(source).bind(destinationExchange, routingKey, arguments);
+        }
+        return new AMQImpl.Exchange.BindOk();
+    }
+
+    @Override
+    public void exchangeBindNoWait(String destination, String source, String routingKey, Map<String, Object> arguments)
+        throws IOException {
+        this.exchangeBind(destination, source, routingKey, arguments);
+    }
+
+    @Override
+    public AMQP.Exchange.UnbindOk exchangeUnbind(String destination, String source, String routingKey) throws IOException {
+        return this.exchangeUnbind(destination, source, routingKey, null);
+    }
+
+    @Override
+    public AMQP.Exchange.UnbindOk exchangeUnbind(String destination, String source, String routingKey,
+                                                 Map<String, Object> arguments) throws IOException {
+        this.ensureOpen();
+        synchronized (this.broker.topologyLock) {
+            InMemoryExchange destinationExchange = this.existingExchange(destination);
+            InMemoryExchange sourceExchange = this.existingExchange(source);
+            if (sourceExchange.unbind(destinationExchange, routingKey, arguments)) {
+                this.broker.exchangeUnbound(sourceExchange);
+            }
+        }
+        return new AMQImpl.Exchange.UnbindOk();
+    }
+
+    @Override
+    public void exchangeUnbindNoWait(String destination, String source, String routingKey, Map<String, Object> arguments)
+        throws IOException {
+        this.exchangeUnbind(destination, source, routingKey, arguments);
+    }
+
+    @Override
+    public AMQP.Queue.DeclareOk queueDeclare() throws IOException {
+        return this.queueDeclare("", false, true, true, null);
+    }
+
+    @Override
+    public AMQP.Queue.DeclareOk queueDeclare(String queue, boolean durable, boolean exclusive, boolean autoDelete,
+                                             Map<String, Object> arguments) throws IOException {
+        this.ensureOpen();
+        boolean serverNamed = queue == null || queue.isEmpty();
+        String name = serverNamed ? this.broker.generateName("amq.gen-") : queue;
+        InMemoryQueue q;
+        synchronized (this.broker.topologyLock) {
+            q = this.broker.queue(name);
+            if (q == null) {
+                if (!serverNamed && name.startsWith("amq.")) {
+                    throw this.error(ACCESS_REFUSED, "ACCESS_REFUSED - queue name '" + name + "' contains reserved prefix 'amq.*'");
+                }
+                q = new InMemoryQueue(name, durable, autoDelete, exclusive ? this.connection : null, arguments);
+                this.broker.putQueue(q);
+            } else {
+                this.checkAccess(q);
+                if (q.isDurable() != durable || q.isExclusive() != exclusive || q.isAutoDelete() != autoDelete) {
+                    throw this.error(PRECONDITION_FAILED, "PRECONDITION_FAILED - inequivalent arg for queue '" + name + "'");
+                }
+            }
+        }
+        return new AMQImpl.Queue.DeclareOk(name, q.readyCount(), q.consumerCount());
+    }
+
+    @Override
+    public void queueDeclareNoWait(String queue, boolean durable, boolean exclusive, boolean autoDelete,
+                                   Map<String, Object> arguments) throws IOException {
+        this.queueDeclare(queue, durable, exclusive, autoDelete, arguments);
+    }
+
+    @Override
+    public AMQP.Queue.DeclareOk queueDeclarePassive(String queue) throws IOException {
+        this.ensureOpen();
+        InMemoryQueue q = this.accessibleQueue(queue);
+        return new AMQImpl.Queue.DeclareOk(queue, q.readyCount(), q.consumerCount());
+    }
+
+    @Override
+    public AMQP.Queue.DeleteOk queueDelete(String queue) throws IOException {
+        return this.queueDelete(queue, false, false);
+    }
+
+    @Override
+    public AMQP.Queue.DeleteOk queueDelete(String queue, boolean ifUnused, boolean ifEmpty) throws IOException {
+        this.ensureOpen();
+        InMemoryQueue q = this.broker.queue(queue);
+        if (q == null) {
+            return new AMQImpl.Queue.DeleteOk(0);
+        }
+        this.checkAccess(q);
+        if (ifUnused && q.consumerCount() > 0) {
+            throw this.error(PRECONDITION_FAILED, "PRECONDITION_FAILED - queue '" + queue + "' in use");
+        }
+        int count = q.readyCount();
+        if (ifEmpty && count > 0) {
+            throw this.error(PRECONDITION_FAILED, "PRECONDITION_FAILED - queue '" + queue + "' not empty");
+        }
+        this.broker.deleteQueue(q);
+        return new AMQImpl.Queue.DeleteOk(count);
+    }
+
+    @Override
+    public void queueDeleteNoWait(String queue, boolean ifUnused, boolean ifEmpty) throws IOException {
+        this.queueDelete(queue, ifUnused, ifEmpty);
+    }
+
+    @Override
+    public AMQP.Queue.BindOk queueBind(String queue, String exchange, String routingKey) throws IOException {
+        return this.queueBind(queue, exchange, routingKey, null);
+    }
+
+    @Override
+    public AMQP.Queue.BindOk queueBind(String queue, String exchange, String routingKey, Map<String, Object> arguments)
+        throws IOException {
+        this.ensureOpen();
+        if (InMemoryBroker.DEFAULT_EXCHANGE.equals(exchange)) {
+            throw this.error(ACCESS_REFUSED, "ACCESS_REFUSED - operation not permitted on the default exchange");
+        }
+        synchronized (this.broker.topologyLock) {
+            InMemoryQueue q = this.accessibleQueue(queue);
+            this.existingExchange(exchange).bind(q, routingKey, arguments);
+        }
+        return new AMQImpl.Queue.BindOk();
+    }
+
+    @Override
+    public void queueBindNoWait(String queue, String exchange, String routingKey, Map<String, Object> arguments)
+        throws IOException {
+        this.queueBind(queue, exchange, routingKey, arguments);
+    }
+
+    @Override
+    public AMQP.Queue.UnbindOk queueUnbind(String queue, String exchange, String routingKey) throws IOException {
+        return this.queueUnbind(queue, exchange, routingKey, null);
+    }
+
+    @Override
+    public AMQP.Queue.UnbindOk queueUnbind(String queue, String exchange, String routingKey, Map<String, Object> arguments)
+        throws IOException {
+        this.ensureOpen();
+        synchronized (this.broker.topologyLock) {
+            InMemoryQueue q = this.accessibleQueue(queue);
+            InMemoryExchange e = this.existingExchange(exchange);
+            if (e.unbind(q, routingKey, arguments)) {
+                this.broker.exchangeUnbound(e);
+            }
+        }
+        return new AMQImpl.Queue.UnbindOk();
+    }
+
+    @Override
+    public AMQP.Queue.PurgeOk queuePurge(String queue) throws IOException {
+        this.ensureOpen();
+        return new AMQImpl.Queue.PurgeOk(this.accessibleQueue(queue).purge());
+    }
+
+    @Override
+    public long messageCount(String queue) throws IOException {
+        return this.queueDeclarePassive(queue).getMessageCount();
+    }
+
+    @Override
+    public long consumerCount(String queue) throws IOException {
+        return this.queueDeclarePassive(queue).getConsumerCount();
+    }
+
+    private InMemoryExchange existingExchange(String name) throws IOException {
+        InMemoryExchange exchange = this.broker.exchange(name);
+        if (exchange == null) {
+            throw this.error(NOT_FOUND, "NOT_FOUND - no exchange '" + name + "' in vhost '/'");
+        }
+        return exchange;
+    }
+
+    /**
+     * @return the queue, if it exists and is not exclusive to another connection
+     */
+    private InMemoryQueue accessibleQueue(String name) throws IOException {
+        InMemoryQueue queue = this.broker.queue(name);
+        if (queue == null) {
+            throw this.error(NOT_FOUND, "NOT_FOUND - no queue '" + name + "' in vhost '/'");
+        }
+        this.checkAccess(queue);
+        return queue;
+    }
+
+    private void checkAccess(InMemoryQueue queue) throws IOException {
+        if (queue.isExclusive() && queue.getOwner() != this.connection) {
+            throw this.error(RESOURCE_LOCKED,
+                "RESOURCE_LOCKED - cannot obtain exclusive access to locked queue '" + queue.getName() + "' in vhost '/'");
+        }
+    }
+
+    // ---- RPC
+
+    @Override
+    public void asyncRpc(Method method) {
+        throw new UnsupportedOperationException("RPC is not supported by the in-memory broker");
+    }
+
+    @Override
+    public Command rpc(Method method) {
+        throw new UnsupportedOperationException("RPC is not supported by the in-memory broker");
+    }
+
+    @Override
+    public CompletableFuture<Command> asyncCompletableRpc(Method method) {
+        throw new UnsupportedOperationException("RPC is not supported by the in-memory broker");
+    }
+
+    @Override
+    public String toString() {
+        return "InMemoryChannel{" + this.connection.getId() + "/" + this.channelNumber + '}';
+    }
+
+    /** A transactional publish or acknowledgement, run on commit. */
+    private interface TxAction {
+        void run() throws IOException;
+    }
+
+    /** A message delivered, waiting for its acknowledgement. */
+    private static final class Unacked {
+        final InMemoryQueue queue;
+        /** <code>null</code> for a message got */
+        final Subscription subscription;
+        final Entry entry;
+
+        Unacked(InMemoryQueue queue, Subscription subscription, Entry entry) {
+            this.queue = queue;
+            this.subscription = subscription;
+            this.entry = entry;
+        }
+    }
+
+    /** Consumer of the functional flavours of <code>basicConsume</code>. */
+    private static final class CallbackConsumer implements Consumer {
+        private final DeliverCallback deliverCallback;
+        private final CancelCallback cancelCallback;
+        private final ConsumerShutdownSignalCallback shutdownSignalCallback;
+
+        CallbackConsumer(DeliverCallback deliverCallback, CancelCallback cancelCallback,
+                         ConsumerShutdownSignalCallback shutdownSignalCallback) {
+            this.deliverCallback = deliverCallback;
+            this.cancelCallback = cancelCallback;
+            this.shutdownSignalCallback = shutdownSignalCallback;
+        }
+
+        @Override
+        public void handleConsumeOk(String consumerTag) {
+        }
+
+        @Override
+        public void handleCancelOk(String consumerTag) {
+        }
+
+        @Override
+        public void handleCancel(String consumerTag) throws IOException {
+            if (this.cancelCallback != null) {
+                this.cancelCallback.handle(consumerTag);
+            }
+        }
+
+        @Override
+        public void handleShutdownSignal(String consumerTag, ShutdownSignalException sig) {
+            if (this.shutdownSignalCallback != null) {
+                this.shutdownSignalCallback.handleShutdownSignal(consumerTag, sig);
+            }
+        }
+
+        @Override
+        public void handleRecoverOk(String consumerTag) {
+        }
+
+        @Override
+        public void handleDelivery(String consumerTag, Envelope envelope, AMQP.BasicProperties properties, byte[] body)
+            throws IOException {
+            this.deliverCallback.handle(consumerTag, new Delivery(envelope, properties, body));
+        }
+    }
+}
@@ -0,0 +1,302 @@
+// This Source Code Form is subject to the terms of the Mozilla Public
+// License, v. 2.0. If a copy of the MPL was not distributed with this
+// file, You can obtain one at https://mozilla.org/MPL/2.0/.
+//
+// Copyright (c) 2020 VMware, Inc. or its affiliates. All rights reserved.
+package com.rabbitmq.jms.client.inmemory;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.AlreadyClosedException;
+import com.rabbitmq.client.BlockedCallback;
+import com.rabbitmq.client.BlockedListener;
+import com.rabbitmq.client.Connection;
+import com.rabbitmq.client.ExceptionHandler;
+import com.rabbitmq.client.ShutdownListener;
+import com.rabbitmq.client.ShutdownSignalException;
+import com.rabbitmq.client.UnblockedCallback;
+import com.rabbitmq.client.impl.DefaultExceptionHandler;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Connection to an {@link InMemoryBroker}. Exclusive queues declared on the connection are deleted when it closes.
+ */
+public final class InMemoryConnection implements Connection {
+
+    private static final int CHANNEL_MAX = 2047;
+    private static final int REPLY_SUCCESS = 200;
+    private static final int CONNECTION_FORCED = 320;
+
+    private final InMemoryBroker broker;
+    private final String clientProvidedName;
+    private volatile String id;
+    private final ExceptionHandler exceptionHandler = new DefaultExceptionHandler();
+    private final List<ShutdownListener> shutdownListeners = new CopyOnWriteArrayList<ShutdownListener>();
+    private final List<BlockedListener> blockedListeners = new CopyOnWriteArrayList<BlockedListener>();
+
+    private final Map<Integer, InMemoryChannel> channels = new HashMap<Integer, InMemoryChannel>(); // @GuardedBy(channels)
+    private volatile ShutdownSignalException closeReason; // set with the channels lock held
+
+    InMemoryConnection(InMemoryBroker broker, String id, String clientProvidedName) {
+        this.broker = broker;
+        this.id = id;
+        this.clientProvidedName = clientProvidedName;
+    }
+
+    @Override
+    public InetAddress getAddress() {
+        return InetAddress.getLoopbackAddress();
+    }
+
+    @Override
+    public int getPort() {
+        return AMQP.PROTOCOL.PORT;
+    }
+
+    @Override
+    public int getChannelMax() {
+        return CHANNEL_MAX;
+    }
+
+    @Override
+    public int getFrameMax() {
+        return 131072;
+    }
+
+    @Override
+    public int getHeartbeat() {
+        return 0;
+    }
+
+    @Override
+    public Map<String, Object> getClientProperties() {
+        return this.clientProvidedName == null ? Collections.<String, Object>emptyMap()
+            : Collections.<String, Object>singletonMap("connection_name", this.clientProvidedName);
+    }
+
+    @Override
+    public String getClientProvidedName() {
+        return this.clientProvidedName;
+    }
+
+    @Override
+    public Map<String, Object> getServerProperties() {
+        Map<String, Object> capabilities = new HashMap<String, Object>();
+        capabilities.put("publisher_confirms", true);
+        capabilities.put("exchange_exchange_bindings", true);
+        capabilities.put("basic.nack", true);
+        capabilities.put("consumer_cancel_notify", true);
+        capabilities.put("per_consumer_qos", true);
+        Map<String, Object> properties = new HashMap<String, Object>();
+        properties.put("product", "RabbitMQ (in-memory)");
+        properties.put("capabilities", capabilities);
+        return properties;
+    }
+
+    @Override
+    public InMemoryChannel createChannel() throws IOException {
+        synchronized (this.channels) {
+            for (int number = 1; number <= CHANNEL_MAX; number++) {
+                if (!this.channels.containsKey(number)) {
+                    return this.createChannel(number);
+                }
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public InMemoryChannel createChannel(int channelNumber) {
+        synchronized (this.channels) {
+            this.ensureOpen();
+            if (channelNumber < 1 || channelNumber > CHANNEL_MAX || this.channels.containsKey(channelNumber)) {
+                return null;
+            }
+            InMemoryChannel channel = new InMemoryChannel(this, this.broker, channelNumber);
+            this.channels.put(channelNumber, channel);
+            return channel;
+        }
+    }
+
+    void channelClosed(InMemoryChannel channel) {
+        synchronized (this.channels) {
+            this.channels.remove(channel.getChannelNumber(), channel);
+        }
+    }
+
+    /**
+     * @return the number of channels open
+     */
+    public int getChannelCount() {
+        synchronized (this.channels) {
+            return this.channels.size();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.close(REPLY_SUCCESS, "OK");
+    }
+
+    @Override
+    public void close(int closeCode, String closeMessage) throws IOException {
+        this.ensureOpen();
+        this.shutdown(closeCode, closeMessage, true);
+    }
+
+    @Override
+    public void close(int timeout) throws IOException {
+        this.close();
+    }
+
+    @Override
+    public void close(int closeCode, String closeMessage, int timeout) throws IOException {
+        this.close(closeCode, closeMessage);
+    }
+
+    @Override
+    public void abort() {
+        this.abort(REPLY_SUCCESS, "OK");
+    }
+
+    @Override
+    public void abort(int closeCode, String closeMessage) {
+        this.shutdown(closeCode, closeMessage, true);
+    }
+
+    @Override
+    public void abort(int timeout) {
+        this.abort();
+    }
+
+    @Override
+    public void abort(int closeCode, String closeMessage, int timeout) {
+        this.abort(closeCode, closeMessage);
+    }
+
+    /**
+     * The broker closes the connection, as when it is closed from the management UI, or the node stops.
+     */
+    public void closeByBroker(String reason) {
+        this.shutdown(CONNECTION_FORCED, "CONNECTION_FORCED - " + reason, false);
+    }
+
+    private void shutdown(int closeCode, String closeMessage, boolean initiatedByApplication) {
+        AMQP.Connection.Close close = new AMQP.Connection.Close.Builder().replyCode(closeCode).replyText(closeMessage).build();
+        ShutdownSignalException reason = new ShutdownSignalException(true, initiatedByApplication, close, this);
+        List<InMemoryChannel> open;
+        synchronized (this.channels) {
+            if (this.closeReason != null) {
+                return;
+            }
+            this.closeReason = reason;
+            open = new ArrayList<InMemoryChannel>(this.channels.values());
+        }
+        for (InMemoryChannel channel : open) {
+            channel.shutdown(reason);
+        }
+        this.broker.connectionClosed(this);
+        this.notifyListeners();
+    }
+
+    private void ensureOpen() {
+        ShutdownSignalException reason = this.closeReason;
+        if (reason != null) {
+            throw new AlreadyClosedException(reason);
+        }
+    }
+
+    @Override
+    public void addShutdownListener(ShutdownListener listener) {
+        this.shutdownListeners.add(listener);
+        ShutdownSignalException reason = this.closeReason;
+        if (reason != null) {
+            listener.shutdownCompleted(reason);
+        }
+    }
+
+    @Override
+    public void removeShutdownListener(ShutdownListener listener) {
+        this.shutdownListeners.remove(listener);
+    }
+
+    @Override
+    public ShutdownSignalException getCloseReason() {
+        return this.closeReason;
+    }
+
+    @Override
+    public void notifyListeners() {
+        ShutdownSignalException reason = this.closeReason;
+        for (ShutdownListener listener : this.shutdownListeners) {
+            listener.shutdownCompleted(reason);
+        }
+    }
+
+    @Override
+    public boolean isOpen() {
+        return this.closeReason == null;
+    }
+
+    /**
+     * Blocked listeners are kept, but never called: the broker does not block connections.
+     */
+    @Override
+    public void addBlockedListener(BlockedListener listener) {
+        this.blockedListeners.add(listener);
+    }
+
+    @Override
+    public BlockedListener addBlockedListener(BlockedCallback blockedCallback, UnblockedCallback unblockedCallback) {
+        BlockedListener listener = new BlockedListener() {
+            @Override
+            public void handleBlocked(String reason) throws IOException {
+                blockedCallback.handle(reason);
+            }
+
+            @Override
+            public void handleUnblocked() throws IOException {
+                unblockedCallback.handle();
+            }
+        };
+        this.addBlockedListener(listener);
+        return listener;
+    }
+
+    @Override
+    public boolean removeBlockedListener(BlockedListener listener) {
+        return this.blockedListeners.remove(listener);
+    }
+
+    @Override
+    public void clearBlockedListeners() {
+        this.blockedListeners.clear();
+    }
+
+    @Override
+    public ExceptionHandler getExceptionHandler() {
+        return this.exceptionHandler;
+    }
+
+    @Override
+    public String getId() {
+        return this.id;
+    }
+
+    @Override
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    @Override
+    public String toString() {
+        return "InMemoryConnection{" + this.id + '}';
+    }
+}
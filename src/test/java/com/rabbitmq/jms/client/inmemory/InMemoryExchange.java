@@ -0,0 +1,222 @@
+// This Source Code Form is subject to the terms of the Mozilla Public
+// License, v. 2.0. If a copy of the MPL was not distributed with this
+// file, You can obtain one at https://mozilla.org/MPL/2.0/.
+//
+// Copyright (c) 2020 VMware, Inc. or its affiliates. All rights reserved.
+package com.rabbitmq.jms.client.inmemory;
+
+import com.rabbitmq.client.LongString;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Exchange of an {@link InMemoryBroker}: its bindings, and how it routes.
+ */
+final class InMemoryExchange {
+
+    static final String JMS_TOPIC_TYPE = "x-jms-topic";
+
+    private static final String HEADERS_MATCH_ARG = "x-match";
+
+    private final InMemoryBroker broker;
+    private final String name;
+    private final String type;
+    private final boolean durable;
+    private final boolean autoDelete;
+    private final Map<String, Object> arguments;
+    private final List<Binding> bindings = new CopyOnWriteArrayList<Binding>();
+
+    InMemoryExchange(InMemoryBroker broker, String name, String type, boolean durable, boolean autoDelete,
+                     Map<String, Object> arguments) {
+        this.broker = broker;
+        this.name = name;
+        this.type = type;
+        this.durable = durable;
+        this.autoDelete = autoDelete;
+        this.arguments = arguments == null ? Collections.<String, Object>emptyMap() : new HashMap<String, Object>(arguments);
+    }
+
+    static boolean isSupportedType(String type) {
+        return "direct".equals(type) || "fanout".equals(type) || "topic".equals(type) || "headers".equals(type)
+            || JMS_TOPIC_TYPE.equals(type);
+    }
+
+    String getName() {
+        return this.name;
+    }
+
+    String getType() {
+        return this.type;
+    }
+
+    boolean isDurable() {
+        return this.durable;
+    }
+
+    boolean isAutoDelete() {
+        return this.autoDelete;
+    }
+
+    Map<String, Object> getArguments() {
+        return this.arguments;
+    }
+
+    boolean hasBindings() {
+        return !this.bindings.isEmpty();
+    }
+
+    /** Caller holds the topology lock of the broker. */
+    void bind(Object destination, String routingKey, Map<String, Object> arguments) {
+        Binding binding = new Binding(destination, routingKey, arguments);
+        if (!this.bindings.contains(binding)) {
+            this.bindings.add(binding);
+        }
+    }
+
+    /** Caller holds the topology lock of the broker. */
+    boolean unbind(Object destination, String routingKey, Map<String, Object> arguments) {
+        return this.bindings.remove(new Binding(destination, routingKey, arguments));
+    }
+
+    /**
+     * Caller holds the topology lock of the broker.
+     * @return <code>true</code> if bindings were removed
+     */
+    boolean unbindAll(Object destination) {
+        boolean removed = false;
+        for (Binding binding : this.bindings) {
+            if (binding.destination == destination) {
+                removed |= this.bindings.remove(binding);
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Adds the queues the message goes to, through this exchange and the exchanges bound to it.
+     * @param visited the exchanges already routed through, to stop at cycles
+     */
+    void route(InMemoryMessage message, Set<InMemoryQueue> queues, Set<InMemoryExchange> visited) {
+        if (!visited.add(this)) {
+            return;
+        }
+        for (Binding binding : this.bindings) {
+            if (this.matches(binding, message)) {
+                if (binding.destination instanceof InMemoryQueue) {
+                    queues.add((InMemoryQueue) binding.destination);
+                } else {
+                    ((InMemoryExchange) binding.destination).route(message, queues, visited);
+                }
+            }
+        }
+    }
+
+    private boolean matches(Binding binding, InMemoryMessage message) {
+        switch (this.type) {
+            case "fanout":
+                return true;
+            case "direct":
+                return binding.routingKey.equals(message.getRoutingKey());
+            case "topic":
+                return topicMatches(binding.words, 0, message.getRoutingKeyWords(), 0);
+            case "headers":
+                return headersMatch(binding.arguments, message.getProperties().getHeaders());
+            case JMS_TOPIC_TYPE:
+                return topicMatches(binding.words, 0, message.getRoutingKeyWords(), 0)
+                    && this.broker.getTopicSelector().matches(binding.arguments, message.getRoutingKey(), message.getProperties());
+            default:
+                return false;
+        }
+    }
+
+    static String[] words(String key) {
+        return key.isEmpty() ? new String[0] : key.split("\\.", -1);
+    }
+
+    /**
+     * AMQP topic matching: <code>*</code> matches one word, <code>#</code> zero or more.
+     */
+    static boolean topicMatches(String[] pattern, int p, String[] key, int k) {
+        while (p < pattern.length) {
+            String word = pattern[p];
+            if ("#".equals(word)) {
+                if (p == pattern.length - 1) return true;
+                for (int skip = k; skip <= key.length; skip++) {
+                    if (topicMatches(pattern, p + 1, key, skip)) return true;
+                }
+                return false;
+            }
+            if (k >= key.length || !("*".equals(word) || word.equals(key[k]))) {
+                return false;
+            }
+            p++;
+            k++;
+        }
+        return k == key.length;
+    }
+
+    static boolean headersMatch(Map<String, Object> bindingArguments, Map<String, Object> headers) {
+        Object match = bindingArguments.get(HEADERS_MATCH_ARG);
+        boolean any = match != null && "any".equals(match.toString());
+        Map<String, Object> messageHeaders = headers == null ? Collections.<String, Object>emptyMap() : headers;
+        boolean tested = false;
+        for (Map.Entry<String, Object> argument : bindingArguments.entrySet()) {
+            if (argument.getKey().startsWith("x-")) {
+                continue;
+            }
+            tested = true;
+            boolean present = messageHeaders.containsKey(argument.getKey());
+            // a void argument only requires the header to be present
+            boolean matches = present && (argument.getValue() == null
+                || valueEquals(argument.getValue(), messageHeaders.get(argument.getKey())));
+            if (any && matches) return true;
+            if (!any && !matches) return false;
+        }
+        return !any || !tested;
+    }
+
+    private static boolean valueEquals(Object bound, Object value) {
+        if (isString(bound) && isString(value)) {
+            return bound.toString().equals(value.toString());
+        }
+        return Objects.equals(bound, value);
+    }
+
+    private static boolean isString(Object value) {
+        return value instanceof String || value instanceof LongString;
+    }
+
+    private static final class Binding {
+        final Object destination;
+        final String routingKey;
+        final String[] words;
+        final Map<String, Object> arguments;
+
+        Binding(Object destination, String routingKey, Map<String, Object> arguments) {
+            this.destination = destination;
+            this.routingKey = routingKey == null ? "" : routingKey;
+            this.words = words(this.routingKey);
+            this.arguments = arguments == null ? Collections.<String, Object>emptyMap() : new HashMap<String, Object>(arguments);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Binding)) return false;
+            Binding that = (Binding) o;
+            return this.destination == that.destination && this.routingKey.equals(that.routingKey)
+                && this.arguments.equals(that.arguments);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(System.identityHashCode(this.destination), this.routingKey, this.arguments);
+        }
+    }
+}
@@ -0,0 +1,105 @@
+// This Source Code Form is subject to the terms of the Mozilla Public
+// License, v. 2.0. If a copy of the MPL was not distributed with this
+// file, You can obtain one at https://mozilla.org/MPL/2.0/.
+//
+// Copyright (c) 2020 VMware, Inc. or its affiliates. All rights reserved.
+package com.rabbitmq.jms.client.inmemory;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.impl.ContentHeaderPropertyWriter;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Message published to an {@link InMemoryBroker}, immutable. Its properties are those a consumer decodes, its body a
+ * copy of the published one.
+ */
+final class InMemoryMessage {
+
+    private static final AMQP.BasicProperties NO_PROPERTIES = new AMQP.BasicProperties();
+
+    private final String exchange;
+    private final String routingKey;
+    private final AMQP.BasicProperties properties;
+    private final byte[] body;
+    private String[] routingKeyWords; // lazily, by the routing thread
+
+    private InMemoryMessage(String exchange, String routingKey, AMQP.BasicProperties properties, byte[] body) {
+        this.exchange = exchange;
+        this.routingKey = routingKey;
+        this.properties = properties;
+        this.body = body;
+    }
+
+    /**
+     * @throws IOException if the properties cannot be encoded (e.g. a header value of an unsupported type)
+     */
+    static InMemoryMessage published(String exchange, String routingKey, AMQP.BasicProperties properties, byte[] body)
+        throws IOException {
+        return new InMemoryMessage(exchange, routingKey == null ? "" : routingKey,
+            properties == null ? NO_PROPERTIES : decode(encode(properties, body)), body == null ? new byte[0] : body.clone());
+    }
+
+    /**
+     * Encodes the properties like a content header frame does, after the class id.
+     */
+    private static byte[] encode(AMQP.BasicProperties properties, byte[] body) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeShort(0); // weight
+        out.writeLong(body == null ? 0 : body.length);
+        properties.writePropertiesTo(new ContentHeaderPropertyWriter(out));
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static AMQP.BasicProperties decode(byte[] encoded) throws IOException {
+        return new AMQP.BasicProperties(new DataInputStream(new ByteArrayInputStream(encoded)));
+    }
+
+    String getExchange() {
+        return this.exchange;
+    }
+
+    String getRoutingKey() {
+        return this.routingKey;
+    }
+
+    String[] getRoutingKeyWords() {
+        if (this.routingKeyWords == null) {
+            this.routingKeyWords = InMemoryExchange.words(this.routingKey);
+        }
+        return this.routingKeyWords;
+    }
+
+    AMQP.BasicProperties getProperties() {
+        return this.properties;
+    }
+
+    /**
+     * @return the body, not to be modified: it is shared by the deliveries of the message
+     */
+    byte[] getBody() {
+        return this.body;
+    }
+
+    /**
+     * @return the time to live of the message in milliseconds, from its <code>expiration</code> property,
+     * <code>-1</code> if it has none
+     */
+    long getExpiration() {
+        String expiration = this.properties.getExpiration();
+        if (expiration == null) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(expiration);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,312 @@
+// This Source Code Form is subject to the terms of the Mozilla Public
+// License, v. 2.0. If a copy of the MPL was not distributed with this
+// file, You can obtain one at https://mozilla.org/MPL/2.0/.
+//
+// Copyright (c) 2020 VMware, Inc. or its affiliates. All rights reserved.
+package com.rabbitmq.jms.client.inmemory;
+
+import com.rabbitmq.client.Consumer;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Queue of an {@link InMemoryBroker}: its messages ready for delivery, and its consumers, served in turn within
+ * their prefetch limit. All the state is guarded by the queue instance.
+ */
+final class InMemoryQueue {
+
+    private static final String MESSAGE_TTL_ARG = "x-message-ttl";
+    private static final String MAX_LENGTH_ARG = "x-max-length";
+    private static final String OVERFLOW_ARG = "x-overflow";
+
+    private final String name;
+    private final boolean durable;
+    private final boolean autoDelete;
+    private final InMemoryConnection owner;
+    private final Map<String, Object> arguments;
+    private final long messageTtl;
+    private final long maxLength;
+    private final boolean rejectPublish;
+
+    private final Deque<Entry> ready = new ArrayDeque<Entry>();
+    private final List<Subscription> subscriptions = new ArrayList<Subscription>();
+    private int nextSubscription;
+    private int unacked;
+    private boolean hadSubscriptions;
+    private boolean deleted;
+
+    /**
+     * @param owner the connection of an exclusive queue, <code>null</code> otherwise
+     */
+    InMemoryQueue(String name, boolean durable, boolean autoDelete, InMemoryConnection owner, Map<String, Object> arguments) {
+        this.name = name;
+        this.durable = durable;
+        this.autoDelete = autoDelete;
+        this.owner = owner;
+        this.arguments = arguments == null ? Collections.<String, Object>emptyMap() : new HashMap<String, Object>(arguments);
+        this.messageTtl = longArgument(this.arguments.get(MESSAGE_TTL_ARG));
+        this.maxLength = longArgument(this.arguments.get(MAX_LENGTH_ARG));
+        Object overflow = this.arguments.get(OVERFLOW_ARG);
+        this.rejectPublish = overflow != null && "reject-publish".equals(overflow.toString());
+    }
+
+    private static long longArgument(Object value) {
+        return value instanceof Number ? ((Number) value).longValue() : -1;
+    }
+
+    String getName() {
+        return this.name;
+    }
+
+    boolean isDurable() {
+        return this.durable;
+    }
+
+    boolean isExclusive() {
+        return this.owner != null;
+    }
+
+    boolean isAutoDelete() {
+        return this.autoDelete;
+    }
+
+    InMemoryConnection getOwner() {
+        return this.owner;
+    }
+
+    Map<String, Object> getArguments() {
+        return this.arguments;
+    }
+
+    /**
+     * @return <code>false</code> if the message is rejected because the queue is full
+     */
+    synchronized boolean enqueue(InMemoryMessage message) {
+        if (this.deleted) {
+            return true;
+        }
+        if (this.maxLength >= 0 && this.ready.size() >= this.maxLength) {
+            if (this.rejectPublish) {
+                return false;
+            }
+            this.ready.poll(); // drop-head
+            if (this.maxLength == 0) {
+                return true;
+            }
+        }
+        long ttl = message.getExpiration();
+        if (this.messageTtl >= 0 && (ttl < 0 || this.messageTtl < ttl)) {
+            ttl = this.messageTtl;
+        }
+        this.ready.add(new Entry(message, false, ttl < 0 ? Long.MAX_VALUE : System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(ttl)));
+        this.dispatch();
+        return true;
+    }
+
+    /**
+     * Hands ready messages to the consumers which have room for them, in turn.
+     */
+    private void dispatch() {
+        while (!this.subscriptions.isEmpty() && this.dropExpiredHead()) {
+            Subscription subscription = this.nextSubscription();
+            if (subscription == null) {
+                return;
+            }
+            Entry entry = this.ready.poll();
+            if (!subscription.autoAck) {
+                subscription.unacked++;
+                this.unacked++;
+            }
+            if (!subscription.channel.deliver(subscription, this, entry)) {
+                this.ready.addFirst(entry);
+                if (!subscription.autoAck) {
+                    subscription.unacked--;
+                    this.unacked--;
+                }
+                this.subscriptions.remove(subscription); // its channel is closing
+            }
+        }
+    }
+
+    /**
+     * @return <code>true</code> if there is a message ready, once expired messages at the head are dropped
+     */
+    private boolean dropExpiredHead() {
+        long now = System.nanoTime();
+        Entry head;
+        while ((head = this.ready.peek()) != null && head.deadline != Long.MAX_VALUE && head.deadline - now <= 0) {
+            this.ready.poll();
+        }
+        return head != null;
+    }
+
+    private Subscription nextSubscription() {
+        int size = this.subscriptions.size();
+        for (int i = 0; i < size; i++) {
+            Subscription subscription = this.subscriptions.get((this.nextSubscription + i) % size);
+            if (subscription.hasRoom()) {
+                this.nextSubscription = (this.nextSubscription + i + 1) % size;
+                return subscription;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Takes the next ready message, for <code>basicGet</code>.
+     * @return the message, <code>null</code> if there is none
+     */
+    synchronized Entry poll(boolean autoAck) {
+        if (!this.dropExpiredHead()) {
+            return null;
+        }
+        if (!autoAck) {
+            this.unacked++;
+        }
+        return this.ready.poll();
+    }
+
+    /**
+     * A message delivered without auto-ack is acknowledged, or rejected without requeueing.
+     * @param subscription the consumer it was delivered to, <code>null</code> if it was got
+     */
+    synchronized void settled(Subscription subscription) {
+        this.unacked--;
+        if (subscription != null) {
+            subscription.unacked--;
+        }
+        this.dispatch();
+    }
+
+    /**
+     * A message delivered without auto-ack is put back at the head of the queue, flagged as redelivered.
+     * @param subscription the consumer it was delivered to, <code>null</code> if it was got
+     */
+    synchronized void requeue(Subscription subscription, Entry entry) {
+        this.unacked--;
+        if (subscription != null) {
+            subscription.unacked--;
+        }
+        if (!this.deleted) {
+            this.ready.addFirst(new Entry(entry.message, true, entry.deadline));
+            this.dispatch();
+        }
+    }
+
+    /**
+     * @return <code>null</code> if the queue can be consumed from, an error message otherwise
+     */
+    synchronized String subscribe(Subscription subscription) {
+        if (this.deleted) {
+            return "NOT_FOUND - no queue '" + this.name + "' in vhost '/'";
+        }
+        for (Subscription existing : this.subscriptions) {
+            if (existing.exclusive || subscription.exclusive) {
+                return "ACCESS_REFUSED - queue '" + this.name + "' in vhost '/' in exclusive use";
+            }
+        }
+        this.subscriptions.add(subscription);
+        this.hadSubscriptions = true;
+        this.dispatch();
+        return null;
+    }
+
+    /**
+     * @return <code>true</code> if the queue is to be deleted, because it is auto-delete and has no consumers left
+     */
+    synchronized boolean cancel(Subscription subscription) {
+        this.subscriptions.remove(subscription);
+        return this.autoDelete && this.hadSubscriptions && this.subscriptions.isEmpty();
+    }
+
+    /**
+     * The queue is deleted: its messages are dropped, and its consumers are told they are cancelled.
+     */
+    void deleted() {
+        List<Subscription> cancelled;
+        synchronized (this) {
+            this.deleted = true;
+            this.ready.clear();
+            cancelled = new ArrayList<Subscription>(this.subscriptions);
+            this.subscriptions.clear();
+        }
+        for (Subscription subscription : cancelled) {
+            subscription.channel.cancelledByBroker(subscription);
+        }
+    }
+
+    /**
+     * @return the number of messages dropped
+     */
+    synchronized int purge() {
+        int count = this.ready.size();
+        this.ready.clear();
+        return count;
+    }
+
+    synchronized int readyCount() {
+        this.dropExpiredHead();
+        return this.ready.size();
+    }
+
+    synchronized int unackedCount() {
+        return this.unacked;
+    }
+
+    synchronized int consumerCount() {
+        return this.subscriptions.size();
+    }
+
+    /**
+     * A message in the queue, or delivered and waiting for its acknowledgement.
+     */
+    static final class Entry {
+        final InMemoryMessage message;
+        final boolean redelivered;
+        /** {@link System#nanoTime()} at which the message expires, {@link Long#MAX_VALUE} if it does not */
+        final long deadline;
+
+        Entry(InMemoryMessage message, boolean redelivered, long deadline) {
+            this.message = message;
+            this.redelivered = redelivered;
+            this.deadline = deadline;
+        }
+    }
+
+    /**
+     * A consumer of the queue. Its unacknowledged count is guarded by the queue.
+     */
+    static final class Subscription {
+        final InMemoryChannel channel;
+        final String consumerTag;
+        final Consumer consumer;
+        final boolean autoAck;
+        final boolean exclusive;
+        /** Maximum number of unacknowledged messages, <code>0</code> for no limit */
+        final int prefetch;
+        final InMemoryQueue queue;
+        int unacked;
+
+        Subscription(InMemoryChannel channel, InMemoryQueue queue, String consumerTag, Consumer consumer, boolean autoAck,
+                     boolean exclusive, int prefetch) {
+            this.channel = channel;
+            this.queue = queue;
+            this.consumerTag = consumerTag;
+            this.consumer = consumer;
+            this.autoAck = autoAck;
+            this.exclusive = exclusive;
+            this.prefetch = prefetch;
+        }
+
+        boolean hasRoom() {
+            return this.autoAck || this.prefetch == 0 || this.unacked < this.prefetch;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+// This Source Code Form is subject to the terms of the Mozilla Public
+// License, v. 2.0. If a copy of the MPL was not distributed with this
+// file, You can obtain one at https://mozilla.org/MPL/2.0/.
+//
+// Copyright (c) 2020 VMware, Inc. or its affiliates. All rights reserved.
+package com.rabbitmq.jms.client.message;
+
+import com.rabbitmq.jms.util.RMQByteArrayOutputStream;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class PrimitiveMapTest {
+
+    @Test
+    public void putRemoveAndGrowAgainstHashMap() {
+        PrimitiveMap map = new PrimitiveMap();
+        Map<String, Long> reference = new HashMap<String, Long>();
+        Random random = new Random(42);
+        for (int i = 0; i < 20000; i++) {
+            String name = "n" + random.nextInt(300);
+            if (random.nextInt(3) == 0) {
+                map.remove(name);
+                reference.remove(name);
+            } else {
+                long value = random.nextLong();
+                map.putBits(name, CompactValues.LONG, value);
+                reference.put(name, value);
+            }
+        }
+        assertThat(map.size()).isEqualTo(reference.size());
+        assertThat(map.names()).containsExactlyInAnyOrderElementsOf(reference.keySet());
+        for (Map.Entry<String, Long> entry : reference.entrySet()) {
+            int slot = map.slot(entry.getKey());
+            assertThat(map.tag(slot)).isEqualTo(CompactValues.LONG);
+            assertThat(map.bits(slot)).isEqualTo(entry.getValue());
+        }
+        assertThat(map.slot("absent")).isEqualTo(-1);
+    }
+
+    @Test
+    public void valuesAreDecodedOnLookup() throws Exception {
+        PrimitiveMap indexed = indexed(sampleMap());
+        assertThat(indexed.isIndexed()).isTrue();
+        assertThat(indexed.size()).isEqualTo(4);
+        assertThat(indexed.get(indexed.slot("int"))).isEqualTo(7);
+        assertThat(indexed.get(indexed.slot("double"))).isEqualTo(2.5d);
+        assertThat(indexed.get(indexed.slot("string"))).isEqualTo("värde");
+        assertThat((byte[]) indexed.get(indexed.slot("bytes"))).isEqualTo(new byte[] { 1, 2 });
+    }
+
+    @Test
+    public void changingAnIndexedMapDetachesIt() throws Exception {
+        PrimitiveMap indexed = indexed(sampleMap());
+        indexed.remove("int");
+        assertThat(indexed.isIndexed()).isFalse();
+        PrimitiveMap again = indexed(indexed);
+        assertThat(again.names()).containsExactlyInAnyOrder("double", "string", "bytes");
+        assertThat(again.get(again.slot("string"))).isEqualTo("värde");
+    }
+
+    @Test
+    public void truncatedMapIsRejected() throws Exception {
+        RMQByteArrayOutputStream out = new RMQByteArrayOutputStream(64);
+        sampleMap().writeTo(out);
+        byte[] encoded = Arrays.copyOf(out.getBuffer(), out.size() - 1);
+        assertThatThrownBy(() -> new PrimitiveMap().index(encoded, 0, encoded.length)).isInstanceOf(IOException.class);
+    }
+
+    private static PrimitiveMap sampleMap() {
+        PrimitiveMap map = new PrimitiveMap();
+        map.putBits("int", CompactValues.INT, 7);
+        map.putBits("double", CompactValues.DOUBLE, Double.doubleToRawLongBits(2.5d));
+        map.putString("string", "värde");
+        map.putBytes("bytes", new byte[] { 1, 2 });
+        return map;
+    }
+
+    private static PrimitiveMap indexed(PrimitiveMap map) throws IOException {
+        RMQByteArrayOutputStream out = new RMQByteArrayOutputStream(64);
+        map.writeTo(out);
+        PrimitiveMap indexed = new PrimitiveMap();
+        indexed.index(out.toByteArray(), 0, out.size());
+        return indexed;
+    }
+}
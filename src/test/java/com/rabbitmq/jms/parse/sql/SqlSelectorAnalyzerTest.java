@@ -0,0 +1,86 @@
+// This Source Code Form is subject to the terms of the Mozilla Public
+// License, v. 2.0. If a copy of the MPL was not distributed with this
+// file, You can obtain one at https://mozilla.org/MPL/2.0/.
+//
+// Copyright (c) 2020 VMware, Inc. or its affiliates. All rights reserved.
+package com.rabbitmq.jms.parse.sql;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Collections;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+public class SqlSelectorAnalyzerTest {
+
+    @Test
+    public void requiredEqualitiesAreTopLevelConjuncts() {
+        assertThat(requiredEqualities("colour = 'blue'")).containsExactly(entry("colour", "blue"));
+        assertThat(requiredEqualities("'blue' = colour")).containsExactly(entry("colour", "blue"));
+        assertThat(requiredEqualities("colour = 'blue' and (size > 3 and shape = 'round')"))
+            .containsExactly(entry("colour", "blue"), entry("shape", "round"));
+        assertThat(requiredEqualities("colour = 'blue' and colour = 'red'")).containsExactly(entry("colour", "blue"));
+        assertThat(requiredEqualities("colour = 'it''s'")).containsExactly(entry("colour", "it's"));
+    }
+
+    @Test
+    public void noRequiredEqualities() {
+        assertThat(requiredEqualities("colour = 'blue' or shape = 'round'")).isEmpty();
+        assertThat(requiredEqualities("not colour = 'blue'")).isEmpty();
+        assertThat(requiredEqualities("colour <> 'blue'")).isEmpty();
+        assertThat(requiredEqualities("size = 3")).isEmpty();
+        assertThat(requiredEqualities("colour = shape")).isEmpty();
+        assertThat(requiredEqualities("colour = 'blue' and")).isEmpty();
+    }
+
+    @Test
+    public void equalityConjunctionsAndDisjunctions() {
+        assertThat(analyzer("colour = 'blue'").equalityDisjuncts()).containsExactly(map("colour", "blue"));
+        assertThat(analyzer("colour = 'blue' and ('round' = shape and JMSType = 'ball')").equalityDisjuncts())
+            .containsExactly(map("colour", "blue", "shape", "round", "JMSType", "ball"));
+        assertThat(analyzer("colour = 'blue' or colour = 'red' or shape = 'round'").equalityDisjuncts())
+            .containsExactly(map("colour", "blue"), map("colour", "red"), map("shape", "round"));
+        assertThat(analyzer("colour = 'blue' and shape = 'round' or colour = 'red'").equalityDisjuncts())
+            .containsExactly(map("colour", "blue", "shape", "round"), map("colour", "red"));
+    }
+
+    @Test
+    public void unsatisfiableConjunctionsAreOmitted() {
+        assertThat(analyzer("colour = 'blue' and colour = 'red'").equalityDisjuncts()).isEmpty();
+        assertThat(analyzer("colour = 'blue' and colour = 'red' or shape = 'round'").equalityDisjuncts())
+            .containsExactly(map("shape", "round"));
+        assertThat(analyzer("colour = 'blue' and colour = 'blue'").equalityDisjuncts()).containsExactly(map("colour", "blue"));
+    }
+
+    @Test
+    public void notEqualityDisjunctions() {
+        assertThat(analyzer("colour = 'blue' and (shape = 'round' or shape = 'square')").equalityDisjuncts()).isNull();
+        assertThat(analyzer("colour = 'blue' or size > 3").equalityDisjuncts()).isNull();
+        assertThat(analyzer("not colour = 'blue'").equalityDisjuncts()).isNull();
+        assertThat(analyzer("colour in ('blue', 'red')").equalityDisjuncts()).isNull();
+        assertThat(analyzer("size = 3").equalityDisjuncts()).isNull();
+        assertThat(analyzer("colour = 'blue' or").equalityDisjuncts()).isNull();
+    }
+
+    private static SqlSelectorAnalyzer analyzer(String selector) {
+        SqlEvaluator eval = new SqlEvaluator(new SqlParser(new SqlTokenStream(selector)), Collections.<String, SqlExpressionType>emptyMap());
+        return new SqlSelectorAnalyzer(eval);
+    }
+
+    private static Map<String, String> requiredEqualities(String selector) {
+        return analyzer(selector).requiredEqualities();
+    }
+
+    private static Map<String, String> map(String... keysAndValues) {
+        Map<String, String> map = new java.util.LinkedHashMap<String, String>();
+        for (int i = 0; i < keysAndValues.length; i += 2) {
+            map.put(keysAndValues[i], keysAndValues[i + 1]);
+        }
+        return map;
+    }
+
+    private static Map.Entry<String, String> entry(String key, String value) {
+        return new java.util.AbstractMap.SimpleImmutableEntry<String, String>(key, value);
+    }
+}
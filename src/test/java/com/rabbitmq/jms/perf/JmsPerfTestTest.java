@@ -0,0 +1,61 @@
+// This Source Code Form is subject to the terms of the Mozilla Public
+// License, v. 2.0. If a copy of the MPL was not distributed with this
+// file, You can obtain one at https://mozilla.org/MPL/2.0/.
+//
+// Copyright (c) 2020 VMware, Inc. or its affiliates. All rights reserved.
+package com.rabbitmq.jms.perf;
+
+import com.rabbitmq.jms.client.inmemory.InMemoryBroker;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class JmsPerfTestTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void queueWithClientAcksAndCsvOutput() throws Exception {
+        Path output = this.tempDir.resolve("results.csv");
+        PerfTestOptions options = PerfTestOptions.parse("-x", "2", "-y", "2", "-C", "500", "-t", "text", "-s", "100",
+            "-a", "client", "-A", "10", "-c", "-q", "20", "--property", "region=eu",
+            "-o", output.toString());
+        JmsPerfTest.Sample summary = run(options);
+
+        assertThat(summary.getLatencyCount()).isEqualTo(1000);
+        List<String> lines = Files.readAllLines(output, StandardCharsets.UTF_8);
+        assertThat(lines.get(0)).isEqualTo(JmsPerfTest.Sample.CSV_HEADER);
+        assertThat(lines.get(lines.size() - 1)).startsWith("summary,").contains(",1000,");
+    }
+
+    @Test
+    void transactedTopicWithSyncConsumersAndJsonOutput() throws Exception {
+        Path output = this.tempDir.resolve("results.json");
+        PerfTestOptions options = PerfTestOptions.parse("--topic", "-x", "1", "-y", "3", "-C", "200", "-t", "map",
+            "--producer-tx-size", "50", "--consumer-tx-size", "30", "--sync-consumers", "--property", "region=eu",
+            "--selector", "region = 'eu'", "-o", output.toString());
+        JmsPerfTest.Sample summary = run(options);
+
+        assertThat(summary.getLatencyCount()).as("each subscriber gets every message").isEqualTo(600);
+        List<String> lines = Files.readAllLines(output, StandardCharsets.UTF_8);
+        assertThat(lines).allMatch(line -> line.startsWith("{\"type\":") && line.endsWith("}"));
+        assertThat(lines.get(lines.size() - 1)).contains("\"type\":\"summary\"").contains("\"latency_count\":600");
+    }
+
+    private static JmsPerfTest.Sample run(PerfTestOptions options) throws Exception {
+        ByteArrayOutputStream console = new ByteArrayOutputStream();
+        JmsPerfTest.Sample summary = new JmsPerfTest(options, new InMemoryBroker().jmsConnectionFactory(),
+            new PrintStream(console, true, "UTF-8")).run();
+        assertThat(new String(console.toByteArray(), StandardCharsets.UTF_8)).contains("summary: ").contains("errors: 0");
+        return summary;
+    }
+}
@@ -0,0 +1,85 @@
+// This Source Code Form is subject to the terms of the Mozilla Public
+// License, v. 2.0. If a copy of the MPL was not distributed with this
+// file, You can obtain one at https://mozilla.org/MPL/2.0/.
+//
+// Copyright (c) 2020 VMware, Inc. or its affiliates. All rights reserved.
+package com.rabbitmq.jms.perf;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
+
+public class LatencyHistogramTest {
+
+    @Test
+    void emptyHistogram() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertThat(histogram.getCount()).isZero();
+        assertThat(histogram.getMin()).isZero();
+        assertThat(histogram.getMax()).isZero();
+        assertThat(histogram.getMean()).isZero();
+        assertThat(histogram.getValueAtPercentile(99)).isZero();
+    }
+
+    @Test
+    void smallValuesAreExact() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(i);
+        }
+        assertThat(histogram.getCount()).isEqualTo(100);
+        assertThat(histogram.getMin()).isEqualTo(1);
+        assertThat(histogram.getMax()).isEqualTo(100);
+        assertThat(histogram.getMean()).isEqualTo(50.5);
+        assertThat(histogram.getValueAtPercentile(50)).isEqualTo(50);
+        assertThat(histogram.getValueAtPercentile(99)).isEqualTo(99);
+        assertThat(histogram.getValueAtPercentile(100)).isEqualTo(100);
+        assertThat(histogram.getValueAtPercentile(0)).isEqualTo(1);
+    }
+
+    @Test
+    void largeValuesWithinOnePercent() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long i = 1; i <= 100_000; i++) {
+            histogram.record(i * 1000);
+        }
+        assertThat((double) histogram.getValueAtPercentile(50)).isCloseTo(50_000_000, within(500_000.0));
+        assertThat((double) histogram.getValueAtPercentile(99.9)).isCloseTo(99_900_000, within(999_000.0));
+        assertThat(histogram.getValueAtPercentile(100)).isEqualTo(100_000_000);
+    }
+
+    @Test
+    void indexesAreContiguousAndCoverAllValues() {
+        int previous = LatencyHistogram.index(0);
+        for (long value = 1; value < 1 << 20; value++) {
+            int index = LatencyHistogram.index(value);
+            assertThat(index).isBetween(previous, previous + 1);
+            assertThat(LatencyHistogram.highestEquivalentValue(index)).isGreaterThanOrEqualTo(value);
+            previous = index;
+        }
+        assertThat(LatencyHistogram.highestEquivalentValue(LatencyHistogram.index(Long.MAX_VALUE))).isEqualTo(Long.MAX_VALUE);
+    }
+
+    @Test
+    void addAndReset() {
+        LatencyHistogram total = new LatencyHistogram();
+        LatencyHistogram interval = new LatencyHistogram();
+        interval.record(10);
+        interval.record(-5);
+        total.addAndReset(interval);
+        interval.record(1000);
+        total.addAndReset(interval);
+
+        assertThat(interval.getCount()).isZero();
+        assertThat(total.getCount()).isEqualTo(3);
+        assertThat(total.getMin()).isZero();
+        assertThat(total.getMax()).isEqualTo(1000);
+    }
+
+    @Test
+    void percentileOutOfRange() {
+        assertThatThrownBy(() -> new LatencyHistogram().getValueAtPercentile(101)).isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -10,6 +10,8 @@ import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.junit.jupiter.api.Test;
 
@@ -40,6 +42,27 @@ public class TestTimeTracker {
         assertTimedOut(tt, "SHORT_WAIT");
     }
 
+    /**
+     * Test TimeTracker condition waits.
+     */
+    @Test
+    public void testTimeTrackerTimedAwait() throws Exception {
+        ReentrantLock lock = new ReentrantLock();
+        Condition condition = lock.newCondition();
+        TimeTracker tt = new TimeTracker(SHORT_WAIT_MILLIS, TimeUnit.MILLISECONDS);
+        long startNanos = System.nanoTime();
+        lock.lock();
+        try {
+            while (!tt.timedOut()) {
+                tt.timedAwait(condition);
+            }
+        } finally {
+            lock.unlock();
+        }
+        long intervalNanos = System.nanoTime() - startNanos;
+        assertTrue(intervalNanos >= TimeUnit.MILLISECONDS.toNanos(SHORT_WAIT_MILLIS), "TimeTracker did not wait long enough ("+intervalNanos+" nanos)!");
+    }
+
     private void assertNotTimedOut(TimeTracker tt, String description) {
         assertFalse(tt.timedOut(), "TimeTracker "+description+" timed out!");
         assertFalse(0L >= tt.remainingMillis(), "TimeTracker "+description+" run out!");
@@ -71,5 +94,18 @@ public class TestTimeTracker {
         }
         long intervalNanos = System.nanoTime() - startNanos;
         assertTrue(intervalNanos<QUANTUM_TIME_NANOS, "TimeTracker "+description+" waited too long ("+intervalNanos+" nanos)!");
+        ReentrantLock reentrantLock = new ReentrantLock();
+        Condition condition = reentrantLock.newCondition();
+        startNanos = System.nanoTime();
+        reentrantLock.lock();
+        try {
+            tt.timedAwait(condition);
+        } catch (InterruptedException ie) {
+            //do nothing
+        } finally {
+            reentrantLock.unlock();
+        }
+        intervalNanos = System.nanoTime() - startNanos;
+        assertTrue(intervalNanos<QUANTUM_TIME_NANOS, "TimeTracker "+description+" awaited too long ("+intervalNanos+" nanos)!");
     }
 }
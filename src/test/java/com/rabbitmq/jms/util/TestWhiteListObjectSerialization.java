@@ -10,12 +10,20 @@ import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
 import javax.jms.JMSException;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.fail;
 
 public class TestWhiteListObjectSerialization {
@@ -53,6 +61,50 @@ public class TestWhiteListObjectSerialization {
         RMQObjectMessage.recreate(om, Collections.singletonList("/does/not/match/any/package"));
     }
 
+    @Test
+    public void testVerdictsFollowChangesToTrustedPackages() throws IOException, JMSException {
+        List<String> trusted = new ArrayList<String>(Collections.singletonList("io.doesnt-match"));
+        expecteFailureWith(trusted, new TestKlazz("abc"));
+        trusted.add("com.rabbitmq.jms.util");
+        expectSuccessWith(trusted);
+        expecteFailureWith(Collections.singletonList("io.doesnt-match"), new TestKlazz("abc"));
+    }
+
+    @Test
+    public void testClassesAreResolvedWithEachContextClassLoader() throws Exception {
+        byte[] serialized = serialize(new TestKlazz("abc"));
+        Thread thread = Thread.currentThread();
+        ClassLoader original = thread.getContextClassLoader();
+        try {
+            for (ClassLoader loader : Arrays.asList(original, new URLClassLoader(new URL[0], original), null)) {
+                thread.setContextClassLoader(loader);
+                for (int i = 0; i < 2; i++) {
+                    Object read = new WhiteListObjectInputStream(new ByteArrayInputStream(serialized),
+                            Collections.singletonList("com.rabbitmq.jms.util")).readObject();
+                    assertEquals(new TestKlazz("abc"), read);
+                }
+            }
+        } finally {
+            thread.setContextClassLoader(original);
+        }
+    }
+
+    @Test
+    public void testUntrustedClassIsRejectedAfterBeingResolved() throws Exception {
+        byte[] serialized = serialize(new TestKlazz("abc"));
+        new WhiteListObjectInputStream(new ByteArrayInputStream(serialized), Collections.singletonList("*")).readObject();
+        assertThrows(ClassNotFoundException.class, () -> new WhiteListObjectInputStream(new ByteArrayInputStream(serialized),
+                Collections.singletonList("io.doesnt-match")).readObject());
+    }
+
+    private static byte[] serialize(Serializable object) throws IOException {
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bout);
+        out.writeObject(object);
+        out.close();
+        return bout.toByteArray();
+    }
+
     private void expecteFailureWith(List<String> patterns, TestKlazz serializedValue) throws JMSException {
         RMQObjectMessage om = new RMQObjectMessage();
         om.setObject(serializedValue);